@@ -2,10 +2,21 @@ package com.krickert.search.indexer;
 
 import com.krickert.search.indexer.dto.IndexingStatus;
 
+import java.util.Optional;
 import java.util.UUID;
 
 public interface SemanticIndexer {
     void runDefaultExportJob(UUID crawlId) throws IndexingFailedExecption;
 
+    /**
+     * @return the crawl id of the last default crawl that stopped before it completed, if a checkpoint was saved for it
+     */
+    Optional<UUID> findResumableCrawl();
+
+    /**
+     * Continues a stopped crawl from its last checkpoint under the same crawl id.
+     */
+    void resumeDefaultExportJob(UUID crawlId) throws IndexingFailedExecption;
+
     void updateCrawlStatus(UUID crawlId, IndexingStatus.OverallStatus status, String message);
 }
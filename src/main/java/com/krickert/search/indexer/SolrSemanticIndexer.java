@@ -2,17 +2,25 @@ package com.krickert.search.indexer;
 
 import com.krickert.search.indexer.config.IndexerConfiguration;
 import com.krickert.search.indexer.config.IndexerConfigurationProperties;
+import com.krickert.search.indexer.config.SolrConfiguration;
 import com.krickert.search.indexer.dto.IndexingStatus;
+import com.krickert.search.indexer.pipeline.IndexingPipeline;
 import com.krickert.search.indexer.solr.SchemaConstants;
 import com.krickert.search.indexer.solr.client.SolrClientService;
+import com.krickert.search.indexer.solr.vector.event.DocumentFingerprints;
 import com.krickert.search.indexer.solr.vector.event.SolrChunkDocumentPublisher;
 import com.krickert.search.indexer.solr.vector.event.SolrSourceDocumentPublisher;
 import com.krickert.search.indexer.solr.vector.event.SubscriptionManager;
-import com.krickert.search.indexer.solr.JsonToSolrDocParser;
 import com.krickert.search.indexer.solr.client.SolrAdminActions;
 import com.krickert.search.indexer.solr.httpclient.select.HttpSolrSelectClient;
 import com.krickert.search.indexer.solr.httpclient.select.HttpSolrSelectResponse;
+import com.krickert.search.indexer.solr.httpclient.select.SolrSourceExtractor;
+import com.krickert.search.indexer.solr.httpclient.select.SourcePosition;
 import com.krickert.search.indexer.solr.vector.SolrDestinationCollectionValidationService;
+import com.krickert.search.indexer.state.CrawlCheckpoint;
+import com.krickert.search.indexer.state.CrawlCheckpointer;
+import com.krickert.search.indexer.state.EmbeddingStore;
+import com.krickert.search.indexer.state.SourceWatermarkService;
 import com.krickert.search.indexer.tracker.IndexingTracker;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
@@ -24,8 +32,11 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.*;
 
@@ -39,7 +50,9 @@ public class SolrSemanticIndexer implements SemanticIndexer {
     private static final Logger log = LoggerFactory.getLogger(SolrSemanticIndexer.class);
 
     private final HttpSolrSelectClient httpSolrSelectClient;
-    private final JsonToSolrDocParser jsonToSolrDoc;
+    private final SolrSourceExtractor solrSourceExtractor;
+    private final SourceWatermarkService sourceWatermarkService;
+    private final CrawlCheckpointer crawlCheckpointer;
     private final IndexerConfiguration defaultIndexerConfiguration;
     private final SolrDestinationCollectionValidationService solrDestinationCollectionValidationService;
     private final SolrAdminActions solrAdminActions;
@@ -47,13 +60,19 @@ public class SolrSemanticIndexer implements SemanticIndexer {
     private final SolrSourceDocumentPublisher solrSourceDocumentPublisher;
     private final SolrChunkDocumentPublisher solrChunkDocumentPublisher;
     private final IndexerConfigurationProperties indexerConfigurationProperties;
+    private final IndexingPipeline indexingPipeline;
+    private final EmbeddingStore embeddingStore;
+    private final DocumentFingerprints documentFingerprints;
     private final ConcurrentMap<UUID, IndexingStatus> crawlStatusMap;
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Object publishLock = new Object();
 
 
     @Inject
     public SolrSemanticIndexer(HttpSolrSelectClient httpSolrSelectClient,
-                               JsonToSolrDocParser jsonToSolrDoc,
+                               SolrSourceExtractor solrSourceExtractor,
+                               SourceWatermarkService sourceWatermarkService,
+                               CrawlCheckpointer crawlCheckpointer,
                                IndexerConfiguration defaultIndexerConfiguration,
                                SolrClientService solrClientService,
                                SolrDestinationCollectionValidationService solrDestinationCollectionValidationService,
@@ -61,12 +80,17 @@ public class SolrSemanticIndexer implements SemanticIndexer {
                                IndexingTracker indexingTracker,
                                SolrSourceDocumentPublisher solrSourceDocumentPublisher,
                                SolrChunkDocumentPublisher solrChunkDocumentPublisher,
-                               SubscriptionManager subscriptionManager, IndexerConfigurationProperties indexerConfigurationProperties) {
+                               SubscriptionManager subscriptionManager, IndexerConfigurationProperties indexerConfigurationProperties,
+                               IndexingPipeline indexingPipeline,
+                               EmbeddingStore embeddingStore,
+                               DocumentFingerprints documentFingerprints) {
         log.info("creating SemanticIndexer");
         checkNotNull(solrClientService);
         checkNotNull(subscriptionManager);
         this.httpSolrSelectClient = checkNotNull(httpSolrSelectClient);
-        this.jsonToSolrDoc = checkNotNull(jsonToSolrDoc);
+        this.solrSourceExtractor = checkNotNull(solrSourceExtractor);
+        this.sourceWatermarkService = checkNotNull(sourceWatermarkService);
+        this.crawlCheckpointer = checkNotNull(crawlCheckpointer);
         this.defaultIndexerConfiguration = checkNotNull(defaultIndexerConfiguration);
         this.solrDestinationCollectionValidationService = checkNotNull(solrDestinationCollectionValidationService);
         this.solrAdminActions = checkNotNull(solrAdminActions);
@@ -75,16 +99,42 @@ public class SolrSemanticIndexer implements SemanticIndexer {
         this.solrSourceDocumentPublisher = solrSourceDocumentPublisher;
         this.solrChunkDocumentPublisher = solrChunkDocumentPublisher;
         this.indexerConfigurationProperties = indexerConfigurationProperties;
+        this.indexingPipeline = checkNotNull(indexingPipeline);
+        this.embeddingStore = checkNotNull(embeddingStore);
+        this.documentFingerprints = checkNotNull(documentFingerprints);
         this.crawlStatusMap = new ConcurrentHashMap<>();
     }
 
     @Override
     public void runDefaultExportJob(UUID crawlId) throws IndexingFailedExecption {
+        runExportJob(crawlId, null);
+    }
+
+    @Override
+    public Optional<UUID> findResumableCrawl() {
+        return crawlCheckpointer.load(defaultIndexerConfiguration.getSourceSolrConfiguration())
+                .map(checkpoint -> UUID.fromString(checkpoint.getCrawlId()));
+    }
+
+    @Override
+    public void resumeDefaultExportJob(UUID crawlId) throws IndexingFailedExecption {
+        CrawlCheckpoint checkpoint = crawlCheckpointer.load(defaultIndexerConfiguration.getSourceSolrConfiguration())
+                .filter(saved -> crawlId.toString().equals(saved.getCrawlId()))
+                .orElseThrow(() -> new IndexingFailedExecption("No checkpoint saved for crawl " + crawlId));
+        log.info("Resuming crawl {} from checkpoint {}", crawlId, checkpoint);
+        runExportJob(crawlId, checkpoint);
+    }
+
+    /**
+     * Runs a crawl of the default source collection.
+     *
+     * @param resumeFrom the checkpoint of an earlier run of the same crawl, or null to start a new crawl
+     */
+    private void runExportJob(UUID crawlId, CrawlCheckpoint resumeFrom) throws IndexingFailedExecption {
         IndexerConfiguration indexerConfiguration = defaultIndexerConfiguration;
         String solr7Host = indexerConfiguration.getSourceSolrConfiguration().getConnection().getUrl();
         String solrSourceCollection = indexerConfiguration.getSourceSolrConfiguration().getCollection();
         String solrDestinationCollection = indexerConfiguration.getDestinationSolrConfiguration().getCollection();
-        final int paginationSize = indexerConfiguration.getSourceSolrConfiguration().getConnection().getPaginationSize() == null ? 100 : indexerConfiguration.getSourceSolrConfiguration().getConnection().getPaginationSize();
 
         // Validate the destination collection
         solrDestinationCollectionValidationService.validate();
@@ -92,30 +142,89 @@ public class SolrSemanticIndexer implements SemanticIndexer {
         // Create the crawler ID. This will be saved in the collection and documents that are not matching this crawler ID will be deleted
         crawlStatusMap.put(crawlId, new IndexingStatus(crawlId.toString(), indexerConfiguration, 0, 0, 0, 0, 0, 0, null, null, "Indexing started", 0, 0, 0, IndexingStatus.OverallStatus.RUNNING, null));
 
-        long totalExpected = httpSolrSelectClient.getTotalNumberOfDocumentsForCollection(solr7Host, solrSourceCollection);
+        SolrConfiguration sourceSolrConfiguration = indexerConfiguration.getSourceSolrConfiguration();
+        // Incremental crawls only read what changed since the last completed crawl. Unchanged documents keep the
+        // crawl id of the crawl that last wrote them and never reach the embedding services.
+        boolean incremental = SourceWatermarkService.isIncremental(sourceSolrConfiguration);
+        List<String> crawlFilters = new ArrayList<>();
+        String highWaterMark = null;
+        if (resumeFrom != null) {
+            // a resumed crawl reads the same documents it set out to read, whatever was saved since
+            crawlFilters.addAll(resumeFrom.getCrawlFilters());
+            highWaterMark = resumeFrom.getHighWaterMark();
+        } else if (incremental) {
+            highWaterMark = sourceWatermarkService.readHighWaterMark(sourceSolrConfiguration);
+            sourceWatermarkService.createWatermarkFilter(sourceSolrConfiguration).ifPresent(crawlFilters::add);
+        }
+
+        long totalExpected = crawlFilters.isEmpty() ?
+                httpSolrSelectClient.getTotalNumberOfDocumentsForCollection(solr7Host, solrSourceCollection) :
+                httpSolrSelectClient.getTotalNumberOfDocumentsForCollection(solr7Host, solrSourceCollection, crawlFilters);
         assert totalExpected >= 0;
         log.info("We queried host {} with collection {} and it returned {} documents. We will start tracking this crawl", solr7Host, solrSourceCollection, totalExpected);
+
+        boolean resumable = SolrSourceExtractor.isResumable(sourceSolrConfiguration);
+        SourcePosition startPosition = SourcePosition.START;
+        long documentsAcknowledged = 0L;
+        if (resumeFrom != null && resumable) {
+            startPosition = resumeFrom.toSourcePosition();
+            documentsAcknowledged = resumeFrom.getDocumentsAcknowledged();
+            totalExpected = Math.max(0L, totalExpected - documentsAcknowledged);
+            log.info("Crawl {} already has {} documents acknowledged. {} documents are left to read", crawlId, documentsAcknowledged, totalExpected);
+        } else if (resumeFrom != null) {
+            log.warn("Source collection {} is read in partitions or from the export handler. Crawl {} is read again from the start.", solrSourceCollection, crawlId);
+        }
         indexingTracker.reset();
         indexingTracker.startTracking(totalExpected, crawlId.toString());
-        long numOfPagesExpected = calculateNumOfPages(totalExpected, paginationSize);
-        assert numOfPagesExpected >= 0;
-        for (int currentPage = 0; currentPage < numOfPagesExpected; currentPage++) {
-            processPages(solr7Host, solrSourceCollection, solrDestinationCollection, paginationSize, currentPage, crawlId);
+        indexingPipeline.resetMetrics();
+
+        boolean checkpointing = crawlCheckpointer.isEnabled() && resumable;
+        if (checkpointing) {
+            CrawlCheckpoint firstCheckpoint = new CrawlCheckpoint();
+            firstCheckpoint.setCrawlId(crawlId.toString());
+            firstCheckpoint.setSourceCollection(solrSourceCollection);
+            firstCheckpoint.setCrawlFilters(crawlFilters);
+            firstCheckpoint.setHighWaterMark(highWaterMark);
+            firstCheckpoint.setCursorMark(startPosition.getCursorMark());
+            firstCheckpoint.setStart(startPosition.getStart());
+            firstCheckpoint.setDocumentsAcknowledged(documentsAcknowledged);
+            crawlCheckpointer.begin(sourceSolrConfiguration, firstCheckpoint);
+            indexingTracker.setDocumentAcknowledgementListener(crawlCheckpointer::documentAcknowledged);
+        }
+        try {
+            solrSourceExtractor.extract(sourceSolrConfiguration, totalExpected, crawlFilters, startPosition,
+                    page -> publishPage(page, solrSourceCollection, solrDestinationCollection, crawlId, checkpointing));
+            log.info("*****PUBLISHING COMPLETE. {} documents were pushed and going to the {} collection", totalExpected, solrDestinationCollection);
+
+            waitForIndexingCompletion(MAIN);
+            solrAdminActions.commit(solrDestinationCollection);
+            indexingTracker.finalizeTracking(IndexingTracker.TaskType.MAIN);
+            waitForIndexingCompletion(VECTOR);
+            indexingTracker.finalizeTracking(VECTOR);
+            solrAdminActions.commitVectorCollections();
+        } finally {
+            indexingTracker.setDocumentAcknowledgementListener(null);
         }
-        log.info("*****PUBLISHING COMPLETE. {} documents were pushed and going to the {} collection", totalExpected, solrDestinationCollection);
-
-        waitForIndexingCompletion(MAIN);
-        solrAdminActions.commit(solrDestinationCollection);
-        indexingTracker.finalizeTracking(IndexingTracker.TaskType.MAIN);
-        waitForIndexingCompletion(VECTOR);
-        indexingTracker.finalizeTracking(VECTOR);
-        solrAdminActions.commitVectorCollections();
         if (indexingTracker.getMainTaskStatus().getOverallStatus() == IndexingStatus.OverallStatus.FAILED) {
             String errorMessage = String.format("Indexing job %s failed.  End status: \n%s", crawlId, indexingTracker.getMainTaskStatus());
             log.error(errorMessage);
+            // the checkpoint stays in place so the crawl can be resumed
+            crawlCheckpointer.stop();
             updateCrawlStatus(crawlId, IndexingStatus.OverallStatus.FAILED, errorMessage);
             throw new IndexingFailedExecption(errorMessage);
         }
+        if (incremental) {
+            sourceWatermarkService.saveWatermark(sourceSolrConfiguration, highWaterMark);
+        }
+        if (checkpointing || resumeFrom != null) {
+            crawlCheckpointer.complete();
+        }
+        try {
+            embeddingStore.crawlFinished();
+        } catch (RuntimeException e) {
+            // the vectors are still stored, only the compaction is put off to the next crawl
+            log.warn("Could not compact the embedding store after crawl {}", crawlId, e);
+        }
         updateCrawlStatus(crawlId, IndexingStatus.OverallStatus.COMPLETED, "Indexing completed successfully");
     }
 
@@ -150,6 +259,7 @@ public class SolrSemanticIndexer implements SemanticIndexer {
                 break;
             } else {
                 log.info("***** INDEXING STILL IN PROGRESS for {} task: Expecting {} documents. {}", taskType, totalExpected, taskStatus);
+                log.info("Pipeline stages: {}", indexingPipeline.getStatus());
             }
 
             // Wait for some time before checking again
@@ -200,41 +310,37 @@ public class SolrSemanticIndexer implements SemanticIndexer {
         }
     }
 
-    public void processPages(String solr7Host, String solrSourceCollection, String solrDestinationCollection, Integer paginationSize, int currentPage, UUID crawlId) {
-        String solrDocs = fetchSolrDocuments(solr7Host, solrSourceCollection, paginationSize, currentPage);
-        HttpSolrSelectResponse response = jsonToSolrDoc.parseSolrDocuments(solrDocs);
-
-        if (isEmptyResponse(response)) {
-            log.info("No solr documents in source collection. Breaking.");
-            return;
+    private void publishPage(HttpSolrSelectResponse page, String solrSourceCollection, String solrDestinationCollection,
+                             UUID crawlId, boolean checkpointing) {
+        Collection<SolrInputDocument> documents = page.getDocs();
+        log.info("Exporting {} documents from source collection {} to destination collection {}", documents.size(), solrSourceCollection, solrDestinationCollection);
+        if (page.getPageSize() != null) {
+            indexingTracker.sourcePageRead(page.getPageSize().intValue());
         }
-        Collection<SolrInputDocument> documents = response.getDocs();
-        if (documents.isEmpty()) {
-            return;
+        if (checkpointing) {
+            crawlCheckpointer.pagePublished(page);
         }
-        log.info("Exporting {} documents from source collection {} to destination collection {}", documents.size(), solrSourceCollection, solrDestinationCollection);
         processDocuments(documents, crawlId);
     }
 
-    private long calculateNumOfPages(long totalDocuments, int paginationSize) {
-        return (totalDocuments == -1) ? -1 : (totalDocuments / paginationSize) + 1;
-    }
-
-    private String fetchSolrDocuments(String solr7Host, String solrSourceCollection, int paginationSize, int currentPage) {
-        return httpSolrSelectClient.getSolrDocs(solr7Host, solrSourceCollection, paginationSize, currentPage);
-    }
-
-    private boolean isEmptyResponse(HttpSolrSelectResponse response) {
-        return response.getNumFound() == 0;
-    }
-
     private void processDocuments(Collection<SolrInputDocument> documents, UUID crawlId) {
         documents.forEach(doc -> {
             insertDates(doc);
             insertCrawlId(doc, crawlId);
-            solrSourceDocumentPublisher.publishDocument(doc);
-            solrChunkDocumentPublisher.publishDocument(doc);
         });
+        // documents that match what the destination already holds skip chunking and embedding, and the chunks stored
+        // for each chunk field are read once for the page
+        documentFingerprints.lookup(documents);
+        // the publisher sinks are not thread safe. partitioned extraction can hand over pages from several threads.
+        // publishing blocks here while either listener has a full queue
+        synchronized (publishLock) {
+            documents.forEach(doc -> {
+                solrSourceDocumentPublisher.publishDocument(doc);
+                solrChunkDocumentPublisher.publishDocument(doc);
+            });
+        }
+        indexingTracker.publisherQueueDepth(MAIN, solrSourceDocumentPublisher.getQueueDepth(), solrSourceDocumentPublisher.getQueueCapacity());
+        indexingTracker.publisherQueueDepth(VECTOR, solrChunkDocumentPublisher.getQueueDepth(), solrChunkDocumentPublisher.getQueueCapacity());
     }
 
     private static void insertCrawlId(SolrInputDocument doc, UUID crawlId) {
@@ -0,0 +1,57 @@
+package com.krickert.search.indexer.chunker;
+
+import com.krickert.search.indexer.config.VectorConfig;
+import com.krickert.search.indexer.grpc.ChunkerClient;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Picks the chunker of a vector config from its chunker setting:
+ * <ul>
+ *     <li>remote, the default, calls the chunker service</li>
+ *     <li>local splits the text into fixed length windows in process, without a call. That it matches the
+ *     chunker service has not been verified yet</li>
+ *     <li>content-defined splits the text in process at boundaries picked from the text itself</li>
+ * </ul>
+ */
+public final class Chunkers {
+    public static final String REMOTE = "remote";
+    public static final String LOCAL = "local";
+    public static final String CONTENT_DEFINED = ContentDefinedChunker.NAME;
+    private static final Set<String> CHUNKERS = Set.of(REMOTE, LOCAL, CONTENT_DEFINED);
+    private static final ChunkerClient LOCAL_CHUNKER = new FixedLengthChunker();
+    private static final ChunkerClient CONTENT_DEFINED_CHUNKER = new ContentDefinedChunker();
+
+    private Chunkers() {
+    }
+
+    /**
+     * @return the chunker the vector config asks for, or the remote chunker if it asks for none
+     * @throws IllegalArgumentException if the vector config names a chunker that does not exist
+     */
+    public static String chunkerName(VectorConfig vectorConfig) {
+        if (StringUtils.isBlank(vectorConfig.getChunker())) {
+            return REMOTE;
+        }
+        String chunkerName = vectorConfig.getChunker().trim().toLowerCase(Locale.ROOT);
+        if (!CHUNKERS.contains(chunkerName)) {
+            throw new IllegalArgumentException("Unknown chunker " + vectorConfig.getChunker() + " for field "
+                    + vectorConfig.getFieldName() + ". Use one of " + CHUNKERS);
+        }
+        return chunkerName;
+    }
+
+    public static ChunkerClient chunker(VectorConfig vectorConfig, ChunkerClient remoteChunker) {
+        return switch (chunkerName(vectorConfig)) {
+            case LOCAL -> LOCAL_CHUNKER;
+            case CONTENT_DEFINED -> CONTENT_DEFINED_CHUNKER;
+            default -> remoteChunker;
+        };
+    }
+
+    public static boolean isContentDefined(VectorConfig vectorConfig) {
+        return CONTENT_DEFINED.equals(chunkerName(vectorConfig));
+    }
+}
@@ -0,0 +1,113 @@
+package com.krickert.search.indexer.chunker;
+
+import com.krickert.search.indexer.grpc.ChunkerClient;
+import com.krickert.search.service.ChunkReply;
+import com.krickert.search.service.ChunkRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Splits text where a rolling hash of the last 64 characters hits a boundary pattern, instead of every fixed number of
+ * characters. A boundary only depends on the text around it, so an edit moves the boundaries near it and every chunk
+ * further away comes out exactly as before.
+ * <br>
+ * The chunk length option is the average chunk length in characters. A chunk is at least half and at most twice as
+ * long, and a boundary picked by the hash is moved past the next whitespace so words are not split. Each chunk after
+ * the first also starts with the whole words in the last overlap characters of the one before it.
+ * <br>
+ * The gear table is seeded with a constant. Changing the seed or the boundary rules moves every boundary, so every
+ * stored chunk would be embedded again on the next crawl.
+ */
+public class ContentDefinedChunker implements ChunkerClient {
+    public static final String NAME = "content-defined";
+    private static final long GEAR_SEED = 0x5EED_C4C3L;
+    private static final long[] GEAR = gearTable();
+
+    @Override
+    public CompletableFuture<ChunkReply> chunk(ChunkRequest request) {
+        try {
+            return CompletableFuture.completedFuture(ChunkReply.newBuilder()
+                    .addAllChunks(chunk(request.getText(), request.getOptions().getLength(), request.getOptions().getOverlap()))
+                    .build());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public static List<String> chunk(String text, int averageLength, int overlap) {
+        checkArgument(averageLength > 1, "Chunk length must be more than 1 but was %s", averageLength);
+        checkArgument(overlap >= 0, "Chunk overlap must not be negative but was %s", overlap);
+        int minLength = averageLength / 2;
+        int maxLength = averageLength * 2;
+        long mask = boundaryMask(averageLength - minLength);
+        List<String> chunks = new ArrayList<>();
+        int previousStart = 0;
+        int start = 0;
+        while (start < text.length()) {
+            int end = boundary(text, start, minLength, maxLength, mask);
+            int chunkStart = chunks.isEmpty() ? start : overlapStart(text, Math.max(previousStart, start - overlap), start);
+            chunks.add(text.substring(chunkStart, end));
+            previousStart = start;
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static int boundary(String text, int start, int minLength, int maxLength, long mask) {
+        int limit = (int) Math.min(text.length(), (long) start + maxLength);
+        if (limit - start <= minLength) {
+            return limit;
+        }
+        long hash = 0;
+        for (int i = start; i < limit; i++) {
+            hash = (hash << 1) + GEAR[gearIndex(text.charAt(i))];
+            if (i - start >= minLength && (hash & mask) == 0) {
+                int end = i + 1;
+                while (end < limit && !Character.isWhitespace(text.charAt(end))) {
+                    end++;
+                }
+                return Math.min(limit, end + 1);
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * @return the start of the first whole word in the overlap, or the end of the overlap if it is all one word
+     */
+    private static int overlapStart(String text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                return i + 1;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * The top bits of a gear hash depend on the last 64 characters, so the boundary pattern is matched against them.
+     * A pattern of n bits is hit once every 2^n characters on average.
+     */
+    private static long boundaryMask(int averageDistance) {
+        int bits = Math.max(1, 31 - Integer.numberOfLeadingZeros(Math.max(2, averageDistance)));
+        return -1L << (Long.SIZE - bits);
+    }
+
+    private static int gearIndex(char c) {
+        return (c ^ (c >>> 8)) & 0xFF;
+    }
+
+    private static long[] gearTable() {
+        SplittableRandom random = new SplittableRandom(GEAR_SEED);
+        long[] gear = new long[256];
+        for (int i = 0; i < gear.length; i++) {
+            gear[i] = random.nextLong();
+        }
+        return gear;
+    }
+}
@@ -0,0 +1,49 @@
+package com.krickert.search.indexer.chunker;
+
+import com.krickert.search.indexer.grpc.ChunkerClient;
+import com.krickert.search.service.ChunkReply;
+import com.krickert.search.service.ChunkRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Splits text into windows of the chunk length in characters, each starting chunk overlap characters before the end
+ * of the one before it, as the chunker service documents its length and overlap. The last window ends with the text
+ * and may be shorter. {@code FixedLengthChunkerParityTest} compares it with the chunker service, and until that has
+ * passed a field that switches between the two may get different chunk ids and vectors.
+ * <br>
+ * This is cheap enough to run on the caller's thread, so the reply is always complete and no call is made.
+ */
+public class FixedLengthChunker implements ChunkerClient {
+
+    @Override
+    public CompletableFuture<ChunkReply> chunk(ChunkRequest request) {
+        try {
+            return CompletableFuture.completedFuture(ChunkReply.newBuilder()
+                    .addAllChunks(chunk(request.getText(), request.getOptions().getLength(), request.getOptions().getOverlap()))
+                    .build());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public static List<String> chunk(String text, int length, int overlap) {
+        checkArgument(length > 0, "Chunk length must be positive but was %s", length);
+        checkArgument(overlap >= 0 && overlap < length, "Chunk overlap must be at least 0 and less than the chunk length %s but was %s",
+                length, overlap);
+        List<String> chunks = new ArrayList<>();
+        int step = length - overlap;
+        for (int start = 0; start < text.length(); start += step) {
+            int end = (int) Math.min(text.length(), (long) start + length);
+            chunks.add(text.substring(start, end));
+            if (end == text.length()) {
+                break;
+            }
+        }
+        return chunks;
+    }
+}
@@ -6,6 +6,8 @@ import com.google.common.base.MoreObjects;
 import io.micronaut.context.annotation.ConfigurationProperties;
 import io.micronaut.serde.annotation.Serdeable;
 
+import java.util.Map;
+
 @ConfigurationProperties("indexer")
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @Serdeable
@@ -29,6 +31,62 @@ public class IndexerConfigurationProperties {
     @JsonProperty("loop-max-warnings")
     private Integer loopMaxWarnings;
 
+    @JsonProperty("state-directory")
+    private String stateDirectory;
+
+    @JsonProperty("checkpoint-enabled")
+    private Boolean checkpointEnabled;
+
+    @JsonProperty("publisher-queue-capacity")
+    private Integer publisherQueueCapacity;
+
+    @JsonProperty("embedding-batch-size")
+    private Integer embeddingBatchSize;
+
+    @JsonProperty("embedding-batch-linger-millis")
+    private Integer embeddingBatchLingerMillis;
+
+    @JsonProperty("embedding-batch-concurrency")
+    private Integer embeddingBatchConcurrency;
+
+    @JsonProperty("grpc-client-mode")
+    private String grpcClientMode;
+
+    @JsonProperty("grpc-max-in-flight")
+    private Integer grpcMaxInFlight;
+
+    @JsonProperty("grpc-adaptive-concurrency")
+    private Boolean grpcAdaptiveConcurrency;
+
+    @JsonProperty("embedding-cache-max-megabytes")
+    private Integer embeddingCacheMaxMegabytes;
+
+    @JsonProperty("embedding-store-enabled")
+    private Boolean embeddingStoreEnabled;
+
+    @JsonProperty("embedding-store-segment-megabytes")
+    private Integer embeddingStoreSegmentMegabytes;
+
+    @JsonProperty("embedding-store-max-age-crawls")
+    private Integer embeddingStoreMaxAgeCrawls;
+
+    @JsonProperty("embedding-store-max-megabytes")
+    private Integer embeddingStoreMaxMegabytes;
+
+    @JsonProperty("skip-unchanged-documents")
+    private Boolean skipUnchangedDocuments;
+
+    @JsonProperty("chunk-embedding-batch-size")
+    private Integer chunkEmbeddingBatchSize;
+
+    @JsonProperty("chunk-embedding-batch-max-size")
+    private Integer chunkEmbeddingBatchMaxSize;
+
+    @JsonProperty("chunk-embedding-batch-adaptive")
+    private Boolean chunkEmbeddingBatchAdaptive;
+
+    @JsonProperty("pipeline")
+    private Pipeline pipeline;
 
     // Getters and Setters
     public String getVectorGrpcChannel() {
@@ -71,6 +129,158 @@ public class IndexerConfigurationProperties {
         this.loopMaxWarnings = loopMaxWarnings;
     }
 
+    public String getStateDirectory() {
+        return stateDirectory;
+    }
+
+    public void setStateDirectory(String stateDirectory) {
+        this.stateDirectory = stateDirectory;
+    }
+
+    public Boolean getCheckpointEnabled() {
+        return checkpointEnabled;
+    }
+
+    public void setCheckpointEnabled(Boolean checkpointEnabled) {
+        this.checkpointEnabled = checkpointEnabled;
+    }
+
+    public Integer getPublisherQueueCapacity() {
+        return publisherQueueCapacity;
+    }
+
+    public void setPublisherQueueCapacity(Integer publisherQueueCapacity) {
+        this.publisherQueueCapacity = publisherQueueCapacity;
+    }
+
+    public Integer getEmbeddingBatchSize() {
+        return embeddingBatchSize;
+    }
+
+    public void setEmbeddingBatchSize(Integer embeddingBatchSize) {
+        this.embeddingBatchSize = embeddingBatchSize;
+    }
+
+    public Integer getEmbeddingBatchLingerMillis() {
+        return embeddingBatchLingerMillis;
+    }
+
+    public void setEmbeddingBatchLingerMillis(Integer embeddingBatchLingerMillis) {
+        this.embeddingBatchLingerMillis = embeddingBatchLingerMillis;
+    }
+
+    public Integer getEmbeddingBatchConcurrency() {
+        return embeddingBatchConcurrency;
+    }
+
+    public void setEmbeddingBatchConcurrency(Integer embeddingBatchConcurrency) {
+        this.embeddingBatchConcurrency = embeddingBatchConcurrency;
+    }
+
+    public String getGrpcClientMode() {
+        return grpcClientMode;
+    }
+
+    public void setGrpcClientMode(String grpcClientMode) {
+        this.grpcClientMode = grpcClientMode;
+    }
+
+    public Integer getGrpcMaxInFlight() {
+        return grpcMaxInFlight;
+    }
+
+    public void setGrpcMaxInFlight(Integer grpcMaxInFlight) {
+        this.grpcMaxInFlight = grpcMaxInFlight;
+    }
+
+    public Boolean getGrpcAdaptiveConcurrency() {
+        return grpcAdaptiveConcurrency;
+    }
+
+    public void setGrpcAdaptiveConcurrency(Boolean grpcAdaptiveConcurrency) {
+        this.grpcAdaptiveConcurrency = grpcAdaptiveConcurrency;
+    }
+
+    public Integer getEmbeddingCacheMaxMegabytes() {
+        return embeddingCacheMaxMegabytes;
+    }
+
+    public void setEmbeddingCacheMaxMegabytes(Integer embeddingCacheMaxMegabytes) {
+        this.embeddingCacheMaxMegabytes = embeddingCacheMaxMegabytes;
+    }
+
+    public Boolean getEmbeddingStoreEnabled() {
+        return embeddingStoreEnabled;
+    }
+
+    public void setEmbeddingStoreEnabled(Boolean embeddingStoreEnabled) {
+        this.embeddingStoreEnabled = embeddingStoreEnabled;
+    }
+
+    public Integer getEmbeddingStoreSegmentMegabytes() {
+        return embeddingStoreSegmentMegabytes;
+    }
+
+    public void setEmbeddingStoreSegmentMegabytes(Integer embeddingStoreSegmentMegabytes) {
+        this.embeddingStoreSegmentMegabytes = embeddingStoreSegmentMegabytes;
+    }
+
+    public Integer getEmbeddingStoreMaxAgeCrawls() {
+        return embeddingStoreMaxAgeCrawls;
+    }
+
+    public void setEmbeddingStoreMaxAgeCrawls(Integer embeddingStoreMaxAgeCrawls) {
+        this.embeddingStoreMaxAgeCrawls = embeddingStoreMaxAgeCrawls;
+    }
+
+    public Integer getEmbeddingStoreMaxMegabytes() {
+        return embeddingStoreMaxMegabytes;
+    }
+
+    public void setEmbeddingStoreMaxMegabytes(Integer embeddingStoreMaxMegabytes) {
+        this.embeddingStoreMaxMegabytes = embeddingStoreMaxMegabytes;
+    }
+
+    public Boolean getSkipUnchangedDocuments() {
+        return skipUnchangedDocuments;
+    }
+
+    public void setSkipUnchangedDocuments(Boolean skipUnchangedDocuments) {
+        this.skipUnchangedDocuments = skipUnchangedDocuments;
+    }
+
+    public Integer getChunkEmbeddingBatchSize() {
+        return chunkEmbeddingBatchSize;
+    }
+
+    public void setChunkEmbeddingBatchSize(Integer chunkEmbeddingBatchSize) {
+        this.chunkEmbeddingBatchSize = chunkEmbeddingBatchSize;
+    }
+
+    public Integer getChunkEmbeddingBatchMaxSize() {
+        return chunkEmbeddingBatchMaxSize;
+    }
+
+    public void setChunkEmbeddingBatchMaxSize(Integer chunkEmbeddingBatchMaxSize) {
+        this.chunkEmbeddingBatchMaxSize = chunkEmbeddingBatchMaxSize;
+    }
+
+    public Boolean getChunkEmbeddingBatchAdaptive() {
+        return chunkEmbeddingBatchAdaptive;
+    }
+
+    public void setChunkEmbeddingBatchAdaptive(Boolean chunkEmbeddingBatchAdaptive) {
+        this.chunkEmbeddingBatchAdaptive = chunkEmbeddingBatchAdaptive;
+    }
+
+    public Pipeline getPipeline() {
+        return pipeline;
+    }
+
+    public void setPipeline(Pipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
     public SourceSeedData getSourceSeedData() {
         return sourceSeedData;
     }
@@ -89,9 +299,67 @@ public class IndexerConfigurationProperties {
                 .add("vectorBatchSize", vectorBatchSize)
                 .add("loopCheckSleepTimeSeconds", loopCheckSleepTimeSeconds)
                 .add("loopMaxWarnings", loopMaxWarnings)
+                .add("stateDirectory", stateDirectory)
+                .add("checkpointEnabled", checkpointEnabled)
+                .add("publisherQueueCapacity", publisherQueueCapacity)
+                .add("embeddingBatchSize", embeddingBatchSize)
+                .add("embeddingBatchLingerMillis", embeddingBatchLingerMillis)
+                .add("embeddingBatchConcurrency", embeddingBatchConcurrency)
+                .add("grpcClientMode", grpcClientMode)
+                .add("grpcMaxInFlight", grpcMaxInFlight)
+                .add("grpcAdaptiveConcurrency", grpcAdaptiveConcurrency)
+                .add("embeddingCacheMaxMegabytes", embeddingCacheMaxMegabytes)
+                .add("embeddingStoreEnabled", embeddingStoreEnabled)
+                .add("embeddingStoreSegmentMegabytes", embeddingStoreSegmentMegabytes)
+                .add("embeddingStoreMaxAgeCrawls", embeddingStoreMaxAgeCrawls)
+                .add("embeddingStoreMaxMegabytes", embeddingStoreMaxMegabytes)
+                .add("skipUnchangedDocuments", skipUnchangedDocuments)
+                .add("chunkEmbeddingBatchSize", chunkEmbeddingBatchSize)
+                .add("chunkEmbeddingBatchMaxSize", chunkEmbeddingBatchMaxSize)
+                .add("chunkEmbeddingBatchAdaptive", chunkEmbeddingBatchAdaptive)
+                .add("pipeline", pipeline)
                 .toString();
     }
 
+    /**
+     * Workers and queue size of each pipeline stage, keyed by stage name: enrich, chunk, embed and index.
+     */
+    @ConfigurationProperties("pipeline")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Serdeable
+    public static class Pipeline {
+
+        @JsonProperty("concurrency")
+        private Map<String, Integer> concurrency;
+
+        @JsonProperty("queue-capacity")
+        private Map<String, Integer> queueCapacity;
+
+        public Map<String, Integer> getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(Map<String, Integer> concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public Map<String, Integer> getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(Map<String, Integer> queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("concurrency", concurrency)
+                    .add("queueCapacity", queueCapacity)
+                    .toString();
+        }
+    }
+
     @ConfigurationProperties("source-seed-data")
     @JsonInclude(JsonInclude.Include.NON_NULL)
     @Serdeable
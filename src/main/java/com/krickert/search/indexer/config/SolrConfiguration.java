@@ -12,6 +12,7 @@ import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 @Serdeable
 @EachProperty("solr-config")
@@ -33,6 +34,36 @@ public class SolrConfiguration {
     @JsonProperty("start")
     private Long start = 0L;
 
+    @JsonProperty("extraction-mode")
+    private String extractionMode = "pagination";
+
+    @JsonProperty("unique-key")
+    private String uniqueKey = "id";
+
+    @JsonProperty("partition-count")
+    private Integer partitionCount = 1;
+
+    @JsonProperty("wire-format")
+    private String wireFormat = "json";
+
+    @JsonProperty("field-list")
+    private String fieldList;
+
+    @JsonProperty("prefetch-pages")
+    private Integer prefetchPages = 0;
+
+    @JsonProperty("prefetch-max-bytes")
+    private Long prefetchMaxBytes;
+
+    @JsonProperty("adaptive-paging")
+    private AdaptivePaging adaptivePaging;
+
+    @JsonProperty("incremental")
+    private Incremental incremental;
+
+    @JsonProperty("throttle")
+    private Throttle throttle;
+
     @JsonProperty("collectionCreation")
     private SolrCollectionCreationConfig collectionCreation;
 
@@ -82,6 +113,87 @@ public class SolrConfiguration {
     public void setStart(Long start) {
         this.start = start;
     }
+
+    public String getExtractionMode() {
+        return extractionMode;
+    }
+
+    public void setExtractionMode(String extractionMode) {
+        this.extractionMode = extractionMode;
+    }
+
+    public String getUniqueKey() {
+        return uniqueKey;
+    }
+
+    public void setUniqueKey(String uniqueKey) {
+        this.uniqueKey = uniqueKey;
+    }
+
+    public Integer getPartitionCount() {
+        return partitionCount;
+    }
+
+    public void setPartitionCount(Integer partitionCount) {
+        this.partitionCount = partitionCount;
+    }
+
+    public String getWireFormat() {
+        return wireFormat;
+    }
+
+    public void setWireFormat(String wireFormat) {
+        this.wireFormat = wireFormat;
+    }
+
+    public String getFieldList() {
+        return fieldList;
+    }
+
+    public void setFieldList(String fieldList) {
+        this.fieldList = fieldList;
+    }
+
+    public Integer getPrefetchPages() {
+        return prefetchPages;
+    }
+
+    public void setPrefetchPages(Integer prefetchPages) {
+        this.prefetchPages = prefetchPages;
+    }
+
+    public Long getPrefetchMaxBytes() {
+        return prefetchMaxBytes;
+    }
+
+    public void setPrefetchMaxBytes(Long prefetchMaxBytes) {
+        this.prefetchMaxBytes = prefetchMaxBytes;
+    }
+
+    public AdaptivePaging getAdaptivePaging() {
+        return adaptivePaging;
+    }
+
+    public void setAdaptivePaging(AdaptivePaging adaptivePaging) {
+        this.adaptivePaging = adaptivePaging;
+    }
+
+    public Incremental getIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(Incremental incremental) {
+        this.incremental = incremental;
+    }
+
+    public Throttle getThrottle() {
+        return throttle;
+    }
+
+    public void setThrottle(Throttle throttle) {
+        this.throttle = throttle;
+    }
+
     public SolrCollectionCreationConfig getCollectionCreation() {
         return collectionCreation;
     }
@@ -106,11 +218,201 @@ public class SolrConfiguration {
                 .add("collection", collection)
                 .add("filters", filters)
                 .add("start", start)
+                .add("extractionMode", extractionMode)
+                .add("uniqueKey", uniqueKey)
+                .add("partitionCount", partitionCount)
+                .add("wireFormat", wireFormat)
+                .add("fieldList", fieldList)
+                .add("prefetchPages", prefetchPages)
+                .add("prefetchMaxBytes", prefetchMaxBytes)
+                .add("adaptivePaging", adaptivePaging)
+                .add("incremental", incremental)
+                .add("throttle", throttle)
                 .add("collectionCreation", collectionCreation)
                 .add("connection", connection)
                 .toString();
     }
 
+    @Serdeable
+    @ConfigurationProperties("adaptive-paging")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class AdaptivePaging {
+
+        @JsonProperty("enabled")
+        private boolean enabled = false;
+
+        @JsonProperty("min-rows")
+        private Integer minRows = 10;
+
+        @JsonProperty("max-rows")
+        private Integer maxRows = 5000;
+
+        @JsonProperty("target-latency-millis")
+        private Long targetLatencyMillis = 2000L;
+
+        @JsonProperty("target-response-bytes")
+        private Long targetResponseBytes = 8388608L;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Integer getMinRows() {
+            return minRows;
+        }
+
+        public void setMinRows(Integer minRows) {
+            this.minRows = minRows;
+        }
+
+        public Integer getMaxRows() {
+            return maxRows;
+        }
+
+        public void setMaxRows(Integer maxRows) {
+            this.maxRows = maxRows;
+        }
+
+        public Long getTargetLatencyMillis() {
+            return targetLatencyMillis;
+        }
+
+        public void setTargetLatencyMillis(Long targetLatencyMillis) {
+            this.targetLatencyMillis = targetLatencyMillis;
+        }
+
+        public Long getTargetResponseBytes() {
+            return targetResponseBytes;
+        }
+
+        public void setTargetResponseBytes(Long targetResponseBytes) {
+            this.targetResponseBytes = targetResponseBytes;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("enabled", enabled)
+                    .add("minRows", minRows)
+                    .add("maxRows", maxRows)
+                    .add("targetLatencyMillis", targetLatencyMillis)
+                    .add("targetResponseBytes", targetResponseBytes)
+                    .toString();
+        }
+    }
+
+    @Serdeable
+    @ConfigurationProperties("incremental")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Incremental {
+
+        @JsonProperty("enabled")
+        private boolean enabled = false;
+
+        @JsonProperty("watermark-field")
+        private String watermarkField = "_version_";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getWatermarkField() {
+            return watermarkField;
+        }
+
+        public void setWatermarkField(String watermarkField) {
+            this.watermarkField = watermarkField;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("enabled", enabled)
+                    .add("watermarkField", watermarkField)
+                    .toString();
+        }
+    }
+
+    @Serdeable
+    @ConfigurationProperties("throttle")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Throttle {
+
+        @JsonProperty("enabled")
+        private boolean enabled = false;
+
+        @JsonProperty("requests-per-second")
+        private Double requestsPerSecond;
+
+        @JsonProperty("bytes-per-second")
+        private Long bytesPerSecond;
+
+        @JsonProperty("windows")
+        private List<String> windows = Collections.emptyList();
+
+        @JsonProperty("qtime-threshold-millis")
+        private Long qtimeThresholdMillis;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Double getRequestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        public void setRequestsPerSecond(Double requestsPerSecond) {
+            this.requestsPerSecond = requestsPerSecond;
+        }
+
+        public Long getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        public void setBytesPerSecond(Long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        public List<String> getWindows() {
+            return windows;
+        }
+
+        public void setWindows(List<String> windows) {
+            this.windows = windows;
+        }
+
+        public Long getQtimeThresholdMillis() {
+            return qtimeThresholdMillis;
+        }
+
+        public void setQtimeThresholdMillis(Long qtimeThresholdMillis) {
+            this.qtimeThresholdMillis = qtimeThresholdMillis;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("enabled", enabled)
+                    .add("requestsPerSecond", requestsPerSecond)
+                    .add("bytesPerSecond", bytesPerSecond)
+                    .add("windows", windows)
+                    .add("qtimeThresholdMillis", qtimeThresholdMillis)
+                    .toString();
+        }
+    }
+
     @Serdeable
     @ConfigurationProperties("collection-creation")
     @JsonInclude(JsonInclude.Include.NON_NULL)
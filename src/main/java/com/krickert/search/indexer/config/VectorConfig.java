@@ -29,6 +29,9 @@ public class VectorConfig {
     @JsonProperty("max-chars")
     private Integer maxChars;
 
+    @JsonProperty("chunker")
+    private String chunker;
+
     @JsonProperty("model")
     private String model;
 
@@ -93,6 +96,14 @@ public class VectorConfig {
         this.maxChars = maxChars;
     }
 
+    public String getChunker() {
+        return chunker;
+    }
+
+    public void setChunker(String chunker) {
+        this.chunker = chunker;
+    }
+
     public String getModel() {
         return model;
     }
@@ -165,6 +176,7 @@ public class VectorConfig {
                 .add("chunkSize", chunkSize)
                 .add("chunkField", chunkField)
                 .add("maxChars", maxChars)
+                .add("chunker", chunker)
                 .add("model", model)
                 .add("destinationCollection", destinationCollection)
                 .add("fieldVectorName", fieldVectorName)
@@ -2,10 +2,25 @@ package com.krickert.search.indexer.controller;
 
 import com.krickert.search.indexer.IndexingFailedExecption;
 import com.krickert.search.indexer.SemanticIndexer;
+import com.krickert.search.indexer.dto.ConcurrencyLimitStatus;
+import com.krickert.search.indexer.dto.DeadLetterReplayStatus;
+import com.krickert.search.indexer.dto.EmbeddingBatchSizeStatus;
+import com.krickert.search.indexer.dto.EmbeddingCacheStatus;
+import com.krickert.search.indexer.dto.EmbeddingStoreStatus;
 import com.krickert.search.indexer.dto.IndexingStatus;
+import com.krickert.search.indexer.dto.PipelineStageStatus;
+import com.krickert.search.indexer.grpc.ConcurrencyLimiters;
+import com.krickert.search.indexer.grpc.EmbeddingBatchSizers;
+import com.krickert.search.indexer.grpc.EmbeddingCache;
+import com.krickert.search.indexer.pipeline.IndexingPipeline;
 import com.krickert.search.indexer.service.HealthService;
 import com.krickert.search.indexer.service.IndexerService;
+import com.krickert.search.indexer.solr.vector.event.DeadLetterReplayer;
+import com.krickert.search.indexer.state.DeadLetter;
+import com.krickert.search.indexer.state.DeadLetterLog;
+import com.krickert.search.indexer.state.EmbeddingStore;
 import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
 import io.micronaut.http.annotation.Controller;
 import io.micronaut.http.annotation.Get;
 import io.micronaut.http.annotation.Post;
@@ -26,12 +41,29 @@ public class IndexerController {
     private final IndexerService indexerService;
     private final HealthService healthService;
     private final SemanticIndexer semanticIndexer;
+    private final IndexingPipeline indexingPipeline;
+    private final DeadLetterLog deadLetterLog;
+    private final DeadLetterReplayer deadLetterReplayer;
+    private final EmbeddingCache embeddingCache;
+    private final EmbeddingStore embeddingStore;
+    private final EmbeddingBatchSizers embeddingBatchSizers;
+    private final ConcurrencyLimiters concurrencyLimiters;
 
     @Inject
-    public IndexerController(IndexerService indexerService, HealthService healthService, SemanticIndexer semanticIndexer) {
+    public IndexerController(IndexerService indexerService, HealthService healthService, SemanticIndexer semanticIndexer,
+                             IndexingPipeline indexingPipeline, DeadLetterLog deadLetterLog, DeadLetterReplayer deadLetterReplayer,
+                             EmbeddingCache embeddingCache, EmbeddingStore embeddingStore,
+                             EmbeddingBatchSizers embeddingBatchSizers, ConcurrencyLimiters concurrencyLimiters) {
         this.indexerService = indexerService;
         this.healthService = healthService;
         this.semanticIndexer = semanticIndexer;
+        this.indexingPipeline = indexingPipeline;
+        this.deadLetterLog = deadLetterLog;
+        this.deadLetterReplayer = deadLetterReplayer;
+        this.embeddingCache = embeddingCache;
+        this.embeddingStore = embeddingStore;
+        this.embeddingBatchSizers = embeddingBatchSizers;
+        this.concurrencyLimiters = concurrencyLimiters;
     }
 
     @Post
@@ -53,6 +85,28 @@ public class IndexerController {
         return HttpResponse.accepted().body(responseBody);
     }
 
+    @Post("/resume")
+    @Secured(SecurityRule.IS_ANONYMOUS)
+    @ExecuteOn(TaskExecutors.IO)
+    public HttpResponse<Map<String, String>> resumeIndexing() {
+        Optional<UUID> resumableCrawl = semanticIndexer.findResumableCrawl();
+        if (resumableCrawl.isEmpty()) {
+            return HttpResponse.<Map<String, String>>notFound()
+                    .body(Collections.singletonMap("message", "No checkpoint saved. Start a new crawl instead."));
+        }
+        UUID crawlId = resumableCrawl.get();
+        CompletableFuture.runAsync(() -> {
+            try {
+                semanticIndexer.resumeDefaultExportJob(crawlId);
+            } catch (IndexingFailedExecption e) {
+                semanticIndexer.updateCrawlStatus(crawlId, IndexingStatus.OverallStatus.FAILED, e.getMessage());
+            }
+        });
+
+        Map<String, String> responseBody = Collections.singletonMap("crawlId", crawlId.toString());
+        return HttpResponse.accepted().body(responseBody);
+    }
+
     @Get("/{crawlId}")
     @Secured(SecurityRule.IS_ANONYMOUS)
     public HttpResponse<IndexingStatus> getStatus(@PathVariable UUID crawlId) {
@@ -86,6 +140,54 @@ public class IndexerController {
         }
     }
 
+    @Get("/pipeline")
+    @Secured(SecurityRule.IS_ANONYMOUS)
+    public HttpResponse<List<PipelineStageStatus>> getPipelineStatus() {
+        return HttpResponse.ok(indexingPipeline.getStatus());
+    }
+
+    @Get("/embedding-cache")
+    @Secured(SecurityRule.IS_ANONYMOUS)
+    public HttpResponse<EmbeddingCacheStatus> getEmbeddingCacheStatus() {
+        return HttpResponse.ok(embeddingCache.getStatus());
+    }
+
+    @Get("/embedding-store")
+    @Secured(SecurityRule.IS_ANONYMOUS)
+    public HttpResponse<EmbeddingStoreStatus> getEmbeddingStoreStatus() {
+        return HttpResponse.ok(embeddingStore.getStatus());
+    }
+
+    @Get("/embedding-batch-size")
+    @Secured(SecurityRule.IS_ANONYMOUS)
+    public HttpResponse<List<EmbeddingBatchSizeStatus>> getEmbeddingBatchSizeStatus() {
+        return HttpResponse.ok(embeddingBatchSizers.getStatus());
+    }
+
+    @Get("/concurrency")
+    @Secured(SecurityRule.IS_ANONYMOUS)
+    public HttpResponse<List<ConcurrencyLimitStatus>> getConcurrencyStatus() {
+        return HttpResponse.ok(concurrencyLimiters.getStatus());
+    }
+
+    @Get("/dead-letters")
+    @Secured(SecurityRule.IS_ANONYMOUS)
+    public HttpResponse<List<DeadLetter>> getDeadLetters(@QueryValue Optional<Integer> limit) {
+        List<DeadLetter> deadLetters = deadLetterLog.getAll();
+        return HttpResponse.ok(deadLetters.subList(0, Math.min(deadLetters.size(), Math.max(0, limit.orElse(10)))));
+    }
+
+    @Post("/dead-letters/replay")
+    @Secured(SecurityRule.IS_ANONYMOUS)
+    @ExecuteOn(TaskExecutors.IO)
+    public HttpResponse<DeadLetterReplayStatus> replayDeadLetters() {
+        try {
+            return HttpResponse.ok(deadLetterReplayer.replay());
+        } catch (IllegalStateException e) {
+            return HttpResponse.status(HttpStatus.CONFLICT);
+        }
+    }
+
     @Get("/health")
     @Secured(SecurityRule.IS_ANONYMOUS)
     public HttpResponse<Map<String, String>> checkHealth() {
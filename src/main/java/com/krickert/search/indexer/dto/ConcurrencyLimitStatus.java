@@ -0,0 +1,156 @@
+package com.krickert.search.indexer.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import io.micronaut.core.annotation.Introspected;
+import io.micronaut.serde.annotation.Serdeable;
+
+/**
+ * A snapshot of the concurrency limit in front of one chunker or embedding service.
+ */
+@Serdeable
+@Introspected
+public class ConcurrencyLimitStatus {
+
+    @JsonProperty("name")
+    private String name;
+
+    @JsonProperty("adaptive")
+    private boolean adaptive;
+
+    @JsonProperty("limit")
+    private int limit;
+
+    @JsonProperty("max_limit")
+    private int maxLimit;
+
+    @JsonProperty("smallest_limit")
+    private int smallestLimit;
+
+    @JsonProperty("largest_limit")
+    private int largestLimit;
+
+    @JsonProperty("in_flight")
+    private int inFlight;
+
+    // Calls queued in the indexer until the limit has room for them
+    @JsonProperty("waiting")
+    private int waiting;
+
+    // Quickly smoothed round trip time, the latency of the service now
+    @JsonProperty("rtt_millis")
+    private float rttMillis;
+
+    // Slowly smoothed round trip time, the latency the limit compares against
+    @JsonProperty("no_load_rtt_millis")
+    private float noLoadRttMillis;
+
+    // Calls the service rejected as overloaded or let time out
+    @JsonProperty("overloads")
+    private long overloads;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    public int getSmallestLimit() {
+        return smallestLimit;
+    }
+
+    public void setSmallestLimit(int smallestLimit) {
+        this.smallestLimit = smallestLimit;
+    }
+
+    public int getLargestLimit() {
+        return largestLimit;
+    }
+
+    public void setLargestLimit(int largestLimit) {
+        this.largestLimit = largestLimit;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public void setInFlight(int inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    public int getWaiting() {
+        return waiting;
+    }
+
+    public void setWaiting(int waiting) {
+        this.waiting = waiting;
+    }
+
+    public float getRttMillis() {
+        return rttMillis;
+    }
+
+    public void setRttMillis(float rttMillis) {
+        this.rttMillis = rttMillis;
+    }
+
+    public float getNoLoadRttMillis() {
+        return noLoadRttMillis;
+    }
+
+    public void setNoLoadRttMillis(float noLoadRttMillis) {
+        this.noLoadRttMillis = noLoadRttMillis;
+    }
+
+    public long getOverloads() {
+        return overloads;
+    }
+
+    public void setOverloads(long overloads) {
+        this.overloads = overloads;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("name", name)
+                .add("adaptive", adaptive)
+                .add("limit", limit)
+                .add("maxLimit", maxLimit)
+                .add("smallestLimit", smallestLimit)
+                .add("largestLimit", largestLimit)
+                .add("inFlight", inFlight)
+                .add("waiting", waiting)
+                .add("rttMillis", rttMillis)
+                .add("noLoadRttMillis", noLoadRttMillis)
+                .add("overloads", overloads)
+                .toString();
+    }
+}
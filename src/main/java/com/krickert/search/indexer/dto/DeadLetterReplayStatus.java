@@ -0,0 +1,57 @@
+package com.krickert.search.indexer.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import io.micronaut.core.annotation.Introspected;
+import io.micronaut.serde.annotation.Serdeable;
+
+/**
+ * The outcome of replaying the dead letter log.
+ */
+@Serdeable
+@Introspected
+public class DeadLetterReplayStatus {
+
+    @JsonProperty("replayed")
+    private int replayed;
+
+    // Replayed documents that failed again and went back into the log
+    @JsonProperty("failed_again")
+    private int failedAgain;
+
+    @JsonProperty("duration_millis")
+    private long durationMillis;
+
+    public int getReplayed() {
+        return replayed;
+    }
+
+    public void setReplayed(int replayed) {
+        this.replayed = replayed;
+    }
+
+    public int getFailedAgain() {
+        return failedAgain;
+    }
+
+    public void setFailedAgain(int failedAgain) {
+        this.failedAgain = failedAgain;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("replayed", replayed)
+                .add("failedAgain", failedAgain)
+                .add("durationMillis", durationMillis)
+                .toString();
+    }
+}
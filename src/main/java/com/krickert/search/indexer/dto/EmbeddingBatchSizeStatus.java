@@ -0,0 +1,132 @@
+package com.krickert.search.indexer.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import io.micronaut.core.annotation.Introspected;
+import io.micronaut.serde.annotation.Serdeable;
+
+import java.util.Map;
+
+/**
+ * A snapshot of the batch size of the embedding calls to one embedding service.
+ */
+@Serdeable
+@Introspected
+public class EmbeddingBatchSizeStatus {
+
+    @JsonProperty("name")
+    private String name;
+
+    @JsonProperty("adaptive")
+    private boolean adaptive;
+
+    @JsonProperty("batch_size")
+    private int batchSize;
+
+    @JsonProperty("max_batch_size")
+    private int maxBatchSize;
+
+    @JsonProperty("smallest_batch_size")
+    private int smallestBatchSize;
+
+    @JsonProperty("largest_batch_size")
+    private int largestBatchSize;
+
+    // Smoothed time per text of the batch calls
+    @JsonProperty("millis_per_text")
+    private float millisPerText;
+
+    // Batch size changes since the indexer started, by what caused them
+    @JsonProperty("changes_by_reason")
+    private Map<String, Long> changesByReason;
+
+    @JsonProperty("last_change_reason")
+    private String lastChangeReason;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getSmallestBatchSize() {
+        return smallestBatchSize;
+    }
+
+    public void setSmallestBatchSize(int smallestBatchSize) {
+        this.smallestBatchSize = smallestBatchSize;
+    }
+
+    public int getLargestBatchSize() {
+        return largestBatchSize;
+    }
+
+    public void setLargestBatchSize(int largestBatchSize) {
+        this.largestBatchSize = largestBatchSize;
+    }
+
+    public float getMillisPerText() {
+        return millisPerText;
+    }
+
+    public void setMillisPerText(float millisPerText) {
+        this.millisPerText = millisPerText;
+    }
+
+    public Map<String, Long> getChangesByReason() {
+        return changesByReason;
+    }
+
+    public void setChangesByReason(Map<String, Long> changesByReason) {
+        this.changesByReason = changesByReason;
+    }
+
+    public String getLastChangeReason() {
+        return lastChangeReason;
+    }
+
+    public void setLastChangeReason(String lastChangeReason) {
+        this.lastChangeReason = lastChangeReason;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("name", name)
+                .add("adaptive", adaptive)
+                .add("batchSize", batchSize)
+                .add("maxBatchSize", maxBatchSize)
+                .add("smallestBatchSize", smallestBatchSize)
+                .add("largestBatchSize", largestBatchSize)
+                .add("millisPerText", millisPerText)
+                .add("changesByReason", changesByReason)
+                .add("lastChangeReason", lastChangeReason)
+                .toString();
+    }
+}
@@ -0,0 +1,118 @@
+package com.krickert.search.indexer.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import io.micronaut.core.annotation.Introspected;
+import io.micronaut.serde.annotation.Serdeable;
+
+/**
+ * A snapshot of the embedding cache. Hits and misses count texts looked up since the indexer started.
+ */
+@Serdeable
+@Introspected
+public class EmbeddingCacheStatus {
+
+    @JsonProperty("enabled")
+    private boolean enabled;
+
+    @JsonProperty("max_bytes")
+    private long maxBytes;
+
+    // Vectors in the cache
+    @JsonProperty("size")
+    private long size;
+
+    @JsonProperty("weight_bytes")
+    private long weightBytes;
+
+    @JsonProperty("hits")
+    private long hits;
+
+    @JsonProperty("misses")
+    private long misses;
+
+    // Vectors dropped to stay under max_bytes
+    @JsonProperty("evictions")
+    private long evictions;
+
+    @JsonProperty("hit_rate")
+    private float hitRate;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getWeightBytes() {
+        return weightBytes;
+    }
+
+    public void setWeightBytes(long weightBytes) {
+        this.weightBytes = weightBytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public void setHits(long hits) {
+        this.hits = hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public void setMisses(long misses) {
+        this.misses = misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public void setEvictions(long evictions) {
+        this.evictions = evictions;
+    }
+
+    public float getHitRate() {
+        return hitRate;
+    }
+
+    public void setHitRate(float hitRate) {
+        this.hitRate = hitRate;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("enabled", enabled)
+                .add("maxBytes", maxBytes)
+                .add("size", size)
+                .add("weightBytes", weightBytes)
+                .add("hits", hits)
+                .add("misses", misses)
+                .add("evictions", evictions)
+                .add("hitRate", hitRate)
+                .toString();
+    }
+}
@@ -0,0 +1,131 @@
+package com.krickert.search.indexer.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import io.micronaut.core.annotation.Introspected;
+import io.micronaut.serde.annotation.Serdeable;
+
+/**
+ * A snapshot of the embedding store on disk. Hits and misses count texts looked up since the indexer started, and
+ * evicted vectors those dropped since then to keep the store under its size cap.
+ */
+@Serdeable
+@Introspected
+public class EmbeddingStoreStatus {
+
+    @JsonProperty("enabled")
+    private boolean enabled;
+
+    // Crawls completed since the store was created
+    @JsonProperty("generation")
+    private int generation;
+
+    @JsonProperty("vectors")
+    private long vectors;
+
+    @JsonProperty("segments")
+    private int segments;
+
+    @JsonProperty("used_bytes")
+    private long usedBytes;
+
+    // Bytes of used_bytes still holding a vector that can be found. The rest is reclaimed by compaction
+    @JsonProperty("live_bytes")
+    private long liveBytes;
+
+    @JsonProperty("hits")
+    private long hits;
+
+    @JsonProperty("misses")
+    private long misses;
+
+    @JsonProperty("evicted_vectors")
+    private long evictedVectors;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(int generation) {
+        this.generation = generation;
+    }
+
+    public long getVectors() {
+        return vectors;
+    }
+
+    public void setVectors(long vectors) {
+        this.vectors = vectors;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public void setSegments(int segments) {
+        this.segments = segments;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public void setUsedBytes(long usedBytes) {
+        this.usedBytes = usedBytes;
+    }
+
+    public long getLiveBytes() {
+        return liveBytes;
+    }
+
+    public void setLiveBytes(long liveBytes) {
+        this.liveBytes = liveBytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public void setHits(long hits) {
+        this.hits = hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public void setMisses(long misses) {
+        this.misses = misses;
+    }
+
+    public long getEvictedVectors() {
+        return evictedVectors;
+    }
+
+    public void setEvictedVectors(long evictedVectors) {
+        this.evictedVectors = evictedVectors;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("enabled", enabled)
+                .add("generation", generation)
+                .add("vectors", vectors)
+                .add("segments", segments)
+                .add("usedBytes", usedBytes)
+                .add("liveBytes", liveBytes)
+                .add("hits", hits)
+                .add("misses", misses)
+                .add("evictedVectors", evictedVectors)
+                .toString();
+    }
+}
@@ -72,6 +72,26 @@ public class IndexingStatus {
     @JsonProperty("total_documents_deleted")
     private int totalDocumentsDeleted;
 
+    // Rows per source request. These move during the crawl when adaptive paging is on
+    @JsonProperty("current_source_page_size")
+    private int currentSourcePageSize;
+
+    @JsonProperty("smallest_source_page_size")
+    private int smallestSourcePageSize;
+
+    @JsonProperty("largest_source_page_size")
+    private int largestSourcePageSize;
+
+    // Documents published to this task's listener and not yet completed. Publishing blocks at the capacity
+    @JsonProperty("publisher_queue_depth")
+    private int publisherQueueDepth;
+
+    @JsonProperty("largest_publisher_queue_depth")
+    private int largestPublisherQueueDepth;
+
+    @JsonProperty("publisher_queue_capacity")
+    private int publisherQueueCapacity;
+
     // Default constructor
     public IndexingStatus() {
         this.overallStatus = OverallStatus.NOT_STARTED; // By default, the status is NOT_STARTED
@@ -237,6 +257,54 @@ public class IndexingStatus {
         this.totalDocumentsDeleted = totalDocumentsDeleted;
     }
 
+    public int getCurrentSourcePageSize() {
+        return currentSourcePageSize;
+    }
+
+    public void setCurrentSourcePageSize(int currentSourcePageSize) {
+        this.currentSourcePageSize = currentSourcePageSize;
+    }
+
+    public int getSmallestSourcePageSize() {
+        return smallestSourcePageSize;
+    }
+
+    public void setSmallestSourcePageSize(int smallestSourcePageSize) {
+        this.smallestSourcePageSize = smallestSourcePageSize;
+    }
+
+    public int getLargestSourcePageSize() {
+        return largestSourcePageSize;
+    }
+
+    public void setLargestSourcePageSize(int largestSourcePageSize) {
+        this.largestSourcePageSize = largestSourcePageSize;
+    }
+
+    public int getPublisherQueueDepth() {
+        return publisherQueueDepth;
+    }
+
+    public void setPublisherQueueDepth(int publisherQueueDepth) {
+        this.publisherQueueDepth = publisherQueueDepth;
+    }
+
+    public int getLargestPublisherQueueDepth() {
+        return largestPublisherQueueDepth;
+    }
+
+    public void setLargestPublisherQueueDepth(int largestPublisherQueueDepth) {
+        this.largestPublisherQueueDepth = largestPublisherQueueDepth;
+    }
+
+    public int getPublisherQueueCapacity() {
+        return publisherQueueCapacity;
+    }
+
+    public void setPublisherQueueCapacity(int publisherQueueCapacity) {
+        this.publisherQueueCapacity = publisherQueueCapacity;
+    }
+
     @Override
     public IndexingStatus clone() {
         IndexingStatus clone = new IndexingStatus();
@@ -254,6 +322,12 @@ public class IndexingStatus {
         clone.setAverageDocsPerSecond(this.averageDocsPerSecond);
         clone.setAverageChunksPerSecond(this.averageChunksPerSecond);
         clone.setTotalDocumentsDeleted(this.totalDocumentsDeleted);
+        clone.setCurrentSourcePageSize(this.currentSourcePageSize);
+        clone.setSmallestSourcePageSize(this.smallestSourcePageSize);
+        clone.setLargestSourcePageSize(this.largestSourcePageSize);
+        clone.setPublisherQueueDepth(this.publisherQueueDepth);
+        clone.setLargestPublisherQueueDepth(this.largestPublisherQueueDepth);
+        clone.setPublisherQueueCapacity(this.publisherQueueCapacity);
         clone.setOverallStatus(this.overallStatus);
         clone.setLastRun(this.lastRun);
         return clone;
@@ -278,6 +352,12 @@ public class IndexingStatus {
                 .add("averageDocsPerSecond", averageDocsPerSecond)
                 .add("averageChunksPerSecond", averageChunksPerSecond)
                 .add("totalDocumentsDeleted", totalDocumentsDeleted)
+                .add("currentSourcePageSize", currentSourcePageSize)
+                .add("smallestSourcePageSize", smallestSourcePageSize)
+                .add("largestSourcePageSize", largestSourcePageSize)
+                .add("publisherQueueDepth", publisherQueueDepth)
+                .add("largestPublisherQueueDepth", largestPublisherQueueDepth)
+                .add("publisherQueueCapacity", publisherQueueCapacity)
                 .toString();
     }
 }
@@ -0,0 +1,142 @@
+package com.krickert.search.indexer.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import io.micronaut.core.annotation.Introspected;
+import io.micronaut.serde.annotation.Serdeable;
+
+/**
+ * A snapshot of one pipeline stage. Throughput and utilization cover the time since the current crawl started.
+ */
+@Serdeable
+@Introspected
+public class PipelineStageStatus {
+
+    @JsonProperty("name")
+    private String name;
+
+    @JsonProperty("concurrency")
+    private int concurrency;
+
+    @JsonProperty("queue_capacity")
+    private int queueCapacity;
+
+    // Tasks waiting for a free worker
+    @JsonProperty("queue_depth")
+    private int queueDepth;
+
+    @JsonProperty("running")
+    private int running;
+
+    @JsonProperty("completed")
+    private long completed;
+
+    @JsonProperty("failed")
+    private long failed;
+
+    @JsonProperty("throughput_per_second")
+    private float throughputPerSecond;
+
+    @JsonProperty("busy_millis")
+    private long busyMillis;
+
+    // Share of the stage's worker time spent running tasks. A stage near 1.0 is the one to scale
+    @JsonProperty("utilization")
+    private float utilization;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    public int getRunning() {
+        return running;
+    }
+
+    public void setRunning(int running) {
+        this.running = running;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(long completed) {
+        this.completed = completed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public float getThroughputPerSecond() {
+        return throughputPerSecond;
+    }
+
+    public void setThroughputPerSecond(float throughputPerSecond) {
+        this.throughputPerSecond = throughputPerSecond;
+    }
+
+    public long getBusyMillis() {
+        return busyMillis;
+    }
+
+    public void setBusyMillis(long busyMillis) {
+        this.busyMillis = busyMillis;
+    }
+
+    public float getUtilization() {
+        return utilization;
+    }
+
+    public void setUtilization(float utilization) {
+        this.utilization = utilization;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("name", name)
+                .add("concurrency", concurrency)
+                .add("queueCapacity", queueCapacity)
+                .add("queueDepth", queueDepth)
+                .add("running", running)
+                .add("completed", completed)
+                .add("failed", failed)
+                .add("throughputPerSecond", throughputPerSecond)
+                .add("busyMillis", busyMillis)
+                .add("utilization", utilization)
+                .toString();
+    }
+}
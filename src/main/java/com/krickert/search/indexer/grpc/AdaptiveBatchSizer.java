@@ -0,0 +1,158 @@
+package com.krickert.search.indexer.grpc;
+
+import com.google.common.base.MoreObjects;
+import com.krickert.search.indexer.dto.EmbeddingBatchSizeStatus;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Picks how many texts go into each embedding call to one embedding service.
+ * <br>
+ * When adaptive sizing is off every batch has the configured size. When it is on the sizer keeps a smoothed time per
+ * text and adds one to the batch size after each full batch whose time per text was no worse than that, as long as
+ * no call has failed recently. It halves the batch size when the service answers RESOURCE_EXHAUSTED or
+ * DEADLINE_EXCEEDED, or when a batch takes half again as long per text as usual. Only batches of the current size
+ * are measured. A larger one was sent before the last change, and a smaller one, such as the tail of a field, a
+ * batch shrunk by cached vectors or one sent when the linger ran out, spreads the fixed cost of a call over fewer
+ * texts and would look slow. The sizer is shared by every caller of the service and is thread safe.
+ */
+public class AdaptiveBatchSizer {
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveBatchSizer.class);
+    private static final double SMOOTHING = 0.3;
+    private static final double REGRESSION_RATIO = 1.5;
+    // successful batches needed after a failure before the size grows again
+    private static final int CLEAN_BATCHES_AFTER_FAILURE = 3;
+
+    public enum Reason {
+        FASTER_PER_TEXT, SLOWER_PER_TEXT, RESOURCE_EXHAUSTED, DEADLINE_EXCEEDED
+    }
+
+    private final String name;
+    private final boolean adaptive;
+    private final int minSize;
+    private final int maxSize;
+    private final Map<Reason, Long> changes = new EnumMap<>(Reason.class);
+
+    private int currentSize;
+    private int smallestSize;
+    private int largestSize;
+    private double nanosPerText = -1;
+    private int cleanBatchesNeeded = 0;
+    private Reason lastReason;
+
+    public AdaptiveBatchSizer(String name, int initialSize, int maxSize, boolean adaptive) {
+        this.name = name;
+        this.adaptive = adaptive;
+        this.minSize = 1;
+        this.maxSize = adaptive ? Math.max(1, maxSize) : Math.max(1, initialSize);
+        this.currentSize = Math.max(minSize, Math.min(this.maxSize, initialSize));
+        this.smallestSize = currentSize;
+        this.largestSize = currentSize;
+    }
+
+    public synchronized int nextBatchSize() {
+        return currentSize;
+    }
+
+    /**
+     * Feeds a successful batch call back into the size.
+     *
+     * @param texts the number of texts sent in the call
+     * @param elapsedNanos the time from sending the call to having its reply
+     */
+    public synchronized void recordBatch(int texts, long elapsedNanos) {
+        if (!adaptive || texts < 1) {
+            return;
+        }
+        if (cleanBatchesNeeded > 0) {
+            cleanBatchesNeeded--;
+        }
+        if (texts != currentSize) {
+            return;
+        }
+        double sample = (double) elapsedNanos / texts;
+        if (nanosPerText > 0) {
+            if (sample > nanosPerText * REGRESSION_RATIO) {
+                decrease(Reason.SLOWER_PER_TEXT);
+            } else if (sample <= nanosPerText && cleanBatchesNeeded == 0 && currentSize < maxSize) {
+                change(currentSize + 1, Reason.FASTER_PER_TEXT);
+            }
+        }
+        nanosPerText = nanosPerText < 0 ? sample : nanosPerText + SMOOTHING * (sample - nanosPerText);
+    }
+
+    /**
+     * Feeds a failed batch call back into the size. Only overload errors of a batch of the current size shrink the
+     * batch. Any failure holds off growth for a few batches.
+     */
+    public synchronized void recordFailure(int texts, Throwable error) {
+        if (!adaptive) {
+            return;
+        }
+        cleanBatchesNeeded = CLEAN_BATCHES_AFTER_FAILURE;
+        Throwable cause = GrpcRetries.unwrap(error);
+        if (!(cause instanceof StatusRuntimeException statusError) || texts != currentSize) {
+            return;
+        }
+        Status.Code code = statusError.getStatus().getCode();
+        if (code == Status.Code.RESOURCE_EXHAUSTED) {
+            decrease(Reason.RESOURCE_EXHAUSTED);
+        } else if (code == Status.Code.DEADLINE_EXCEEDED) {
+            decrease(Reason.DEADLINE_EXCEEDED);
+        }
+    }
+
+    private void decrease(Reason reason) {
+        if (currentSize > minSize) {
+            change(Math.max(minSize, currentSize / 2), reason);
+        }
+    }
+
+    private void change(int size, Reason reason) {
+        log.info("Embedding batch size of {} changed from {} to {} because of {}", name, currentSize, size, reason);
+        currentSize = size;
+        smallestSize = Math.min(smallestSize, size);
+        largestSize = Math.max(largestSize, size);
+        lastReason = reason;
+        changes.merge(reason, 1L, Long::sum);
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public synchronized EmbeddingBatchSizeStatus getStatus() {
+        EmbeddingBatchSizeStatus status = new EmbeddingBatchSizeStatus();
+        status.setName(name);
+        status.setAdaptive(adaptive);
+        status.setBatchSize(currentSize);
+        status.setMaxBatchSize(maxSize);
+        status.setSmallestBatchSize(smallestSize);
+        status.setLargestBatchSize(largestSize);
+        status.setMillisPerText(nanosPerText < 0 ? 0 : (float) (nanosPerText / 1_000_000d));
+        Map<String, Long> changesByReason = new LinkedHashMap<>();
+        for (Reason reason : Reason.values()) {
+            changesByReason.put(reason.name(), changes.getOrDefault(reason, 0L));
+        }
+        status.setChangesByReason(changesByReason);
+        status.setLastChangeReason(lastReason == null ? null : lastReason.name());
+        return status;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("name", name)
+                .add("adaptive", adaptive)
+                .add("currentSize", currentSize)
+                .add("nanosPerText", nanosPerText)
+                .add("lastReason", lastReason)
+                .toString();
+    }
+}
@@ -0,0 +1,164 @@
+package com.krickert.search.indexer.grpc;
+
+import com.google.common.base.MoreObjects;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * How many requests may be in flight to one service.
+ * <br>
+ * When the limit is not adaptive it stays at the configured maximum. When it is adaptive it follows the latency of
+ * the service the way a gradient limit does. A slowly smoothed round trip time stands in for the time the service
+ * takes when it is not overloaded, and a quickly smoothed one for the time it takes now. Their ratio, within half
+ * again of each other, scales the limit down as requests start to queue inside the service, and a small allowance
+ * of the square root of the limit lets it keep probing upwards while the times match. A service that answers
+ * RESOURCE_EXHAUSTED, UNAVAILABLE or DEADLINE_EXCEEDED cuts the limit by a tenth per error. The limit only grows
+ * while at least half of it is in use, so an idle service does not build up a limit it was never tested at.
+ * The limit is shared by every caller of the service and is thread safe.
+ */
+public class AdaptiveConcurrencyLimit {
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimit.class);
+    private static final double SHORT_RTT_SMOOTHING = 0.3;
+    private static final double LONG_RTT_SMOOTHING = 0.01;
+    // the first samples are averaged evenly so one slow call at startup does not set the baseline
+    private static final int LONG_RTT_WARMUP_SAMPLES = 10;
+    // latency may rise this much before the limit is scaled down
+    private static final double RTT_TOLERANCE = 1.5;
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double LIMIT_SMOOTHING = 0.2;
+    private static final double OVERLOAD_BACKOFF = 0.9;
+
+    private final String name;
+    private final boolean adaptive;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private int smallestLimit;
+    private int largestLimit;
+    private double shortRttNanos = -1;
+    private double longRttNanos = -1;
+    private long samples = 0;
+    private long overloads = 0;
+
+    public AdaptiveConcurrencyLimit(String name, int initialLimit, int maxLimit, boolean adaptive) {
+        this.name = name;
+        this.adaptive = adaptive;
+        this.minLimit = 1;
+        this.maxLimit = Math.max(minLimit, maxLimit);
+        this.limit = adaptive ? Math.max(minLimit, Math.min(this.maxLimit, initialLimit)) : this.maxLimit;
+        this.smallestLimit = getLimit();
+        this.largestLimit = getLimit();
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Feeds a successful request back into the limit.
+     *
+     * @param rttNanos the time from sending the request to having its reply, per text it carried
+     * @param inFlight the requests in flight when it was sent, itself included
+     */
+    public synchronized void recordSample(long rttNanos, int inFlight) {
+        if (!adaptive || rttNanos <= 0) {
+            return;
+        }
+        samples++;
+        if (longRttNanos < 0) {
+            shortRttNanos = rttNanos;
+            longRttNanos = rttNanos;
+            return;
+        }
+        shortRttNanos += SHORT_RTT_SMOOTHING * (rttNanos - shortRttNanos);
+        double longSmoothing = samples <= LONG_RTT_WARMUP_SAMPLES ? 1d / samples : LONG_RTT_SMOOTHING;
+        longRttNanos += longSmoothing * (rttNanos - longRttNanos);
+        // the service got faster than the baseline remembers, so let the baseline catch up
+        if (longRttNanos > shortRttNanos * 2) {
+            longRttNanos *= 0.95;
+        }
+        if (inFlight < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1d, RTT_TOLERANCE * longRttNanos / shortRttNanos));
+        double target = limit * gradient + Math.sqrt(limit);
+        change(limit + LIMIT_SMOOTHING * (target - limit));
+    }
+
+    /**
+     * Feeds a failed request back into the limit. Only errors that say the service is overloaded lower it.
+     */
+    public synchronized void recordFailure(Throwable error) {
+        if (!adaptive) {
+            return;
+        }
+        Throwable cause = GrpcRetries.unwrap(error);
+        if (!(cause instanceof StatusRuntimeException statusError)) {
+            return;
+        }
+        Status.Code code = statusError.getStatus().getCode();
+        if (code == Status.Code.RESOURCE_EXHAUSTED || code == Status.Code.UNAVAILABLE || code == Status.Code.DEADLINE_EXCEEDED) {
+            overloads++;
+            change(limit * OVERLOAD_BACKOFF);
+        }
+    }
+
+    private void change(double newLimit) {
+        int before = getLimit();
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        int after = getLimit();
+        if (after != before) {
+            log.debug("Concurrency limit of {} changed from {} to {}", name, before, after);
+            smallestLimit = Math.min(smallestLimit, after);
+            largestLimit = Math.max(largestLimit, after);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public synchronized int getSmallestLimit() {
+        return smallestLimit;
+    }
+
+    public synchronized int getLargestLimit() {
+        return largestLimit;
+    }
+
+    public synchronized float getRttMillis() {
+        return shortRttNanos < 0 ? 0 : (float) (shortRttNanos / 1_000_000d);
+    }
+
+    public synchronized float getNoLoadRttMillis() {
+        return longRttNanos < 0 ? 0 : (float) (longRttNanos / 1_000_000d);
+    }
+
+    public synchronized long getOverloads() {
+        return overloads;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("name", name)
+                .add("adaptive", adaptive)
+                .add("limit", limit)
+                .add("maxLimit", maxLimit)
+                .add("shortRttNanos", shortRttNanos)
+                .add("longRttNanos", longRttNanos)
+                .add("overloads", overloads)
+                .toString();
+    }
+}
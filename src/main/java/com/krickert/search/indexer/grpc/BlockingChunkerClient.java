@@ -0,0 +1,40 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.service.ChunkReply;
+import com.krickert.search.service.ChunkRequest;
+import com.krickert.search.service.ChunkServiceGrpc;
+
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Calls the chunker service on the caller's thread with a blocking stub. With a limiter each attempt waits for a slot
+ * of the service, the way {@link BlockingEmbeddingClient} does.
+ */
+public class BlockingChunkerClient implements ChunkerClient {
+    private final ChunkServiceGrpc.ChunkServiceBlockingStub chunkServiceBlockingStub;
+    private final InFlightLimiter inFlightLimiter;
+
+    public BlockingChunkerClient(ChunkServiceGrpc.ChunkServiceBlockingStub chunkServiceBlockingStub) {
+        this(chunkServiceBlockingStub, null);
+    }
+
+    /**
+     * @param inFlightLimiter the limiter of the service, or null to send every call right away
+     */
+    public BlockingChunkerClient(ChunkServiceGrpc.ChunkServiceBlockingStub chunkServiceBlockingStub, InFlightLimiter inFlightLimiter) {
+        this.chunkServiceBlockingStub = checkNotNull(chunkServiceBlockingStub);
+        this.inFlightLimiter = inFlightLimiter;
+    }
+
+    @Override
+    public CompletableFuture<ChunkReply> chunk(ChunkRequest request) {
+        try {
+            return CompletableFuture.completedFuture(GrpcRetries.withRetries("chunk", 1, inFlightLimiter,
+                    () -> chunkServiceBlockingStub.chunk(request)));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.service.EmbeddingServiceGrpc;
+import com.krickert.search.service.EmbeddingsVectorReply;
+import com.krickert.search.service.EmbeddingsVectorRequest;
+import com.krickert.search.service.EmbeddingsVectorsReply;
+import com.krickert.search.service.EmbeddingsVectorsRequest;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Calls the embedding service on the caller's thread with a blocking stub. With a limiter each attempt waits for a
+ * slot of the service, and an attempt that had to wait runs on the limiter's executor while the caller waits for it.
+ */
+public class BlockingEmbeddingClient implements EmbeddingClient {
+    private final EmbeddingServiceGrpc.EmbeddingServiceBlockingStub embeddingServiceBlockingStub;
+    private final InFlightLimiter inFlightLimiter;
+
+    public BlockingEmbeddingClient(EmbeddingServiceGrpc.EmbeddingServiceBlockingStub embeddingServiceBlockingStub) {
+        this(embeddingServiceBlockingStub, null);
+    }
+
+    /**
+     * @param inFlightLimiter the limiter of the service, or null to send every call right away
+     */
+    public BlockingEmbeddingClient(EmbeddingServiceGrpc.EmbeddingServiceBlockingStub embeddingServiceBlockingStub,
+                                   InFlightLimiter inFlightLimiter) {
+        this.embeddingServiceBlockingStub = checkNotNull(embeddingServiceBlockingStub);
+        this.inFlightLimiter = inFlightLimiter;
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingsVectorReply> createEmbeddingsVector(String text) {
+        return call("createEmbeddingsVector", 1, () ->
+                embeddingServiceBlockingStub.createEmbeddingsVector(EmbeddingsVectorRequest.newBuilder().setText(text).build()));
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingsVectorsReply> createEmbeddingsVectors(List<String> texts) {
+        return call("createEmbeddingsVectors", texts.size(), () ->
+                embeddingServiceBlockingStub.createEmbeddingsVectors(EmbeddingsVectorsRequest.newBuilder().addAllText(texts).build()));
+    }
+
+    private <T> CompletableFuture<T> call(String callName, int texts, Supplier<T> call) {
+        try {
+            return CompletableFuture.completedFuture(GrpcRetries.withRetries(callName, texts, inFlightLimiter, call));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.krickert.search.indexer.grpc;
+
+import com.google.common.primitives.Floats;
+import com.krickert.search.indexer.state.EmbeddingStore;
+import com.krickert.search.service.EmbeddingsVectorReply;
+import com.krickert.search.service.EmbeddingsVectorsReply;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Answers embedding calls from the {@link EmbeddingCache} and then the {@link EmbeddingStore} on disk where it can.
+ * A single text found in either never reaches the embedding service. For a batch only the texts found in neither are
+ * sent, each of them once, and the reply is put back together in the order of the request. Vectors read from the
+ * store are put in the cache, and vectors from the service are put in both.
+ */
+public class CachingEmbeddingClient implements EmbeddingClient {
+    private final EmbeddingClient embeddingClient;
+    private final EmbeddingCache embeddingCache;
+    private final EmbeddingStore embeddingStore;
+    private final String model;
+
+    /**
+     * @param model names what the embedding service embeds with. Clients of the same service share cached vectors.
+     */
+    public CachingEmbeddingClient(EmbeddingClient embeddingClient, EmbeddingCache embeddingCache, EmbeddingStore embeddingStore,
+                                  String model) {
+        this.embeddingClient = checkNotNull(embeddingClient);
+        this.embeddingCache = checkNotNull(embeddingCache);
+        this.embeddingStore = checkNotNull(embeddingStore);
+        this.model = checkNotNull(model);
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingsVectorReply> createEmbeddingsVector(String text) {
+        float[] known = lookup(text);
+        if (known != null) {
+            return CompletableFuture.completedFuture(vectorReply(known));
+        }
+        return embeddingClient.createEmbeddingsVector(text).thenApply(reply -> {
+            remember(text, Floats.toArray(reply.getEmbeddingsList()));
+            return reply;
+        });
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingsVectorsReply> createEmbeddingsVectors(List<String> texts) {
+        float[][] vectors = new float[texts.size()][];
+        Set<String> missing = new LinkedHashSet<>();
+        for (int i = 0; i < texts.size(); i++) {
+            vectors[i] = lookup(texts.get(i));
+            if (vectors[i] == null) {
+                missing.add(texts.get(i));
+            }
+        }
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(vectorsReply(vectors));
+        }
+        List<String> toEmbed = new ArrayList<>(missing);
+        return embeddingClient.createEmbeddingsVectors(toEmbed).thenApply(reply -> {
+            if (reply.getEmbeddingsCount() != toEmbed.size()) {
+                throw new IllegalStateException("Embedding service returned " + reply.getEmbeddingsCount()
+                        + " vectors for " + toEmbed.size() + " texts");
+            }
+            Map<String, float[]> embedded = new HashMap<>();
+            for (int i = 0; i < toEmbed.size(); i++) {
+                float[] vector = Floats.toArray(reply.getEmbeddings(i).getEmbeddingsList());
+                remember(toEmbed.get(i), vector);
+                embedded.put(toEmbed.get(i), vector);
+            }
+            for (int i = 0; i < texts.size(); i++) {
+                if (vectors[i] == null) {
+                    vectors[i] = embedded.get(texts.get(i));
+                }
+            }
+            return vectorsReply(vectors);
+        });
+    }
+
+    private float[] lookup(String text) {
+        float[] vector = embeddingCache.get(model, text);
+        if (vector != null) {
+            // keeps the stored copy from aging out while the cache answers for it
+            embeddingStore.touch(model, text);
+        } else {
+            vector = embeddingStore.get(model, text);
+            if (vector != null) {
+                embeddingCache.put(model, text, vector);
+            }
+        }
+        return vector;
+    }
+
+    private void remember(String text, float[] vector) {
+        embeddingCache.put(model, text, vector);
+        embeddingStore.put(model, text, vector);
+    }
+
+    private static EmbeddingsVectorReply vectorReply(float[] vector) {
+        return EmbeddingsVectorReply.newBuilder().addAllEmbeddings(Floats.asList(vector)).build();
+    }
+
+    private static EmbeddingsVectorsReply vectorsReply(float[][] vectors) {
+        EmbeddingsVectorsReply.Builder reply = EmbeddingsVectorsReply.newBuilder();
+        for (float[] vector : vectors) {
+            reply.addEmbeddings(vectorReply(vector));
+        }
+        return reply.build();
+    }
+}
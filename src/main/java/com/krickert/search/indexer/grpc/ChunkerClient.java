@@ -0,0 +1,15 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.service.ChunkReply;
+import com.krickert.search.service.ChunkRequest;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Calls the chunker service. Blocking clients answer with a future that is already complete. Non-blocking clients
+ * answer right away and complete the future when the reply arrives.
+ */
+public interface ChunkerClient {
+
+    CompletableFuture<ChunkReply> chunk(ChunkRequest request);
+}
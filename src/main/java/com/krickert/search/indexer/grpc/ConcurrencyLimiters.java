@@ -0,0 +1,60 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.indexer.config.IndexerConfigurationProperties;
+import com.krickert.search.indexer.dto.ConcurrencyLimitStatus;
+import jakarta.inject.Singleton;
+
+import java.util.List;
+
+/**
+ * The concurrency limiters of the chunker and embedding services. Each service finds its own limit, since they may
+ * run on different hardware. An adaptive limit starts low and is capped by indexer.grpc-max-in-flight.
+ */
+@Singleton
+public class ConcurrencyLimiters {
+    private static final int INITIAL_LIMIT = 4;
+
+    private final boolean adaptive;
+    private final InFlightLimiter inlineEmbedding;
+    private final InFlightLimiter vectorEmbedding;
+    private final InFlightLimiter inlineChunker;
+    private final InFlightLimiter vectorChunker;
+
+    public ConcurrencyLimiters(IndexerConfigurationProperties indexerConfigurationProperties) {
+        this.adaptive = Boolean.TRUE.equals(indexerConfigurationProperties.getGrpcAdaptiveConcurrency());
+        int maxLimit = ServiceClients.maxInFlight(indexerConfigurationProperties);
+        this.inlineEmbedding = limiter("inline-embedding", maxLimit);
+        this.vectorEmbedding = limiter("vector-embedding", maxLimit);
+        this.inlineChunker = limiter("inline-chunker", maxLimit);
+        this.vectorChunker = limiter("vector-chunker", maxLimit);
+    }
+
+    private InFlightLimiter limiter(String name, int maxLimit) {
+        return new InFlightLimiter(name, new AdaptiveConcurrencyLimit(name, INITIAL_LIMIT, maxLimit, adaptive),
+                FutureGrpcClient.CALLBACK_EXECUTOR);
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public InFlightLimiter inlineEmbedding() {
+        return inlineEmbedding;
+    }
+
+    public InFlightLimiter vectorEmbedding() {
+        return vectorEmbedding;
+    }
+
+    public InFlightLimiter inlineChunker() {
+        return inlineChunker;
+    }
+
+    public InFlightLimiter vectorChunker() {
+        return vectorChunker;
+    }
+
+    public List<ConcurrencyLimitStatus> getStatus() {
+        return List.of(inlineEmbedding.getStatus(), vectorEmbedding.getStatus(), inlineChunker.getStatus(), vectorChunker.getStatus());
+    }
+}
@@ -0,0 +1,42 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.indexer.config.IndexerConfigurationProperties;
+import com.krickert.search.indexer.dto.EmbeddingBatchSizeStatus;
+import jakarta.inject.Singleton;
+
+import java.util.List;
+
+/**
+ * The batch sizers of the inline and vector embedding services. Each service finds its own batch size, since they
+ * may run different models on different hardware.
+ */
+@Singleton
+public class EmbeddingBatchSizers {
+    private static final int DEFAULT_BATCH_SIZE = 3;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+    private final AdaptiveBatchSizer inline;
+    private final AdaptiveBatchSizer vector;
+
+    public EmbeddingBatchSizers(IndexerConfigurationProperties indexerConfigurationProperties) {
+        Integer batchSize = indexerConfigurationProperties.getChunkEmbeddingBatchSize();
+        Integer maxBatchSize = indexerConfigurationProperties.getChunkEmbeddingBatchMaxSize();
+        int initialSize = batchSize == null || batchSize < 1 ? DEFAULT_BATCH_SIZE : batchSize;
+        int maxSize = maxBatchSize == null || maxBatchSize < 1 ? DEFAULT_MAX_BATCH_SIZE : maxBatchSize;
+        boolean adaptive = Boolean.TRUE.equals(indexerConfigurationProperties.getChunkEmbeddingBatchAdaptive());
+        this.inline = new AdaptiveBatchSizer("inline-embedding", initialSize, maxSize, adaptive);
+        this.vector = new AdaptiveBatchSizer("vector-embedding", initialSize, maxSize, adaptive);
+    }
+
+    public AdaptiveBatchSizer inline() {
+        return inline;
+    }
+
+    public AdaptiveBatchSizer vector() {
+        return vector;
+    }
+
+    public List<EmbeddingBatchSizeStatus> getStatus() {
+        return List.of(inline.getStatus(), vector.getStatus());
+    }
+}
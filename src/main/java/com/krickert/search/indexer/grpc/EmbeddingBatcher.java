@@ -0,0 +1,210 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.indexer.config.IndexerConfigurationProperties;
+import com.krickert.search.service.EmbeddingsVectorReply;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers the texts of many in-flight documents into one createEmbeddingsVectors call.
+ * <br>
+ * Each text waits at most the linger time for others to join it. A batch is sent as soon as it is full or the
+ * oldest text in it has waited long enough, and each caller gets back the vector for its own text. A batch size of
+ * 1 or less turns batching off and every text is sent with its own createEmbeddingsVector call.
+ * <br>
+ * At most a few batches of texts wait to be sent. Once they are all taken, {@link #embed} blocks the caller until a
+ * batch goes out, so a slow embedding service holds back the documents instead of piling up their texts. Closing the
+ * batcher fails every text that has no vector yet.
+ */
+@Singleton
+public class EmbeddingBatcher {
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingBatcher.class);
+    private static final int DEFAULT_BATCH_SIZE = 64;
+    private static final int DEFAULT_LINGER_MILLIS = 10;
+    private static final int DEFAULT_CONCURRENCY = 4;
+    // full batches that may wait for a free sending thread, and again for the collector
+    private static final int PENDING_BATCHES = 4;
+    private static final long CLOSED_CHECK_MILLIS = 100L;
+
+    private final EmbeddingClient embeddingClient;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final BlockingQueue<PendingText> pendingTexts;
+    private final Set<PendingText> unanswered = ConcurrentHashMap.newKeySet();
+    private final ExecutorService batchExecutor;
+    private final Thread batchCollector;
+    private volatile boolean closed = false;
+
+    @Inject
+    public EmbeddingBatcher(@Named("inlineEmbeddingClient") EmbeddingClient embeddingClient,
+                            IndexerConfigurationProperties indexerConfigurationProperties) {
+        this(embeddingClient,
+                valueOrDefault(indexerConfigurationProperties.getEmbeddingBatchSize(), DEFAULT_BATCH_SIZE),
+                valueOrDefault(indexerConfigurationProperties.getEmbeddingBatchLingerMillis(), DEFAULT_LINGER_MILLIS),
+                valueOrDefault(indexerConfigurationProperties.getEmbeddingBatchConcurrency(), DEFAULT_CONCURRENCY));
+    }
+
+    /**
+     * @param concurrency threads that send batches. A non-blocking client hands a batch over at once, so only
+     *                    blocking clients need more than one.
+     */
+    public EmbeddingBatcher(EmbeddingClient embeddingClient, int maxBatchSize, int lingerMillis, int concurrency) {
+        this.embeddingClient = embeddingClient;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, lingerMillis));
+        if (isBatching()) {
+            int threads = Math.max(1, concurrency);
+            this.pendingTexts = new LinkedBlockingQueue<>(maxBatchSize * PENDING_BATCHES);
+            // when every thread is busy and the batch queue is full the collector waits, so texts back up to the callers
+            this.batchExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(threads), EmbeddingBatcher::waitForBatchThread);
+            this.batchCollector = new Thread(this::collectBatches, "embedding-batcher");
+            this.batchCollector.setDaemon(true);
+            this.batchCollector.start();
+            log.info("Embedding texts in batches of up to {} with a linger of {}ms and {} concurrent calls",
+                    maxBatchSize, lingerMillis, concurrency);
+        } else {
+            this.pendingTexts = null;
+            this.batchExecutor = null;
+            this.batchCollector = null;
+        }
+    }
+
+    private static int valueOrDefault(Integer value, int defaultValue) {
+        return value == null ? defaultValue : value;
+    }
+
+    public boolean isBatching() {
+        return maxBatchSize > 1;
+    }
+
+    /**
+     * @return the embedding of the text once the batch it joined has been answered
+     */
+    public CompletableFuture<List<Float>> embed(String text) {
+        if (!isBatching()) {
+            return embeddingClient.createEmbeddingsVector(text).thenApply(EmbeddingsVectorReply::getEmbeddingsList);
+        }
+        PendingText pendingText = new PendingText(text);
+        // close fails whatever is in here, so a text is added before closed is checked
+        unanswered.add(pendingText);
+        pendingText.vector.whenComplete((vector, error) -> unanswered.remove(pendingText));
+        if (closed) {
+            pendingText.vector.completeExceptionally(closedError());
+            return pendingText.vector;
+        }
+        try {
+            // a caller still waiting when the batcher closes has already had its text failed by close
+            while (!pendingTexts.offer(pendingText, CLOSED_CHECK_MILLIS, TimeUnit.MILLISECONDS) && !closed) {
+                log.debug("Waiting for room among the {} texts queued for embedding", pendingTexts.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pendingText.vector.completeExceptionally(e);
+        }
+        return pendingText.vector;
+    }
+
+    private void collectBatches() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                List<PendingText> batch = new ArrayList<>(maxBatchSize);
+                batch.add(pendingTexts.take());
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingText next = remaining > 0 ? pendingTexts.poll(remaining, TimeUnit.NANOSECONDS) : pendingTexts.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                batchExecutor.execute(() -> sendBatch(batch));
+            } catch (InterruptedException | RejectedExecutionException e) {
+                // the batcher is closing. close fails the texts that were taken
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void waitForBatchThread(Runnable batch, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("The embedding batcher is closed");
+        }
+        try {
+            executor.getQueue().put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting to send a batch", e);
+        }
+    }
+
+    private void sendBatch(List<PendingText> batch) {
+        List<String> texts = new ArrayList<>(batch.size());
+        batch.forEach(pendingText -> texts.add(pendingText.text));
+        embeddingClient.createEmbeddingsVectors(texts).whenComplete((reply, error) -> {
+            Throwable failure = error != null ? GrpcRetries.unwrap(error) : null;
+            if (failure == null && reply.getEmbeddingsCount() != batch.size()) {
+                failure = new IllegalStateException("Embedding service returned " + reply.getEmbeddingsCount()
+                        + " vectors for " + batch.size() + " texts");
+            }
+            if (failure != null) {
+                log.error("Could not embed a batch of {} texts: {}", batch.size(), failure.getMessage());
+                for (PendingText pendingText : batch) {
+                    pendingText.vector.completeExceptionally(failure);
+                }
+                return;
+            }
+            log.debug("Embedded a batch of {} texts", batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).vector.complete(reply.getEmbeddings(i).getEmbeddingsList());
+            }
+        });
+    }
+
+    /**
+     * Stops batching and fails every text that has no vector yet, whether it was waiting, queued or sent.
+     */
+    @PreDestroy
+    public void close() {
+        closed = true;
+        if (batchCollector != null) {
+            batchCollector.interrupt();
+            batchExecutor.shutdownNow();
+        }
+        IllegalStateException closedError = closedError();
+        for (PendingText pendingText : unanswered) {
+            pendingText.vector.completeExceptionally(closedError);
+        }
+    }
+
+    private static IllegalStateException closedError() {
+        return new IllegalStateException("The embedding batcher is closed");
+    }
+
+    private static class PendingText {
+        private final String text;
+        private final CompletableFuture<List<Float>> vector = new CompletableFuture<>();
+
+        private PendingText(String text) {
+            this.text = text;
+        }
+    }
+}
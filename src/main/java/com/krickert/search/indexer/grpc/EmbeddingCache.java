@@ -0,0 +1,109 @@
+package com.krickert.search.indexer.grpc;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.krickert.search.indexer.config.IndexerConfigurationProperties;
+import com.krickert.search.indexer.dto.EmbeddingCacheStatus;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Vectors the embedding service already returned, keyed by the model and a 128-bit hash of the text, so boilerplate
+ * that shows up in many documents is embedded once.
+ * <br>
+ * Vectors are kept as float arrays and the cache is bounded by the bytes they take up, evicting the least recently
+ * used vectors first. A size of 0 megabytes turns the cache off.
+ */
+@Singleton
+public class EmbeddingCache {
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingCache.class);
+    private static final int DEFAULT_MAX_MEGABYTES = 256;
+    // Rough cost of an entry beyond its floats: the key, its hash and the cache's own bookkeeping
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    private static final HashFunction TEXT_HASH = Hashing.murmur3_128();
+
+    private final long maxBytes;
+    private final Cache<Key, float[]> vectors;
+    private final AtomicLong weightBytes = new AtomicLong();
+
+    @Inject
+    public EmbeddingCache(IndexerConfigurationProperties indexerConfigurationProperties) {
+        this(maxBytes(indexerConfigurationProperties.getEmbeddingCacheMaxMegabytes()));
+    }
+
+    public EmbeddingCache(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        if (this.maxBytes == 0) {
+            this.vectors = null;
+            log.info("Embedding cache is off");
+            return;
+        }
+        this.vectors = CacheBuilder.newBuilder()
+                .maximumWeight(this.maxBytes)
+                .weigher((Key key, float[] vector) -> weight(vector))
+                .removalListener((RemovalNotification<Key, float[]> removal) -> weightBytes.addAndGet(-weight(removal.getValue())))
+                .recordStats()
+                .build();
+        log.info("Caching embeddings in up to {} bytes", this.maxBytes);
+    }
+
+    private static long maxBytes(Integer maxMegabytes) {
+        return (maxMegabytes == null ? DEFAULT_MAX_MEGABYTES : maxMegabytes) * 1024L * 1024L;
+    }
+
+    private static int weight(float[] vector) {
+        return ENTRY_OVERHEAD_BYTES + Float.BYTES * vector.length;
+    }
+
+    public boolean isEnabled() {
+        return vectors != null;
+    }
+
+    /**
+     * @return the cached vector of the text, or null if it has not been embedded with this model or was evicted.
+     * The array is shared and must not be changed.
+     */
+    public float[] get(String model, String text) {
+        return isEnabled() ? vectors.getIfPresent(key(model, text)) : null;
+    }
+
+    public void put(String model, String text, float[] vector) {
+        if (isEnabled()) {
+            weightBytes.addAndGet(weight(vector));
+            vectors.put(key(model, text), vector);
+        }
+    }
+
+    public EmbeddingCacheStatus getStatus() {
+        EmbeddingCacheStatus status = new EmbeddingCacheStatus();
+        status.setEnabled(isEnabled());
+        status.setMaxBytes(maxBytes);
+        if (isEnabled()) {
+            CacheStats stats = vectors.stats();
+            status.setSize(vectors.size());
+            status.setWeightBytes(weightBytes.get());
+            status.setHits(stats.hitCount());
+            status.setMisses(stats.missCount());
+            status.setEvictions(stats.evictionCount());
+            status.setHitRate((float) stats.hitRate());
+        }
+        return status;
+    }
+
+    private static Key key(String model, String text) {
+        return new Key(model, TEXT_HASH.hashString(text, StandardCharsets.UTF_8));
+    }
+
+    private record Key(String model, HashCode textHash) {
+    }
+}
@@ -0,0 +1,18 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.service.EmbeddingsVectorReply;
+import com.krickert.search.service.EmbeddingsVectorsReply;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Calls the embedding service. Blocking clients answer with a future that is already complete. Non-blocking clients
+ * answer right away and complete the future when the reply arrives.
+ */
+public interface EmbeddingClient {
+
+    CompletableFuture<EmbeddingsVectorReply> createEmbeddingsVector(String text);
+
+    CompletableFuture<EmbeddingsVectorsReply> createEmbeddingsVectors(List<String> texts);
+}
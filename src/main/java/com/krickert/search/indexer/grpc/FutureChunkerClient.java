@@ -0,0 +1,33 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.service.ChunkReply;
+import com.krickert.search.service.ChunkRequest;
+import com.krickert.search.service.ChunkServiceGrpc;
+
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Calls the chunker service with a future stub and at most a fixed number of requests in flight, or as many as the
+ * limiter of the service allows.
+ */
+public class FutureChunkerClient extends FutureGrpcClient implements ChunkerClient {
+    private final ChunkServiceGrpc.ChunkServiceFutureStub chunkServiceFutureStub;
+
+    public FutureChunkerClient(String serviceName, ChunkServiceGrpc.ChunkServiceFutureStub chunkServiceFutureStub, int maxInFlight) {
+        super(serviceName, maxInFlight);
+        this.chunkServiceFutureStub = checkNotNull(chunkServiceFutureStub);
+    }
+
+    public FutureChunkerClient(String serviceName, ChunkServiceGrpc.ChunkServiceFutureStub chunkServiceFutureStub,
+                               InFlightLimiter inFlightLimiter) {
+        super(serviceName, inFlightLimiter);
+        this.chunkServiceFutureStub = checkNotNull(chunkServiceFutureStub);
+    }
+
+    @Override
+    public CompletableFuture<ChunkReply> chunk(ChunkRequest request) {
+        return call("chunk", () -> chunkServiceFutureStub.chunk(request));
+    }
+}
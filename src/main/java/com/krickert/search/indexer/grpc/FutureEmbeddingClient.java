@@ -0,0 +1,44 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.service.EmbeddingServiceGrpc;
+import com.krickert.search.service.EmbeddingsVectorReply;
+import com.krickert.search.service.EmbeddingsVectorRequest;
+import com.krickert.search.service.EmbeddingsVectorsReply;
+import com.krickert.search.service.EmbeddingsVectorsRequest;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Calls the embedding service with a future stub and at most a fixed number of requests in flight, or as many as the
+ * limiter of the service allows.
+ */
+public class FutureEmbeddingClient extends FutureGrpcClient implements EmbeddingClient {
+    private final EmbeddingServiceGrpc.EmbeddingServiceFutureStub embeddingServiceFutureStub;
+
+    public FutureEmbeddingClient(String serviceName, EmbeddingServiceGrpc.EmbeddingServiceFutureStub embeddingServiceFutureStub,
+                                 int maxInFlight) {
+        super(serviceName, maxInFlight);
+        this.embeddingServiceFutureStub = checkNotNull(embeddingServiceFutureStub);
+    }
+
+    public FutureEmbeddingClient(String serviceName, EmbeddingServiceGrpc.EmbeddingServiceFutureStub embeddingServiceFutureStub,
+                                 InFlightLimiter inFlightLimiter) {
+        super(serviceName, inFlightLimiter);
+        this.embeddingServiceFutureStub = checkNotNull(embeddingServiceFutureStub);
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingsVectorReply> createEmbeddingsVector(String text) {
+        return call("createEmbeddingsVector", () ->
+                embeddingServiceFutureStub.createEmbeddingsVector(EmbeddingsVectorRequest.newBuilder().setText(text).build()));
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingsVectorsReply> createEmbeddingsVectors(List<String> texts) {
+        return call("createEmbeddingsVectors", texts.size(), () ->
+                embeddingServiceFutureStub.createEmbeddingsVectors(EmbeddingsVectorsRequest.newBuilder().addAllText(texts).build()));
+    }
+}
@@ -0,0 +1,76 @@
+package com.krickert.search.indexer.grpc;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Base of the non-blocking clients. Requests go out on a future stub through an {@link InFlightLimiter}, so no
+ * thread waits on a request. Replies are completed on the bounded elastic scheduler rather than the gRPC transport
+ * threads, because the stages that follow a reply may write to Solr. Retries wait on a daemon scheduler thread, and
+ * each attempt takes a slot of its own.
+ */
+abstract class FutureGrpcClient {
+    static final Executor CALLBACK_EXECUTOR = runnable -> Schedulers.boundedElastic().schedule(runnable);
+
+    private final InFlightLimiter inFlightLimiter;
+    private final ScheduledExecutorService retryScheduler;
+
+    protected FutureGrpcClient(String serviceName, int maxInFlight) {
+        this(serviceName, new InFlightLimiter(serviceName, maxInFlight));
+    }
+
+    /**
+     * @param inFlightLimiter the limiter of the service, which may be shared with other clients of it
+     */
+    protected FutureGrpcClient(String serviceName, InFlightLimiter inFlightLimiter) {
+        this.inFlightLimiter = checkNotNull(inFlightLimiter);
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat(serviceName + "-retry-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    protected <T> CompletableFuture<T> call(String callName, Supplier<ListenableFuture<T>> call) {
+        return call(callName, 1, call);
+    }
+
+    /**
+     * @param texts the texts the request carries, for the per text time of the limiter
+     */
+    protected <T> CompletableFuture<T> call(String callName, int texts, Supplier<ListenableFuture<T>> call) {
+        return GrpcRetries.withRetriesAsync(callName,
+                () -> inFlightLimiter.submit(texts, () -> toCompletableFuture(call.get())),
+                retryScheduler);
+    }
+
+    private static <T> CompletableFuture<T> toCompletableFuture(ListenableFuture<T> listenableFuture) {
+        CompletableFuture<T> completableFuture = new CompletableFuture<>();
+        Futures.addCallback(listenableFuture, new FutureCallback<>() {
+            @Override
+            public void onSuccess(T result) {
+                completableFuture.complete(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                completableFuture.completeExceptionally(t);
+            }
+        }, CALLBACK_EXECUTOR);
+        return completableFuture;
+    }
+
+    public InFlightLimiter getInFlightLimiter() {
+        return inFlightLimiter;
+    }
+}
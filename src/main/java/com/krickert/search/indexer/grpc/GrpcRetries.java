@@ -0,0 +1,97 @@
+package com.krickert.search.indexer.grpc;
+
+import io.grpc.StatusRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Retries gRPC calls that fail with a status error, waiting a second before the second attempt and twice as long
+ * before each one after that.
+ */
+final class GrpcRetries {
+    private static final Logger log = LoggerFactory.getLogger(GrpcRetries.class);
+    static final int MAX_ATTEMPTS = 3;
+    static final long FIRST_RETRY_DELAY_MILLIS = 1000L;
+
+    private GrpcRetries() {
+    }
+
+    static <T> T withRetries(String callName, Supplier<T> call) {
+        long delay = FIRST_RETRY_DELAY_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.get();
+            } catch (StatusRuntimeException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                log.warn("{} failed with {}. Retrying in {}ms", callName, e.getStatus(), delay);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                delay *= 2;
+            }
+        }
+    }
+
+    /**
+     * The same retries with each attempt under the limiter of the service, so the backoff does not hold a slot and
+     * the limiter sees every attempt. Without a limiter the attempts start right away.
+     *
+     * @param texts the texts the call carries, for the per text time of the limiter
+     */
+    static <T> T withRetries(String callName, int texts, InFlightLimiter inFlightLimiter, Supplier<T> call) {
+        if (inFlightLimiter == null) {
+            return withRetries(callName, call);
+        }
+        return withRetries(callName, () -> {
+            try {
+                return inFlightLimiter.submit(texts, () -> CompletableFuture.completedFuture(call.get())).join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        });
+    }
+
+    /**
+     * The same retries for calls that answer with a future. No thread waits between attempts; the next attempt is
+     * scheduled on the given scheduler.
+     */
+    static <T> CompletableFuture<T> withRetriesAsync(String callName, Supplier<CompletableFuture<T>> call,
+                                                     ScheduledExecutorService retryScheduler) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(callName, call, retryScheduler, 1, FIRST_RETRY_DELAY_MILLIS, result);
+        return result;
+    }
+
+    private static <T> void attempt(String callName, Supplier<CompletableFuture<T>> call, ScheduledExecutorService retryScheduler,
+                                    int attempt, long delay, CompletableFuture<T> result) {
+        call.get().whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = unwrap(error);
+            if (cause instanceof StatusRuntimeException statusError && attempt < MAX_ATTEMPTS) {
+                log.warn("{} failed with {}. Retrying in {}ms", callName, statusError.getStatus(), delay);
+                retryScheduler.schedule(() -> attempt(callName, call, retryScheduler, attempt + 1, delay * 2, result),
+                        delay, TimeUnit.MILLISECONDS);
+            } else {
+                result.completeExceptionally(cause);
+            }
+        });
+    }
+
+    static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -0,0 +1,167 @@
+package com.krickert.search.indexer.grpc;
+
+import com.google.common.base.MoreObjects;
+import com.krickert.search.indexer.dto.ConcurrencyLimitStatus;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Caps the number of requests in flight to one service without parking a thread per waiting request. A call over
+ * the limit is queued and started once a call finishes and the limit has room for it.
+ * <br>
+ * The cap comes from an {@link AdaptiveConcurrencyLimit}, which is told how long each call took per text and how it
+ * failed. Each call is one attempt, so the clients that retry submit every attempt on its own and wait out the
+ * backoff without a slot.
+ * With a fixed limit a waiting call is started on the thread of the call that finished. With an adaptive limit it is
+ * handed to an executor, since the limit may grow by several slots at once and the call may block. Calls that
+ * finish as soon as they start free their slot for the next waiting call right away, so waiting calls are started
+ * from a loop rather than from inside the call that finished, which would nest one call per waiting call.
+ */
+public class InFlightLimiter {
+    private final String name;
+    private final AdaptiveConcurrencyLimit limit;
+    private final Executor waitingCallExecutor;
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    // waiting calls that have a slot and are about to be handed to the executor
+    private final Queue<Runnable> starting = new ArrayDeque<>();
+    private boolean handingOver = false;
+    private int inFlight = 0;
+
+    public InFlightLimiter(String name, int maxInFlight) {
+        this(name, new AdaptiveConcurrencyLimit(name, maxInFlight, maxInFlight, false), Runnable::run);
+    }
+
+    public InFlightLimiter(String name, AdaptiveConcurrencyLimit limit, Executor waitingCallExecutor) {
+        this.name = name;
+        this.limit = checkNotNull(limit);
+        this.waitingCallExecutor = checkNotNull(waitingCallExecutor);
+    }
+
+    /**
+     * @param call starts the request and returns its future. It is only invoked once a slot is free.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> call) {
+        return submit(1, call);
+    }
+
+    /**
+     * @param texts the texts the request carries. Its time is divided by them, so batches of different sizes are
+     *              compared per text.
+     * @param call  starts the request and returns its future. It is only invoked once a slot is free.
+     */
+    public <T> CompletableFuture<T> submit(int texts, Supplier<CompletableFuture<T>> call) {
+        int weight = Math.max(1, texts);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            int inFlightAtStart = getInFlight();
+            long started = System.nanoTime();
+            CompletableFuture<T> response;
+            try {
+                response = call.get();
+            } catch (RuntimeException e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+            response.whenComplete((value, error) -> {
+                if (error != null) {
+                    limit.recordFailure(error);
+                } else {
+                    limit.recordSample((System.nanoTime() - started) / weight, inFlightAtStart);
+                }
+                release();
+                if (error != null) {
+                    result.completeExceptionally(GrpcRetries.unwrap(error));
+                } else {
+                    result.complete(value);
+                }
+            });
+        };
+        boolean startNow;
+        synchronized (this) {
+            startNow = inFlight < limit.getLimit();
+            if (startNow) {
+                inFlight++;
+            } else {
+                waiting.add(start);
+            }
+        }
+        if (startNow) {
+            start.run();
+        }
+        return result;
+    }
+
+    private void release() {
+        synchronized (this) {
+            inFlight--;
+            // a lowered limit starts nothing until enough calls have finished, a raised one may start several
+            while (inFlight < limit.getLimit() && !waiting.isEmpty()) {
+                inFlight++;
+                starting.add(waiting.poll());
+            }
+            // a release from inside a call that is being handed over leaves its calls to the loop further up
+            if (handingOver || starting.isEmpty()) {
+                return;
+            }
+            handingOver = true;
+        }
+        while (true) {
+            Runnable next;
+            synchronized (this) {
+                next = starting.poll();
+                if (next == null) {
+                    handingOver = false;
+                    return;
+                }
+            }
+            waitingCallExecutor.execute(next);
+        }
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    public int getMaxInFlight() {
+        return limit.getLimit();
+    }
+
+    public AdaptiveConcurrencyLimit getLimit() {
+        return limit;
+    }
+
+    public synchronized ConcurrencyLimitStatus getStatus() {
+        ConcurrencyLimitStatus status = new ConcurrencyLimitStatus();
+        status.setName(name);
+        status.setAdaptive(limit.isAdaptive());
+        status.setLimit(limit.getLimit());
+        status.setMaxLimit(limit.getMaxLimit());
+        status.setSmallestLimit(limit.getSmallestLimit());
+        status.setLargestLimit(limit.getLargestLimit());
+        status.setInFlight(inFlight);
+        status.setWaiting(waiting.size());
+        status.setRttMillis(limit.getRttMillis());
+        status.setNoLoadRttMillis(limit.getNoLoadRttMillis());
+        status.setOverloads(limit.getOverloads());
+        return status;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("name", name)
+                .add("limit", limit.getLimit())
+                .add("inFlight", inFlight)
+                .add("waiting", waiting.size())
+                .toString();
+    }
+}
@@ -0,0 +1,34 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.service.EmbeddingsVectorReply;
+import com.krickert.search.service.EmbeddingsVectorsReply;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Sends embedding calls through the {@link InFlightLimiter} of the embedding service, so calls over its adaptive
+ * concurrency limit wait in the indexer instead of queueing inside an overloaded service. It only wraps a client
+ * that does not retry, such as the embedding stream, since a retry inside it would keep the slot through the backoff.
+ */
+public class LimitedEmbeddingClient implements EmbeddingClient {
+    private final EmbeddingClient embeddingClient;
+    private final InFlightLimiter inFlightLimiter;
+
+    public LimitedEmbeddingClient(EmbeddingClient embeddingClient, InFlightLimiter inFlightLimiter) {
+        this.embeddingClient = checkNotNull(embeddingClient);
+        this.inFlightLimiter = checkNotNull(inFlightLimiter);
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingsVectorReply> createEmbeddingsVector(String text) {
+        return inFlightLimiter.submit(() -> embeddingClient.createEmbeddingsVector(text));
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingsVectorsReply> createEmbeddingsVectors(List<String> texts) {
+        return inFlightLimiter.submit(texts.size(), () -> embeddingClient.createEmbeddingsVectors(texts));
+    }
+}
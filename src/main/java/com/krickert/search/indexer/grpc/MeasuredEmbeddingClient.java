@@ -0,0 +1,40 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.service.EmbeddingsVectorReply;
+import com.krickert.search.service.EmbeddingsVectorsReply;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reports how long each batch call to the embedding service takes, and how it fails, to the service's
+ * {@link AdaptiveBatchSizer}. It sits below the embed stage, so time spent waiting for a worker is not counted.
+ */
+public class MeasuredEmbeddingClient implements EmbeddingClient {
+    private final EmbeddingClient embeddingClient;
+    private final AdaptiveBatchSizer batchSizer;
+
+    public MeasuredEmbeddingClient(EmbeddingClient embeddingClient, AdaptiveBatchSizer batchSizer) {
+        this.embeddingClient = checkNotNull(embeddingClient);
+        this.batchSizer = checkNotNull(batchSizer);
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingsVectorReply> createEmbeddingsVector(String text) {
+        return embeddingClient.createEmbeddingsVector(text);
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingsVectorsReply> createEmbeddingsVectors(List<String> texts) {
+        long start = System.nanoTime();
+        return embeddingClient.createEmbeddingsVectors(texts).whenComplete((reply, error) -> {
+            if (error != null) {
+                batchSizer.recordFailure(texts.size(), error);
+            } else {
+                batchSizer.recordBatch(texts.size(), System.nanoTime() - start);
+            }
+        });
+    }
+}
@@ -0,0 +1,178 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.indexer.config.IndexerConfigurationProperties;
+import com.krickert.search.indexer.pipeline.IndexingPipeline;
+import com.krickert.search.indexer.state.EmbeddingStore;
+import com.krickert.search.service.ChunkServiceGrpc;
+import com.krickert.search.service.EmbeddingServiceGrpc;
+import io.micronaut.context.annotation.Factory;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Wraps the gRPC stubs in the clients the listeners call. In the default blocking mode each request holds its
+ * thread until the reply arrives. In async mode requests go out on future stubs that share the channel of the
+ * blocking stub, with at most indexer.grpc-max-in-flight requests in flight per client. Streaming mode is async mode
+ * with the embedding batches sent over one bidirectional stream per embedding service. In every mode the calls run
+ * as tasks of the chunk and embed stages of the {@link IndexingPipeline}, and embedding calls are answered from the
+ * {@link EmbeddingCache} and the {@link EmbeddingStore} first, so known texts never take a slot in the embed stage.
+ * With adaptive batch sizing the batch calls that do reach a service are timed for its {@link AdaptiveBatchSizer}.
+ * With adaptive concurrency every attempt of a call to a chunker or embedding service, in any mode, first waits for
+ * a slot under the {@link AdaptiveConcurrencyLimit} of that service in {@link ConcurrencyLimiters}. The limiter sits
+ * below the retries, so each attempt is one sample and the backoff before a retry holds no slot. A batch sent on an
+ * embedding stream holds its slot until it is answered, and the batches a broken stream hands to unary calls are
+ * capped by the unary client's own limiter, so they cannot wait on slots held by the stream.
+ * The streams of streaming mode sit under the wrapping clients, so the factory keeps them and ends them on shutdown.
+ */
+@Factory
+public class ServiceClients {
+    private static final Logger log = LoggerFactory.getLogger(ServiceClients.class);
+    static final String ASYNC_MODE = "async";
+    static final String STREAMING_MODE = "streaming";
+    private static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    private final List<StreamingEmbeddingClient> streamingClients = new CopyOnWriteArrayList<>();
+
+    @Singleton
+    @Named("inlineEmbeddingClient")
+    EmbeddingClient inlineEmbeddingClient(@Named("inlineEmbeddingService") EmbeddingServiceGrpc.EmbeddingServiceBlockingStub blockingStub,
+                                          IndexerConfigurationProperties indexerConfigurationProperties,
+                                          IndexingPipeline indexingPipeline,
+                                          EmbeddingCache embeddingCache,
+                                          EmbeddingStore embeddingStore,
+                                          EmbeddingBatchSizers embeddingBatchSizers,
+                                          ConcurrencyLimiters concurrencyLimiters) {
+        return cached(embeddingCache, embeddingStore, blockingStub,
+                staged(indexingPipeline, measured(embeddingBatchSizers.inline(),
+                        embeddingClient("inline-embedding", blockingStub, indexerConfigurationProperties,
+                                limiter(concurrencyLimiters, concurrencyLimiters.inlineEmbedding())))));
+    }
+
+    @Singleton
+    @Named("vectorEmbeddingClient")
+    EmbeddingClient vectorEmbeddingClient(@Named("vectorEmbeddingService") EmbeddingServiceGrpc.EmbeddingServiceBlockingStub blockingStub,
+                                          IndexerConfigurationProperties indexerConfigurationProperties,
+                                          IndexingPipeline indexingPipeline,
+                                          EmbeddingCache embeddingCache,
+                                          EmbeddingStore embeddingStore,
+                                          EmbeddingBatchSizers embeddingBatchSizers,
+                                          ConcurrencyLimiters concurrencyLimiters) {
+        return cached(embeddingCache, embeddingStore, blockingStub,
+                staged(indexingPipeline, measured(embeddingBatchSizers.vector(),
+                        embeddingClient("vector-embedding", blockingStub, indexerConfigurationProperties,
+                                limiter(concurrencyLimiters, concurrencyLimiters.vectorEmbedding())))));
+    }
+
+    @Singleton
+    @Named("inlineChunkerClient")
+    ChunkerClient inlineChunkerClient(@Named("inlineChunkerService") ChunkServiceGrpc.ChunkServiceBlockingStub blockingStub,
+                                      IndexerConfigurationProperties indexerConfigurationProperties,
+                                      IndexingPipeline indexingPipeline,
+                                      ConcurrencyLimiters concurrencyLimiters) {
+        return staged(indexingPipeline, chunkerClient("inline-chunker", blockingStub, indexerConfigurationProperties,
+                limiter(concurrencyLimiters, concurrencyLimiters.inlineChunker())));
+    }
+
+    @Singleton
+    @Named("vectorChunkerClient")
+    ChunkerClient vectorChunkerClient(@Named("vectorChunkerService") ChunkServiceGrpc.ChunkServiceBlockingStub blockingStub,
+                                      IndexerConfigurationProperties indexerConfigurationProperties,
+                                      IndexingPipeline indexingPipeline,
+                                      ConcurrencyLimiters concurrencyLimiters) {
+        return staged(indexingPipeline, chunkerClient("vector-chunker", blockingStub, indexerConfigurationProperties,
+                limiter(concurrencyLimiters, concurrencyLimiters.vectorChunker())));
+    }
+
+    /**
+     * @param inFlightLimiter the adaptive limiter of the service, or null when concurrency is not adaptive
+     */
+    private EmbeddingClient embeddingClient(String serviceName, EmbeddingServiceGrpc.EmbeddingServiceBlockingStub blockingStub,
+                                            IndexerConfigurationProperties indexerConfigurationProperties,
+                                            InFlightLimiter inFlightLimiter) {
+        if (!isAsync(indexerConfigurationProperties)) {
+            return new BlockingEmbeddingClient(blockingStub, inFlightLimiter);
+        }
+        int maxInFlight = maxInFlight(indexerConfigurationProperties);
+        EmbeddingServiceGrpc.EmbeddingServiceFutureStub futureStub = EmbeddingServiceGrpc.newFutureStub(blockingStub.getChannel());
+        if (isStreaming(indexerConfigurationProperties)) {
+            log.info("Streaming batches to {} with up to {} batches in flight", serviceName, maxInFlight);
+            FutureEmbeddingClient unaryClient = new FutureEmbeddingClient(serviceName, futureStub, maxInFlight);
+            StreamingEmbeddingClient streamingClient = new StreamingEmbeddingClient(serviceName, blockingStub.getChannel(), unaryClient, maxInFlight);
+            streamingClients.add(streamingClient);
+            return inFlightLimiter == null ? streamingClient : new LimitedEmbeddingClient(streamingClient, inFlightLimiter);
+        }
+        log.info("Calling {} asynchronously with up to {} requests in flight", serviceName, maxInFlight);
+        return inFlightLimiter == null ? new FutureEmbeddingClient(serviceName, futureStub, maxInFlight)
+                : new FutureEmbeddingClient(serviceName, futureStub, inFlightLimiter);
+    }
+
+    /**
+     * Ends the embedding streams once the batches sent on them are answered.
+     */
+    @PreDestroy
+    void closeStreams() {
+        streamingClients.forEach(StreamingEmbeddingClient::close);
+        streamingClients.clear();
+    }
+
+    private static ChunkerClient chunkerClient(String serviceName, ChunkServiceGrpc.ChunkServiceBlockingStub blockingStub,
+                                               IndexerConfigurationProperties indexerConfigurationProperties,
+                                               InFlightLimiter inFlightLimiter) {
+        if (!isAsync(indexerConfigurationProperties)) {
+            return new BlockingChunkerClient(blockingStub, inFlightLimiter);
+        }
+        int maxInFlight = maxInFlight(indexerConfigurationProperties);
+        log.info("Calling {} asynchronously with up to {} requests in flight", serviceName, maxInFlight);
+        ChunkServiceGrpc.ChunkServiceFutureStub futureStub = ChunkServiceGrpc.newFutureStub(blockingStub.getChannel());
+        return inFlightLimiter == null ? new FutureChunkerClient(serviceName, futureStub, maxInFlight)
+                : new FutureChunkerClient(serviceName, futureStub, inFlightLimiter);
+    }
+
+    private static EmbeddingClient staged(IndexingPipeline indexingPipeline, EmbeddingClient embeddingClient) {
+        return new StagedEmbeddingClient(embeddingClient, indexingPipeline.getStage(IndexingPipeline.Stage.EMBED));
+    }
+
+    private static InFlightLimiter limiter(ConcurrencyLimiters concurrencyLimiters, InFlightLimiter inFlightLimiter) {
+        return concurrencyLimiters.isAdaptive() ? inFlightLimiter : null;
+    }
+
+    private static EmbeddingClient measured(AdaptiveBatchSizer batchSizer, EmbeddingClient embeddingClient) {
+        return batchSizer.isAdaptive() ? new MeasuredEmbeddingClient(embeddingClient, batchSizer) : embeddingClient;
+    }
+
+    /**
+     * The embedding service behind a channel embeds with one model, so clients of the same channel share vectors.
+     */
+    private static EmbeddingClient cached(EmbeddingCache embeddingCache, EmbeddingStore embeddingStore,
+                                          EmbeddingServiceGrpc.EmbeddingServiceBlockingStub blockingStub,
+                                          EmbeddingClient embeddingClient) {
+        if (!embeddingCache.isEnabled() && !embeddingStore.isEnabled()) {
+            return embeddingClient;
+        }
+        return new CachingEmbeddingClient(embeddingClient, embeddingCache, embeddingStore, blockingStub.getChannel().authority());
+    }
+
+    private static ChunkerClient staged(IndexingPipeline indexingPipeline, ChunkerClient chunkerClient) {
+        return new StagedChunkerClient(chunkerClient, indexingPipeline.getStage(IndexingPipeline.Stage.CHUNK));
+    }
+
+    static boolean isAsync(IndexerConfigurationProperties indexerConfigurationProperties) {
+        return ASYNC_MODE.equalsIgnoreCase(indexerConfigurationProperties.getGrpcClientMode())
+                || isStreaming(indexerConfigurationProperties);
+    }
+
+    static boolean isStreaming(IndexerConfigurationProperties indexerConfigurationProperties) {
+        return STREAMING_MODE.equalsIgnoreCase(indexerConfigurationProperties.getGrpcClientMode());
+    }
+
+    static int maxInFlight(IndexerConfigurationProperties indexerConfigurationProperties) {
+        Integer maxInFlight = indexerConfigurationProperties.getGrpcMaxInFlight();
+        return maxInFlight == null || maxInFlight < 1 ? DEFAULT_MAX_IN_FLIGHT : maxInFlight;
+    }
+}
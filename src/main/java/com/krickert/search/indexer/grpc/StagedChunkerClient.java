@@ -0,0 +1,27 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.indexer.pipeline.PipelineStage;
+import com.krickert.search.service.ChunkReply;
+import com.krickert.search.service.ChunkRequest;
+
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Runs every chunker call as a task of the chunk stage.
+ */
+public class StagedChunkerClient implements ChunkerClient {
+    private final ChunkerClient chunkerClient;
+    private final PipelineStage chunkStage;
+
+    public StagedChunkerClient(ChunkerClient chunkerClient, PipelineStage chunkStage) {
+        this.chunkerClient = checkNotNull(chunkerClient);
+        this.chunkStage = checkNotNull(chunkStage);
+    }
+
+    @Override
+    public CompletableFuture<ChunkReply> chunk(ChunkRequest chunkRequest) {
+        return chunkStage.submit(() -> chunkerClient.chunk(chunkRequest));
+    }
+}
@@ -0,0 +1,34 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.indexer.pipeline.PipelineStage;
+import com.krickert.search.service.EmbeddingsVectorReply;
+import com.krickert.search.service.EmbeddingsVectorsReply;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Runs every embedding call as a task of the embed stage, so the stage's queue and workers bound the calls in
+ * progress and its metrics show how long they take.
+ */
+public class StagedEmbeddingClient implements EmbeddingClient {
+    private final EmbeddingClient embeddingClient;
+    private final PipelineStage embedStage;
+
+    public StagedEmbeddingClient(EmbeddingClient embeddingClient, PipelineStage embedStage) {
+        this.embeddingClient = checkNotNull(embeddingClient);
+        this.embedStage = checkNotNull(embedStage);
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingsVectorReply> createEmbeddingsVector(String text) {
+        return embedStage.submit(() -> embeddingClient.createEmbeddingsVector(text));
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingsVectorsReply> createEmbeddingsVectors(List<String> texts) {
+        return embedStage.submit(() -> embeddingClient.createEmbeddingsVectors(texts));
+    }
+}
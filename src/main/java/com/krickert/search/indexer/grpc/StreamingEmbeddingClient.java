@@ -0,0 +1,226 @@
+package com.krickert.search.indexer.grpc;
+
+import com.google.common.base.MoreObjects;
+import com.krickert.search.service.EmbeddingServiceGrpc;
+import com.krickert.search.service.EmbeddingsVectorReply;
+import com.krickert.search.service.EmbeddingsVectorsReply;
+import com.krickert.search.service.EmbeddingsVectorsRequest;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.ClientResponseObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Sends embedding batches over one long-lived bidirectional stream instead of a unary call per batch.
+ * <br>
+ * The server answers the batches in the order they were sent, so each reply completes the oldest batch still
+ * waiting. A batch is only written while the stream is ready and fewer than the in-flight limit are waiting for a
+ * reply. Everything else queues until the server catches up. If the stream breaks, the batches it had not answered
+ * or sent go to the unary client and the next batch opens a new stream. If the server does not have the streaming method,
+ * every call from then on goes to the unary client.
+ */
+public class StreamingEmbeddingClient implements EmbeddingClient {
+    private static final Logger log = LoggerFactory.getLogger(StreamingEmbeddingClient.class);
+
+    /**
+     * The bidirectional streaming method of the embedding service. Each request is a batch of texts and each reply
+     * holds their vectors in the same order.
+     */
+    static final MethodDescriptor<EmbeddingsVectorsRequest, EmbeddingsVectorsReply> CREATE_EMBEDDINGS_VECTORS_STREAM =
+            MethodDescriptor.<EmbeddingsVectorsRequest, EmbeddingsVectorsReply>newBuilder()
+                    .setType(MethodDescriptor.MethodType.BIDI_STREAMING)
+                    .setFullMethodName(MethodDescriptor.generateFullMethodName(EmbeddingServiceGrpc.SERVICE_NAME,
+                            "createEmbeddingsVectorsStream"))
+                    .setRequestMarshaller(ProtoUtils.marshaller(EmbeddingsVectorsRequest.getDefaultInstance()))
+                    .setResponseMarshaller(ProtoUtils.marshaller(EmbeddingsVectorsReply.getDefaultInstance()))
+                    .build();
+
+    private final String serviceName;
+    private final Channel channel;
+    private final EmbeddingClient unaryClient;
+    private final int maxInFlight;
+    private final Deque<PendingBatch> unsent = new ArrayDeque<>();
+    private final Deque<PendingBatch> awaitingReply = new ArrayDeque<>();
+    private ClientCallStreamObserver<EmbeddingsVectorsRequest> requestStream;
+    private boolean streamingUnavailable = false;
+
+    /**
+     * @param unaryClient takes the calls the stream cannot answer
+     * @param maxInFlight most batches sent on the stream and not yet answered
+     */
+    public StreamingEmbeddingClient(String serviceName, Channel channel, EmbeddingClient unaryClient, int maxInFlight) {
+        this.serviceName = checkNotNull(serviceName);
+        this.channel = checkNotNull(channel);
+        this.unaryClient = checkNotNull(unaryClient);
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingsVectorReply> createEmbeddingsVector(String text) {
+        return createEmbeddingsVectors(List.of(text)).thenApply(reply -> reply.getEmbeddings(0));
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingsVectorsReply> createEmbeddingsVectors(List<String> texts) {
+        PendingBatch batch = new PendingBatch(EmbeddingsVectorsRequest.newBuilder().addAllText(texts).build());
+        synchronized (this) {
+            if (!streamingUnavailable) {
+                unsent.add(batch);
+                sendReadyBatches();
+                return batch.reply;
+            }
+        }
+        return unaryClient.createEmbeddingsVectors(texts);
+    }
+
+    private synchronized void sendReadyBatches() {
+        if (streamingUnavailable || unsent.isEmpty()) {
+            return;
+        }
+        if (requestStream == null) {
+            openStream();
+        }
+        // the stream can close while batches are written, since replies may be delivered on this thread
+        while (requestStream != null && !unsent.isEmpty() && awaitingReply.size() < maxInFlight && requestStream.isReady()) {
+            PendingBatch batch = unsent.poll();
+            awaitingReply.add(batch);
+            requestStream.onNext(batch.request);
+        }
+    }
+
+    private void openStream() {
+        log.info("Opening an embedding stream to {}", serviceName);
+        ClientCalls.asyncBidiStreamingCall(channel.newCall(CREATE_EMBEDDINGS_VECTORS_STREAM, CallOptions.DEFAULT),
+                new ReplyObserver());
+    }
+
+    private void replyReceived(ReplyObserver stream, EmbeddingsVectorsReply reply) {
+        PendingBatch batch;
+        synchronized (this) {
+            if (stream.requestStream != requestStream) {
+                return;
+            }
+            batch = awaitingReply.poll();
+        }
+        if (batch == null) {
+            log.warn("{} sent an embedding reply with no batch waiting for it", serviceName);
+        } else if (reply.getEmbeddingsCount() != batch.request.getTextCount()) {
+            IllegalStateException mismatch = new IllegalStateException("Embedding service returned "
+                    + reply.getEmbeddingsCount() + " vectors for " + batch.request.getTextCount() + " texts");
+            FutureGrpcClient.CALLBACK_EXECUTOR.execute(() -> batch.reply.completeExceptionally(mismatch));
+        } else {
+            FutureGrpcClient.CALLBACK_EXECUTOR.execute(() -> batch.reply.complete(reply));
+        }
+        sendReadyBatches();
+    }
+
+    private void streamClosed(ReplyObserver stream, Throwable error) {
+        List<PendingBatch> unanswered;
+        List<PendingBatch> queued = new ArrayList<>();
+        synchronized (this) {
+            if (stream.requestStream != requestStream) {
+                return;
+            }
+            requestStream = null;
+            unanswered = new ArrayList<>(awaitingReply);
+            awaitingReply.clear();
+            if (error != null) {
+                // queued batches go too, so a server that keeps failing the stream is not reconnected in a loop
+                queued.addAll(unsent);
+                unsent.clear();
+                if (Status.fromThrowable(error).getCode() == Status.Code.UNIMPLEMENTED) {
+                    log.warn("{} has no embedding stream. Falling back to unary calls", serviceName);
+                    streamingUnavailable = true;
+                } else {
+                    log.warn("Embedding stream to {} failed with {}. {} batches go to unary calls",
+                            serviceName, error.getMessage(), unanswered.size() + queued.size());
+                }
+            }
+        }
+        unanswered.addAll(queued);
+        for (PendingBatch batch : unanswered) {
+            unaryClient.createEmbeddingsVectors(batch.request.getTextList()).whenComplete((reply, failure) -> {
+                if (failure != null) {
+                    batch.reply.completeExceptionally(GrpcRetries.unwrap(failure));
+                } else {
+                    batch.reply.complete(reply);
+                }
+            });
+        }
+        sendReadyBatches();
+    }
+
+    /**
+     * Ends the stream once the batches sent on it are answered.
+     */
+    public synchronized void close() {
+        if (requestStream != null) {
+            requestStream.onCompleted();
+        }
+    }
+
+    public synchronized boolean isStreaming() {
+        return !streamingUnavailable;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("serviceName", serviceName)
+                .add("maxInFlight", maxInFlight)
+                .add("awaitingReply", awaitingReply.size())
+                .add("unsent", unsent.size())
+                .add("streaming", !streamingUnavailable)
+                .toString();
+    }
+
+    private class ReplyObserver implements ClientResponseObserver<EmbeddingsVectorsRequest, EmbeddingsVectorsReply> {
+        private ClientCallStreamObserver<EmbeddingsVectorsRequest> requestStream;
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<EmbeddingsVectorsRequest> requestStream) {
+            this.requestStream = requestStream;
+            StreamingEmbeddingClient.this.requestStream = requestStream;
+            // the transport calls this once it can take more batches
+            requestStream.setOnReadyHandler(StreamingEmbeddingClient.this::sendReadyBatches);
+        }
+
+        @Override
+        public void onNext(EmbeddingsVectorsReply reply) {
+            replyReceived(this, reply);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            streamClosed(this, t);
+        }
+
+        @Override
+        public void onCompleted() {
+            streamClosed(this, null);
+        }
+    }
+
+    private static class PendingBatch {
+        private final EmbeddingsVectorsRequest request;
+        private final CompletableFuture<EmbeddingsVectorsReply> reply = new CompletableFuture<>();
+
+        private PendingBatch(EmbeddingsVectorsRequest request) {
+            this.request = request;
+        }
+    }
+}
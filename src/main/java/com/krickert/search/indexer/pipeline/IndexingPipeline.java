@@ -0,0 +1,84 @@
+package com.krickert.search.indexer.pipeline;
+
+import com.krickert.search.indexer.config.IndexerConfigurationProperties;
+import com.krickert.search.indexer.dto.PipelineStageStatus;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The stages a source document goes through after it is read from the source collection and parsed.
+ * <br>
+ * Enrich runs the listeners over each document, which read its fields and add the inline vectors. Chunk and embed
+ * wrap the calls to the chunker and embedding services, and index wraps the writes to the destination collections.
+ * Each stage is sized on its own with indexer.pipeline, so once the stage statuses show the bottleneck only that
+ * stage needs more workers.
+ */
+@Singleton
+public class IndexingPipeline {
+    private static final Logger log = LoggerFactory.getLogger(IndexingPipeline.class);
+    static final int DEFAULT_CONCURRENCY = 4;
+    static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    public enum Stage {
+        ENRICH,
+        CHUNK,
+        EMBED,
+        INDEX;
+
+        public String configName() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final Map<Stage, PipelineStage> stages = new EnumMap<>(Stage.class);
+
+    @Inject
+    public IndexingPipeline(IndexerConfigurationProperties indexerConfigurationProperties) {
+        this(indexerConfigurationProperties.getPipeline());
+    }
+
+    public IndexingPipeline(IndexerConfigurationProperties.Pipeline pipeline) {
+        Map<String, Integer> concurrency = pipeline == null || pipeline.getConcurrency() == null ?
+                Collections.emptyMap() : pipeline.getConcurrency();
+        Map<String, Integer> queueCapacity = pipeline == null || pipeline.getQueueCapacity() == null ?
+                Collections.emptyMap() : pipeline.getQueueCapacity();
+        for (Stage stage : Stage.values()) {
+            PipelineStage pipelineStage = new PipelineStage(stage.configName(),
+                    concurrency.getOrDefault(stage.configName(), DEFAULT_CONCURRENCY),
+                    queueCapacity.getOrDefault(stage.configName(), DEFAULT_QUEUE_CAPACITY));
+            stages.put(stage, pipelineStage);
+        }
+        log.info("Indexing pipeline stages: {}", stages.values());
+    }
+
+    public PipelineStage getStage(Stage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * Starts the throughput and busy time of every stage over, so they describe the crawl that is starting.
+     */
+    public void resetMetrics() {
+        stages.values().forEach(PipelineStage::resetMetrics);
+    }
+
+    public List<PipelineStageStatus> getStatus() {
+        List<PipelineStageStatus> status = new ArrayList<>(stages.size());
+        stages.values().forEach(stage -> status.add(stage.getStatus()));
+        return status;
+    }
+
+    @PreDestroy
+    public void close() {
+        stages.values().forEach(PipelineStage::shutdown);
+    }
+}
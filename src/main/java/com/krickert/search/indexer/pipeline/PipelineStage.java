@@ -0,0 +1,190 @@
+package com.krickert.search.indexer.pipeline;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.krickert.search.indexer.dto.PipelineStageStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * One step of the indexing pipeline with its own bounded queue and worker pool.
+ * <br>
+ * At most {@code concurrency} tasks run at once, each started on one of the stage's workers. A task may return a
+ * future that is still running, such as a gRPC call, and it holds its slot until that future completes. Up to
+ * {@code queueCapacity} more tasks wait in the queue. Past that, {@link #submit} blocks the caller, so a slow stage
+ * holds back the stage that feeds it instead of the whole pipeline buffering in memory.
+ * <br>
+ * A failed task completes its future with a {@link StageFailedException} naming the stage. The stage counts the
+ * tasks it completed and failed and the time they spent running. Throughput and utilization are measured from the
+ * last {@link #resetMetrics()}.
+ */
+public class PipelineStage {
+    private static final Logger log = LoggerFactory.getLogger(PipelineStage.class);
+    private static final long BLOCKED_WARNING_SECONDS = 60L;
+
+    private final String name;
+    private final int concurrency;
+    private final int queueCapacity;
+    private final Semaphore admitted;
+    private final ExecutorService workers;
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private int running = 0;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private volatile long metricsStartNanos = System.nanoTime();
+
+    public PipelineStage(String name, int concurrency, int queueCapacity) {
+        this.name = name;
+        this.concurrency = Math.max(1, concurrency);
+        this.queueCapacity = Math.max(0, queueCapacity);
+        this.admitted = new Semaphore(this.concurrency + this.queueCapacity);
+        this.workers = Executors.newFixedThreadPool(this.concurrency, new ThreadFactoryBuilder()
+                .setNameFormat(name + "-stage-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Queues a task, blocking while the queue is full.
+     *
+     * @param task runs on a worker of this stage. The slot is held until the future it returns completes.
+     * @return completes with the task's future
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> task) {
+        admit();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> workers.execute(() -> run(task, result));
+        boolean startNow;
+        synchronized (this) {
+            startNow = running < concurrency;
+            if (startNow) {
+                running++;
+            } else {
+                waiting.add(start);
+            }
+        }
+        if (startNow) {
+            start.run();
+        }
+        return result;
+    }
+
+    private void admit() {
+        try {
+            while (!admitted.tryAcquire(BLOCKED_WARNING_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("The {} stage has had {} tasks waiting for {} seconds. It is the bottleneck of the pipeline",
+                        name, queueCapacity, BLOCKED_WARNING_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to queue a task for the " + name + " stage", e);
+        }
+    }
+
+    private <T> void run(Supplier<CompletableFuture<T>> task, CompletableFuture<T> result) {
+        long started = System.nanoTime();
+        CompletableFuture<T> taskResult;
+        try {
+            taskResult = task.get();
+        } catch (RuntimeException e) {
+            taskResult = CompletableFuture.failedFuture(e);
+        }
+        taskResult.whenComplete((value, error) -> {
+            busyNanos.addAndGet(System.nanoTime() - started);
+            if (error == null) {
+                completed.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+            }
+            release();
+            if (error == null) {
+                result.complete(value);
+            } else {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                result.completeExceptionally(cause instanceof StageFailedException ? cause : new StageFailedException(name, cause));
+            }
+        });
+    }
+
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                running--;
+            }
+        }
+        admitted.release();
+        // the slot passes straight to the next waiting task
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    public void resetMetrics() {
+        completed.set(0);
+        failed.set(0);
+        busyNanos.set(0);
+        metricsStartNanos = System.nanoTime();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized int getQueueDepth() {
+        return waiting.size();
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public PipelineStageStatus getStatus() {
+        PipelineStageStatus status = new PipelineStageStatus();
+        long elapsedNanos = Math.max(1L, System.nanoTime() - metricsStartNanos);
+        long busy = busyNanos.get();
+        long done = completed.get();
+        status.setName(name);
+        status.setConcurrency(concurrency);
+        status.setQueueCapacity(queueCapacity);
+        status.setQueueDepth(getQueueDepth());
+        status.setRunning(getRunning());
+        status.setCompleted(done);
+        status.setFailed(failed.get());
+        status.setThroughputPerSecond((float) (done * 1e9 / elapsedNanos));
+        status.setBusyMillis(TimeUnit.NANOSECONDS.toMillis(busy));
+        status.setUtilization((float) busy / elapsedNanos / concurrency);
+        return status;
+    }
+
+    void shutdown() {
+        workers.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("name", name)
+                .add("concurrency", concurrency)
+                .add("queueCapacity", queueCapacity)
+                .add("queueDepth", getQueueDepth())
+                .add("running", getRunning())
+                .add("completed", completed.get())
+                .add("failed", failed.get())
+                .toString();
+    }
+}
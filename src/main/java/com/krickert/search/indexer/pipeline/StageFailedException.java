@@ -0,0 +1,29 @@
+package com.krickert.search.indexer.pipeline;
+
+/**
+ * A task failed in a pipeline stage. Carries the name of the stage so the failure can be traced back to it.
+ */
+public class StageFailedException extends RuntimeException {
+    private final String stage;
+
+    public StageFailedException(String stage, Throwable cause) {
+        super(cause.getMessage(), cause);
+        this.stage = stage;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    /**
+     * @return the stage that failed somewhere in the causes of the error, or the default stage if none did
+     */
+    public static String stageOf(Throwable error, String defaultStage) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof StageFailedException stageFailedException) {
+                return stageFailedException.getStage();
+            }
+        }
+        return defaultStage;
+    }
+}
@@ -0,0 +1,99 @@
+package com.krickert.search.indexer.solr;
+
+import com.krickert.search.indexer.solr.httpclient.select.HttpSolrSelectResponse;
+import jakarta.inject.Singleton;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.NamedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes wt=javabin select responses with SolrJ's binary codec and turns them into {@link SolrInputDocument}s.
+ * <br>
+ * Solr 4.0 and later all speak javabin version 2, so the same decoder reads a 7.x source and a 9.x destination.
+ * Older versions should keep using {@link JsonToSolrDocParser}.
+ */
+@Singleton
+public class JavabinToSolrDocParser {
+    private static final Logger log = LoggerFactory.getLogger(JavabinToSolrDocParser.class);
+    private static final int FIRST_JAVABIN_V2_MAJOR_VERSION = 4;
+
+    public JavabinToSolrDocParser() {
+        log.info("Created JavabinToSolrDocParser");
+    }
+
+    /**
+     * Checks if a Solr server of the given version answers wt=javabin with a format this codec can read.
+     *
+     * @param solrVersion the version recorded in the solr configuration, such as 7.7.3. A missing version is assumed to be current.
+     * @return true if javabin can be used against that server
+     */
+    public static boolean supportsJavabin(String solrVersion) {
+        if (StringUtils.isBlank(solrVersion)) {
+            return true;
+        }
+        try {
+            int majorVersion = Integer.parseInt(StringUtils.substringBefore(solrVersion.trim(), "."));
+            return majorVersion >= FIRST_JAVABIN_V2_MAJOR_VERSION;
+        } catch (NumberFormatException e) {
+            log.warn("Could not read the major version from solr version {}. Assuming javabin is supported.", solrVersion);
+            return true;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public HttpSolrSelectResponse parseSolrDocuments(InputStream inputStream) {
+        final NamedList<Object> responseList;
+        try (InputStream in = inputStream) {
+            responseList = (NamedList<Object>) new JavaBinCodec().unmarshal(in);
+        } catch (Exception e) {
+            log.error("Error decoding javabin Solr response", e);
+            throw new RuntimeException(e);
+        }
+
+        HttpSolrSelectResponse.Builder responseBuilder = new HttpSolrSelectResponse.Builder();
+        NamedList<Object> responseHeader = (NamedList<Object>) responseList.get("responseHeader");
+        if (responseHeader != null && responseHeader.get("QTime") instanceof Number qtime) {
+            responseBuilder.qtime(qtime.longValue());
+        }
+        Object nextCursorMark = responseList.get("nextCursorMark");
+        if (nextCursorMark != null) {
+            responseBuilder.nextCursorMark(nextCursorMark.toString());
+        }
+
+        SolrDocumentList docs = (SolrDocumentList) responseList.get("response");
+        List<SolrInputDocument> solrDocuments = new ArrayList<>(docs == null ? 0 : docs.size());
+        if (docs != null) {
+            responseBuilder.numFound(docs.getNumFound()).start(docs.getStart());
+            for (SolrDocument doc : docs) {
+                SolrInputDocument solrDoc = toSolrInputDocument(doc);
+                solrDoc.remove("_version_");
+                solrDocuments.add(solrDoc);
+            }
+        } else {
+            responseBuilder.numFound(0L).start(0L);
+        }
+        return responseBuilder.docs(solrDocuments).build();
+    }
+
+    private static SolrInputDocument toSolrInputDocument(SolrDocument doc) {
+        SolrInputDocument solrDoc = new SolrInputDocument();
+        for (String fieldName : doc.getFieldNames()) {
+            solrDoc.addField(fieldName, doc.getFieldValue(fieldName));
+        }
+        if (doc.hasChildDocuments()) {
+            for (SolrDocument child : doc.getChildDocuments()) {
+                solrDoc.addChildDocument(toSolrInputDocument(child));
+            }
+        }
+        return solrDoc;
+    }
+}
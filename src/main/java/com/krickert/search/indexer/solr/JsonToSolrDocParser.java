@@ -18,6 +18,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 @Singleton
 public class JsonToSolrDocParser {
@@ -85,6 +86,8 @@ public class JsonToSolrDocParser {
         Long numFound = Long.parseLong(response.get("numFound").toString());
         Long qtime = Long.parseLong(responseHeader.get("QTime").toString());
         Long start = Long.parseLong(response.get("start").toString());
+        // Only present when the request was sent with a cursorMark
+        String nextCursorMark = map.get("nextCursorMark") == null ? null : map.get("nextCursorMark").toString();
 
         // Assuming pageSize is not available in the json response
         Long pageSize = null;
@@ -97,35 +100,87 @@ public class JsonToSolrDocParser {
                 .start(start)
                 .docs(solrDocuments)
                 .pageSize(pageSize)
+                .nextCursorMark(nextCursorMark)
                 .build();
     }
 
     private final JsonFactory factory = new JsonFactory();
 
-    public List<SolrInputDocument> parseSolrDocuments(InputStream inputStream) {
+    /**
+     * Parses a select response straight from the response body without buffering it. Documents are built as their
+     * tokens are read, so a page only exists once in memory as {@link SolrInputDocument}s.
+     *
+     * @param inputStream the body of a wt=json select response. It is closed once parsing is done.
+     * @return the parsed response with its documents, numFound, start, QTime and nextCursorMark when present
+     */
+    public HttpSolrSelectResponse parseSolrDocuments(InputStream inputStream) {
         List<SolrInputDocument> solrDocuments = new ArrayList<>();
+        HttpSolrSelectResponse response = streamSolrDocuments(inputStream, solrDocuments::add);
+        return response.toBuilder().docs(solrDocuments).build();
+    }
+
+    /**
+     * Parses a select or export response and hands every document to the handler as soon as it is decoded. Nothing
+     * is kept between documents, so the memory used does not grow with the size of the response.
+     *
+     * @param inputStream the body of a wt=json response. It is closed once parsing is done.
+     * @param documentHandler called for each document in the order Solr wrote them
+     * @return the response header values with an empty document list
+     */
+    public HttpSolrSelectResponse streamSolrDocuments(InputStream inputStream, Consumer<SolrInputDocument> documentHandler) {
+        HttpSolrSelectResponse.Builder responseBuilder = new HttpSolrSelectResponse.Builder();
         try (JsonParser parser = factory.createParser(inputStream)) {
-            String currentField = null;
-            while (!parser.isClosed()) {
-                JsonToken token = parser.nextToken();
-                if (token == JsonToken.FIELD_NAME) {
-                    currentField = parser.currentName();
-                } else if ("docs".equals(currentField) && token == JsonToken.START_ARRAY) {
-                    // Start processing documents array
-                    token = parser.nextToken();
-                    while (token != JsonToken.END_ARRAY) {
-                        SolrInputDocument solrDoc = parseSolrDocument(parser);
-                        solrDoc.remove("_version_");
-                        solrDocuments.add(solrDoc);
-                        token = parser.nextToken();
-                    }
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalStateException("Solr response is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                parser.nextToken();
+                switch (fieldName) {
+                    case "responseHeader" -> parseResponseHeader(parser, responseBuilder);
+                    case "response" -> parseResponse(parser, responseBuilder, documentHandler);
+                    case "nextCursorMark" -> responseBuilder.nextCursorMark(parser.getValueAsString());
+                    default -> parser.skipChildren();
                 }
             }
         } catch (Exception e) {
             log.error("Error parsing Solr documents", e);
             throw new RuntimeException(e);
         }
-        return solrDocuments;
+        return responseBuilder.docs(List.of()).build();
+    }
+
+    private void parseResponseHeader(JsonParser parser, HttpSolrSelectResponse.Builder responseBuilder) throws Exception {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            parser.nextToken();
+            if ("QTime".equals(fieldName)) {
+                responseBuilder.qtime(parser.getValueAsLong());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseResponse(JsonParser parser, HttpSolrSelectResponse.Builder responseBuilder,
+                               Consumer<SolrInputDocument> documentHandler) throws Exception {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("numFound".equals(fieldName)) {
+                responseBuilder.numFound(parser.getValueAsLong());
+            } else if ("start".equals(fieldName)) {
+                responseBuilder.start(parser.getValueAsLong());
+            } else if ("docs".equals(fieldName) && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    SolrInputDocument solrDoc = parseSolrDocument(parser);
+                    solrDoc.remove("_version_");
+                    documentHandler.accept(solrDoc);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
     }
 
     private SolrInputDocument parseSolrDocument(JsonParser parser) throws Exception {
@@ -138,13 +193,17 @@ public class JsonToSolrDocParser {
             } else if (token == JsonToken.VALUE_STRING) {
                 solrDoc.addField(fieldName, parser.getValueAsString());
             } else if (token == JsonToken.VALUE_NUMBER_INT) {
-                solrDoc.addField(fieldName, parser.getValueAsInt());
+                solrDoc.addField(fieldName, parser.getNumberValue());
             } else if (token == JsonToken.VALUE_NUMBER_FLOAT) {
                 solrDoc.addField(fieldName, parser.getValueAsDouble());
             } else if (token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE) {
                 solrDoc.addField(fieldName, parser.getValueAsBoolean());
             } else if (token == JsonToken.START_ARRAY) {
                 solrDoc.addField(fieldName, parseArray(parser));
+            } else if (token == JsonToken.START_OBJECT) {
+                solrDoc.addField(fieldName, parseSolrDocument(parser));
+            } else if (token == JsonToken.VALUE_NULL) {
+                log.debug("Skipping null value for field {}", fieldName);
             } else {
                 log.warn("Unhandled token type: {}", token);
             }
@@ -159,7 +218,7 @@ public class JsonToSolrDocParser {
             if (token == JsonToken.VALUE_STRING) {
                 list.add(parser.getValueAsString());
             } else if (token == JsonToken.VALUE_NUMBER_INT) {
-                list.add(parser.getValueAsInt());
+                list.add(parser.getNumberValue());
             } else if (token == JsonToken.VALUE_NUMBER_FLOAT) {
                 list.add(parser.getValueAsDouble());
             } else if (token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE) {
@@ -11,6 +11,7 @@ public class SchemaConstants {
     public static final String PARENT_FIELD_NAME = "parent-field-name";
     public static final String PARENT_ID = "parent-id";
     public static final String PARENT_COLLECTION = "parent-collection";
+    public static final String VECTOR_FINGERPRINT = "vector-fingerprint";
 
 
 }
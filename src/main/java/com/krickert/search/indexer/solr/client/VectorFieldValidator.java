@@ -81,6 +81,31 @@ public class VectorFieldValidator {
         return fieldNameCreated;
     }
 
+    /**
+     * Adds a stored string field with docValues unless the collection already has a field of that name. The indexer
+     * writes such fields itself, and a collection created before they existed, or from a configset that does not
+     * create unknown fields, would reject them.
+     */
+    public void validateStringField(String fieldName, String collection) throws IOException, SolrServerException {
+        SchemaRequest.Fields fieldsRequest = new SchemaRequest.Fields();
+        boolean fieldExists = fieldsRequest.process(solrClient, collection).getFields().stream()
+                .anyMatch(fieldInfo -> fieldName.equals(fieldInfo.get("name")));
+        if (fieldExists) {
+            log.info("Field {} exists in collection {}. No need to create it.", fieldName, collection);
+            return;
+        }
+        Map<String, Object> fieldAttributes = new HashMap<>();
+        fieldAttributes.put("name", fieldName);
+        fieldAttributes.put("type", "string");
+        fieldAttributes.put("stored", true);
+        fieldAttributes.put("indexed", true);
+        fieldAttributes.put("docValues", true);
+
+        SchemaRequest.AddField addFieldRequest = new SchemaRequest.AddField(fieldAttributes);
+        solrClient.request(addFieldRequest, collection);
+        log.info("Created field {} in collection {}", fieldName, collection);
+    }
+
     private void validateFieldTypeAttributes(
             String similarityFunction, Integer hnswMaxConnections, Integer hnswBeamWidth, Integer dimensionality,
             FieldTypeRepresentation fieldTypeRepresentation, String vectorFieldType) {
@@ -0,0 +1,111 @@
+package com.krickert.search.indexer.solr.httpclient.select;
+
+import com.google.common.base.MoreObjects;
+import com.krickert.search.indexer.config.SolrConfiguration;
+
+/**
+ * Picks the rows for each source request.
+ * <br>
+ * When adaptive paging is off every page asks for the configured pagination size. When it is on the sizer keeps a
+ * smoothed estimate of the time and bytes each row costs and moves the page size toward whichever of the latency
+ * target and the response byte target is reached first. A single step never more than doubles or halves the size, so
+ * one outlier page can not swing the crawl. The sizer is shared by every slice of a crawl and is thread safe.
+ */
+public class AdaptivePageSizer {
+    private static final double SMOOTHING = 0.3;
+
+    private final boolean adaptive;
+    private final int minRows;
+    private final int maxRows;
+    private final long targetLatencyNanos;
+    private final long targetResponseBytes;
+
+    private int currentRows;
+    private int smallestRows;
+    private int largestRows;
+    private double nanosPerRow = -1;
+    private double bytesPerRow = -1;
+
+    public AdaptivePageSizer(int initialRows, SolrConfiguration.AdaptivePaging adaptivePaging) {
+        this.adaptive = adaptivePaging != null && adaptivePaging.isEnabled();
+        if (adaptive) {
+            this.minRows = Math.max(1, valueOrDefault(adaptivePaging.getMinRows(), 1));
+            this.maxRows = Math.max(minRows, valueOrDefault(adaptivePaging.getMaxRows(), initialRows));
+            this.targetLatencyNanos = valueOrDefault(adaptivePaging.getTargetLatencyMillis(), 2000L) * 1_000_000L;
+            this.targetResponseBytes = valueOrDefault(adaptivePaging.getTargetResponseBytes(), Long.MAX_VALUE);
+        } else {
+            this.minRows = initialRows;
+            this.maxRows = initialRows;
+            this.targetLatencyNanos = Long.MAX_VALUE;
+            this.targetResponseBytes = Long.MAX_VALUE;
+        }
+        this.currentRows = clamp(initialRows, minRows, maxRows);
+        this.smallestRows = currentRows;
+        this.largestRows = currentRows;
+    }
+
+    public synchronized int nextPageSize() {
+        return currentRows;
+    }
+
+    /**
+     * Feeds the cost of a finished page back into the estimate.
+     *
+     * @param documentsReturned the number of documents on the page
+     * @param elapsedNanos the time from sending the request to having the page parsed
+     * @param responseBytes the size of the response body, or null when it is not known
+     */
+    public synchronized void recordPage(int documentsReturned, long elapsedNanos, Long responseBytes) {
+        if (!adaptive || documentsReturned < 1) {
+            return;
+        }
+        nanosPerRow = smooth(nanosPerRow, (double) elapsedNanos / documentsReturned);
+        if (responseBytes != null && responseBytes > 0) {
+            bytesPerRow = smooth(bytesPerRow, (double) responseBytes / documentsReturned);
+        }
+        double idealRows = nanosPerRow > 0 ? targetLatencyNanos / nanosPerRow : maxRows;
+        if (bytesPerRow > 0) {
+            idealRows = Math.min(idealRows, targetResponseBytes / bytesPerRow);
+        }
+        int nextRows = (int) Math.max(currentRows / 2.0, Math.min(currentRows * 2.0, idealRows));
+        currentRows = clamp(nextRows, minRows, maxRows);
+        smallestRows = Math.min(smallestRows, currentRows);
+        largestRows = Math.max(largestRows, currentRows);
+    }
+
+    public synchronized int getSmallestPageSize() {
+        return smallestRows;
+    }
+
+    public synchronized int getLargestPageSize() {
+        return largestRows;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    private static double smooth(double previous, double sample) {
+        return previous < 0 ? sample : previous + SMOOTHING * (sample - previous);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static <T> T valueOrDefault(T value, T defaultValue) {
+        return value == null ? defaultValue : value;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("adaptive", adaptive)
+                .add("currentRows", currentRows)
+                .add("smallestRows", smallestRows)
+                .add("largestRows", largestRows)
+                .add("nanosPerRow", nanosPerRow)
+                .add("bytesPerRow", bytesPerRow)
+                .toString();
+    }
+}
@@ -0,0 +1,132 @@
+package com.krickert.search.indexer.solr.httpclient.select;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A hand-off between the thread that reads source pages and the thread that publishes them.
+ * <br>
+ * The buffer holds at most {@code maxPages} pages and at most {@code maxBytes} response bytes. A page that is larger
+ * than the byte budget on its own is still let in when the buffer is empty, so one huge page can not stall the crawl.
+ * Producers block while the buffer is full and consumers block while it is empty.
+ */
+public class BoundedPageBuffer {
+    private final int maxPages;
+    private final long maxBytes;
+    private final Deque<HttpSolrSelectResponse> pages = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    private long bufferedBytes = 0;
+    private boolean finished = false;
+    private Throwable failure;
+
+    public BoundedPageBuffer(int maxPages, long maxBytes) {
+        if (maxPages < 1) {
+            throw new IllegalArgumentException("maxPages must be at least 1 but was " + maxPages);
+        }
+        this.maxPages = maxPages;
+        this.maxBytes = maxBytes < 1 ? Long.MAX_VALUE : maxBytes;
+    }
+
+    /**
+     * Adds a page, waiting until there is room for it.
+     */
+    public void put(HttpSolrSelectResponse page) throws InterruptedException {
+        long pageBytes = pageBytes(page);
+        lock.lockInterruptibly();
+        try {
+            while (!pages.isEmpty() && (pages.size() >= maxPages || bufferedBytes + pageBytes > maxBytes)) {
+                notFull.await();
+            }
+            pages.addLast(page);
+            bufferedBytes += pageBytes;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next page, waiting until one is available.
+     *
+     * @return the next page or null once the producer has finished and every page has been taken
+     * @throws PageBufferException if the producer failed
+     */
+    public HttpSolrSelectResponse take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (pages.isEmpty()) {
+                if (failure != null) {
+                    throw new PageBufferException("Reading source pages failed", failure);
+                }
+                if (finished) {
+                    return null;
+                }
+                notEmpty.await();
+            }
+            HttpSolrSelectResponse page = pages.removeFirst();
+            bufferedBytes -= pageBytes(page);
+            notFull.signalAll();
+            return page;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks that no more pages will be added.
+     */
+    public void finish() {
+        lock.lock();
+        try {
+            finished = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks that the producer failed. The consumer sees the failure on its next take once the buffer is empty.
+     */
+    public void fail(Throwable cause) {
+        lock.lock();
+        try {
+            failure = cause;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getBufferedPages() {
+        lock.lock();
+        try {
+            return pages.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBufferedBytes() {
+        lock.lock();
+        try {
+            return bufferedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long pageBytes(HttpSolrSelectResponse page) {
+        return page.getResponseBytes() == null ? 0 : page.getResponseBytes();
+    }
+
+    public static class PageBufferException extends RuntimeException {
+        public PageBufferException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
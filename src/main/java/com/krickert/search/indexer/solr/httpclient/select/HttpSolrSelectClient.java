@@ -1,13 +1,56 @@
 package com.krickert.search.indexer.solr.httpclient.select;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
 
 public interface HttpSolrSelectClient {
     String getSolrDocs(String solrHost, String solrCollection, Integer paginationSize, Integer pageNumber);
 
     String getSolrDocs(Integer paginationSize, Integer pageNumber) throws IOException, InterruptedException;
 
+    String getSolrDocs(HttpSolrSelectRequest selectRequest);
+
+    /**
+     * Sends the select request and hands back the response body without buffering it.
+     * The caller must close the returned stream.
+     */
+    InputStream getSolrDocsAsStream(HttpSolrSelectRequest selectRequest);
+
     Long getTotalNumberOfDocumentsForCollection();
 
     Long getTotalNumberOfDocumentsForCollection(String solr7Host, String solr7Collection);
+
+    /**
+     * Counts the documents a crawl with the configured source filters plus the given filters would read.
+     */
+    Long getTotalNumberOfDocumentsForCollection(String solr7Host, String solr7Collection, Collection<String> filters);
+
+    /**
+     * Looks up the highest value of a sortable single valued field among the documents that match the configured
+     * source filters.
+     *
+     * @return the value as Solr wrote it, or null if no document has the field
+     */
+    String getMaxFieldValue(String solr7Host, String solr7Collection, String fieldName);
+
+    /**
+     * @return the number of shards of a SolrCloud collection, or 1 when the source is not running in SolrCloud mode
+     */
+    int getShardCount(String solrHost, String solrCollection);
+
+    /**
+     * Reads the fields of a collection schema, with the defaults of their field types applied.
+     *
+     * @return whether each field has docValues, by field name
+     */
+    Map<String, Boolean> getFieldDocValues(String solrHost, String solrCollection);
+
+    /**
+     * Reads the dynamic fields of a collection schema, with the defaults of their field types applied.
+     *
+     * @return whether each dynamic field has docValues, by pattern
+     */
+    Map<String, Boolean> getDynamicFieldDocValues(String solrHost, String solrCollection);
 }
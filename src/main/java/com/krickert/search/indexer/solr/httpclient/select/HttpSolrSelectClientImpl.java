@@ -7,6 +7,7 @@ import com.krickert.search.indexer.config.SolrConfiguration;
 import io.micronaut.context.annotation.Value;
 import io.micronaut.core.util.CollectionUtils;
 import io.micronaut.http.HttpRequest;
+import io.micronaut.http.MutableHttpRequest;
 import io.micronaut.http.client.HttpClient;
 import io.micronaut.http.client.annotation.Client;
 import io.micronaut.http.uri.UriBuilder;
@@ -17,9 +18,16 @@ import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
@@ -35,10 +43,14 @@ public class HttpSolrSelectClientImpl implements HttpSolrSelectClient {
     private final SolrConfiguration sourceSolrConfiguration;
     private final Collection<String> filters;
     private final ObjectMapper objectMapper;
+    private final java.net.http.HttpClient streamingHttpClient;
+    private final Duration readTimeout;
 
     @Inject
     public HttpSolrSelectClientImpl(@Client HttpClient httpClient,
-                                    IndexerConfiguration configuration) {
+                                    IndexerConfiguration configuration,
+                                    @Value("${micronaut.http.client.connect-timeout:10s}") Duration connectTimeout,
+                                    @Value("${micronaut.http.client.read-timeout:360s}") Duration readTimeout) {
         log.info("Creating Http-based solr client");
         this.httpClient = checkNotNull(httpClient);
         checkNotNull(configuration);
@@ -54,6 +66,12 @@ public class HttpSolrSelectClientImpl implements HttpSolrSelectClient {
         }
         this.filters = filters;
         this.objectMapper = new ObjectMapper();
+        this.readTimeout = checkNotNull(readTimeout);
+        // the micronaut client aggregates the whole body before handing it over, so the streaming path uses the JDK client
+        this.streamingHttpClient = java.net.http.HttpClient.newBuilder()
+                .followRedirects(java.net.http.HttpClient.Redirect.NORMAL)
+                .connectTimeout(checkNotNull(connectTimeout))
+                .build();
         log.info("Created Http-based solr client");
     }
 
@@ -78,24 +96,67 @@ public class HttpSolrSelectClientImpl implements HttpSolrSelectClient {
         }
     }
 
+    @Retryable
+    @Override
+    public String getSolrDocs(HttpSolrSelectRequest selectRequest) {
+        try {
+            return getResponseAsString(createSolrRequest(selectRequest));
+        } catch (Exception e) {
+            log.error("Failed to get Solr documents for request {}", selectRequest, e);
+            throw new RuntimeException("Failed to get Solr documents", e);
+        }
+    }
+
+    @Retryable
+    @Override
+    public InputStream getSolrDocsAsStream(HttpSolrSelectRequest selectRequest) {
+        try {
+            return getResponseAsStream(createSolrRequest(selectRequest));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while getting Solr documents", e);
+        } catch (Exception e) {
+            log.error("Failed to get Solr documents for request {}", selectRequest, e);
+            throw new RuntimeException("Failed to get Solr documents", e);
+        }
+    }
+
+    private InputStream getResponseAsStream(URI uri) throws IOException, InterruptedException {
+        java.net.http.HttpRequest.Builder request = java.net.http.HttpRequest.newBuilder(uri)
+                .timeout(readTimeout)
+                .GET();
+        // the headers, authentication included, come from the same request the micronaut client sends
+        createRequest(uri).getHeaders().forEach((name, values) -> values.forEach(value -> request.header(name, value)));
+        HttpResponse<InputStream> response = streamingHttpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200) {
+            try (InputStream errorBody = response.body()) {
+                throw new IOException("Solr returned status " + response.statusCode() + " for " + uri + ": " +
+                        new String(errorBody.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return response.body();
+    }
+
     private String getResponseAsString(URI uri) throws ExecutionException, InterruptedException {
-        HttpRequest<?> request = HttpRequest.GET(uri);
+        Future<String> futureResponse = Single.fromPublisher(httpClient.retrieve(createRequest(uri), String.class)).toFuture();
+        return futureResponse.get();
+    }
+
+    private MutableHttpRequest<?> createRequest(URI uri) {
+        MutableHttpRequest<?> request = HttpRequest.GET(uri);
 
         // If authentication is enabled, enhance the request with the basic auth header
         if (sourceSolrConfiguration.getConnection().getAuthentication() != null &&
                 sourceSolrConfiguration.getConnection().getAuthentication().isEnabled()) {
             SolrConfiguration.Connection.Authentication authentication = sourceSolrConfiguration.getConnection().getAuthentication();
             if ("basic".equalsIgnoreCase(authentication.getType())) {
-                request = HttpRequest.GET(uri)
-                        .basicAuth(authentication.getUserName(), authentication.getPassword());
+                request = request.basicAuth(authentication.getUserName(), authentication.getPassword());
             } else {
                 log.warn("Source authentication type '{}' is not supported. Skipping authentication for Solr request to {}",
                         authentication.getType(), sourceSolrConfiguration.getConnection().getUrl());
             }
         }
-
-        Future<String> futureResponse = Single.fromPublisher(httpClient.retrieve(request, String.class)).toFuture();
-        return futureResponse.get();
+        return request;
     }
 
     private URI createSolrRequest(Integer paginationSize, Integer pageNumber) {
@@ -116,6 +177,41 @@ public class HttpSolrSelectClientImpl implements HttpSolrSelectClient {
         return builder.build();
     }
 
+    private URI createSolrRequest(HttpSolrSelectRequest selectRequest) {
+        String host = selectRequest.getSolrHost() == null ? solrHost : selectRequest.getSolrHost();
+        String collection = selectRequest.getSolrCollection() == null ? solrCollection : selectRequest.getSolrCollection();
+        UriBuilder builder = UriBuilder.of(host)
+                .path(collection)
+                .path(selectRequest.getRequestHandler() == null ? HttpSolrSelectRequest.SELECT_HANDLER : selectRequest.getRequestHandler())
+                .queryParam("q", "*:*")
+                .queryParam("wt", selectRequest.isJavabinRequest() ? HttpSolrSelectRequest.WIRE_FORMAT_JAVABIN : HttpSolrSelectRequest.WIRE_FORMAT_JSON);
+        // the export handler streams every matching document, so there is nothing to page through
+        if (!selectRequest.isExportRequest()) {
+            builder.queryParam("rows", selectRequest.getRows());
+            if (selectRequest.isCursorMarkRequest()) {
+                // cursorMark requests must start at 0 and be sorted on the uniqueKey
+                builder.queryParam("cursorMark", selectRequest.getCursorMark());
+            } else {
+                builder.queryParam("start", selectRequest.getStart() == null ? 0L : selectRequest.getStart());
+            }
+        }
+        if (selectRequest.getSort() != null) {
+            builder.queryParam("sort", selectRequest.getSort());
+        }
+        if (selectRequest.getFieldList() != null) {
+            builder.queryParam("fl", selectRequest.getFieldList());
+        }
+        for (String filter : filters) {
+            builder.queryParam("fq", filter);
+        }
+        if (selectRequest.getFilters() != null) {
+            for (String filter : selectRequest.getFilters()) {
+                builder.queryParam("fq", filter);
+            }
+        }
+        return builder.build();
+    }
+
     @Override
     public Long getTotalNumberOfDocumentsForCollection() {
         return getTotalNumberOfDocumentsForCollection(solrHost, solrCollection);
@@ -147,4 +243,105 @@ public class HttpSolrSelectClientImpl implements HttpSolrSelectClient {
             throw new RuntimeException("Failed to fetch the total number of documents", e);
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public Long getTotalNumberOfDocumentsForCollection(String solrHost, String solrCollection, Collection<String> extraFilters) {
+        try {
+            UriBuilder builder = UriBuilder.of(solrHost)
+                    .path(solrCollection)
+                    .path("select")
+                    .queryParam("q", "*:*")
+                    .queryParam("wt", "json")
+                    .queryParam("rows", 0);
+            for (String filter : filters) {
+                builder.queryParam("fq", filter);
+            }
+            for (String filter : extraFilters) {
+                builder.queryParam("fq", filter);
+            }
+            JsonNode jsonNode = objectMapper.readTree(getResponseAsString(builder.build()));
+            return jsonNode.path("response").path("numFound").asLong();
+        } catch (Exception e) {
+            log.error("Failed to fetch the number of documents matching {}", extraFilters, e);
+            throw new RuntimeException("Failed to fetch the number of documents", e);
+        }
+    }
+
+    @Override
+    public String getMaxFieldValue(String solrHost, String solrCollection, String fieldName) {
+        try {
+            UriBuilder builder = UriBuilder.of(solrHost)
+                    .path(solrCollection)
+                    .path("select")
+                    .queryParam("q", "*:*")
+                    .queryParam("wt", "json")
+                    .queryParam("rows", 1)
+                    .queryParam("fl", fieldName)
+                    .queryParam("fq", fieldName + ":*")
+                    .queryParam("sort", fieldName + " desc");
+            // the mark has to come from the documents the crawl reads, not from ones it filters out
+            for (String filter : filters) {
+                builder.queryParam("fq", filter);
+            }
+            JsonNode docs = objectMapper.readTree(getResponseAsString(builder.build())).path("response").path("docs");
+            if (docs.isEmpty() || docs.get(0).path(fieldName).isMissingNode()) {
+                return null;
+            }
+            return docs.get(0).path(fieldName).asText();
+        } catch (Exception e) {
+            log.error("Failed to fetch the highest {} in {}", fieldName, solrCollection, e);
+            throw new RuntimeException("Failed to fetch the highest value of " + fieldName, e);
+        }
+    }
+
+    @Override
+    public int getShardCount(String solrHost, String solrCollection) {
+        URI solrRequestUrl = UriBuilder.of(solrHost)
+                .path("admin")
+                .path("collections")
+                .queryParam("action", "CLUSTERSTATUS")
+                .queryParam("collection", solrCollection)
+                .queryParam("wt", "json")
+                .build();
+        try {
+            JsonNode shards = objectMapper.readTree(getResponseAsString(solrRequestUrl))
+                    .path("cluster").path("collections").path(solrCollection).path("shards");
+            return Math.max(1, shards.size());
+        } catch (Exception e) {
+            // a standalone Solr answers the collections API with an error
+            log.debug("Could not read the cluster status of {}. Treating it as a single shard.", solrCollection, e);
+            return 1;
+        }
+    }
+
+    @Override
+    public Map<String, Boolean> getFieldDocValues(String solrHost, String solrCollection) {
+        return getSchemaDocValues(solrHost, solrCollection, "fields", "fields");
+    }
+
+    @Override
+    public Map<String, Boolean> getDynamicFieldDocValues(String solrHost, String solrCollection) {
+        return getSchemaDocValues(solrHost, solrCollection, "dynamicfields", "dynamicFields");
+    }
+
+    private Map<String, Boolean> getSchemaDocValues(String solrHost, String solrCollection, String schemaPath, String responseKey) {
+        try {
+            // showDefaults fills in the docValues a field inherits from its field type
+            URI solrRequestUrl = UriBuilder.of(solrHost)
+                    .path(solrCollection)
+                    .path("schema")
+                    .path(schemaPath)
+                    .queryParam("showDefaults", true)
+                    .queryParam("wt", "json")
+                    .build();
+            Map<String, Boolean> docValues = new LinkedHashMap<>();
+            for (JsonNode field : objectMapper.readTree(getResponseAsString(solrRequestUrl)).path(responseKey)) {
+                docValues.put(field.path("name").asText(), field.path("docValues").asBoolean(false));
+            }
+            return docValues;
+        } catch (Exception e) {
+            log.error("Failed to read the {} of the {} schema", schemaPath, solrCollection, e);
+            throw new RuntimeException("Failed to read the " + schemaPath + " of the " + solrCollection + " schema", e);
+        }
+    }
+}
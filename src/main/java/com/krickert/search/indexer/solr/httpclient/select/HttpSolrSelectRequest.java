@@ -0,0 +1,199 @@
+package com.krickert.search.indexer.solr.httpclient.select;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Describes a single page request against a source Solr select handler.
+ * <br>
+ * When a cursor mark is set the request is sent as a cursorMark deep paging request and the
+ * start offset is ignored. Solr requires a sort on the uniqueKey for those requests.
+ * <br>
+ * Requests against the export handler ignore rows, start and the cursor mark. Solr streams the whole sorted result
+ * set in one response and needs a sort and a field list of docValues fields.
+ */
+public class HttpSolrSelectRequest {
+    public static final String CURSOR_MARK_START = "*";
+    public static final String WIRE_FORMAT_JSON = "json";
+    public static final String WIRE_FORMAT_JAVABIN = "javabin";
+    public static final String SELECT_HANDLER = "select";
+    public static final String EXPORT_HANDLER = "export";
+
+    private final String solrHost;
+    private final String solrCollection;
+    private final Integer rows;
+    private final Long start;
+    private final String cursorMark;
+    private final String sort;
+    private final Collection<String> filters;
+    private final String wireFormat;
+    private final String fieldList;
+    private final String requestHandler;
+
+    private HttpSolrSelectRequest(Builder builder) {
+        this.solrHost = builder.solrHost;
+        this.solrCollection = builder.solrCollection;
+        this.rows = builder.rows;
+        this.start = builder.start;
+        this.cursorMark = builder.cursorMark;
+        this.sort = builder.sort;
+        this.filters = builder.filters;
+        this.wireFormat = builder.wireFormat;
+        this.fieldList = builder.fieldList;
+        this.requestHandler = builder.requestHandler;
+    }
+
+    public String getSolrHost() {
+        return solrHost;
+    }
+
+    public String getSolrCollection() {
+        return solrCollection;
+    }
+
+    public Integer getRows() {
+        return rows;
+    }
+
+    public Long getStart() {
+        return start;
+    }
+
+    public String getCursorMark() {
+        return cursorMark;
+    }
+
+    public String getSort() {
+        return sort;
+    }
+
+    public Collection<String> getFilters() {
+        return filters;
+    }
+
+    public String getWireFormat() {
+        return wireFormat;
+    }
+
+    /**
+     * @return the fl parameter sent to Solr, or null to have every stored field returned
+     */
+    public String getFieldList() {
+        return fieldList;
+    }
+
+    public String getRequestHandler() {
+        return requestHandler;
+    }
+
+    public boolean isExportRequest() {
+        return EXPORT_HANDLER.equals(requestHandler);
+    }
+
+    public boolean isJavabinRequest() {
+        return WIRE_FORMAT_JAVABIN.equalsIgnoreCase(wireFormat);
+    }
+
+    public boolean isCursorMarkRequest() {
+        return cursorMark != null;
+    }
+
+    public Builder toBuilder() {
+        return new Builder()
+                .solrHost(solrHost)
+                .solrCollection(solrCollection)
+                .rows(rows)
+                .start(start)
+                .cursorMark(cursorMark)
+                .sort(sort)
+                .filters(filters)
+                .wireFormat(wireFormat)
+                .fieldList(fieldList)
+                .requestHandler(requestHandler);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("solrHost", solrHost)
+                .add("solrCollection", solrCollection)
+                .add("rows", rows)
+                .add("start", start)
+                .add("cursorMark", cursorMark)
+                .add("sort", sort)
+                .add("filters", filters)
+                .add("wireFormat", wireFormat)
+                .add("fieldList", fieldList)
+                .add("requestHandler", requestHandler)
+                .toString();
+    }
+
+    public static class Builder {
+        private String solrHost;
+        private String solrCollection;
+        private Integer rows;
+        private Long start = 0L;
+        private String cursorMark;
+        private String sort;
+        private Collection<String> filters = Collections.emptyList();
+        private String wireFormat = WIRE_FORMAT_JSON;
+        private String fieldList;
+        private String requestHandler = SELECT_HANDLER;
+
+        public Builder solrHost(String solrHost) {
+            this.solrHost = solrHost;
+            return this;
+        }
+
+        public Builder solrCollection(String solrCollection) {
+            this.solrCollection = solrCollection;
+            return this;
+        }
+
+        public Builder rows(Integer rows) {
+            this.rows = rows;
+            return this;
+        }
+
+        public Builder start(Long start) {
+            this.start = start;
+            return this;
+        }
+
+        public Builder cursorMark(String cursorMark) {
+            this.cursorMark = cursorMark;
+            return this;
+        }
+
+        public Builder sort(String sort) {
+            this.sort = sort;
+            return this;
+        }
+
+        public Builder filters(Collection<String> filters) {
+            this.filters = filters;
+            return this;
+        }
+
+        public Builder wireFormat(String wireFormat) {
+            this.wireFormat = wireFormat;
+            return this;
+        }
+
+        public Builder fieldList(String fieldList) {
+            this.fieldList = fieldList;
+            return this;
+        }
+
+        public Builder requestHandler(String requestHandler) {
+            this.requestHandler = requestHandler;
+            return this;
+        }
+
+        public HttpSolrSelectRequest build() {
+            return new HttpSolrSelectRequest(this);
+        }
+    }
+}
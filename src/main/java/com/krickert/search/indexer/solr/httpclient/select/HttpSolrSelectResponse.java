@@ -10,6 +10,8 @@ public class HttpSolrSelectResponse {
     private final Long start;
     private final Collection<SolrInputDocument> docs;
     private final Long pageSize;
+    private final String nextCursorMark;
+    private final Long responseBytes;
 
     private HttpSolrSelectResponse(Builder builder) {
         this.numFound = builder.numFound;
@@ -17,6 +19,8 @@ public class HttpSolrSelectResponse {
         this.start = builder.start;
         this.docs = builder.docs;
         this.pageSize = builder.pageSize;
+        this.nextCursorMark = builder.nextCursorMark;
+        this.responseBytes = builder.responseBytes;
     }
 
     public Long getNumFound() {
@@ -39,12 +43,36 @@ public class HttpSolrSelectResponse {
         return pageSize;
     }
 
+    public String getNextCursorMark() {
+        return nextCursorMark;
+    }
+
+    /**
+     * @return the number of bytes read off the wire for this page, or null if they were not counted
+     */
+    public Long getResponseBytes() {
+        return responseBytes;
+    }
+
+    public Builder toBuilder() {
+        return new Builder()
+                .numFound(numFound)
+                .qtime(qtime)
+                .start(start)
+                .docs(docs)
+                .pageSize(pageSize)
+                .nextCursorMark(nextCursorMark)
+                .responseBytes(responseBytes);
+    }
+
     public static class Builder {
         private Long numFound;
         private Long qtime;
         private Long start;
         private Collection<SolrInputDocument> docs;
         private Long pageSize;
+        private String nextCursorMark;
+        private Long responseBytes;
 
         public Builder numFound(Long numFound) {
             this.numFound = numFound;
@@ -71,6 +99,16 @@ public class HttpSolrSelectResponse {
             return this;
         }
 
+        public Builder nextCursorMark(String nextCursorMark) {
+            this.nextCursorMark = nextCursorMark;
+            return this;
+        }
+
+        public Builder responseBytes(Long responseBytes) {
+            this.responseBytes = responseBytes;
+            return this;
+        }
+
         public HttpSolrSelectResponse build() {
             return new HttpSolrSelectResponse(this);
         }
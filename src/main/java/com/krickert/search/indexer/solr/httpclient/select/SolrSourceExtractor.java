@@ -0,0 +1,428 @@
+package com.krickert.search.indexer.solr.httpclient.select;
+
+import com.google.common.io.CountingInputStream;
+import com.krickert.search.indexer.IndexingFailedExecption;
+import com.krickert.search.indexer.config.SolrConfiguration;
+import com.krickert.search.indexer.solr.JavabinToSolrDocParser;
+import com.krickert.search.indexer.solr.JsonToSolrDocParser;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.apache.solr.common.SolrInputDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads every page of a source collection and hands each one to a page handler.
+ * <br>
+ * The source can be read with start/rows paging, with cursorMark deep paging, as one export handler stream or as
+ * concurrent hash partitions. Any of those can be put behind a read-ahead buffer so that the next pages are fetched
+ * while the handler is still publishing the current one.
+ */
+@Singleton
+public class SolrSourceExtractor {
+    private static final Logger log = LoggerFactory.getLogger(SolrSourceExtractor.class);
+    private static final long DEFAULT_PREFETCH_MAX_BYTES = 64L * 1024 * 1024;
+
+    private final HttpSolrSelectClient httpSolrSelectClient;
+    private final JsonToSolrDocParser jsonToSolrDoc;
+    private final JavabinToSolrDocParser javabinToSolrDoc;
+    private final SourceFieldListResolver sourceFieldListResolver;
+
+    @Inject
+    public SolrSourceExtractor(HttpSolrSelectClient httpSolrSelectClient,
+                               JsonToSolrDocParser jsonToSolrDoc,
+                               JavabinToSolrDocParser javabinToSolrDoc,
+                               SourceFieldListResolver sourceFieldListResolver) {
+        this.httpSolrSelectClient = checkNotNull(httpSolrSelectClient);
+        this.jsonToSolrDoc = checkNotNull(jsonToSolrDoc);
+        this.javabinToSolrDoc = checkNotNull(javabinToSolrDoc);
+        this.sourceFieldListResolver = checkNotNull(sourceFieldListResolver);
+    }
+
+    /**
+     * Reads the source collection described by the configuration.
+     *
+     * @param sourceSolrConfiguration the source solr configuration
+     * @param totalExpected the number of documents the source reported. Only start/rows paging relies on it.
+     * @param pageHandler called once for every page. It is called from a single thread unless the source is read in
+     *                    partitions without a read-ahead buffer.
+     */
+    public void extract(SolrConfiguration sourceSolrConfiguration, long totalExpected,
+                        Consumer<HttpSolrSelectResponse> pageHandler) throws IndexingFailedExecption {
+        extract(sourceSolrConfiguration, totalExpected, List.of(), SourcePosition.START, pageHandler);
+    }
+
+    /**
+     * Reads the part of the source collection that matches the given filters, on top of the configured ones.
+     *
+     * @param totalExpected the number of documents left to read from the start position
+     * @param crawlFilters extra fq parameters for this crawl only, such as an incremental watermark
+     * @param startPosition where to start reading. Only start/rows and cursor mark crawls can start part way through.
+     */
+    public void extract(SolrConfiguration sourceSolrConfiguration, long totalExpected, Collection<String> crawlFilters,
+                        SourcePosition startPosition, Consumer<HttpSolrSelectResponse> pageHandler) throws IndexingFailedExecption {
+        int prefetchPages = sourceSolrConfiguration.getPrefetchPages() == null ? 0 : sourceSolrConfiguration.getPrefetchPages();
+        if (prefetchPages < 1) {
+            readPages(sourceSolrConfiguration, totalExpected, crawlFilters, startPosition, pageHandler);
+            return;
+        }
+        long prefetchMaxBytes = sourceSolrConfiguration.getPrefetchMaxBytes() == null ?
+                DEFAULT_PREFETCH_MAX_BYTES : sourceSolrConfiguration.getPrefetchMaxBytes();
+        log.info("Reading source collection {} with up to {} pages and {} bytes read ahead",
+                sourceSolrConfiguration.getCollection(), prefetchPages, prefetchMaxBytes);
+        BoundedPageBuffer pageBuffer = new BoundedPageBuffer(prefetchPages, prefetchMaxBytes);
+        ExecutorService readAheadExecutor = Executors.newSingleThreadExecutor();
+        try {
+            readAheadExecutor.submit(() -> {
+                try {
+                    readPages(sourceSolrConfiguration, totalExpected, crawlFilters, startPosition, page -> putPage(pageBuffer, page));
+                    pageBuffer.finish();
+                } catch (Throwable e) {
+                    pageBuffer.fail(e);
+                }
+            });
+            HttpSolrSelectResponse page;
+            while ((page = pageBuffer.take()) != null) {
+                pageHandler.accept(page);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexingFailedExecption("Reading source pages was interrupted", e);
+        } catch (BoundedPageBuffer.PageBufferException e) {
+            throw new IndexingFailedExecption("Reading source collection " + sourceSolrConfiguration.getCollection() + " failed", e.getCause());
+        } finally {
+            readAheadExecutor.shutdownNow();
+        }
+    }
+
+    private static void putPage(BoundedPageBuffer pageBuffer, HttpSolrSelectResponse page) {
+        try {
+            pageBuffer.put(page);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while buffering a source page", e);
+        }
+    }
+
+    private void readPages(SolrConfiguration sourceSolrConfiguration, long totalExpected, Collection<String> crawlFilters,
+                           SourcePosition startPosition, Consumer<HttpSolrSelectResponse> pageHandler) throws IndexingFailedExecption {
+        int paginationSize = sourceSolrConfiguration.getConnection().getPaginationSize() == null ? 100 : sourceSolrConfiguration.getConnection().getPaginationSize();
+        boolean exportExtraction = isExportExtraction(sourceSolrConfiguration);
+        HttpSolrSelectRequest baseRequest = new HttpSolrSelectRequest.Builder()
+                .solrHost(sourceSolrConfiguration.getConnection().getUrl())
+                .solrCollection(sourceSolrConfiguration.getCollection())
+                .rows(paginationSize)
+                .filters(crawlFilters)
+                .wireFormat(resolveWireFormat(sourceSolrConfiguration))
+                .fieldList(exportExtraction ?
+                        sourceFieldListResolver.resolveExportFieldList(sourceSolrConfiguration) :
+                        sourceFieldListResolver.resolveFieldList(sourceSolrConfiguration))
+                .build();
+        if (exportExtraction) {
+            baseRequest = createExportRequest(baseRequest);
+        }
+        AdaptivePageSizer pageSizer = new AdaptivePageSizer(paginationSize, sourceSolrConfiguration.getAdaptivePaging());
+        SourceReadThrottle throttle = new SourceReadThrottle(sourceSolrConfiguration.getThrottle());
+        int partitionCount = sourceSolrConfiguration.getPartitionCount() == null ? 1 : sourceSolrConfiguration.getPartitionCount();
+        if (!startPosition.isStart()) {
+            if (partitionCount > 1 || exportExtraction) {
+                log.warn("Partitioned and export crawls can not start part way through. Reading source collection {} from the start.",
+                        sourceSolrConfiguration.getCollection());
+            } else {
+                log.info("Reading source collection {} from {}", sourceSolrConfiguration.getCollection(), startPosition);
+                baseRequest = baseRequest.toBuilder()
+                        .start(startPosition.getStart())
+                        .cursorMark(startPosition.getCursorMark())
+                        .build();
+            }
+        }
+        if (partitionCount > 1) {
+            if (!exportExtraction && !isCursorMarkExtraction(sourceSolrConfiguration)) {
+                log.info("Partitions of source collection {} are each read with cursorMark paging. Ignoring the {} extraction mode",
+                        sourceSolrConfiguration.getCollection(), sourceSolrConfiguration.getExtractionMode());
+            }
+            readPartitionedPages(baseRequest, sourceSolrConfiguration.getUniqueKey(), partitionCount,
+                    sourceSolrConfiguration.getConnection().getThreadCount(), pageSizer, throttle, pageHandler);
+        } else if (exportExtraction) {
+            readExportStream(baseRequest, sourceSolrConfiguration.getUniqueKey(), throttle, pageHandler);
+        } else if (isCursorMarkExtraction(sourceSolrConfiguration)) {
+            readCursorMarkPages(baseRequest, sourceSolrConfiguration.getUniqueKey(), pageSizer, throttle, pageHandler);
+        } else {
+            readOffsetPages(baseRequest, totalExpected, pageSizer, throttle, pageHandler);
+        }
+        if (pageSizer.isAdaptive()) {
+            log.info("Adaptive paging of source collection {} finished with {}", sourceSolrConfiguration.getCollection(), pageSizer);
+        }
+    }
+
+    /**
+     * Walks the source collection with start/rows paging until the offset passes the document count. The rows of
+     * each page come from the page sizer, so each offset is the sum of the pages before it.
+     *
+     * @param baseRequest the host, collection, wire format and field list every page is requested with. Its start is
+     *                    the offset of the first page.
+     * @param totalExpected the number of documents to read from that offset
+     */
+    public void readOffsetPages(HttpSolrSelectRequest baseRequest, long totalExpected, AdaptivePageSizer pageSizer,
+                                SourceReadThrottle throttle, Consumer<HttpSolrSelectResponse> pageHandler) {
+        long start = baseRequest.getStart() == null ? 0L : baseRequest.getStart();
+        long end = start + totalExpected;
+        while (start < end) {
+            int rows = pageSizer.nextPageSize();
+            HttpSolrSelectResponse response = fetchPage(baseRequest.toBuilder()
+                    .rows(rows)
+                    .start(start)
+                    .build(), pageSizer, throttle);
+            start += rows;
+            if (isEmptyResponse(response)) {
+                log.info("No solr documents in source collection. Breaking.");
+                return;
+            }
+            if (!response.getDocs().isEmpty()) {
+                pageHandler.accept(response);
+            }
+        }
+    }
+
+    /**
+     * Walks the source collection with cursorMark deep paging. Each page is sorted on the uniqueKey and the
+     * nextCursorMark of one page is sent with the next request, so every page costs the same no matter how deep
+     * the crawl is. The crawl is over once Solr hands back the same cursor mark that was sent.
+     *
+     * @param baseRequest the request every page is built from. Its filters select the slice to read and its cursor
+     *                    mark, when set, is where reading starts.
+     */
+    public void readCursorMarkPages(HttpSolrSelectRequest baseRequest, String uniqueKey, AdaptivePageSizer pageSizer,
+                                    SourceReadThrottle throttle, Consumer<HttpSolrSelectResponse> pageHandler) {
+        String cursorMark = baseRequest.isCursorMarkRequest() ? baseRequest.getCursorMark() : HttpSolrSelectRequest.CURSOR_MARK_START;
+        while (true) {
+            HttpSolrSelectResponse response = fetchPage(baseRequest.toBuilder()
+                    .rows(pageSizer.nextPageSize())
+                    .cursorMark(cursorMark)
+                    .sort(uniqueKey + " asc")
+                    .build(), pageSizer, throttle);
+            if (!response.getDocs().isEmpty()) {
+                pageHandler.accept(response);
+            }
+            String nextCursorMark = response.getNextCursorMark();
+            if (nextCursorMark == null || nextCursorMark.equals(cursorMark)) {
+                log.info("Cursor mark {} did not change. Finished reading source collection {} {}", cursorMark,
+                        baseRequest.getSolrCollection(), baseRequest.getFilters());
+                return;
+            }
+            cursorMark = nextCursorMark;
+        }
+    }
+
+    /**
+     * Reads the source collection from the export handler as one continuous stream. Documents are decoded one at a
+     * time and handed over in pages of the request's rows as soon as a page fills up, so memory stays flat no matter
+     * how large the collection is. Every exported field needs docValues. The throttle is paid for each page as it is
+     * handed over, so a throttled stream is read only as fast as the byte rate allows and stops between pages while
+     * a 0% window is open.
+     *
+     * @param baseRequest an export request. Its filters select the slice to read.
+     */
+    public void readExportStream(HttpSolrSelectRequest baseRequest, String uniqueKey, SourceReadThrottle throttle,
+                                 Consumer<HttpSolrSelectResponse> pageHandler) {
+        HttpSolrSelectRequest exportRequest = baseRequest.toBuilder()
+                .sort(uniqueKey + " asc")
+                .build();
+        int pageSize = exportRequest.getRows() == null || exportRequest.getRows() < 1 ? 100 : exportRequest.getRows();
+        log.info("Streaming source collection {} {} from the export handler", exportRequest.getSolrCollection(), exportRequest.getFilters());
+        throttle.acquireRequest();
+        try (CountingInputStream responseBody = new CountingInputStream(httpSolrSelectClient.getSolrDocsAsStream(exportRequest))) {
+            ExportPageCollector collector = new ExportPageCollector(pageSize, responseBody, page -> {
+                throttle.acquirePage();
+                throttle.recordResponse(page.getResponseBytes(), null);
+                pageHandler.accept(page);
+            });
+            HttpSolrSelectResponse exportResponse = jsonToSolrDoc.streamSolrDocuments(responseBody, collector::add);
+            collector.flush();
+            log.info("Finished streaming {} of {} documents from source collection {} {}", collector.getDocumentCount(),
+                    exportResponse.getNumFound(), exportRequest.getSolrCollection(), exportRequest.getFilters());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read export stream " + exportRequest, e);
+        }
+    }
+
+    /**
+     * Splits the source collection into disjoint hash slices of the uniqueKey and reads each slice with its own
+     * cursorMark crawl, or its own export stream when the base request targets the export handler. A partitioned crawl
+     * in pagination mode is read with cursorMark too. Slices are read concurrently, bounded by the source connection
+     * thread count. Solr's hash query parser needs docValues on the uniqueKey field.
+     */
+    public void readPartitionedPages(HttpSolrSelectRequest baseRequest, String uniqueKey, int partitionCount,
+                                     Integer threadCount, AdaptivePageSizer pageSizer, SourceReadThrottle throttle,
+                                     Consumer<HttpSolrSelectResponse> pageHandler) throws IndexingFailedExecption {
+        String solrCollection = baseRequest.getSolrCollection();
+        int parallelism = Math.min(partitionCount, threadCount == null || threadCount < 1 ? 1 : threadCount);
+        log.info("Reading source collection {} in {} partitions with a parallelism of {}", solrCollection, partitionCount, parallelism);
+        ExecutorService extractionExecutor = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<?>> partitions = new ArrayList<>(partitionCount);
+            for (int worker = 0; worker < partitionCount; worker++) {
+                List<String> sliceFilters = new ArrayList<>(baseRequest.getFilters());
+                sliceFilters.add(createPartitionFilter(uniqueKey, partitionCount, worker));
+                HttpSolrSelectRequest sliceRequest = baseRequest.toBuilder()
+                        .filters(sliceFilters)
+                        .build();
+                if (sliceRequest.isExportRequest()) {
+                    partitions.add(extractionExecutor.submit(() -> readExportStream(sliceRequest, uniqueKey, throttle, pageHandler)));
+                } else {
+                    partitions.add(extractionExecutor.submit(() -> readCursorMarkPages(sliceRequest, uniqueKey, pageSizer, throttle, pageHandler)));
+                }
+            }
+            for (Future<?> partition : partitions) {
+                partition.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexingFailedExecption("Partitioned extraction was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IndexingFailedExecption("Partitioned extraction failed for collection " + solrCollection, e.getCause());
+        } finally {
+            extractionExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Fetches a page once the throttle lets it through and feeds its latency and size back into the page sizer and
+     * its size and QTime into the throttle. The rows asked for are recorded as the page size of the response.
+     */
+    private HttpSolrSelectResponse fetchPage(HttpSolrSelectRequest selectRequest, AdaptivePageSizer pageSizer,
+                                             SourceReadThrottle throttle) {
+        throttle.acquireRequest();
+        long startTime = System.nanoTime();
+        HttpSolrSelectResponse response = fetchPage(selectRequest);
+        pageSizer.recordPage(response.getDocs().size(), System.nanoTime() - startTime, response.getResponseBytes());
+        throttle.recordResponse(response.getResponseBytes(), response.getQtime());
+        return response.toBuilder().pageSize(selectRequest.getRows().longValue()).build();
+    }
+
+    /**
+     * Streams the page straight from the response body into the token parser, so the page is never held as a
+     * string or a map tree before it becomes input documents. The bytes read off the wire are recorded on the page.
+     */
+    public HttpSolrSelectResponse fetchPage(HttpSolrSelectRequest selectRequest) {
+        try (CountingInputStream responseBody = new CountingInputStream(httpSolrSelectClient.getSolrDocsAsStream(selectRequest))) {
+            HttpSolrSelectResponse response = selectRequest.isJavabinRequest() ?
+                    javabinToSolrDoc.parseSolrDocuments(responseBody) :
+                    jsonToSolrDoc.parseSolrDocuments(responseBody);
+            return response.toBuilder().responseBytes(responseBody.getCount()).build();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read source page " + selectRequest, e);
+        }
+    }
+
+    static String createPartitionFilter(String partitionKey, int workers, int worker) {
+        return "{!hash workers=" + workers + " worker=" + worker + " partitionKeys=" + partitionKey + "}";
+    }
+
+    static String resolveWireFormat(SolrConfiguration sourceSolrConfiguration) {
+        if (!HttpSolrSelectRequest.WIRE_FORMAT_JAVABIN.equalsIgnoreCase(sourceSolrConfiguration.getWireFormat())) {
+            return HttpSolrSelectRequest.WIRE_FORMAT_JSON;
+        }
+        if (!JavabinToSolrDocParser.supportsJavabin(sourceSolrConfiguration.getVersion())) {
+            log.warn("Source solr version {} does not support javabin version 2. Reading the source as json instead.",
+                    sourceSolrConfiguration.getVersion());
+            return HttpSolrSelectRequest.WIRE_FORMAT_JSON;
+        }
+        return HttpSolrSelectRequest.WIRE_FORMAT_JAVABIN;
+    }
+
+    private static HttpSolrSelectRequest createExportRequest(HttpSolrSelectRequest baseRequest) {
+        if (baseRequest.isJavabinRequest()) {
+            log.info("The export handler is read as json. Ignoring the javabin wire format for source collection {}", baseRequest.getSolrCollection());
+        }
+        return baseRequest.toBuilder()
+                .requestHandler(HttpSolrSelectRequest.EXPORT_HANDLER)
+                .wireFormat(HttpSolrSelectRequest.WIRE_FORMAT_JSON)
+                .build();
+    }
+
+    /**
+     * @return true if a crawl of this source can be started again part way through. Partitioned and export crawls
+     * hand over pages in an order that has no single position to restart from.
+     */
+    public static boolean isResumable(SolrConfiguration sourceSolrConfiguration) {
+        int partitionCount = sourceSolrConfiguration.getPartitionCount() == null ? 1 : sourceSolrConfiguration.getPartitionCount();
+        return partitionCount <= 1 && !isExportExtraction(sourceSolrConfiguration);
+    }
+
+    private static boolean isExportExtraction(SolrConfiguration sourceSolrConfiguration) {
+        return "export".equalsIgnoreCase(sourceSolrConfiguration.getExtractionMode());
+    }
+
+    private static boolean isCursorMarkExtraction(SolrConfiguration sourceSolrConfiguration) {
+        return "cursor-mark".equalsIgnoreCase(sourceSolrConfiguration.getExtractionMode());
+    }
+
+    private static boolean isEmptyResponse(HttpSolrSelectResponse response) {
+        return response.getNumFound() == null || response.getNumFound() == 0;
+    }
+
+    /**
+     * Groups streamed documents into pages. Solr reports a failure part way through an export as a document with an
+     * EXCEPTION field, which is turned into an error here instead of being indexed.
+     */
+    private static class ExportPageCollector {
+        private final int pageSize;
+        private final CountingInputStream responseBody;
+        private final Consumer<HttpSolrSelectResponse> pageHandler;
+        private List<SolrInputDocument> page;
+        private long documentCount = 0;
+        private long pageStartBytes = 0;
+
+        private ExportPageCollector(int pageSize, CountingInputStream responseBody, Consumer<HttpSolrSelectResponse> pageHandler) {
+            this.pageSize = pageSize;
+            this.responseBody = responseBody;
+            this.pageHandler = pageHandler;
+            this.page = new ArrayList<>(pageSize);
+        }
+
+        private void add(SolrInputDocument document) {
+            if (document.containsKey("EXCEPTION")) {
+                throw new IllegalStateException("Solr export failed: " + document.getFieldValue("EXCEPTION"));
+            }
+            page.add(document);
+            documentCount++;
+            if (page.size() >= pageSize) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (page.isEmpty()) {
+                return;
+            }
+            long bytesRead = responseBody.getCount();
+            pageHandler.accept(new HttpSolrSelectResponse.Builder()
+                    .docs(page)
+                    .start(documentCount - page.size())
+                    .pageSize((long) page.size())
+                    .responseBytes(bytesRead - pageStartBytes)
+                    .build());
+            pageStartBytes = bytesRead;
+            page = new ArrayList<>(pageSize);
+        }
+
+        private long getDocumentCount() {
+            return documentCount;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.krickert.search.indexer.solr.httpclient.select;
+
+import com.krickert.search.indexer.IndexingFailedExecption;
+import com.krickert.search.indexer.config.IndexerConfiguration;
+import com.krickert.search.indexer.config.SolrConfiguration;
+import com.krickert.search.indexer.config.VectorConfig;
+import com.krickert.search.indexer.solr.client.SolrClientService;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.schema.SchemaRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Works out the fl parameter for source queries.
+ * <br>
+ * A blank field list keeps the Solr default of every stored field. The value {@value #AUTO_FIELD_LIST} builds the list
+ * from the fields and dynamic field patterns of the destination collection schema, plus the source fields the vector
+ * configs chunk and embed, so fields the destination would drop are never sent over the wire. Any other value is sent
+ * as is.
+ * <br>
+ * The export handler only returns concrete fields with docValues, so an export crawl checks its list against the
+ * source schema first. See {@link #resolveExportFieldList(SolrConfiguration)}.
+ */
+@Singleton
+public class SourceFieldListResolver {
+    private static final Logger log = LoggerFactory.getLogger(SourceFieldListResolver.class);
+    public static final String AUTO_FIELD_LIST = "auto";
+    private static final Set<String> INTERNAL_FIELDS = Set.of("_version_", "_root_", "_nest_path_", "_nest_parent_");
+
+    private final SolrClient solrClient;
+    private final HttpSolrSelectClient httpSolrSelectClient;
+    private final IndexerConfiguration indexerConfiguration;
+
+    @Inject
+    public SourceFieldListResolver(SolrClientService solrClientService, HttpSolrSelectClient httpSolrSelectClient,
+                                   IndexerConfiguration indexerConfiguration) {
+        this.solrClient = checkNotNull(solrClientService.inlineSolrClient());
+        this.httpSolrSelectClient = checkNotNull(httpSolrSelectClient);
+        this.indexerConfiguration = checkNotNull(indexerConfiguration);
+    }
+
+    /**
+     * @param sourceSolrConfiguration the source solr configuration
+     * @return the fl to send, or null when every stored field should be returned
+     */
+    public String resolveFieldList(SolrConfiguration sourceSolrConfiguration) {
+        String fieldList = sourceSolrConfiguration.getFieldList();
+        if (StringUtils.isBlank(fieldList)) {
+            return null;
+        }
+        if (!AUTO_FIELD_LIST.equalsIgnoreCase(fieldList.trim())) {
+            return fieldList.trim();
+        }
+        String destinationCollection = indexerConfiguration.getDestinationSolrConfiguration().getCollection();
+        try {
+            List<String> schemaFields = new SchemaRequest.Fields().process(solrClient, destinationCollection).getFields()
+                    .stream().map(field -> (String) field.get("name")).collect(Collectors.toList());
+            List<String> dynamicFields = new SchemaRequest.DynamicFields().process(solrClient, destinationCollection).getDynamicFields()
+                    .stream().map(field -> (String) field.get("name")).collect(Collectors.toList());
+            Collection<String> vectorSourceFields = indexerConfiguration.getVectorConfig().values().stream()
+                    .map(VectorConfig::getFieldName)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            String resolved = createFieldList(schemaFields, dynamicFields, vectorSourceFields, sourceSolrConfiguration.getUniqueKey());
+            log.info("Resolved the source field list from the {} schema to: {}", destinationCollection, resolved);
+            return resolved;
+        } catch (SolrServerException | IOException | RuntimeException e) {
+            log.warn("Could not read the schema of destination collection {}. Requesting every stored field from the source.",
+                    destinationCollection, e);
+            return null;
+        }
+    }
+
+    /**
+     * Works out the fl of an export crawl. The field list is resolved as for a select crawl and then checked against
+     * the docValues of the source schema, since the export handler rejects patterns and fields without docValues.
+     *
+     * @return a comma separated list of concrete docValues fields
+     * @throws IndexingFailedExecption if there is no field list, the source schema can not be read, or a field the
+     *                                 crawl needs can not be exported
+     */
+    public String resolveExportFieldList(SolrConfiguration sourceSolrConfiguration) throws IndexingFailedExecption {
+        String sourceCollection = sourceSolrConfiguration.getCollection();
+        String fieldList = resolveFieldList(sourceSolrConfiguration);
+        if (fieldList == null) {
+            throw new IndexingFailedExecption("The export extraction mode needs a field-list of docValues fields for source collection "
+                    + sourceCollection);
+        }
+        boolean autoFieldList = AUTO_FIELD_LIST.equalsIgnoreCase(sourceSolrConfiguration.getFieldList().trim());
+        Map<String, Boolean> fieldDocValues;
+        Map<String, Boolean> dynamicFieldDocValues;
+        try {
+            String solrHost = sourceSolrConfiguration.getConnection().getUrl();
+            fieldDocValues = httpSolrSelectClient.getFieldDocValues(solrHost, sourceCollection);
+            dynamicFieldDocValues = httpSolrSelectClient.getDynamicFieldDocValues(solrHost, sourceCollection);
+        } catch (RuntimeException e) {
+            throw new IndexingFailedExecption("Could not read the schema of source collection " + sourceCollection
+                    + " to check the export field list", e);
+        }
+        List<String> requiredFields = new ArrayList<>();
+        if (StringUtils.isNotBlank(sourceSolrConfiguration.getUniqueKey())) {
+            requiredFields.add(sourceSolrConfiguration.getUniqueKey());
+        }
+        indexerConfiguration.getVectorConfig().values().stream()
+                .map(VectorConfig::getFieldName)
+                .filter(Objects::nonNull)
+                .forEach(requiredFields::add);
+        try {
+            String resolved = createExportFieldList(Arrays.asList(fieldList.split(",")), autoFieldList, fieldDocValues,
+                    dynamicFieldDocValues, requiredFields);
+            log.info("Exporting these docValues fields of source collection {}: {}", sourceCollection, resolved);
+            return resolved;
+        } catch (IllegalArgumentException e) {
+            throw new IndexingFailedExecption("Source collection " + sourceCollection + " can not be exported: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Keeps the fields of a field list that the export handler can return.
+     * <br>
+     * A configured list must only name concrete fields with docValues. An auto list is built from the destination
+     * schema, so its patterns, the fields the source does not have and the fields without docValues are left out, as
+     * long as the uniqueKey and the vector config fields are not among them.
+     *
+     * @param fieldDocValues whether each field of the source schema has docValues
+     * @param dynamicFieldDocValues whether each dynamic field of the source schema has docValues
+     * @param requiredFields fields an auto list may not leave out
+     * @throws IllegalArgumentException naming the fields that can not be exported
+     */
+    static String createExportFieldList(Collection<String> requestedFields, boolean autoFieldList,
+                                        Map<String, Boolean> fieldDocValues, Map<String, Boolean> dynamicFieldDocValues,
+                                        Collection<String> requiredFields) {
+        Set<String> exported = new LinkedHashSet<>();
+        List<String> rejected = new ArrayList<>();
+        List<String> skipped = new ArrayList<>();
+        for (String requestedField : requestedFields) {
+            String field = requestedField.trim();
+            if (field.isEmpty()) {
+                continue;
+            }
+            Boolean docValues = field.contains("*") ? null : docValues(field, fieldDocValues, dynamicFieldDocValues);
+            if (Boolean.TRUE.equals(docValues)) {
+                exported.add(field);
+            } else if (!autoFieldList || requiredFields.contains(field)) {
+                rejected.add(field + describeRejection(field, docValues));
+            } else {
+                skipped.add(field);
+            }
+        }
+        if (!rejected.isEmpty()) {
+            throw new IllegalArgumentException("the export handler only returns concrete fields with docValues. "
+                    + String.join(", ", rejected) + ". Use the cursor-mark extraction mode instead.");
+        }
+        if (!skipped.isEmpty()) {
+            log.info("Leaving patterns, fields the source does not have and fields without docValues out of the export: {}", skipped);
+        }
+        if (exported.isEmpty()) {
+            throw new IllegalArgumentException("none of the fields " + requestedFields + " has docValues");
+        }
+        return String.join(",", exported);
+    }
+
+    /**
+     * @return whether the field has docValues, taken from the longest matching dynamic field when it is not declared,
+     * or null if the source schema does not have it
+     */
+    private static Boolean docValues(String field, Map<String, Boolean> fieldDocValues, Map<String, Boolean> dynamicFieldDocValues) {
+        if (fieldDocValues.containsKey(field)) {
+            return fieldDocValues.get(field);
+        }
+        String longestPattern = null;
+        for (String pattern : dynamicFieldDocValues.keySet()) {
+            if (matchesAnyPattern(field, List.of(pattern)) && (longestPattern == null || pattern.length() > longestPattern.length())) {
+                longestPattern = pattern;
+            }
+        }
+        return longestPattern == null ? null : dynamicFieldDocValues.get(longestPattern);
+    }
+
+    private static String describeRejection(String field, Boolean docValues) {
+        if (field.contains("*")) {
+            return " is a pattern";
+        }
+        return docValues == null ? " is not in the source schema" : " has no docValues";
+    }
+
+    /**
+     * Builds a comma separated fl out of the destination schema. Fields already covered by a dynamic field pattern are
+     * left out to keep the request URL short, and Solr's internal fields are never requested.
+     *
+     * @return the fl, or null if the destination accepts any field name
+     */
+    static String createFieldList(Collection<String> schemaFields, Collection<String> dynamicFields,
+                                  Collection<String> vectorSourceFields, String uniqueKey) {
+        Set<String> patterns = dynamicFields.stream()
+                .filter(StringUtils::isNotBlank)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (patterns.contains("*")) {
+            return null;
+        }
+        Set<String> fieldList = new LinkedHashSet<>();
+        if (StringUtils.isNotBlank(uniqueKey)) {
+            fieldList.add(uniqueKey);
+        }
+        fieldList.addAll(vectorSourceFields);
+        fieldList.addAll(schemaFields);
+        fieldList.removeIf(field -> StringUtils.isBlank(field) || INTERNAL_FIELDS.contains(field) || matchesAnyPattern(field, patterns));
+        fieldList.addAll(patterns);
+        return String.join(",", fieldList);
+    }
+
+    private static boolean matchesAnyPattern(String fieldName, Collection<String> patterns) {
+        for (String pattern : patterns) {
+            if (pattern.startsWith("*") && fieldName.endsWith(pattern.substring(1))) {
+                return true;
+            }
+            if (pattern.endsWith("*") && fieldName.startsWith(pattern.substring(0, pattern.length() - 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
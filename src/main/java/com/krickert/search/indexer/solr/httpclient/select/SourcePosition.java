@@ -0,0 +1,39 @@
+package com.krickert.search.indexer.solr.httpclient.select;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * A place in the source collection a crawl can start reading from. Cursor mark crawls continue from the cursor mark
+ * and start/rows crawls from the offset.
+ */
+public class SourcePosition {
+    public static final SourcePosition START = new SourcePosition(null, 0L);
+
+    private final String cursorMark;
+    private final long start;
+
+    public SourcePosition(String cursorMark, long start) {
+        this.cursorMark = cursorMark;
+        this.start = start;
+    }
+
+    public String getCursorMark() {
+        return cursorMark;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public boolean isStart() {
+        return cursorMark == null && start == 0L;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("cursorMark", cursorMark)
+                .add("start", start)
+                .toString();
+    }
+}
@@ -0,0 +1,242 @@
+package com.krickert.search.indexer.solr.httpclient.select;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.util.concurrent.RateLimiter;
+import com.krickert.search.indexer.config.SolrConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Limits how hard a crawl reads from the source collection, so a crawl can share the source cluster with live
+ * traffic.
+ * <br>
+ * Requests and response bytes each go through a token bucket. Both rates are scaled by the time-of-day window that
+ * is open, such as 20% during business hours, and by a backoff factor. The backoff halves whenever the QTime of a
+ * response goes over the threshold and recovers by a tenth for every response under it. A window of 0% pauses the
+ * crawl until the window closes. Without a configured rate there is nothing to scale, so only 0% windows apply.
+ * One throttle is shared by every thread reading the same crawl.
+ */
+public class SourceReadThrottle {
+    private static final Logger log = LoggerFactory.getLogger(SourceReadThrottle.class);
+    private static final double MIN_BACKOFF_FACTOR = 0.05;
+    private static final double BACKOFF_RECOVERY_STEP = 0.1;
+    private static final long PAUSE_CHECK_MILLIS = 60_000L;
+
+    private final boolean enabled;
+    private final Double requestsPerSecond;
+    private final Long bytesPerSecond;
+    private final RateLimiter requestLimiter;
+    private final RateLimiter byteLimiter;
+    private final List<ThrottleWindow> windows;
+    private final Long qtimeThresholdMillis;
+    private final Clock clock;
+    private double backoffFactor = 1.0;
+    private double appliedRateFactor = 1.0;
+
+    public SourceReadThrottle(SolrConfiguration.Throttle throttle) {
+        this(throttle, Clock.systemDefaultZone());
+    }
+
+    SourceReadThrottle(SolrConfiguration.Throttle throttle, Clock clock) {
+        this.enabled = throttle != null && throttle.isEnabled();
+        this.clock = clock;
+        this.requestsPerSecond = enabled ? positiveOrNull(throttle.getRequestsPerSecond()) : null;
+        this.bytesPerSecond = enabled && throttle.getBytesPerSecond() != null && throttle.getBytesPerSecond() > 0 ?
+                throttle.getBytesPerSecond() : null;
+        this.requestLimiter = requestsPerSecond == null ? null : RateLimiter.create(requestsPerSecond);
+        this.byteLimiter = bytesPerSecond == null ? null : RateLimiter.create(bytesPerSecond);
+        this.windows = enabled ? parseWindows(throttle.getWindows()) : Collections.emptyList();
+        this.qtimeThresholdMillis = enabled ? throttle.getQtimeThresholdMillis() : null;
+        if (enabled) {
+            log.info("Source reads are throttled with {}", this);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Blocks until the next source request may be sent.
+     */
+    public void acquireRequest() {
+        if (!enabled) {
+            return;
+        }
+        waitWhilePaused();
+        updateRates();
+        if (requestLimiter != null) {
+            requestLimiter.acquire();
+        }
+    }
+
+    /**
+     * Blocks while a 0% window pauses the crawl. A stream that hands over many pages from one request calls this
+     * before each page, so a window that opens part way through the stream pauses it too. The stream stays open
+     * while it is paused.
+     */
+    public void acquirePage() {
+        if (!enabled) {
+            return;
+        }
+        waitWhilePaused();
+    }
+
+    /**
+     * Feeds a response back into the throttle. The bytes are paid for right away, so a large response holds back the
+     * request after it.
+     *
+     * @param responseBytes the bytes read for the response, or null if unknown
+     * @param qtime the QTime from the response header, or null if it has none
+     */
+    public void recordResponse(Long responseBytes, Long qtime) {
+        if (!enabled) {
+            return;
+        }
+        recordQtime(qtime);
+        if (byteLimiter != null && responseBytes != null && responseBytes > 0) {
+            updateRates();
+            byteLimiter.acquire((int) Math.min(Integer.MAX_VALUE, responseBytes));
+        }
+    }
+
+    synchronized void recordQtime(Long qtime) {
+        if (qtimeThresholdMillis == null || qtime == null) {
+            return;
+        }
+        if (qtime > qtimeThresholdMillis) {
+            double slowerFactor = Math.max(MIN_BACKOFF_FACTOR, backoffFactor / 2);
+            if (slowerFactor < backoffFactor) {
+                log.info("Source QTime {}ms is over {}ms. Backing off to {}% of the source read rate", qtime,
+                        qtimeThresholdMillis, Math.round(slowerFactor * 100));
+            }
+            backoffFactor = slowerFactor;
+        } else {
+            backoffFactor = Math.min(1.0, backoffFactor + BACKOFF_RECOVERY_STEP);
+        }
+    }
+
+    /**
+     * @return the share of the configured rates that applies right now
+     */
+    synchronized double currentRateFactor() {
+        return windowPercent(LocalTime.now(clock)) / 100.0 * backoffFactor;
+    }
+
+    private synchronized void updateRates() {
+        double rateFactor = currentRateFactor();
+        if (rateFactor <= 0 || rateFactor == appliedRateFactor) {
+            return;
+        }
+        appliedRateFactor = rateFactor;
+        if (requestLimiter != null) {
+            requestLimiter.setRate(requestsPerSecond * rateFactor);
+        }
+        if (byteLimiter != null) {
+            byteLimiter.setRate(bytesPerSecond * rateFactor);
+        }
+    }
+
+    private void waitWhilePaused() {
+        while (windowPercent(LocalTime.now(clock)) <= 0) {
+            log.info("Source reads are paused by the throttle window until {}", pausedUntil(LocalTime.now(clock)));
+            try {
+                //noinspection BusyWait
+                Thread.sleep(PAUSE_CHECK_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while source reads were paused", e);
+            }
+        }
+    }
+
+    private int windowPercent(LocalTime time) {
+        for (ThrottleWindow window : windows) {
+            if (window.contains(time)) {
+                return window.ratePercent;
+            }
+        }
+        return 100;
+    }
+
+    private LocalTime pausedUntil(LocalTime time) {
+        for (ThrottleWindow window : windows) {
+            if (window.contains(time)) {
+                return window.end;
+            }
+        }
+        return time;
+    }
+
+    private static Double positiveOrNull(Double value) {
+        return value != null && value > 0 ? value : null;
+    }
+
+    static List<ThrottleWindow> parseWindows(List<String> windows) {
+        if (windows == null) {
+            return Collections.emptyList();
+        }
+        List<ThrottleWindow> parsed = new ArrayList<>(windows.size());
+        for (String window : windows) {
+            parsed.add(ThrottleWindow.parse(window));
+        }
+        return parsed;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("requestsPerSecond", requestsPerSecond)
+                .add("bytesPerSecond", bytesPerSecond)
+                .add("windows", windows)
+                .add("qtimeThresholdMillis", qtimeThresholdMillis)
+                .toString();
+    }
+
+    /**
+     * A daily window such as {@code 09:00-18:00=20}, which reads at 20% of the configured rates from 9am to 6pm
+     * local time. A window whose end is before its start runs past midnight.
+     */
+    static class ThrottleWindow {
+        private final LocalTime start;
+        private final LocalTime end;
+        private final int ratePercent;
+
+        ThrottleWindow(LocalTime start, LocalTime end, int ratePercent) {
+            this.start = start;
+            this.end = end;
+            this.ratePercent = ratePercent;
+        }
+
+        static ThrottleWindow parse(String window) {
+            String[] timesAndRate = window.trim().split("=");
+            String[] times = timesAndRate[0].split("-");
+            if (timesAndRate.length != 2 || times.length != 2) {
+                throw new IllegalArgumentException("Throttle window " + window + " is not in the form HH:mm-HH:mm=percent");
+            }
+            int ratePercent = Integer.parseInt(timesAndRate[1].trim().replace("%", ""));
+            if (ratePercent < 0 || ratePercent > 100) {
+                throw new IllegalArgumentException("Throttle window " + window + " needs a percent between 0 and 100");
+            }
+            return new ThrottleWindow(LocalTime.parse(times[0].trim()), LocalTime.parse(times[1].trim()), ratePercent);
+        }
+
+        boolean contains(LocalTime time) {
+            if (start.isBefore(end)) {
+                return !time.isBefore(start) && time.isBefore(end);
+            }
+            return !time.isBefore(start) || time.isBefore(end);
+        }
+
+        @Override
+        public String toString() {
+            return start + "-" + end + "=" + ratePercent + "%";
+        }
+    }
+}
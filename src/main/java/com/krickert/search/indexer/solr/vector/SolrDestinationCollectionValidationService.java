@@ -5,6 +5,7 @@ import com.krickert.search.indexer.config.IndexerConfiguration;
 import com.krickert.search.indexer.config.SolrConfiguration;
 import com.krickert.search.indexer.config.VectorConfig;
 import com.krickert.search.indexer.service.HealthService;
+import com.krickert.search.indexer.solr.SchemaConstants;
 import com.krickert.search.indexer.solr.client.SolrAdminActions;
 import com.krickert.search.indexer.solr.client.SolrClientService;
 import com.krickert.search.indexer.solr.client.VectorFieldValidator;
@@ -145,6 +146,7 @@ public class SolrDestinationCollectionValidationService {
             log.info("Creating collection {} ", destinationCollection);
             solrAdminActions.createCollection(destinationCollection, vectorConfig.getCollectionCreation());
         }
+        validateFingerprintField(destinationCollection);
 
         String vectorFieldName = vectorConfig.getFieldVectorName();
         if (StringUtils.isEmpty(vectorFieldName)) {
@@ -208,6 +210,22 @@ public class SolrDestinationCollectionValidationService {
             String destinationCollection = destinationSolrConfiguration.getCollection();
             solrAdminActions.createCollection(destinationCollection, destinationSolrConfiguration.getCollectionCreation());
         }
+        validateFingerprintField(indexerConfiguration.getDestinationSolrConfiguration().getCollection());
+    }
+
+    /**
+     * Skipping unchanged documents stamps every destination and chunk document with a fingerprint, so each of those
+     * collections needs the field.
+     */
+    private void validateFingerprintField(String collection) {
+        if (!Boolean.TRUE.equals(indexerConfiguration.getIndexerConfigurationProperties().getSkipUnchangedDocuments())) {
+            return;
+        }
+        try {
+            vectorFieldValidator.validateStringField(SchemaConstants.VECTOR_FINGERPRINT, collection);
+        } catch (IOException | SolrServerException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     public List<String> getVectorDestinationCollections() {
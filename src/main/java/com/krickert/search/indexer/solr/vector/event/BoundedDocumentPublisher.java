@@ -0,0 +1,101 @@
+package com.krickert.search.indexer.solr.vector.event;
+
+import com.krickert.search.indexer.config.IndexerConfigurationProperties;
+import org.apache.solr.common.SolrInputDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Publishes documents to a sink and holds back the publisher once too many documents are waiting for or inside
+ * a listener.
+ * <br>
+ * Each document takes a permit before it is emitted and gives it back when its listener is done with it, so
+ * {@link #publishDocument} blocks the extraction thread while the listeners are saturated instead of dropping
+ * documents. The queue depth is the number of documents that were published and not yet completed.
+ * <br>
+ * An emission that races another one is retried for a short while. A document the sink still does not take never
+ * reaches a listener, so it is reported as failed to the indexing tracker in place of the listener.
+ */
+public abstract class BoundedDocumentPublisher implements SourceSolrDocumentListener {
+    private static final Logger log = LoggerFactory.getLogger(BoundedDocumentPublisher.class);
+    static final int DEFAULT_QUEUE_CAPACITY = 30000;
+    private static final long BLOCKED_WARNING_SECONDS = 60L;
+    private static final Duration EMIT_RETRY_DURATION = Duration.ofSeconds(5);
+
+    private final Sinks.Many<SolrInputDocument> sink;
+    private final Semaphore permits;
+    private final int queueCapacity;
+    private final Consumer<String> failedDocumentReporter;
+
+    /**
+     * @param failedDocumentReporter reports the id of a document that could not be published
+     */
+    protected BoundedDocumentPublisher(Sinks.Many<SolrInputDocument> sink, int queueCapacity, Consumer<String> failedDocumentReporter) {
+        this.sink = sink;
+        this.queueCapacity = queueCapacity;
+        this.permits = new Semaphore(queueCapacity);
+        this.failedDocumentReporter = failedDocumentReporter;
+    }
+
+    static int queueCapacity(IndexerConfigurationProperties indexerConfigurationProperties) {
+        Integer queueCapacity = indexerConfigurationProperties.getPublisherQueueCapacity();
+        return queueCapacity == null || queueCapacity < 1 ? DEFAULT_QUEUE_CAPACITY : queueCapacity;
+    }
+
+    @Override
+    public void publishDocument(SolrInputDocument document) {
+        acquirePermit(document);
+        // the handler only retries an emission that raced another one, and its deadline starts when it is created
+        Sinks.EmitFailureHandler retry = Sinks.EmitFailureHandler.busyLooping(EMIT_RETRY_DURATION);
+        Sinks.EmitResult result;
+        do {
+            result = this.sink.tryEmitNext(document);
+        } while (result.isFailure() && retry.onEmitFailure(SignalType.ON_NEXT, result));
+        if (result.isFailure()) {
+            permits.release();
+            String documentId = String.valueOf(document.getFieldValue("id"));
+            log.error("Failed to publish document {} with result {}. Reporting it as failed.", documentId, result);
+            failedDocumentReporter.accept(documentId);
+        }
+    }
+
+    private void acquirePermit(SolrInputDocument document) {
+        try {
+            while (!permits.tryAcquire(BLOCKED_WARNING_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("{} has had {} documents in flight for {} seconds. Still waiting to publish document {}",
+                        getClass().getSimpleName(), queueCapacity, BLOCKED_WARNING_SECONDS, document.getFieldValue("id"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to publish document " + document.getFieldValue("id"), e);
+        }
+    }
+
+    @Override
+    public void documentCompleted() {
+        permits.release();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueCapacity - permits.availablePermits();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @Override
+    public Flux<SolrInputDocument> getDocumentFlux() {
+        return sink.asFlux();
+    }
+}
@@ -1,68 +1,145 @@
 package com.krickert.search.indexer.solr.vector.event;
 
+import com.krickert.search.indexer.chunker.Chunkers;
+import com.krickert.search.indexer.chunker.ContentDefinedChunker;
 import com.krickert.search.indexer.config.VectorConfig;
+import com.krickert.search.indexer.grpc.AdaptiveBatchSizer;
+import com.krickert.search.indexer.grpc.ChunkerClient;
+import com.krickert.search.indexer.grpc.EmbeddingClient;
 import com.krickert.search.indexer.solr.SchemaConstants;
 import com.krickert.search.service.*;
-import io.micronaut.context.annotation.Prototype;
-import io.micronaut.context.annotation.Value;
-import io.micronaut.retry.annotation.Retryable;
-import jakarta.inject.Inject;
-import jakarta.inject.Named;
-import jakarta.inject.Singleton;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.common.SolrInputDocument;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public final class ChunkDocumentCreator {
     private static final Logger log = LoggerFactory.getLogger(ChunkDocumentCreator.class);
-    private final ChunkServiceGrpc.ChunkServiceBlockingStub chunkServiceBlockingStub;
-    private final EmbeddingServiceGrpc.EmbeddingServiceBlockingStub embeddingServiceBlockingStub;
-    private final int batchSize;
-
-    public ChunkDocumentCreator(ChunkServiceGrpc.ChunkServiceBlockingStub chunkServiceBlockingStub,
-                                EmbeddingServiceGrpc.EmbeddingServiceBlockingStub embeddingServiceBlockingStub,
-                                int batchSize) {
-        this.chunkServiceBlockingStub = chunkServiceBlockingStub;
-        this.embeddingServiceBlockingStub = embeddingServiceBlockingStub;
-        this.batchSize = batchSize;
+    private final ChunkerClient chunkerClient;
+    private final EmbeddingClient embeddingClient;
+    private final AdaptiveBatchSizer batchSizer;
+    private final DocumentWorkMemo documentWorkMemo;
+
+    public ChunkDocumentCreator(ChunkerClient chunkerClient, EmbeddingClient embeddingClient, AdaptiveBatchSizer batchSizer,
+                                DocumentWorkMemo documentWorkMemo) {
+        this.chunkerClient = chunkerClient;
+        this.embeddingClient = embeddingClient;
+        this.batchSizer = batchSizer;
+        this.documentWorkMemo = documentWorkMemo;
     }
 
     @NotNull List<SolrInputDocument> getChunkedSolrInputDocuments(ChunkDocumentRequest request) {
-        ChunkReply chunkerReply = getChunks(request);
-        log.info("There are {} chunks in document with ID {}", chunkerReply.getChunksCount(), request.getOrigDocId());
+        return createChunkedSolrInputDocuments(request).join();
+    }
 
-        List<String> chunksList = chunkerReply.getChunksList();
-        List<SolrInputDocument> docs = new ArrayList<>(chunksList.size());
-        for (int i = 0; i < chunksList.size(); i += batchSize) {
-            int endIndex = Math.min(i + batchSize, chunksList.size());
-            List<String> chunkBatch = chunksList.subList(i, endIndex);
+    /**
+     * Chunks the field and embeds the chunks in batches. All batches of a field are sent at once, so with a
+     * non-blocking client they are embedded concurrently. The chunk documents come back in chunk order. The size of
+     * each batch is read from the embedding service's {@link AdaptiveBatchSizer} as the batch is cut.
+     * <br>
+     * The chunks and the vector of each chunk go through the document's memo, so another listener or vector config
+     * chunking the same text with the same chunker, options and model reuses them, however its batches were cut. Only
+     * the chunks the memo has no vector for are batched and sent. The vector config picks the chunker, see
+     * {@link Chunkers}.
+     * <br>
+     * Fields with content defined chunking are chunked by the {@link ContentDefinedChunker}. Their chunk ids
+     * come from the fingerprint of each chunk, so a chunk that is already stored keeps its id and only has its crawl
+     * fields and chunk number refreshed, and only new chunks are embedded.
+     */
+    CompletableFuture<List<SolrInputDocument>> createChunkedSolrInputDocuments(ChunkDocumentRequest request) {
+        ChunkRequest chunkRequest = createChunkRequest(request.getFieldData(), request.getVectorConfig());
+        boolean contentDefined = Chunkers.isContentDefined(request.getVectorConfig());
+        ChunkerClient chunker = Chunkers.chunker(request.getVectorConfig(), chunkerClient);
+        return documentWorkMemo.chunk(request.getDocument(), Chunkers.chunkerName(request.getVectorConfig()), chunkRequest,
+                        () -> chunker.chunk(chunkRequest))
+                .thenCompose(chunkerReply -> {
+                    log.info("There are {} chunks in document with ID {}", chunkerReply.getChunksCount(), request.getOrigDocId());
+                    return contentDefined ? createContentDefinedChunkDocuments(request, chunkerReply.getChunksList())
+                            : createFixedChunkDocuments(request, chunkerReply.getChunksList());
+                });
+    }
 
-            EmbeddingsVectorsReply batchReply = getEmbeddingsVectorsReply(chunkBatch);
-            docs.addAll(createChunkDocuments(request, batchReply.getEmbeddingsList(), chunkBatch, i));
+    private CompletableFuture<List<SolrInputDocument>> createFixedChunkDocuments(ChunkDocumentRequest request, List<String> chunksList) {
+        return embedChunks(request, chunksList)
+                .thenApply(vectors -> {
+                    List<SolrInputDocument> docs = new ArrayList<>(chunksList.size());
+                    for (int i = 0; i < chunksList.size(); i++) {
+                        docs.add(createSolrInputDocument(request, chunksList.get(i), i, vectors.get(i)));
+                    }
+                    return docs;
+                });
+    }
 
+    private CompletableFuture<List<SolrInputDocument>> createContentDefinedChunkDocuments(ChunkDocumentRequest request,
+                                                                                         List<String> chunksList) {
+        Map<String, String> storedChunks = request.getStoredChunks() == null ? Map.of() : request.getStoredChunks();
+        SolrInputDocument[] docs = new SolrInputDocument[chunksList.size()];
+        String[] docIds = new String[chunksList.size()];
+        String[] fingerprints = new String[chunksList.size()];
+        Map<String, Integer> occurrences = new HashMap<>();
+        List<Integer> toEmbed = new ArrayList<>();
+        for (int i = 0; i < chunksList.size(); i++) {
+            fingerprints[i] = DocumentFingerprints.fieldFingerprint(chunksList.get(i), request.getVectorConfig());
+            // a chunk repeated in the same field gets an id of its own
+            int occurrence = occurrences.merge(fingerprints[i], 1, Integer::sum);
+            docIds[i] = chunkId(request, occurrence == 1 ? fingerprints[i] : fingerprints[i] + "-" + occurrence);
+            if (fingerprints[i].equals(storedChunks.get(docIds[i]))) {
+                docs[i] = chunkRefresh(request, docIds[i], i);
+            } else {
+                toEmbed.add(i);
+            }
         }
-        return docs;
+        log.info("Embedding {} new chunks and keeping {} stored chunks of field {} in document with ID {}", toEmbed.size(),
+                chunksList.size() - toEmbed.size(), request.getFieldName(), request.getOrigDocId());
+        return embedChunks(request, toEmbed.stream().map(chunksList::get).toList())
+                .thenApply(vectors -> {
+                    for (int i = 0; i < toEmbed.size(); i++) {
+                        int chunkNumber = toEmbed.get(i);
+                        docs[chunkNumber] = createSolrInputDocument(request, docIds[chunkNumber], chunksList.get(chunkNumber),
+                                chunkNumber, vectors.get(i), fingerprints[chunkNumber]);
+                    }
+                    return new ArrayList<>(Arrays.asList(docs));
+                });
     }
 
-    protected ChunkReply getChunks(ChunkDocumentRequest request) {
-        return chunkServiceBlockingStub.chunk(createChunkRequest(request.getFieldData(), request.getVectorConfig()));
+    /**
+     * @return the vector of each chunk, in chunk order, taken from the document's memo where another consumer
+     * already asked for it
+     */
+    private CompletableFuture<List<List<Float>>> embedChunks(ChunkDocumentRequest request, List<String> chunks) {
+        return documentWorkMemo.embedTexts(request.getDocument(), request.getVectorConfig().getModel(), chunks,
+                this::embedInBatches);
     }
 
-    @Retryable(attempts = "3", delay = "1s", multiplier = "2.0", includes = {io.grpc.StatusRuntimeException.class})
-    protected EmbeddingsVectorsReply getEmbeddingsVectorsReply(List<String> fieldDataList) {
-        return embeddingServiceBlockingStub.createEmbeddingsVectors(EmbeddingsVectorsRequest.newBuilder().addAllText(fieldDataList).build());
+    private CompletableFuture<List<List<Float>>> embedInBatches(List<String> texts) {
+        List<CompletableFuture<EmbeddingsVectorsReply>> batches = new ArrayList<>();
+        for (int i = 0, endIndex; i < texts.size(); i = endIndex) {
+            // a batch that came back in the meantime may have changed the size
+            endIndex = Math.min(i + batchSizer.nextBatchSize(), texts.size());
+            batches.add(embeddingClient.createEmbeddingsVectors(texts.subList(i, endIndex)));
+        }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0]))
+                .thenApply(allBatches -> {
+                    List<List<Float>> vectors = new ArrayList<>(texts.size());
+                    batches.forEach(batch -> batch.join().getEmbeddingsList()
+                            .forEach(embeddings -> vectors.add(embeddings.getEmbeddingsList())));
+                    return vectors;
+                });
     }
 
     public List<SolrInputDocument> createChunkDocuments(ChunkDocumentRequest request, List<EmbeddingsVectorReply> embeddingsList,
-                                                        List<String> chunksList, int chunkBatch) {
+                                                        List<String> chunksList, int chunkBatchStart) {
         List<SolrInputDocument> chunkDocuments = new ArrayList<>(chunksList.size());
 
-        int chunkNumber = batchSize * chunkBatch;
+        int chunkNumber = chunkBatchStart;
         for (int i = 0; i < chunksList.size() ; i++) {
 
             SolrInputDocument docToAdd = createSolrInputDocument(request, chunksList.get(i), chunkNumber++,
@@ -74,9 +151,12 @@ public final class ChunkDocumentCreator {
     }
 
     public SolrInputDocument createSolrInputDocument(ChunkDocumentRequest request, String chunk, int chunkNumber, Collection<Float> vector) {
-        String docId = request.getOrigDocId() + "-" + request.getFieldName() + "#" + StringUtils.leftPad(String.valueOf(chunkNumber), 7,
-                "0");
+        String docId = chunkId(request, StringUtils.leftPad(String.valueOf(chunkNumber), 7, "0"));
+        return createSolrInputDocument(request, docId, chunk, chunkNumber, vector, request.getFingerprint());
+    }
 
+    private SolrInputDocument createSolrInputDocument(ChunkDocumentRequest request, String docId, String chunk, int chunkNumber,
+                                                      Collection<Float> vector, String fingerprint) {
         SolrInputDocument document = new SolrInputDocument();
         document.addField(SchemaConstants.ID, docId);
         document.addField(SchemaConstants.DOC_ID, docId);
@@ -89,9 +169,25 @@ public final class ChunkDocumentCreator {
         document.addField(SchemaConstants.CRAWL_ID, request.getCrawlId());
         document.addField(SchemaConstants.CRAWL_DATE, request.getDateCreated());
         document.addField(SchemaConstants.CREATION_DATE, request.getDateCreated());
+        if (fingerprint != null) {
+            document.addField(SchemaConstants.VECTOR_FINGERPRINT, fingerprint);
+        }
         return document;
     }
 
+    /**
+     * @return an atomic update that moves a stored chunk to the current crawl and position
+     */
+    private static SolrInputDocument chunkRefresh(ChunkDocumentRequest request, String docId, int chunkNumber) {
+        SolrInputDocument refresh = DocumentFingerprints.crawlRefresh(docId, request.getDocument());
+        refresh.addField(SchemaConstants.CHUNK_NUMBER, Map.of("set", chunkNumber));
+        return refresh;
+    }
+
+    private static String chunkId(ChunkDocumentRequest request, String chunkKey) {
+        return request.getOrigDocId() + "-" + request.getFieldName() + "#" + chunkKey;
+    }
+
     private ChunkRequest createChunkRequest(String fieldData, VectorConfig vectorConfig) {
         return ChunkRequest.newBuilder()
                 .setText(fieldData)
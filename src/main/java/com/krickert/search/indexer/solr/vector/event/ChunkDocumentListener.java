@@ -1,12 +1,19 @@
 package com.krickert.search.indexer.solr.vector.event;
 
+import com.krickert.search.indexer.chunker.Chunkers;
 import com.krickert.search.indexer.config.IndexerConfiguration;
 import com.krickert.search.indexer.config.VectorConfig;
+import com.krickert.search.indexer.grpc.ChunkerClient;
+import com.krickert.search.indexer.grpc.EmbeddingBatchSizers;
+import com.krickert.search.indexer.grpc.EmbeddingClient;
+import com.krickert.search.indexer.pipeline.IndexingPipeline;
+import com.krickert.search.indexer.pipeline.PipelineStage;
+import com.krickert.search.indexer.pipeline.StageFailedException;
 import com.krickert.search.indexer.solr.SchemaConstants;
 import com.krickert.search.indexer.solr.client.SolrClientService;
+import com.krickert.search.indexer.state.DeadLetter;
+import com.krickert.search.indexer.state.DeadLetterLog;
 import com.krickert.search.indexer.tracker.IndexingTracker;
-import com.krickert.search.service.ChunkServiceGrpc;
-import com.krickert.search.service.EmbeddingServiceGrpc;
 import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 import org.apache.solr.client.solrj.SolrServerException;
@@ -17,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 @Singleton
 public class ChunkDocumentListener implements DocumentListener {
@@ -25,43 +33,82 @@ public class ChunkDocumentListener implements DocumentListener {
     private static final Integer DEFAULT_BATCH_SIZE = 3;
     private final Map<String, VectorConfig> chunkVectorConfig;
     private final Http2SolrClient vectorSolrClient;
-    private final IndexingTracker indexingTracker;
     private final Integer batchSize;
     private final ChunkDocumentCreator chunkDocumentCreator;
     private final String parentCollection;
+    private final PipelineStage indexStage;
+    private final DeadLetterLog deadLetterLog;
+    private final Set<String> inlineVectorFields;
+    private final DocumentFingerprints documentFingerprints;
+    private final DocumentOutcomes crawlOutcomes;
 
     public ChunkDocumentListener(IndexerConfiguration indexerConfiguration,
                                  SolrClientService solrClientService,
                                  IndexingTracker indexingTracker,
-                                 @Named("vectorEmbeddingService") EmbeddingServiceGrpc.EmbeddingServiceBlockingStub vectorEmbeddingService,
-                                 @Named("vectorChunkerService") ChunkServiceGrpc.ChunkServiceBlockingStub chunkingService) {
+                                 @Named("vectorEmbeddingClient") EmbeddingClient vectorEmbeddingService,
+                                 @Named("vectorChunkerClient") ChunkerClient chunkingService,
+                                 IndexingPipeline indexingPipeline,
+                                 DeadLetterLog deadLetterLog,
+                                 DocumentWorkMemo documentWorkMemo,
+                                 DocumentFingerprints documentFingerprints,
+                                 EmbeddingBatchSizers embeddingBatchSizers) {
         this.chunkVectorConfig = indexerConfiguration.getChunkVectorConfig();
+        // an unknown chunker fails here instead of on every document
+        this.chunkVectorConfig.values().forEach(Chunkers::chunkerName);
         this.vectorSolrClient = solrClientService.vectorSolrClient();
-        this.indexingTracker = indexingTracker;
-        this.chunkDocumentCreator = new ChunkDocumentCreator(chunkingService, vectorEmbeddingService, 3);
+        this.chunkDocumentCreator = new ChunkDocumentCreator(chunkingService, vectorEmbeddingService, embeddingBatchSizers.vector(), documentWorkMemo);
         Integer vectorBatchSize = indexerConfiguration.getIndexerConfigurationProperties().getVectorBatchSize();
         this.batchSize = vectorBatchSize == null || vectorBatchSize < 1 ? DEFAULT_BATCH_SIZE : vectorBatchSize;
         log.info("Batch size for the chunk listener is set to {}", this.batchSize);
         this.parentCollection = indexerConfiguration.getDestinationSolrConfiguration().getCollection();
+        this.indexStage = indexingPipeline.getStage(IndexingPipeline.Stage.INDEX);
+        this.deadLetterLog = deadLetterLog;
+        // the inline listener adds these to the same document. They are left out of the dead letters
+        this.inlineVectorFields = InlineDocumentListener.inlineVectorFields(indexerConfiguration);
+        this.documentFingerprints = documentFingerprints;
+        this.crawlOutcomes = new DocumentOutcomes(indexingTracker::vectorDocumentProcessed, indexingTracker::vectorDocumentFailed);
     }
 
     @Override
     public void processDocument(SolrInputDocument document) {
+        processDocumentAsync(document).join();
+    }
+
+    /**
+     * Processes every chunk vector field of the document at once. The returned future completes when every field
+     * has been written or has failed, and each field is reported to the tracker either way.
+     */
+    @Override
+    public CompletableFuture<Void> processDocumentAsync(SolrInputDocument document) {
         log.info("Processing side vector for document with ID: {}", document.getFieldValue(SchemaConstants.ID));
 
         assertRequiredFieldsPresent(document);
 
         String origDocId = document.getFieldValue(SchemaConstants.ID).toString();
 
-        chunkVectorConfig.forEach((fieldName, vectorConfig) -> {
-            try {
-                log.info("processing field {} for document with ID {}", fieldName, origDocId);
-                processField(new ChunkDocumentRequest(document, fieldName, vectorConfig, origDocId, parentCollection));
-            } catch (RuntimeException e) {
-                log.error("could not process document with id {} due to error: {}", origDocId, e.getMessage(), e);
-                indexingTracker.vectorDocumentFailed();
-            }}
-        );
+        List<CompletableFuture<Void>> fields = new ArrayList<>(chunkVectorConfig.size());
+        chunkVectorConfig.keySet().forEach(fieldName -> fields.add(processFieldAsync(document, fieldName, crawlOutcomes)));
+        return CompletableFuture.allOf(fields.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Chunks, embeds and writes one chunk vector field of the document. A failure is kept in the dead letter log and
+     * reported to the outcomes, so the returned future always completes normally.
+     */
+    CompletableFuture<Void> processFieldAsync(SolrInputDocument document, String fieldName, DocumentOutcomes outcomes) {
+        String origDocId = document.getFieldValue(SchemaConstants.ID).toString();
+        VectorConfig vectorConfig = chunkVectorConfig.get(fieldName);
+        if (vectorConfig == null) {
+            log.warn("Field {} of document with ID {} is not a chunk vector field. Skipping it.", fieldName, origDocId);
+            return CompletableFuture.completedFuture(null);
+        }
+        log.info("processing field {} for document with ID {}", fieldName, origDocId);
+        return processField(new ChunkDocumentRequest(document, fieldName, vectorConfig, origDocId, parentCollection), outcomes)
+                .exceptionally(e -> {
+                    log.error("could not process document with id {} due to error: {}", origDocId, e.getMessage(), e);
+                    fieldFailed(document, fieldName, origDocId, IndexingPipeline.Stage.ENRICH, e, outcomes);
+                    return null;
+                });
     }
 
     private void assertRequiredFieldsPresent(SolrInputDocument document) {
@@ -73,23 +120,48 @@ public class ChunkDocumentListener implements DocumentListener {
         }
     }
 
-    private void processField(ChunkDocumentRequest request) {
-        Object fieldValue = request.getDocument().getFieldValue(request.getFieldName());
+    private CompletableFuture<Void> processField(ChunkDocumentRequest request, DocumentOutcomes outcomes) {
+        try {
+            Object fieldValue = request.getDocument().getFieldValue(request.getFieldName());
 
-        if (fieldValue == null) {
-            log.warn("Field '{}' is null for document with ID '{}'. Skipping processing for this field.", request.getFieldName(), request.getOrigDocId());
-            indexingTracker.vectorDocumentProcessed();
-            return;
+            if (fieldValue == null) {
+                log.warn("Field '{}' is null for document with ID '{}'. Skipping processing for this field.", request.getFieldName(), request.getOrigDocId());
+                outcomes.processed().accept(request.getOrigDocId());
+                return CompletableFuture.completedFuture(null);
+            }
+            List<String> unchangedChunkIds = documentFingerprints.unchangedChunkIds(request.getDocument(), request.getFieldName());
+            if (unchangedChunkIds != null) {
+                log.debug("Field {} of document with ID {} is unchanged. Refreshing the crawl id of its {} chunks",
+                        request.getFieldName(), request.getOrigDocId(), unchangedChunkIds.size());
+                List<SolrInputDocument> refreshes = new ArrayList<>(unchangedChunkIds.size());
+                unchangedChunkIds.forEach(chunkId -> refreshes.add(DocumentFingerprints.crawlRefresh(chunkId, request.getDocument())));
+                return indexStage.submit(() -> {
+                    writeChunkDocuments(request, refreshes, outcomes);
+                    return CompletableFuture.<Void>completedFuture(null);
+                });
+            }
+            request.setFieldData(fieldValue.toString());
+            request.setCrawlId(request.getDocument().getFieldValue(SchemaConstants.CRAWL_ID).toString());
+            request.setDateCreated(request.getDocument().getFieldValue(SchemaConstants.CRAWL_DATE));
+            request.setFingerprint(documentFingerprints.fieldFingerprint(request.getDocument(), request.getFieldName(), request.getFieldData()));
+            request.setStoredChunks(documentFingerprints.storedChunks(request.getDocument(), request.getFieldName()));
+            return chunkDocumentCreator.createChunkedSolrInputDocuments(request)
+                    .thenCompose(docs -> indexStage.submit(() -> {
+                        if (writeChunkDocuments(request, docs, outcomes)) {
+                            deleteStaleChunks(request, docs);
+                        }
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
         }
-        request.setFieldData(fieldValue.toString());
-        request.setCrawlId(request.getDocument().getFieldValue(SchemaConstants.CRAWL_ID).toString());
-        request.setDateCreated(request.getDocument().getFieldValue(SchemaConstants.CRAWL_DATE));
-        processChunkField(request);
     }
 
-    private void processChunkField(ChunkDocumentRequest request) {
-        List<SolrInputDocument> docs = chunkDocumentCreator.getChunkedSolrInputDocuments(request);
-        boolean hasError = false;
+    /**
+     * @return true if every batch of the chunk documents was added
+     */
+    private boolean writeChunkDocuments(ChunkDocumentRequest request, List<SolrInputDocument> docs, DocumentOutcomes outcomes) {
+        Exception error = null;
         for (int i = 0; i < docs.size(); i += batchSize) {
             int endIndex = Math.min(i + batchSize, docs.size());
             List<SolrInputDocument> chunkDocuments = docs.subList(i, endIndex);
@@ -99,13 +171,50 @@ public class ChunkDocumentListener implements DocumentListener {
                 log.info("Added {} documents to the {} collection with type VECTOR and document chunk batch {}", chunkDocuments.size(), request.getVectorConfig().getDestinationCollection(), i);
             } catch (SolrServerException | IOException e) {
                 log.error("Could not process document with ID {} due to error: {}", request.getOrigDocId(), e.getMessage());
-                hasError = true;
+                error = e;
             }
         }
-        if (hasError) {
-            indexingTracker.vectorDocumentFailed();
-        } else {
-            indexingTracker.vectorDocumentProcessed();
+        if (error != null) {
+            fieldFailed(request.getDocument(), request.getFieldName(), request.getOrigDocId(), IndexingPipeline.Stage.INDEX, error, outcomes);
+            return false;
+        }
+        outcomes.processed().accept(request.getOrigDocId());
+        return true;
+    }
+
+    /**
+     * Deletes the stored chunks of the field that it no longer has, such as the tail of a field that got shorter or
+     * the chunks of edited content with content defined chunking. Nothing else removes them. The stored chunks come
+     * from the lookup of the page, so when it failed, or the document did not come through it, they are left in place
+     * until the field is written again.
+     */
+    private void deleteStaleChunks(ChunkDocumentRequest request, List<SolrInputDocument> docs) {
+        if (request.getStoredChunks() == null) {
+            return;
+        }
+        Set<String> staleIds = new HashSet<>(request.getStoredChunks().keySet());
+        docs.forEach(doc -> staleIds.remove(doc.getFieldValue(SchemaConstants.ID).toString()));
+        if (staleIds.isEmpty()) {
+            return;
+        }
+        try {
+            vectorSolrClient.deleteById(request.getVectorConfig().getDestinationCollection(), new ArrayList<>(staleIds));
+            log.info("Deleted {} stale chunks of field {} in document with ID {}", staleIds.size(), request.getFieldName(),
+                    request.getOrigDocId());
+        } catch (SolrServerException | IOException e) {
+            log.warn("Could not delete {} stale chunks of field {} in document with ID {}: {}", staleIds.size(),
+                    request.getFieldName(), request.getOrigDocId(), e.getMessage());
+        }
+    }
+
+    private void fieldFailed(SolrInputDocument document, String fieldName, String origDocId, IndexingPipeline.Stage stage,
+                             Throwable error, DocumentOutcomes outcomes) {
+        try {
+            deadLetterLog.record(DeadLetter.of(DeadLetter.CHUNK_LISTENER, fieldName, origDocId, document, inlineVectorFields,
+                    StageFailedException.stageOf(error, stage.configName()), error));
+        } catch (RuntimeException e) {
+            log.error("could not record the failure of document with id {} in the dead letter log", origDocId, e);
         }
+        outcomes.failed().accept(origDocId);
     }
 }
\ No newline at end of file
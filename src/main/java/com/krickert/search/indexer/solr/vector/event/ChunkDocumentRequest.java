@@ -3,6 +3,8 @@ package com.krickert.search.indexer.solr.vector.event;
 import com.krickert.search.indexer.config.VectorConfig;
 import org.apache.solr.common.SolrInputDocument;
 
+import java.util.Map;
+
 public class ChunkDocumentRequest {
     private final SolrInputDocument document;
     private final String fieldName;
@@ -12,6 +14,8 @@ public class ChunkDocumentRequest {
     private String crawlId;
     private String parentCollection;
     private Object dateCreated;
+    private String fingerprint;
+    private Map<String, String> storedChunks;
 
     public ChunkDocumentRequest(SolrInputDocument document, String fieldName, VectorConfig vectorConfig, String origDocId, String parentCollection) {
         this.document = document;
@@ -66,4 +70,26 @@ public class ChunkDocumentRequest {
     public void setParentCollection(String parentCollection) {
         this.parentCollection = parentCollection;
     }
+
+    /**
+     * @return the fingerprint of the field text and vector config the chunks are made from, or null to store none
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @return the fingerprints of the chunk documents already stored for the field by id, or null if they are not known
+     */
+    public Map<String, String> getStoredChunks() {
+        return storedChunks;
+    }
+
+    public void setStoredChunks(Map<String, String> storedChunks) {
+        this.storedChunks = storedChunks;
+    }
 }
@@ -0,0 +1,100 @@
+package com.krickert.search.indexer.solr.vector.event;
+
+import com.krickert.search.indexer.dto.DeadLetterReplayStatus;
+import com.krickert.search.indexer.pipeline.IndexingPipeline;
+import com.krickert.search.indexer.pipeline.PipelineStage;
+import com.krickert.search.indexer.state.DeadLetter;
+import com.krickert.search.indexer.state.DeadLetterLog;
+import jakarta.inject.Singleton;
+import org.apache.solr.common.SolrInputDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Sends the documents in the dead letter log back through the pipeline, each to the listener that failed it. The
+ * documents come from the log itself, so a replay does not read the source collection. A chunk listener failure
+ * only replays the field that failed.
+ * <br>
+ * Documents that fail again are written back to the log by their listener. A replay reports its documents to its own
+ * {@link DocumentOutcomes} rather than the tracker, so a replay during a crawl leaves the counts and checkpoints of
+ * the crawl alone, and the crawl's own failures are not counted as replayed documents that failed again.
+ */
+@Singleton
+public class DeadLetterReplayer {
+    private static final Logger log = LoggerFactory.getLogger(DeadLetterReplayer.class);
+
+    private final DeadLetterLog deadLetterLog;
+    private final InlineDocumentListener inlineDocumentListener;
+    private final ChunkDocumentListener chunkDocumentListener;
+    private final PipelineStage enrichStage;
+
+    public DeadLetterReplayer(DeadLetterLog deadLetterLog,
+                              InlineDocumentListener inlineDocumentListener,
+                              ChunkDocumentListener chunkDocumentListener,
+                              IndexingPipeline indexingPipeline) {
+        this.deadLetterLog = checkNotNull(deadLetterLog);
+        this.inlineDocumentListener = checkNotNull(inlineDocumentListener);
+        this.chunkDocumentListener = checkNotNull(chunkDocumentListener);
+        this.enrichStage = indexingPipeline.getStage(IndexingPipeline.Stage.ENRICH);
+    }
+
+    /**
+     * Replays every dead letter and waits for all of them to be indexed or to fail again.
+     *
+     * @throws IllegalStateException if another replay is running
+     */
+    public DeadLetterReplayStatus replay() {
+        long started = System.currentTimeMillis();
+        List<DeadLetter> deadLetters = deadLetterLog.takeAll();
+        log.info("Replaying {} dead letters", deadLetters.size());
+        AtomicInteger failedAgain = new AtomicInteger();
+        DocumentOutcomes outcomes = new DocumentOutcomes(documentId -> { }, documentId -> failedAgain.incrementAndGet());
+        try {
+            List<CompletableFuture<Void>> replays = new ArrayList<>(deadLetters.size());
+            for (DeadLetter deadLetter : deadLetters) {
+                replays.add(enrichStage
+                        .submit(() -> CompletableFuture.completedFuture(replay(deadLetter, outcomes)))
+                        .thenCompose(laterStages -> laterStages)
+                        .exceptionally(e -> {
+                            log.error("Could not replay dead letter {}", deadLetter, e);
+                            deadLetter.setError(e.toString());
+                            deadLetter.setFailedAt(null);
+                            deadLetterLog.record(deadLetter);
+                            failedAgain.incrementAndGet();
+                            return null;
+                        }));
+            }
+            CompletableFuture.allOf(replays.toArray(new CompletableFuture[0])).join();
+        } catch (RuntimeException e) {
+            deadLetterLog.replayAbandoned();
+            throw e;
+        }
+        deadLetterLog.replayFinished();
+
+        DeadLetterReplayStatus status = new DeadLetterReplayStatus();
+        status.setReplayed(deadLetters.size());
+        status.setFailedAgain(failedAgain.get());
+        status.setDurationMillis(System.currentTimeMillis() - started);
+        log.info("Finished replaying dead letters: {}", status);
+        return status;
+    }
+
+    private CompletableFuture<Void> replay(DeadLetter deadLetter, DocumentOutcomes outcomes) {
+        SolrInputDocument document = deadLetter.toSolrInputDocument();
+        if (DeadLetter.CHUNK_LISTENER.equals(deadLetter.getListener())) {
+            return chunkDocumentListener.processFieldAsync(document, deadLetter.getFieldName(), outcomes);
+        }
+        if (DeadLetter.INLINE_LISTENER.equals(deadLetter.getListener())) {
+            return inlineDocumentListener.processDocumentAsync(document, outcomes);
+        }
+        log.warn("Dead letter {} is for unknown listener {}. Skipping it.", deadLetter.getDocumentId(), deadLetter.getListener());
+        return CompletableFuture.completedFuture(null);
+    }
+}
@@ -0,0 +1,341 @@
+package com.krickert.search.indexer.solr.vector.event;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.krickert.search.indexer.chunker.Chunkers;
+import com.krickert.search.indexer.config.IndexerConfiguration;
+import com.krickert.search.indexer.config.VectorConfig;
+import com.krickert.search.indexer.solr.SchemaConstants;
+import com.krickert.search.indexer.solr.client.SolrClientService;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Fingerprints what the vectors of a document are made from, so a document that has not changed since the last
+ * crawl only has its crawl id and crawl date refreshed instead of being chunked and embedded again.
+ * <br>
+ * The fingerprint of a destination document covers every source field and the inline vector configs, because the
+ * whole document is written. The fingerprint of a chunk field covers the field text and its vector config, and with
+ * content defined chunking each chunk is fingerprinted on its own the same way. All of them are stored in the
+ * vector-fingerprint field of what they describe. {@link #lookup(Collection)} reads the stored
+ * fingerprints of a page of documents with one query per collection, and the listeners ask
+ * {@link #isDocumentUnchanged} and {@link #unchangedChunkIds} before doing any work.
+ * <br>
+ * The ids of the chunks stored for each chunk field are read in the same lookup, so the chunk listener can delete the
+ * ones a field no longer has. With fingerprints off the lookup still reads them, with one query per vector collection
+ * and page, but fingerprints nothing.
+ * <br>
+ * Inline chunk fields are written as child documents, which an atomic update of the parent would leave with the old
+ * crawl id. When there are any, destination documents always take the full path.
+ */
+@Singleton
+public class DocumentFingerprints {
+    private static final Logger log = LoggerFactory.getLogger(DocumentFingerprints.class);
+    private static final HashFunction FINGERPRINT_HASH = Hashing.murmur3_128();
+    private static final int LOOKUP_ROWS = 1000;
+
+    private final boolean enabled;
+    private final boolean inlineChildDocuments;
+    private final Map<String, VectorConfig> inlineVectorConfig;
+    private final Map<String, VectorConfig> chunkVectorConfig;
+    private final Set<String> excludedFields;
+    private final String destinationCollection;
+    private final SolrClient inlineSolrClient;
+    private final SolrClient vectorSolrClient;
+    private final Cache<SolrInputDocument, Fingerprints> fingerprints = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+    private final AtomicLong unchangedDocuments = new AtomicLong();
+    private final AtomicLong unchangedChunkFields = new AtomicLong();
+
+    @Inject
+    public DocumentFingerprints(IndexerConfiguration indexerConfiguration, SolrClientService solrClientService) {
+        this(Boolean.TRUE.equals(indexerConfiguration.getIndexerConfigurationProperties().getSkipUnchangedDocuments()),
+                indexerConfiguration.getInlineVectorConfig(),
+                indexerConfiguration.getChunkVectorConfig(),
+                indexerConfiguration.getDestinationSolrConfiguration().getCollection(),
+                solrClientService.inlineSolrClient(),
+                solrClientService.vectorSolrClient());
+    }
+
+    DocumentFingerprints(boolean enabled, Map<String, VectorConfig> inlineVectorConfig, Map<String, VectorConfig> chunkVectorConfig,
+                         String destinationCollection, SolrClient inlineSolrClient, SolrClient vectorSolrClient) {
+        this.enabled = enabled;
+        this.inlineVectorConfig = new TreeMap<>(inlineVectorConfig);
+        this.chunkVectorConfig = new TreeMap<>(chunkVectorConfig);
+        this.destinationCollection = destinationCollection;
+        this.inlineSolrClient = inlineSolrClient;
+        this.vectorSolrClient = vectorSolrClient;
+        this.inlineChildDocuments = inlineVectorConfig.values().stream()
+                .anyMatch(vectorConfig -> Boolean.TRUE.equals(vectorConfig.getChunkField()));
+        this.excludedFields = new HashSet<>(Set.of(SchemaConstants.CRAWL_ID, SchemaConstants.CRAWL_DATE,
+                SchemaConstants.VECTOR_FINGERPRINT, "_version_"));
+        inlineVectorConfig.values().forEach(vectorConfig -> excludedFields.add(vectorConfig.getFieldVectorName()));
+        if (enabled && inlineChildDocuments) {
+            log.info("Inline chunk fields are written as child documents, so unchanged destination documents are written again. " +
+                    "Unchanged chunk fields are still skipped.");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Fingerprints a page of documents and reads the fingerprints stored for them in the destination and vector
+     * collections. A document whose lookup fails takes the full path and keeps its stored chunks.
+     */
+    public void lookup(Collection<SolrInputDocument> documents) {
+        if (documents.isEmpty() || (!enabled && chunkVectorConfig.isEmpty())) {
+            return;
+        }
+        Map<String, Fingerprints> page = new HashMap<>();
+        for (SolrInputDocument document : documents) {
+            Object id = document.getFieldValue(SchemaConstants.ID);
+            Fingerprints computed = compute(document);
+            fingerprints.put(document, computed);
+            // the terms query takes a comma separated list
+            if (id != null && !id.toString().contains(",")) {
+                page.put(id.toString(), computed);
+            }
+        }
+        if (page.isEmpty()) {
+            return;
+        }
+        try {
+            if (enabled && !inlineChildDocuments) {
+                lookupStored(inlineSolrClient, destinationCollection, SchemaConstants.ID, page.keySet(), stored -> {
+                    Fingerprints computed = page.get(stored.id());
+                    if (computed != null && computed.document != null && computed.document.equals(stored.fingerprint())) {
+                        computed.documentUnchanged = true;
+                    }
+                });
+            }
+            Set<String> vectorCollections = new TreeSet<>();
+            chunkVectorConfig.values().forEach(vectorConfig -> vectorCollections.add(vectorConfig.getDestinationCollection()));
+            for (String vectorCollection : vectorCollections) {
+                Map<String, List<StoredFingerprint>> chunksByField = new HashMap<>();
+                lookupStored(vectorSolrClient, vectorCollection, SchemaConstants.PARENT_ID, page.keySet(), stored -> {
+                    int chunkNumberStart = stored.id().lastIndexOf('#');
+                    if (chunkNumberStart > 0) {
+                        chunksByField.computeIfAbsent(stored.id().substring(0, chunkNumberStart), prefix -> new ArrayList<>()).add(stored);
+                    }
+                });
+                page.forEach((id, computed) -> computed.fields.forEach((fieldName, fingerprint) -> {
+                    VectorConfig vectorConfig = chunkVectorConfig.get(fieldName);
+                    if (!vectorCollection.equals(vectorConfig.getDestinationCollection())) {
+                        return;
+                    }
+                    List<StoredFingerprint> chunks = chunksByField.getOrDefault(chunkIdPrefix(id, fieldName), List.of());
+                    Map<String, String> storedChunks = new HashMap<>();
+                    chunks.forEach(chunk -> storedChunks.put(chunk.id(), chunk.fingerprint()));
+                    computed.storedChunks.put(fieldName, storedChunks);
+                    // content defined chunks each have their own fingerprint and are compared one by one
+                    if (enabled && !chunks.isEmpty() && !Chunkers.isContentDefined(vectorConfig)
+                            && chunks.stream().allMatch(chunk -> fingerprint.equals(chunk.fingerprint()))) {
+                        computed.unchangedChunkIds.put(fieldName, chunks.stream().map(StoredFingerprint::id).toList());
+                    }
+                }));
+            }
+        } catch (SolrServerException | IOException | RuntimeException e) {
+            log.warn("Could not look up the stored fingerprints of {} documents. They are chunked and embedded again: {}",
+                    page.size(), e.getMessage());
+            page.values().forEach(computed -> {
+                computed.documentUnchanged = false;
+                computed.unchangedChunkIds.clear();
+                computed.storedChunks.clear();
+            });
+        }
+    }
+
+    private void lookupStored(SolrClient solrClient, String collection, String idField, Collection<String> ids,
+                              Consumer<StoredFingerprint> consumer) throws SolrServerException, IOException {
+        SolrQuery query = new SolrQuery("*:*");
+        query.addFilterQuery("{!terms f=" + idField + "}" + String.join(",", ids));
+        query.setFields(SchemaConstants.ID, SchemaConstants.VECTOR_FINGERPRINT);
+        query.setSort(SchemaConstants.ID, SolrQuery.ORDER.asc);
+        query.setRows(LOOKUP_ROWS);
+        long numFound;
+        int start = 0;
+        do {
+            query.setStart(start);
+            QueryResponse response = solrClient.query(collection, query);
+            numFound = response.getResults().getNumFound();
+            for (SolrDocument document : response.getResults()) {
+                Object fingerprint = document.getFirstValue(SchemaConstants.VECTOR_FINGERPRINT);
+                consumer.accept(new StoredFingerprint(document.getFirstValue(SchemaConstants.ID).toString(),
+                        fingerprint == null ? null : fingerprint.toString()));
+            }
+            start += LOOKUP_ROWS;
+        } while (start < numFound);
+    }
+
+    /**
+     * With fingerprints off only the chunk fields the document has are noted, with no fingerprint.
+     */
+    private Fingerprints compute(SolrInputDocument document) {
+        Fingerprints computed = new Fingerprints(!enabled || inlineChildDocuments ? null
+                : documentFingerprint(document, excludedFields, inlineVectorConfig));
+        chunkVectorConfig.forEach((fieldName, vectorConfig) -> {
+            Object fieldValue = document.getFieldValue(fieldName);
+            if (fieldValue != null) {
+                computed.fields.put(fieldName, enabled ? fieldFingerprint(fieldValue.toString(), vectorConfig) : null);
+            }
+        });
+        return computed;
+    }
+
+    /**
+     * @return true if the destination already holds this document as it is now, with the vectors of the current
+     * inline vector configs
+     */
+    public boolean isDocumentUnchanged(SolrInputDocument document) {
+        Fingerprints computed = fingerprints.getIfPresent(document);
+        boolean unchanged = computed != null && computed.documentUnchanged;
+        if (unchanged) {
+            unchangedDocuments.incrementAndGet();
+        }
+        return unchanged;
+    }
+
+    /**
+     * @return the ids of the chunk documents already written for this field as it is now, or null if the field has
+     * to be chunked and embedded
+     */
+    public List<String> unchangedChunkIds(SolrInputDocument document, String fieldName) {
+        Fingerprints computed = fingerprints.getIfPresent(document);
+        List<String> chunkIds = computed == null ? null : computed.unchangedChunkIds.get(fieldName);
+        if (chunkIds != null) {
+            unchangedChunkFields.incrementAndGet();
+        }
+        return chunkIds;
+    }
+
+    /**
+     * @return the fingerprints of the chunk documents stored for this field by id, or null if they could not be read
+     */
+    public Map<String, String> storedChunks(SolrInputDocument document, String fieldName) {
+        Fingerprints computed = fingerprints.getIfPresent(document);
+        return computed == null ? null : computed.storedChunks.get(fieldName);
+    }
+
+    /**
+     * @return the fingerprint to store on the destination document, or null if fingerprints are off or the
+     * document has child documents
+     */
+    public String documentFingerprint(SolrInputDocument document) {
+        if (!enabled || inlineChildDocuments) {
+            return null;
+        }
+        Fingerprints computed = fingerprints.getIfPresent(document);
+        return computed != null ? computed.document : documentFingerprint(document, excludedFields, inlineVectorConfig);
+    }
+
+    /**
+     * @return the fingerprint to store on the chunk documents of the field, or null if fingerprints are off
+     */
+    public String fieldFingerprint(SolrInputDocument document, String fieldName, String fieldData) {
+        if (!enabled) {
+            return null;
+        }
+        Fingerprints computed = fingerprints.getIfPresent(document);
+        String fingerprint = computed != null ? computed.fields.get(fieldName) : null;
+        return fingerprint != null ? fingerprint : fieldFingerprint(fieldData, chunkVectorConfig.get(fieldName));
+    }
+
+    public long getUnchangedDocuments() {
+        return unchangedDocuments.get();
+    }
+
+    public long getUnchangedChunkFields() {
+        return unchangedChunkFields.get();
+    }
+
+    static String documentFingerprint(SolrInputDocument document, Set<String> excludedFields, Map<String, VectorConfig> inlineVectorConfig) {
+        Hasher hasher = FINGERPRINT_HASH.newHasher();
+        for (String fieldName : new TreeSet<>(document.getFieldNames())) {
+            if (excludedFields.contains(fieldName)) {
+                continue;
+            }
+            hasher.putString(fieldName, StandardCharsets.UTF_8).putByte((byte) 0);
+            for (Object value : document.getFieldValues(fieldName)) {
+                hasher.putString(String.valueOf(value), StandardCharsets.UTF_8).putByte((byte) 1);
+            }
+            hasher.putByte((byte) 2);
+        }
+        new TreeMap<>(inlineVectorConfig).forEach((fieldName, vectorConfig) -> putVectorConfig(hasher, fieldName, vectorConfig));
+        return hasher.hash().toString();
+    }
+
+    static String fieldFingerprint(String fieldData, VectorConfig vectorConfig) {
+        Hasher hasher = FINGERPRINT_HASH.newHasher().putString(fieldData, StandardCharsets.UTF_8).putByte((byte) 0);
+        putVectorConfig(hasher, vectorConfig.getFieldName(), vectorConfig);
+        return hasher.hash().toString();
+    }
+
+    private static void putVectorConfig(Hasher hasher, String fieldName, VectorConfig vectorConfig) {
+        for (Object setting : new Object[]{fieldName, vectorConfig.getFieldVectorName(), vectorConfig.getModel(),
+                vectorConfig.getChunkSize(), vectorConfig.getChunkOverlap(), vectorConfig.getMaxChars(),
+                vectorConfig.getChunkField(), vectorConfig.getChunker(), vectorConfig.getDestinationCollection()}) {
+            hasher.putString(String.valueOf(setting), StandardCharsets.UTF_8).putByte((byte) 3);
+        }
+    }
+
+    /**
+     * @return an atomic update that only moves the document to the crawl of the given source document
+     */
+    static SolrInputDocument crawlRefresh(String id, SolrInputDocument source) {
+        SolrInputDocument update = new SolrInputDocument();
+        update.addField(SchemaConstants.ID, id);
+        update.addField(SchemaConstants.CRAWL_ID, Map.of("set", source.getFieldValue(SchemaConstants.CRAWL_ID)));
+        Object crawlDate = source.getFieldValue(SchemaConstants.CRAWL_DATE);
+        if (crawlDate != null) {
+            update.addField(SchemaConstants.CRAWL_DATE, Map.of("set", crawlDate));
+        }
+        return update;
+    }
+
+    private static String chunkIdPrefix(String origDocId, String fieldName) {
+        return origDocId + "-" + fieldName;
+    }
+
+    private record StoredFingerprint(String id, String fingerprint) {
+    }
+
+    private static final class Fingerprints {
+        private final String document;
+        private final Map<String, String> fields = new HashMap<>();
+        private final Map<String, List<String>> unchangedChunkIds = new HashMap<>();
+        private final Map<String, Map<String, String>> storedChunks = new HashMap<>();
+        private volatile boolean documentUnchanged;
+
+        private Fingerprints(String document) {
+            this.document = document;
+        }
+    }
+}
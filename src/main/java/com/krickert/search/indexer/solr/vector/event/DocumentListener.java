@@ -2,8 +2,17 @@ package com.krickert.search.indexer.solr.vector.event;
 
 import org.apache.solr.common.SolrInputDocument;
 
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public interface DocumentListener {
     void processDocument(SolrInputDocument document);
-}
\ No newline at end of file
+
+    /**
+     * Processes the document without holding the calling thread for remote calls. The future completes once the
+     * document is done, whether it succeeded or failed. Listeners that only block process the document right here.
+     */
+    default CompletableFuture<Void> processDocumentAsync(SolrInputDocument document) {
+        processDocument(document);
+        return CompletableFuture.completedFuture(null);
+    }
+}
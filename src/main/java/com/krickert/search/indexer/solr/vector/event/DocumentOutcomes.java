@@ -0,0 +1,15 @@
+package com.krickert.search.indexer.solr.vector.event;
+
+import com.krickert.search.indexer.tracker.IndexingTracker;
+
+import java.util.function.Consumer;
+
+/**
+ * Where a listener reports each document it indexed or failed. During a crawl that is the {@link IndexingTracker}.
+ * A dead letter replay counts its documents on its own, so it leaves the status and checkpoints of the crawl alone.
+ *
+ * @param processed called with the id of a document that was indexed
+ * @param failed    called with the id of a document that failed, after it was put in the dead letter log
+ */
+record DocumentOutcomes(Consumer<String> processed, Consumer<String> failed) {
+}
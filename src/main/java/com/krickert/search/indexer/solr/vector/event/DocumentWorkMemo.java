@@ -0,0 +1,179 @@
+package com.krickert.search.indexer.solr.vector.event;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.krickert.search.service.ChunkReply;
+import com.krickert.search.service.ChunkRequest;
+import jakarta.inject.Singleton;
+import org.apache.solr.common.SolrInputDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the chunker and embedding results of each document while it is being indexed, so that listeners and
+ * vector configs asking for the same work on the same document share one call.
+ * <br>
+ * Chunk results are keyed by the chunker and the chunk request, which holds the field text and the chunk options.
+ * Vectors are keyed by the model and the text embedded, one text at a time, so callers that cut their chunks into
+ * different batches still share the vectors of every chunk they have in common. The first caller starts the work and
+ * later callers get the same future, even while it is still running. Failed work is forgotten, so the next caller
+ * tries again.
+ * <br>
+ * Both listeners are handed the same document instance, so the memo is keyed by that instance and held weakly. Once
+ * every listener is done with a document it can be collected and its memo goes with it.
+ */
+@Singleton
+public class DocumentWorkMemo {
+    private static final Logger log = LoggerFactory.getLogger(DocumentWorkMemo.class);
+
+    private final Cache<SolrInputDocument, ConcurrentMap<Object, CompletableFuture<?>>> memos = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CompletableFuture<ChunkReply> chunk(SolrInputDocument document, String chunkerName, ChunkRequest chunkRequest,
+                                               Supplier<CompletableFuture<ChunkReply>> chunker) {
+        return memoize(document, new ChunkKey(chunkerName, chunkRequest), chunker);
+    }
+
+    /**
+     * Looks up the vector of each text and hands only the texts nobody has asked for yet to the embedder, in one list
+     * without repeats. The embedder answers with a vector per text it was given, in the same order.
+     *
+     * @return the vectors of all the texts, in the order of the texts
+     */
+    public CompletableFuture<List<List<Float>>> embedTexts(SolrInputDocument document, String model, List<String> texts,
+                                                           Function<List<String>, CompletableFuture<List<List<Float>>>> embedder) {
+        if (document == null) {
+            return embedder.apply(texts);
+        }
+        ConcurrentMap<Object, CompletableFuture<?>> memo = memoFor(document);
+        Map<TextKey, CompletableFuture<List<Float>>> claimed = new LinkedHashMap<>();
+        List<CompletableFuture<List<Float>>> vectors = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            TextKey key = new TextKey(model, text);
+            CompletableFuture<List<Float>> claim = claimed.get(key);
+            if (claim == null) {
+                CompletableFuture<List<Float>> result = new CompletableFuture<>();
+                CompletableFuture<?> existing = memo.putIfAbsent(key, result);
+                if (existing != null) {
+                    hits.incrementAndGet();
+                    vectors.add(cast(existing));
+                    continue;
+                }
+                misses.incrementAndGet();
+                claimed.put(key, result);
+                claim = result;
+            }
+            vectors.add(claim);
+        }
+        if (!claimed.isEmpty()) {
+            log.debug("Embedding {} of {} texts, the rest are shared with another consumer of the same document",
+                    claimed.size(), texts.size());
+            embedClaimed(memo, claimed, embedder);
+        }
+        return CompletableFuture.allOf(vectors.toArray(new CompletableFuture[0]))
+                .thenApply(allVectors -> vectors.stream().map(CompletableFuture::join).toList());
+    }
+
+    private static void embedClaimed(ConcurrentMap<Object, CompletableFuture<?>> memo,
+                                     Map<TextKey, CompletableFuture<List<Float>>> claimed,
+                                     Function<List<String>, CompletableFuture<List<List<Float>>>> embedder) {
+        List<String> missed = claimed.keySet().stream().map(TextKey::text).toList();
+        CompletableFuture<List<List<Float>>> started;
+        try {
+            started = embedder.apply(missed);
+        } catch (RuntimeException e) {
+            started = CompletableFuture.failedFuture(e);
+        }
+        started.whenComplete((missedVectors, error) -> {
+            Throwable failure = error;
+            if (failure == null && missedVectors.size() != missed.size()) {
+                failure = new IllegalStateException("Got " + missedVectors.size() + " vectors for " + missed.size() + " texts");
+            }
+            int i = 0;
+            for (Map.Entry<TextKey, CompletableFuture<List<Float>>> claim : claimed.entrySet()) {
+                if (failure != null) {
+                    memo.remove(claim.getKey(), claim.getValue());
+                    claim.getValue().completeExceptionally(failure);
+                } else {
+                    claim.getValue().complete(missedVectors.get(i++));
+                }
+            }
+        });
+    }
+
+    public CompletableFuture<List<Float>> embedText(SolrInputDocument document, String model, String text,
+                                                    Supplier<CompletableFuture<List<Float>>> embedder) {
+        return memoize(document, new TextKey(model, text), embedder);
+    }
+
+    private <T> CompletableFuture<T> memoize(SolrInputDocument document, Object key, Supplier<CompletableFuture<T>> work) {
+        if (document == null) {
+            return work.get();
+        }
+        ConcurrentMap<Object, CompletableFuture<?>> memo = memoFor(document);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<?> existing = memo.putIfAbsent(key, result);
+        if (existing != null) {
+            hits.incrementAndGet();
+            log.debug("Sharing {} with another consumer of the same document", key.getClass().getSimpleName());
+            return cast(existing);
+        }
+        misses.incrementAndGet();
+        CompletableFuture<T> started;
+        try {
+            started = work.get();
+        } catch (RuntimeException e) {
+            started = CompletableFuture.failedFuture(e);
+        }
+        started.whenComplete((value, error) -> {
+            if (error != null) {
+                memo.remove(key, result);
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+        return result;
+    }
+
+    private ConcurrentMap<Object, CompletableFuture<?>> memoFor(SolrInputDocument document) {
+        return memos.asMap().computeIfAbsent(document, forDocument -> new ConcurrentHashMap<>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<T> cast(CompletableFuture<?> existing) {
+        return (CompletableFuture<T>) existing;
+    }
+
+    /**
+     * @return calls, or texts of {@link #embedTexts}, that were answered from the memo instead of the chunker or
+     * embedding service
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private record ChunkKey(String chunkerName, ChunkRequest chunkRequest) {
+    }
+
+    private record TextKey(String model, String text) {
+    }
+}
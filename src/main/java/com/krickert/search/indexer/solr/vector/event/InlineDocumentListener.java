@@ -1,12 +1,20 @@
 package com.krickert.search.indexer.solr.vector.event;
 
+import com.krickert.search.indexer.chunker.Chunkers;
 import com.krickert.search.indexer.config.IndexerConfiguration;
 import com.krickert.search.indexer.config.VectorConfig;
+import com.krickert.search.indexer.grpc.ChunkerClient;
+import com.krickert.search.indexer.grpc.EmbeddingBatcher;
+import com.krickert.search.indexer.grpc.EmbeddingBatchSizers;
+import com.krickert.search.indexer.grpc.EmbeddingClient;
+import com.krickert.search.indexer.pipeline.IndexingPipeline;
+import com.krickert.search.indexer.pipeline.PipelineStage;
+import com.krickert.search.indexer.pipeline.StageFailedException;
 import com.krickert.search.indexer.solr.SchemaConstants;
 import com.krickert.search.indexer.solr.client.SolrClientService;
+import com.krickert.search.indexer.state.DeadLetter;
+import com.krickert.search.indexer.state.DeadLetterLog;
 import com.krickert.search.indexer.tracker.IndexingTracker;
-import com.krickert.search.service.*;
-import io.micronaut.retry.annotation.Retryable;
 import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 import org.apache.commons.lang3.StringUtils;
@@ -16,64 +24,156 @@ import org.apache.solr.common.SolrInputDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 @Singleton
 public class InlineDocumentListener implements DocumentListener {
 
     private static final Logger log = LoggerFactory.getLogger(InlineDocumentListener.class);
     private final Map<String, VectorConfig> inlineVectorConfig;
-    private final EmbeddingServiceGrpc.EmbeddingServiceBlockingStub embeddingServiceBlockingStub;
     private final Http2SolrClient inlineSolrClient;
     private final String destinationCollectionName;
-    private final IndexingTracker indexingTracker;
     private final ChunkDocumentCreator chunkDocumentCreator;
     private final IndexerConfiguration indexerConfiguration;
+    private final EmbeddingBatcher embeddingBatcher;
+    private final PipelineStage indexStage;
+    private final DeadLetterLog deadLetterLog;
+    private final Set<String> inlineVectorFields;
+    private final DocumentWorkMemo documentWorkMemo;
+    private final DocumentFingerprints documentFingerprints;
+    private final DocumentOutcomes crawlOutcomes;
 
     public InlineDocumentListener(SolrClientService solrClientService,
-                                  @Named("inlineEmbeddingService") EmbeddingServiceGrpc.EmbeddingServiceBlockingStub inlineEmbeddingService,
-                                  @Named("inlineChunkerService") ChunkServiceGrpc.ChunkServiceBlockingStub chunkingService,
+                                  @Named("inlineEmbeddingClient") EmbeddingClient inlineEmbeddingService,
+                                  @Named("inlineChunkerClient") ChunkerClient chunkingService,
                                   IndexingTracker indexingTracker,
-                                  IndexerConfiguration indexerConfiguration) {
+                                  IndexerConfiguration indexerConfiguration,
+                                  EmbeddingBatcher embeddingBatcher,
+                                  IndexingPipeline indexingPipeline,
+                                  DeadLetterLog deadLetterLog,
+                                  DocumentWorkMemo documentWorkMemo,
+                                  DocumentFingerprints documentFingerprints,
+                                  EmbeddingBatchSizers embeddingBatchSizers) {
 
         this.inlineSolrClient =  solrClientService.inlineSolrClient();
         this.inlineVectorConfig = indexerConfiguration.getInlineVectorConfig();
-        this.embeddingServiceBlockingStub = inlineEmbeddingService;
+        // an unknown chunker fails here instead of on every document
+        this.inlineVectorConfig.values().forEach(Chunkers::chunkerName);
         this.destinationCollectionName = indexerConfiguration.getDestinationSolrConfiguration().getCollection();
-        this.indexingTracker = indexingTracker;
-        this.chunkDocumentCreator = new ChunkDocumentCreator(chunkingService, embeddingServiceBlockingStub, 3);
+        this.chunkDocumentCreator = new ChunkDocumentCreator(chunkingService, inlineEmbeddingService, embeddingBatchSizers.inline(), documentWorkMemo);
         this.indexerConfiguration = indexerConfiguration;
+        this.embeddingBatcher = embeddingBatcher;
+        this.indexStage = indexingPipeline.getStage(IndexingPipeline.Stage.INDEX);
+        this.deadLetterLog = deadLetterLog;
+        this.inlineVectorFields = inlineVectorFields(indexerConfiguration);
+        this.documentWorkMemo = documentWorkMemo;
+        this.documentFingerprints = documentFingerprints;
+        this.crawlOutcomes = new DocumentOutcomes(indexingTracker::documentProcessed, indexingTracker::documentFailed);
+    }
+
+    static Set<String> inlineVectorFields(IndexerConfiguration indexerConfiguration) {
+        Set<String> inlineVectorFields = new HashSet<>();
+        indexerConfiguration.getInlineVectorConfig().values()
+                .forEach(vectorConfig -> inlineVectorFields.add(vectorConfig.getFieldVectorName()));
+        return inlineVectorFields;
     }
 
     @Override
     public void processDocument(SolrInputDocument document) {
+        processDocumentAsync(document).join();
+    }
+
+    /**
+     * Requests the vectors and child chunk documents of every inline field before waiting on any of them, so the
+     * fields of this document can share an embedding batch with each other and with other documents. The document
+     * is written by the index stage once they have all arrived. A document the destination already holds as it is
+     * only has its crawl id and date refreshed.
+     */
+    @Override
+    public CompletableFuture<Void> processDocumentAsync(SolrInputDocument document) {
+        return processDocumentAsync(document, crawlOutcomes);
+    }
+
+    /**
+     * Processes the document as {@link #processDocumentAsync(SolrInputDocument)} does, reporting it to the given
+     * outcomes instead of the tracker.
+     */
+    CompletableFuture<Void> processDocumentAsync(SolrInputDocument document, DocumentOutcomes outcomes) {
         String origDocId = document.getFieldValue("id").toString();
+        if (documentFingerprints.isDocumentUnchanged(document)) {
+            log.debug("Document with ID {} is unchanged. Refreshing its crawl id", origDocId);
+            return indexStage.submit(() -> {
+                addToDestination(DocumentFingerprints.crawlRefresh(origDocId, document), document, origDocId, outcomes);
+                return CompletableFuture.<Void>completedFuture(null);
+            });
+        }
         log.info("Processing inline vector for document with ID: {}", origDocId);
+        Map<String, CompletableFuture<?>> pendingFields = new LinkedHashMap<>();
         try {
             inlineVectorConfig.forEach((fieldName, vectorConfig) -> {
                 String fieldData = Optional.ofNullable(document.getFieldValue(vectorConfig.getFieldName()))
                         .map(Object::toString)
                         .orElse(null);
-                processInlineDocumentField(document, fieldName, fieldData, origDocId, vectorConfig);
+                processInlineDocumentField(document, fieldName, fieldData, origDocId, vectorConfig, pendingFields);
             });
         } catch (RuntimeException e) {
             log.error("could not process document with id {} due to error: {}", origDocId, e.getMessage(), e);
-            indexingTracker.documentFailed();
-            return;
+            documentFailed(document, origDocId, IndexingPipeline.Stage.ENRICH, e, outcomes);
+            return CompletableFuture.completedFuture(null);
         }
+        return CompletableFuture.allOf(pendingFields.values().toArray(new CompletableFuture[0]))
+                .handle((allFields, error) -> {
+                    if (error != null) {
+                        log.error("could not process document with id {} due to error: {}", origDocId, error.getMessage(), error);
+                        documentFailed(document, origDocId, IndexingPipeline.Stage.ENRICH, error, outcomes);
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    pendingFields.forEach((vectorFieldName, value) -> document.addField(vectorFieldName, value.join()));
+                    String fingerprint = documentFingerprints.documentFingerprint(document);
+                    if (fingerprint != null) {
+                        document.setField(SchemaConstants.VECTOR_FINGERPRINT, fingerprint);
+                    }
+                    return indexStage.submit(() -> {
+                        addToDestination(document, document, origDocId, outcomes);
+                        return CompletableFuture.<Void>completedFuture(null);
+                    });
+                })
+                .thenCompose(indexed -> indexed);
+    }
+
+    private void addToDestination(SolrInputDocument update, SolrInputDocument document, String origDocId, DocumentOutcomes outcomes) {
         try {
-            inlineSolrClient.add(destinationCollectionName, document);
-            indexingTracker.documentProcessed();
+            inlineSolrClient.add(destinationCollectionName, update);
+            outcomes.processed().accept(origDocId);
         } catch (Exception e) {
             log.error("could not process document with id {} due to error: {}", origDocId, e.getMessage(), e);
-            indexingTracker.documentFailed();
+            documentFailed(document, origDocId, IndexingPipeline.Stage.INDEX, e, outcomes);
         }
+    }
 
+    /**
+     * Reports the failure and keeps the document in the dead letter log. The stage is the one named by the error,
+     * or the given stage when the error did not come out of a pipeline stage.
+     */
+    private void documentFailed(SolrInputDocument document, String origDocId, IndexingPipeline.Stage stage, Throwable error,
+                                DocumentOutcomes outcomes) {
+        try {
+            deadLetterLog.record(DeadLetter.of(DeadLetter.INLINE_LISTENER, null, origDocId, document, inlineVectorFields,
+                    StageFailedException.stageOf(error, stage.configName()), error));
+        } catch (RuntimeException e) {
+            log.error("could not record the failure of document with id {} in the dead letter log", origDocId, e);
+        }
+        outcomes.failed().accept(origDocId);
     }
 
-    private void processInlineDocumentField(SolrInputDocument solrInputDocument, String fieldName, String fieldData, String origDocId, VectorConfig vectorConfig) {
+    private void processInlineDocumentField(SolrInputDocument solrInputDocument, String fieldName, String fieldData, String origDocId,
+                                            VectorConfig vectorConfig, Map<String, CompletableFuture<?>> pendingFields) {
         // If the field data is null, log a warning and return early
         if (fieldData == null) {
             log.warn("Field data for {} is null in document with id {}", fieldName, origDocId);
@@ -83,35 +183,31 @@ public class InlineDocumentListener implements DocumentListener {
         if (vectorConfig.getChunkField()) {
             log.info("processing embedded documents for doc");
             //this is a chunk document type. Everything here will be used to be a child document
-            processChildDocuments(solrInputDocument, fieldName, fieldData, origDocId, vectorConfig);
+            pendingFields.put(vectorConfig.getFieldVectorName(), processChildDocuments(solrInputDocument, fieldName, fieldData, origDocId, vectorConfig));
         } else {
-            processInlineFieldData(solrInputDocument, fieldData, vectorConfig);
+            pendingFields.put(vectorConfig.getFieldVectorName(), requestInlineVector(solrInputDocument, fieldData, vectorConfig));
         }
     }
 
-    private void processInlineFieldData(SolrInputDocument solrInputDocument, String fieldData, VectorConfig vectorConfig) {
+    private CompletableFuture<List<Float>> requestInlineVector(SolrInputDocument solrInputDocument, String fieldData, VectorConfig vectorConfig) {
         // Determine the final field data, possibly truncated if it exceeds the maximum allowed characters
         String finalFieldData = getFinalFieldData(fieldData, vectorConfig);
 
-        // Get the name of the vector field from the configuration
-        String vectorFieldName = vectorConfig.getFieldVectorName();
-
-        // Generate embeddings vector reply based on the processed field data
-        EmbeddingsVectorReply embeddingsVectorReply = getEmbeddingsVectorReply(finalFieldData);
-
-        // Add the embeddings to the Solr input document
-        solrInputDocument.addField(vectorFieldName, embeddingsVectorReply.getEmbeddingsList());
+        // The vector is added to the document under the vector field name once its batch is answered. Another
+        // config embedding the same text with the same model shares it
+        return documentWorkMemo.embedText(solrInputDocument, vectorConfig.getModel(), finalFieldData,
+                () -> embeddingBatcher.embed(finalFieldData));
     }
 
-    private void processChildDocuments(SolrInputDocument solrInputDocument, String fieldName, String fieldData, String origDocId, VectorConfig vectorConfig) {
+    private CompletableFuture<List<SolrInputDocument>> processChildDocuments(SolrInputDocument solrInputDocument, String fieldName, String fieldData,
+                                                                             String origDocId, VectorConfig vectorConfig) {
         String crawlId = solrInputDocument.getFieldValue(SchemaConstants.CRAWL_ID).toString();
         ChunkDocumentRequest request = new ChunkDocumentRequest(solrInputDocument, fieldName, vectorConfig, origDocId,
                 indexerConfiguration.getDestinationSolrConfiguration().getCollection());
         request.setFieldData(fieldData);
         request.setCrawlId(crawlId);
         request.setDateCreated(solrInputDocument.getFieldValue(SchemaConstants.CRAWL_DATE));
-        List<SolrInputDocument> docs = chunkDocumentCreator.getChunkedSolrInputDocuments(request);
-        solrInputDocument.addField(vectorConfig.getFieldVectorName(), docs);
+        return chunkDocumentCreator.createChunkedSolrInputDocuments(request);
     }
 
     private String getFinalFieldData(String fieldData, VectorConfig vectorConfig) {
@@ -121,9 +217,4 @@ public class InlineDocumentListener implements DocumentListener {
         }
         return fieldData;
     }
-
-    @Retryable(multiplier = "2.0", includes = {io.grpc.StatusRuntimeException.class})
-    protected EmbeddingsVectorReply getEmbeddingsVectorReply(String fieldData) {
-        return embeddingServiceBlockingStub.createEmbeddingsVector(EmbeddingsVectorRequest.newBuilder().setText(fieldData).build());
-    }
 }
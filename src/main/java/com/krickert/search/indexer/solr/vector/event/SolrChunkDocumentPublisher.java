@@ -1,32 +1,21 @@
 package com.krickert.search.indexer.solr.vector.event;
 
+import com.krickert.search.indexer.config.IndexerConfigurationProperties;
+import com.krickert.search.indexer.tracker.IndexingTracker;
+import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
-import org.apache.solr.common.SolrInputDocument;
-import org.slf4j.Logger;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Sinks;
 
 
 @Singleton
-public class SolrChunkDocumentPublisher implements SourceSolrDocumentListener {
+public class SolrChunkDocumentPublisher extends BoundedDocumentPublisher {
 
-    Logger log = org.slf4j.LoggerFactory.getLogger(SolrChunkDocumentPublisher.class);
-    private final Sinks.Many<SolrInputDocument> sink;
-
-    public SolrChunkDocumentPublisher() {
-        this.sink = Sinks.many().unicast().onBackpressureBuffer();
-    }
-
-    @Override
-    public void publishDocument(SolrInputDocument document) {
-        Sinks.EmitResult result = this.sink.tryEmitNext(document);
-        if (result.isFailure()) {
-            log.warn("Failed to publish document: {}", document.getFieldValue("id"));
-        }
+    @Inject
+    public SolrChunkDocumentPublisher(IndexerConfigurationProperties indexerConfigurationProperties, IndexingTracker indexingTracker) {
+        this(queueCapacity(indexerConfigurationProperties), indexingTracker);
     }
 
-    @Override
-    public Flux<SolrInputDocument> getDocumentFlux() {
-        return sink.asFlux();
+    SolrChunkDocumentPublisher(int queueCapacity, IndexingTracker indexingTracker) {
+        super(Sinks.many().unicast().onBackpressureBuffer(), queueCapacity, indexingTracker::vectorDocumentFailed);
     }
-}
\ No newline at end of file
+}
@@ -1,32 +1,21 @@
 package com.krickert.search.indexer.solr.vector.event;
 
-import org.apache.solr.common.SolrInputDocument;
+import com.krickert.search.indexer.config.IndexerConfigurationProperties;
+import com.krickert.search.indexer.tracker.IndexingTracker;
+import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
-import org.slf4j.Logger;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Sinks;
 
 
 @Singleton
-public class SolrSourceDocumentPublisher implements SourceSolrDocumentListener {
+public class SolrSourceDocumentPublisher extends BoundedDocumentPublisher {
 
-    Logger log = org.slf4j.LoggerFactory.getLogger(SolrSourceDocumentPublisher.class);
-    private final Sinks.Many<SolrInputDocument> sink;
-
-    public SolrSourceDocumentPublisher() {
-        this.sink = Sinks.many().multicast().onBackpressureBuffer(30000, false);
-    }
-
-    @Override
-    public void publishDocument(SolrInputDocument document) {
-        Sinks.EmitResult result = this.sink.tryEmitNext(document);
-        if (result.isFailure()) {
-            log.warn("Failed to publish document: {}", document.getFieldValue("id"));
-        }
+    @Inject
+    public SolrSourceDocumentPublisher(IndexerConfigurationProperties indexerConfigurationProperties, IndexingTracker indexingTracker) {
+        this(queueCapacity(indexerConfigurationProperties), indexingTracker);
     }
 
-    @Override
-    public Flux<SolrInputDocument> getDocumentFlux() {
-        return sink.asFlux();
+    SolrSourceDocumentPublisher(int queueCapacity, IndexingTracker indexingTracker) {
+        super(Sinks.many().multicast().onBackpressureBuffer(queueCapacity, false), queueCapacity, indexingTracker::documentFailed);
     }
-}
\ No newline at end of file
+}
@@ -7,4 +7,12 @@ public interface SourceSolrDocumentListener {
     void publishDocument(SolrInputDocument doc);
     Flux<SolrInputDocument> getDocumentFlux();
 
+    /**
+     * Called once a listener is done with a published document, whether it succeeded or not.
+     */
+    void documentCompleted();
+
+    int getQueueDepth();
+
+    int getQueueCapacity();
 }
@@ -1,11 +1,13 @@
 package com.krickert.search.indexer.solr.vector.event;
 
+import com.krickert.search.indexer.pipeline.IndexingPipeline;
+import com.krickert.search.indexer.pipeline.PipelineStage;
 import jakarta.inject.Singleton;
 import org.apache.solr.common.SolrInputDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import reactor.core.publisher.Flux;
-import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The SubscriptionManager class is responsible for managing subscriptions to document publishers
@@ -13,8 +15,9 @@ import reactor.core.scheduler.Schedulers;
  * It subscribes to the document flux provided by various publishers and ensures that
  * the documents are processed using the appropriate listeners.
  * <br>
- * It includes methods to subscribe listeners to publishers and process the documents
- * with the listeners in a parallel, non-blocking manner using reactive programming paradigms.
+ * Each published document is handed to its listener as a task of the enrich stage of the {@link IndexingPipeline},
+ * so the stage's workers run the listeners and a full enrich queue holds back publishing.
+ * Every processed document is reported back to its publisher, which bounds how many documents are in flight.
  * <br>
  * @see SolrSourceDocumentPublisher
  * @see InlineDocumentListener
@@ -29,37 +32,54 @@ public class SubscriptionManager {
     private final InlineDocumentListener inlineDocumentListener;
     private final SolrChunkDocumentPublisher solrChunkDocumentPublisher;
     private final ChunkDocumentListener chunkDocumentListener;
+    private final PipelineStage enrichStage;
 
     public SubscriptionManager(SolrSourceDocumentPublisher solrSourceDocumentPublisher,
                                SolrChunkDocumentPublisher solrChunkDocumentPublisher,
                                InlineDocumentListener inlineDocumentListener,
-                               ChunkDocumentListener chunkDocumentListener) {
+                               ChunkDocumentListener chunkDocumentListener,
+                               IndexingPipeline indexingPipeline) {
         this.solrSourceDocumentPublisher = solrSourceDocumentPublisher;
         this.solrChunkDocumentPublisher = solrChunkDocumentPublisher;
         this.inlineDocumentListener = inlineDocumentListener;
         this.chunkDocumentListener = chunkDocumentListener;
+        this.enrichStage = indexingPipeline.getStage(IndexingPipeline.Stage.ENRICH);
         subscribeListeners();
     }
 
     private void subscribeListeners() {
-        subscribeToPublisher(solrSourceDocumentPublisher.getDocumentFlux(), inlineDocumentListener);
-        subscribeToPublisher(solrChunkDocumentPublisher.getDocumentFlux(), chunkDocumentListener);
+        subscribeToPublisher(solrSourceDocumentPublisher, inlineDocumentListener);
+        subscribeToPublisher(solrChunkDocumentPublisher, chunkDocumentListener);
     }
 
-    private void subscribeToPublisher(Flux<SolrInputDocument> documentFlux, DocumentListener documentListener) {
-        documentFlux
-                .parallel()
-                .runOn(Schedulers.boundedElastic())
-                .doOnNext(document -> processDocumentWithListener(document, documentListener))
+    private void subscribeToPublisher(SourceSolrDocumentListener publisher, DocumentListener documentListener) {
+        publisher.getDocumentFlux()
+                .doOnNext(document -> processDocumentWithListener(document, documentListener, publisher))
                 .doOnError(throwable -> log.error("Error in Flux pipeline: ", throwable))
                 .subscribe();
     }
 
-    private void processDocumentWithListener(SolrInputDocument document, DocumentListener listener) {
+    /**
+     * Queues the document for the enrich stage, blocking the publishing thread while the stage is full. The enrich
+     * task ends once the listener has handed the document's work to the later stages, and the publisher is told
+     * when all of that work is done.
+     */
+    private void processDocumentWithListener(SolrInputDocument document, DocumentListener listener,
+                                             SourceSolrDocumentListener publisher) {
+        CompletableFuture<Void> processing;
         try {
-            listener.processDocument(document);
-        } catch (Exception e) {
-            log.error("Error processing document: {}", document.getFieldValue("id"), e);
+            processing = enrichStage
+                    .submit(() -> CompletableFuture.completedFuture(listener.processDocumentAsync(document)))
+                    .thenCompose(laterStages -> laterStages);
+        } catch (RuntimeException e) {
+            processing = CompletableFuture.failedFuture(e);
         }
+        processing.whenComplete((done, error) -> {
+            if (error != null) {
+                log.error("Error processing document: {}", document.getFieldValue("id"), error);
+            }
+            // lets the publisher hand over the next document
+            publisher.documentCompleted();
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+package com.krickert.search.indexer.state;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.krickert.search.indexer.solr.httpclient.select.SourcePosition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The last source position of a crawl where every document before it has been acknowledged by the destination.
+ * A resumed crawl reads on from here under the same crawl id, with the same filters and high-water mark.
+ */
+public class CrawlCheckpoint {
+
+    @JsonProperty("crawl_id")
+    private String crawlId;
+
+    @JsonProperty("source_collection")
+    private String sourceCollection;
+
+    @JsonProperty("crawl_filters")
+    private List<String> crawlFilters = new ArrayList<>();
+
+    @JsonProperty("high_water_mark")
+    private String highWaterMark;
+
+    @JsonProperty("cursor_mark")
+    private String cursorMark;
+
+    @JsonProperty("start")
+    private long start;
+
+    @JsonProperty("documents_acknowledged")
+    private long documentsAcknowledged;
+
+    @JsonProperty("updated_at")
+    private String updatedAt;
+
+    public String getCrawlId() {
+        return crawlId;
+    }
+
+    public void setCrawlId(String crawlId) {
+        this.crawlId = crawlId;
+    }
+
+    public String getSourceCollection() {
+        return sourceCollection;
+    }
+
+    public void setSourceCollection(String sourceCollection) {
+        this.sourceCollection = sourceCollection;
+    }
+
+    public List<String> getCrawlFilters() {
+        return crawlFilters;
+    }
+
+    public void setCrawlFilters(List<String> crawlFilters) {
+        this.crawlFilters = crawlFilters == null ? new ArrayList<>() : new ArrayList<>(crawlFilters);
+    }
+
+    public String getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public void setHighWaterMark(String highWaterMark) {
+        this.highWaterMark = highWaterMark;
+    }
+
+    public String getCursorMark() {
+        return cursorMark;
+    }
+
+    public void setCursorMark(String cursorMark) {
+        this.cursorMark = cursorMark;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public void setStart(long start) {
+        this.start = start;
+    }
+
+    public long getDocumentsAcknowledged() {
+        return documentsAcknowledged;
+    }
+
+    public void setDocumentsAcknowledged(long documentsAcknowledged) {
+        this.documentsAcknowledged = documentsAcknowledged;
+    }
+
+    public String getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(String updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public SourcePosition toSourcePosition() {
+        return new SourcePosition(cursorMark, start);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("crawlId", crawlId)
+                .add("sourceCollection", sourceCollection)
+                .add("crawlFilters", crawlFilters)
+                .add("highWaterMark", highWaterMark)
+                .add("cursorMark", cursorMark)
+                .add("start", start)
+                .add("documentsAcknowledged", documentsAcknowledged)
+                .add("updatedAt", updatedAt)
+                .toString();
+    }
+}
@@ -0,0 +1,224 @@
+package com.krickert.search.indexer.state;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.MoreObjects;
+import com.krickert.search.indexer.config.IndexerConfiguration;
+import com.krickert.search.indexer.config.SolrConfiguration;
+import com.krickert.search.indexer.solr.SchemaConstants;
+import com.krickert.search.indexer.solr.httpclient.select.HttpSolrSelectResponse;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.apache.solr.common.SolrInputDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Saves a {@link CrawlCheckpoint} each time the oldest source page still in flight has been fully acknowledged.
+ * <br>
+ * A page counts as acknowledged once the main listener and every chunk vector listener have reported each of its
+ * documents, whether they were processed or failed. Pages are acknowledged out of order, so the checkpoint only moves
+ * past a page once every page before it is done as well. After a restart the pages past the checkpoint are read
+ * again, which is harmless because indexing is idempotent.
+ */
+@Singleton
+public class CrawlCheckpointer {
+    private static final Logger log = LoggerFactory.getLogger(CrawlCheckpointer.class);
+
+    private final CrawlStateStore crawlStateStore;
+    private final int acknowledgementsPerDocument;
+    private final boolean enabled;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Deque<PendingPage> pendingPages = new ArrayDeque<>();
+    private final Map<String, Deque<PendingPage>> pendingPagesByDocumentId = new HashMap<>();
+    private String checkpointKey;
+    private CrawlCheckpoint checkpoint;
+
+    @Inject
+    public CrawlCheckpointer(CrawlStateStore crawlStateStore, IndexerConfiguration indexerConfiguration) {
+        this(crawlStateStore,
+                1 + indexerConfiguration.getChunkVectorConfig().size(),
+                Boolean.TRUE.equals(indexerConfiguration.getIndexerConfigurationProperties().getCheckpointEnabled()));
+    }
+
+    /**
+     * @param acknowledgementsPerDocument how many listeners report back on each document
+     */
+    public CrawlCheckpointer(CrawlStateStore crawlStateStore, int acknowledgementsPerDocument, boolean enabled) {
+        this.crawlStateStore = checkNotNull(crawlStateStore);
+        this.acknowledgementsPerDocument = acknowledgementsPerDocument;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the checkpoint of the last crawl of this source that did not complete, if there is one
+     */
+    public Optional<CrawlCheckpoint> load(SolrConfiguration sourceSolrConfiguration) {
+        Optional<String> saved = crawlStateStore.get(checkpointKey(sourceSolrConfiguration));
+        if (saved.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(objectMapper.readValue(saved.get(), CrawlCheckpoint.class));
+        } catch (JsonProcessingException e) {
+            log.error("Could not read the checkpoint of source collection {}. It is ignored.", sourceSolrConfiguration.getCollection(), e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Starts tracking a crawl and saves its first checkpoint right away, so even a crawl that stops before its first
+     * page is acknowledged resumes with the same crawl id and filters.
+     *
+     * @param firstCheckpoint the crawl id, filters and position the crawl starts from
+     */
+    public synchronized void begin(SolrConfiguration sourceSolrConfiguration, CrawlCheckpoint firstCheckpoint) {
+        pendingPages.clear();
+        pendingPagesByDocumentId.clear();
+        this.checkpointKey = checkpointKey(sourceSolrConfiguration);
+        this.checkpoint = checkNotNull(firstCheckpoint);
+        save();
+        log.info("Checkpointing crawl {} of source collection {} from {}", checkpoint.getCrawlId(),
+                sourceSolrConfiguration.getCollection(), checkpoint.toSourcePosition());
+    }
+
+    /**
+     * Registers a page before its documents are published, so no acknowledgement can arrive before the page is known.
+     * Pages must be registered in the order they were read.
+     */
+    public synchronized void pagePublished(HttpSolrSelectResponse page) {
+        if (checkpoint == null) {
+            return;
+        }
+        PendingPage pendingPage = new PendingPage(page);
+        for (SolrInputDocument document : page.getDocs()) {
+            Object documentId = document.getFieldValue(SchemaConstants.ID);
+            if (documentId == null) {
+                continue;
+            }
+            Deque<PendingPage> pagesForDocument = pendingPagesByDocumentId.computeIfAbsent(documentId.toString(), id -> new ArrayDeque<>());
+            for (int i = 0; i < acknowledgementsPerDocument; i++) {
+                pagesForDocument.add(pendingPage);
+            }
+            pendingPage.remainingAcknowledgements += acknowledgementsPerDocument;
+        }
+        pendingPages.add(pendingPage);
+        advance();
+    }
+
+    /**
+     * Called once by each listener for every document it has finished with. Unknown ids are ignored.
+     */
+    public synchronized void documentAcknowledged(String documentId) {
+        if (checkpoint == null || documentId == null) {
+            return;
+        }
+        Deque<PendingPage> pagesForDocument = pendingPagesByDocumentId.get(documentId);
+        if (pagesForDocument == null) {
+            return;
+        }
+        PendingPage pendingPage = pagesForDocument.poll();
+        if (pagesForDocument.isEmpty()) {
+            pendingPagesByDocumentId.remove(documentId);
+        }
+        pendingPage.remainingAcknowledgements--;
+        advance();
+    }
+
+    /**
+     * Stops tracking the crawl and removes its checkpoint, so the next crawl starts from the beginning.
+     */
+    public synchronized void complete() {
+        if (checkpointKey != null) {
+            crawlStateStore.remove(checkpointKey);
+            log.info("Crawl {} completed. Its checkpoint was removed.", checkpoint.getCrawlId());
+        }
+        stop();
+    }
+
+    /**
+     * Stops tracking the crawl and leaves its last checkpoint in place to resume from.
+     */
+    public synchronized void stop() {
+        pendingPages.clear();
+        pendingPagesByDocumentId.clear();
+        checkpointKey = null;
+        checkpoint = null;
+    }
+
+    public synchronized Optional<CrawlCheckpoint> getCurrentCheckpoint() {
+        return Optional.ofNullable(checkpoint);
+    }
+
+    private void advance() {
+        boolean moved = false;
+        while (!pendingPages.isEmpty() && pendingPages.peek().remainingAcknowledgements <= 0) {
+            PendingPage pendingPage = pendingPages.poll();
+            checkpoint.setCursorMark(pendingPage.cursorMarkAfter);
+            checkpoint.setStart(pendingPage.startAfter);
+            checkpoint.setDocumentsAcknowledged(checkpoint.getDocumentsAcknowledged() + pendingPage.documentCount);
+            moved = true;
+        }
+        if (moved) {
+            save();
+        }
+    }
+
+    private void save() {
+        checkpoint.setUpdatedAt(Instant.now().toString());
+        try {
+            crawlStateStore.put(checkpointKey, objectMapper.writeValueAsString(checkpoint));
+        } catch (JsonProcessingException e) {
+            log.error("Could not save checkpoint {}", checkpoint, e);
+        }
+    }
+
+    static String checkpointKey(SolrConfiguration sourceSolrConfiguration) {
+        return "checkpoint-" + sourceSolrConfiguration.getConnection().getUrl() + "-" + sourceSolrConfiguration.getCollection();
+    }
+
+    /**
+     * A page that was published and the position a crawl continues from once it is acknowledged. Cursor mark pages
+     * continue from their next cursor mark and start/rows pages from the offset after the rows asked for.
+     */
+    private static class PendingPage {
+        private final String cursorMarkAfter;
+        private final long startAfter;
+        private final int documentCount;
+        private int remainingAcknowledgements;
+
+        private PendingPage(HttpSolrSelectResponse page) {
+            long start = page.getStart() == null ? 0L : page.getStart();
+            long pageSize = page.getPageSize() == null ? page.getDocs().size() : page.getPageSize();
+            this.cursorMarkAfter = page.getNextCursorMark();
+            this.startAfter = cursorMarkAfter == null ? start + pageSize : 0L;
+            this.documentCount = page.getDocs().size();
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("cursorMarkAfter", cursorMarkAfter)
+                    .add("startAfter", startAfter)
+                    .add("documentCount", documentCount)
+                    .add("remainingAcknowledgements", remainingAcknowledgements)
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.krickert.search.indexer.state;
+
+import java.util.Optional;
+
+/**
+ * Keeps small pieces of crawl state, such as incremental watermarks, across indexer restarts.
+ * Values are plain strings stored under a key. Writes must be durable by the time {@link #put} returns.
+ */
+public interface CrawlStateStore {
+
+    Optional<String> get(String key);
+
+    void put(String key, String value);
+
+    void remove(String key);
+}
@@ -0,0 +1,243 @@
+package com.krickert.search.indexer.state;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Throwables;
+import com.krickert.search.indexer.solr.SchemaConstants;
+import io.micronaut.core.annotation.Introspected;
+import io.micronaut.serde.annotation.Serdeable;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A source document that a listener could not index, with the stage it failed in and the error. The document is
+ * kept as it was published, so it can be replayed without reading the source collection again. JSON would give
+ * dates back as numbers, floats as doubles and small longs as ints, so the type of those fields is kept alongside
+ * the document and restored when it is replayed.
+ */
+@Serdeable
+@Introspected
+public class DeadLetter {
+    public static final String INLINE_LISTENER = "inline";
+    public static final String CHUNK_LISTENER = "chunk";
+    static final String DATE_TYPE = "date";
+    static final String FLOAT_TYPE = "float";
+    static final String LONG_TYPE = "long";
+    static final String BYTES_TYPE = "bytes";
+
+    @JsonProperty("document_id")
+    private String documentId;
+
+    @JsonProperty("crawl_id")
+    private String crawlId;
+
+    // inline for the destination collection, chunk for a chunk vector collection
+    @JsonProperty("listener")
+    private String listener;
+
+    // the chunked field for the chunk listener, which reports each field on its own
+    @JsonProperty("field_name")
+    private String fieldName;
+
+    @JsonProperty("stage")
+    private String stage;
+
+    @JsonProperty("error")
+    private String error;
+
+    @JsonProperty("failed_at")
+    private String failedAt;
+
+    @JsonProperty("document")
+    private Map<String, Object> document = new LinkedHashMap<>();
+
+    // the type of the fields in the document that JSON does not give back as they were
+    @JsonProperty("field_types")
+    private Map<String, String> fieldTypes = new LinkedHashMap<>();
+
+    public static DeadLetter of(String listener, String fieldName, String documentId, SolrInputDocument document,
+                                Set<String> excludedFields, String stage, Throwable error) {
+        DeadLetter deadLetter = new DeadLetter();
+        deadLetter.setListener(listener);
+        deadLetter.setFieldName(fieldName);
+        deadLetter.setDocumentId(documentId);
+        Object crawlId = document.getFieldValue(SchemaConstants.CRAWL_ID);
+        deadLetter.setCrawlId(crawlId == null ? null : crawlId.toString());
+        deadLetter.setStage(stage);
+        deadLetter.setError(error == null ? null : Throwables.getRootCause(error).toString());
+        deadLetter.copyFields(document, excludedFields);
+        return deadLetter;
+    }
+
+    /**
+     * Copies the fields of a document, leaving out fields a listener adds to it such as inline vectors. Dates are kept
+     * as ISO-8601 instants and binary values as base64.
+     */
+    private void copyFields(SolrInputDocument solrInputDocument, Set<String> excludedFields) {
+        for (SolrInputField field : solrInputDocument.values()) {
+            if (excludedFields.contains(field.getName())) {
+                continue;
+            }
+            Collection<Object> values = field.getValues();
+            if (values == null) {
+                document.put(field.getName(), null);
+                continue;
+            }
+            List<Object> storedValues = new ArrayList<>(values.size());
+            for (Object value : values) {
+                String type = typeOf(value);
+                if (type != null) {
+                    fieldTypes.putIfAbsent(field.getName(), type);
+                }
+                storedValues.add(storedValue(value));
+            }
+            document.put(field.getName(), storedValues.size() == 1 ? storedValues.get(0) : storedValues);
+        }
+    }
+
+    private static String typeOf(Object value) {
+        if (value instanceof Date) {
+            return DATE_TYPE;
+        } else if (value instanceof Float) {
+            return FLOAT_TYPE;
+        } else if (value instanceof Long) {
+            return LONG_TYPE;
+        } else if (value instanceof byte[]) {
+            return BYTES_TYPE;
+        }
+        return null;
+    }
+
+    private static Object storedValue(Object value) {
+        if (value instanceof Date date) {
+            return date.toInstant().toString();
+        } else if (value instanceof byte[] bytes) {
+            return Base64.getEncoder().encodeToString(bytes);
+        }
+        return value;
+    }
+
+    private static Object restoredValue(Object value, String type) {
+        if (type == null || value == null) {
+            return value;
+        }
+        return switch (type) {
+            case DATE_TYPE -> value instanceof String date ? Date.from(Instant.parse(date))
+                    : value instanceof Number epochMillis ? new Date(epochMillis.longValue()) : value;
+            case FLOAT_TYPE -> value instanceof Number number ? number.floatValue() : value;
+            case LONG_TYPE -> value instanceof Number number ? number.longValue() : value;
+            case BYTES_TYPE -> value instanceof String bytes ? Base64.getDecoder().decode(bytes) : value;
+            default -> value;
+        };
+    }
+
+    public SolrInputDocument toSolrInputDocument() {
+        SolrInputDocument solrInputDocument = new SolrInputDocument();
+        document.forEach((name, value) -> {
+            String type = fieldTypes.get(name);
+            if (value instanceof Collection<?> values) {
+                List<Object> restoredValues = new ArrayList<>(values.size());
+                values.forEach(item -> restoredValues.add(restoredValue(item, type)));
+                solrInputDocument.setField(name, restoredValues);
+            } else {
+                solrInputDocument.setField(name, restoredValue(value, type));
+            }
+        });
+        return solrInputDocument;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(String documentId) {
+        this.documentId = documentId;
+    }
+
+    public String getCrawlId() {
+        return crawlId;
+    }
+
+    public void setCrawlId(String crawlId) {
+        this.crawlId = crawlId;
+    }
+
+    public String getListener() {
+        return listener;
+    }
+
+    public void setListener(String listener) {
+        this.listener = listener;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public void setFieldName(String fieldName) {
+        this.fieldName = fieldName;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public String getFailedAt() {
+        return failedAt;
+    }
+
+    public void setFailedAt(String failedAt) {
+        this.failedAt = failedAt;
+    }
+
+    public Map<String, Object> getDocument() {
+        return document;
+    }
+
+    public void setDocument(Map<String, Object> document) {
+        this.document = document;
+    }
+
+    public Map<String, String> getFieldTypes() {
+        return fieldTypes;
+    }
+
+    public void setFieldTypes(Map<String, String> fieldTypes) {
+        this.fieldTypes = fieldTypes;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("documentId", documentId)
+                .add("crawlId", crawlId)
+                .add("listener", listener)
+                .add("fieldName", fieldName)
+                .add("stage", stage)
+                .add("error", error)
+                .add("failedAt", failedAt)
+                .toString();
+    }
+}
@@ -0,0 +1,169 @@
+package com.krickert.search.indexer.state;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.krickert.search.indexer.config.IndexerConfigurationProperties;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Appends the documents the listeners could not index to a file in the state directory, one JSON line per failure.
+ * <br>
+ * The log survives restarts and crawls. {@link #takeAll()} moves it aside for a replay, and documents that fail
+ * again during the replay are appended anew. The moved file is deleted by {@link #replayFinished()}. If the indexer
+ * stops part way through a replay, the moved file is put back into the log on the next start. A line that cannot be
+ * read, such as one cut short by a crash, is skipped.
+ */
+@Singleton
+public class DeadLetterLog {
+    private static final Logger log = LoggerFactory.getLogger(DeadLetterLog.class);
+    private static final String DEFAULT_STATE_DIRECTORY = "indexer-state";
+    static final String DEAD_LETTER_FILE = "dead-letters.jsonl";
+
+    private final Path deadLetterFile;
+    private final Path replayingFile;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private int size;
+
+    @Inject
+    public DeadLetterLog(IndexerConfigurationProperties indexerConfigurationProperties) {
+        this(Paths.get(StringUtils.defaultIfBlank(indexerConfigurationProperties.getStateDirectory(), DEFAULT_STATE_DIRECTORY))
+                .resolve(DEAD_LETTER_FILE));
+    }
+
+    public DeadLetterLog(Path deadLetterFile) {
+        this.deadLetterFile = deadLetterFile;
+        this.replayingFile = deadLetterFile.resolveSibling(deadLetterFile.getFileName() + ".replaying");
+        restoreUnfinishedReplay();
+        this.size = read(deadLetterFile).size();
+        if (size > 0) {
+            log.warn("{} failed documents are waiting in {}. They can be replayed with POST /index/dead-letters/replay",
+                    size, deadLetterFile.toAbsolutePath());
+        }
+    }
+
+    public synchronized void record(DeadLetter deadLetter) {
+        if (deadLetter.getFailedAt() == null) {
+            deadLetter.setFailedAt(Instant.now().toString());
+        }
+        try {
+            String line = objectMapper.writeValueAsString(deadLetter);
+            Path directory = deadLetterFile.toAbsolutePath().getParent();
+            if (directory != null) {
+                Files.createDirectories(directory);
+            }
+            try (Writer writer = Files.newBufferedWriter(deadLetterFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(line);
+                writer.write('\n');
+            }
+            size++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write dead letter " + deadLetter + " to " + deadLetterFile, e);
+        }
+    }
+
+    public synchronized List<DeadLetter> getAll() {
+        return read(deadLetterFile);
+    }
+
+    /**
+     * Empties the log for a replay and returns what was in it.
+     *
+     * @throws IllegalStateException if a replay is already running
+     */
+    public synchronized List<DeadLetter> takeAll() {
+        if (Files.exists(replayingFile)) {
+            throw new IllegalStateException("A dead letter replay is already running");
+        }
+        if (!Files.exists(deadLetterFile)) {
+            return new ArrayList<>();
+        }
+        try {
+            Files.move(deadLetterFile, replayingFile, StandardCopyOption.ATOMIC_MOVE);
+            size = 0;
+            return read(replayingFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not take the dead letters in " + deadLetterFile, e);
+        }
+    }
+
+    /**
+     * Drops the dead letters handed out by {@link #takeAll()}. The ones that failed again are back in the log.
+     */
+    public synchronized void replayFinished() {
+        try {
+            Files.deleteIfExists(replayingFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not remove " + replayingFile, e);
+        }
+    }
+
+    /**
+     * Puts the dead letters handed out by {@link #takeAll()} back into the log after a replay broke off. Some of them
+     * may have been indexed already, which does no harm when they are replayed again.
+     */
+    public synchronized void replayAbandoned() {
+        restoreUnfinishedReplay();
+        size = read(deadLetterFile).size();
+    }
+
+    private void restoreUnfinishedReplay() {
+        if (!Files.exists(replayingFile)) {
+            return;
+        }
+        log.warn("A dead letter replay did not finish. Putting {} back into {}", replayingFile, deadLetterFile);
+        try {
+            Files.write(deadLetterFile, Files.readAllBytes(replayingFile), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            Files.delete(replayingFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not restore the dead letters in " + replayingFile, e);
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private List<DeadLetter> read(Path file) {
+        List<DeadLetter> deadLetters = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return deadLetters;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    deadLetters.add(objectMapper.readValue(line, DeadLetter.class));
+                } catch (JsonProcessingException e) {
+                    log.warn("Skipping a dead letter in {} that could not be read: {}", file, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the dead letters in " + file, e);
+        }
+        return deadLetters;
+    }
+}
@@ -0,0 +1,440 @@
+package com.krickert.search.indexer.state;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.krickert.search.indexer.config.IndexerConfigurationProperties;
+import com.krickert.search.indexer.dto.EmbeddingStoreStatus;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Keeps the vectors the embedding service returned in memory-mapped segment files in the state directory, so a text
+ * that has not changed since an earlier crawl is looked up locally instead of embedded again.
+ * <br>
+ * Vectors are appended to the newest segment and found through an in-memory index of the model and a hash of the
+ * text, which is rebuilt from the segments on start. Each vector is stamped with the last crawl that used it. When a
+ * crawl finishes, vectors that none of the last indexer.embedding-store-max-age-crawls crawls used are dropped, and
+ * an older segment that is less than half live has its remaining vectors copied to the newest segment and is
+ * deleted. The segments may take at most indexer.embedding-store-max-megabytes. When a new segment would go over
+ * that, the oldest segment is deleted with every vector in it, which also bounds the in-memory index.
+ * <br>
+ * Each record carries a CRC32C of its key and vector, and its length is written after the rest of it. A record cut
+ * short by a process crash reads as the end of its segment. After a power failure the pages of a mapping may have
+ * reached the disk in any order, so a record whose checksum does not match is skipped and the scan goes on to the
+ * next one.
+ */
+@Singleton
+public class EmbeddingStore {
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingStore.class);
+    private static final String DEFAULT_STATE_DIRECTORY = "indexer-state";
+    static final String STORE_DIRECTORY = "embedding-store";
+    static final String GENERATION_KEY = "embedding-store-generation";
+    private static final int DEFAULT_SEGMENT_MEGABYTES = 64;
+    private static final int DEFAULT_MAX_AGE_CRAWLS = 3;
+    private static final int DEFAULT_MAX_MEGABYTES = 1024;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int SEGMENT_MAGIC = 0x56454331;
+    private static final int SEGMENT_HEADER_BYTES = 8;
+    // Vector length, generation, the two halves of the key hash and the checksum, followed by the floats
+    private static final int RECORD_HEADER_BYTES = 28;
+    private static final int CHECKSUM_OFFSET = 24;
+    private static final HashFunction KEY_HASH = Hashing.murmur3_128();
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxAgeCrawls;
+    private final int maxSegments;
+    private final CrawlStateStore crawlStateStore;
+    private final Map<Key, Location> index = new ConcurrentHashMap<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictedVectors = new AtomicLong();
+    private volatile int generation;
+    private Segment activeSegment;
+
+    @Inject
+    public EmbeddingStore(IndexerConfigurationProperties indexerConfigurationProperties, CrawlStateStore crawlStateStore) {
+        this(Boolean.TRUE.equals(indexerConfigurationProperties.getEmbeddingStoreEnabled())
+                        ? Paths.get(StringUtils.defaultIfBlank(indexerConfigurationProperties.getStateDirectory(), DEFAULT_STATE_DIRECTORY))
+                        .resolve(STORE_DIRECTORY)
+                        : null,
+                valueOrDefault(indexerConfigurationProperties.getEmbeddingStoreSegmentMegabytes(), DEFAULT_SEGMENT_MEGABYTES) * 1024 * 1024,
+                valueOrDefault(indexerConfigurationProperties.getEmbeddingStoreMaxAgeCrawls(), DEFAULT_MAX_AGE_CRAWLS),
+                valueOrDefault(indexerConfigurationProperties.getEmbeddingStoreMaxMegabytes(), DEFAULT_MAX_MEGABYTES) * 1024L * 1024L,
+                crawlStateStore);
+    }
+
+    /**
+     * @param directory where the segments are kept, or null to turn the store off
+     * @param maxBytes  disk the segments may take, which is never less than one segment
+     */
+    public EmbeddingStore(Path directory, int segmentBytes, int maxAgeCrawls, long maxBytes, CrawlStateStore crawlStateStore) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxAgeCrawls = Math.max(1, maxAgeCrawls);
+        this.maxSegments = segmentBytes <= 0 ? 1 : (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / segmentBytes));
+        this.crawlStateStore = crawlStateStore;
+        if (directory == null) {
+            log.info("Embedding store is off");
+            return;
+        }
+        this.generation = crawlStateStore.get(GENERATION_KEY).map(Integer::parseInt).orElse(0);
+        open();
+        log.info("Embedding store in {} holds {} vectors in {} segments", directory.toAbsolutePath(), index.size(), segments.size());
+    }
+
+    public static EmbeddingStore disabled() {
+        return new EmbeddingStore(null, 0, 0, 0, null);
+    }
+
+    private static int valueOrDefault(Integer value, int defaultValue) {
+        return value == null ? defaultValue : value;
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * @return the stored vector of the text, or null if it was not embedded with this model in a recent crawl
+     */
+    public float[] get(String model, String text) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Location location = index.get(key(model, text));
+        if (location == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        location.touch(generation);
+        return location.vector();
+    }
+
+    /**
+     * Marks the stored vector of the text, if there is one, as used by the current crawl without reading it.
+     */
+    public void touch(String model, String text) {
+        if (isEnabled()) {
+            Location location = index.get(key(model, text));
+            if (location != null) {
+                location.touch(generation);
+            }
+        }
+    }
+
+    public void put(String model, String text, float[] vector) {
+        if (!isEnabled() || vector.length == 0) {
+            return;
+        }
+        Key key = key(model, text);
+        if (index.containsKey(key)) {
+            return;
+        }
+        // two callers embedding the same text must not both append it
+        synchronized (this) {
+            if (!index.containsKey(key)) {
+                append(key, generation, vector);
+            }
+        }
+    }
+
+    /**
+     * Starts the next generation, drops the vectors that have aged out and compacts the segments they leave mostly
+     * empty. Called after a crawl completes.
+     */
+    public synchronized void crawlFinished() {
+        if (!isEnabled()) {
+            return;
+        }
+        generation++;
+        crawlStateStore.put(GENERATION_KEY, Integer.toString(generation));
+        int dropped = 0;
+        for (Iterator<Location> locations = index.values().iterator(); locations.hasNext(); ) {
+            Location location = locations.next();
+            if (agedOut(location.generation())) {
+                locations.remove();
+                location.segment.liveBytes.addAndGet(-location.bytes());
+                dropped++;
+            }
+        }
+        int compacted = 0;
+        for (Segment segment : List.copyOf(segments)) {
+            if (segment != activeSegment && segment.liveBytes.get() * 2 < segment.usedBytes()) {
+                compact(segment);
+                compacted++;
+            }
+        }
+        activeSegment.buffer.force();
+        log.info("Embedding store generation {}: dropped {} vectors unused for {} crawls and compacted {} segments. {} vectors are left",
+                generation, dropped, maxAgeCrawls, compacted, index.size());
+    }
+
+    private boolean agedOut(int recordGeneration) {
+        return recordGeneration < generation - maxAgeCrawls;
+    }
+
+    public synchronized EmbeddingStoreStatus getStatus() {
+        EmbeddingStoreStatus status = new EmbeddingStoreStatus();
+        status.setEnabled(isEnabled());
+        status.setGeneration(generation);
+        status.setVectors(index.size());
+        status.setSegments(segments.size());
+        status.setUsedBytes(segments.stream().mapToLong(Segment::usedBytes).sum());
+        status.setLiveBytes(segments.stream().mapToLong(segment -> segment.liveBytes.get()).sum());
+        status.setHits(hits.get());
+        status.setMisses(misses.get());
+        status.setEvictedVectors(evictedVectors.get());
+        return status;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        segments.forEach(segment -> segment.buffer.force());
+    }
+
+    private synchronized void open() {
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(directory)) {
+                files = listing.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+            }
+            for (Path file : files) {
+                Segment segment = Segment.open(file);
+                if (segment == null) {
+                    log.warn("Skipping {}, which is not an embedding store segment", file);
+                    continue;
+                }
+                segments.add(segment);
+                scan(segment);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the embedding store in " + directory, e);
+        }
+        // the cap may have been lowered since the segments were written
+        while (segments.size() > maxSegments) {
+            evict(segments.get(0));
+        }
+        activeSegment = segments.isEmpty() ? newSegment() : segments.get(segments.size() - 1);
+    }
+
+    private void scan(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int position = SEGMENT_HEADER_BYTES;
+        while (position + RECORD_HEADER_BYTES <= buffer.capacity()) {
+            int dimensions = buffer.getInt(position);
+            if (dimensions <= 0 || position + recordBytes(dimensions) > buffer.capacity()) {
+                break;
+            }
+            Location location = new Location(segment, position, dimensions);
+            if (buffer.getInt(position + CHECKSUM_OFFSET) != checksum(buffer, position, dimensions)) {
+                log.warn("Skipping a damaged vector at {} of {}", position, segment.file);
+            } else if (!agedOut(location.generation())) {
+                index(new Key(buffer.getLong(position + 8), buffer.getLong(position + 16)), location);
+            }
+            position += (int) recordBytes(dimensions);
+        }
+        segment.writePosition = position;
+    }
+
+    private synchronized void append(Key key, int recordGeneration, float[] vector) {
+        long bytes = recordBytes(vector.length);
+        if (bytes > segmentBytes - SEGMENT_HEADER_BYTES) {
+            log.debug("Not storing a vector of {} floats, which does not fit in a segment", vector.length);
+            return;
+        }
+        if (activeSegment.writePosition + bytes > activeSegment.buffer.capacity()) {
+            activeSegment.buffer.force();
+            while (segments.size() >= maxSegments) {
+                evict(segments.get(0));
+            }
+            activeSegment = newSegment();
+        }
+        ByteBuffer buffer = activeSegment.buffer;
+        int position = activeSegment.writePosition;
+        buffer.putInt(position + 4, recordGeneration);
+        buffer.putLong(position + 8, key.high());
+        buffer.putLong(position + 16, key.low());
+        buffer.slice(position + RECORD_HEADER_BYTES, vector.length * Float.BYTES).asFloatBuffer().put(vector);
+        buffer.putInt(position + CHECKSUM_OFFSET, checksum(buffer, position, vector.length));
+        buffer.putInt(position, vector.length);
+        activeSegment.writePosition += (int) bytes;
+        index(key, new Location(activeSegment, position, vector.length));
+    }
+
+    private void index(Key key, Location location) {
+        location.segment.liveBytes.addAndGet(location.bytes());
+        Location previous = index.put(key, location);
+        if (previous != null) {
+            previous.segment.liveBytes.addAndGet(-previous.bytes());
+        }
+    }
+
+    private void compact(Segment segment) {
+        for (Map.Entry<Key, Location> entry : index.entrySet()) {
+            Location location = entry.getValue();
+            if (location.segment == segment) {
+                append(entry.getKey(), location.generation(), location.vector());
+            }
+        }
+        delete(segment);
+    }
+
+    /**
+     * Deletes the segment and drops the vectors in it that are still indexed, to keep the store under its cap.
+     */
+    private void evict(Segment segment) {
+        int evicted = 0;
+        for (Iterator<Location> locations = index.values().iterator(); locations.hasNext(); ) {
+            if (locations.next().segment == segment) {
+                locations.remove();
+                evicted++;
+            }
+        }
+        evictedVectors.addAndGet(evicted);
+        log.info("Embedding store is at its cap of {} segments. Dropped {} and the {} vectors in it", maxSegments,
+                segment.file.getFileName(), evicted);
+        delete(segment);
+    }
+
+    private void delete(Segment segment) {
+        segments.remove(segment);
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not remove embedding store segment " + segment.file, e);
+        }
+    }
+
+    private Segment newSegment() {
+        long id = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).id + 1;
+        Path file = directory.resolve(String.format("segment-%010d%s", id, SEGMENT_SUFFIX));
+        try {
+            Segment segment = Segment.create(file, id, segmentBytes);
+            segments.add(segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create embedding store segment " + file, e);
+        }
+    }
+
+    private static int checksum(ByteBuffer buffer, int position, int dimensions) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(position + 8, 16));
+        crc.update(buffer.slice(position + RECORD_HEADER_BYTES, dimensions * Float.BYTES));
+        return (int) crc.getValue();
+    }
+
+    private static long recordBytes(int dimensions) {
+        return RECORD_HEADER_BYTES + (long) dimensions * Float.BYTES;
+    }
+
+    private static Key key(String model, String text) {
+        HashCode hash = KEY_HASH.newHasher()
+                .putString(StringUtils.defaultString(model), StandardCharsets.UTF_8)
+                .putByte((byte) 0)
+                .putString(text, StandardCharsets.UTF_8)
+                .hash();
+        ByteBuffer bytes = ByteBuffer.wrap(hash.asBytes());
+        return new Key(bytes.getLong(), bytes.getLong());
+    }
+
+    private record Key(long high, long low) {
+    }
+
+    private record Location(Segment segment, int offset, int dimensions) {
+
+        int generation() {
+            return segment.buffer.getInt(offset + 4);
+        }
+
+        void touch(int currentGeneration) {
+            if (generation() < currentGeneration) {
+                segment.buffer.putInt(offset + 4, currentGeneration);
+            }
+        }
+
+        float[] vector() {
+            float[] vector = new float[dimensions];
+            segment.buffer.slice(offset + RECORD_HEADER_BYTES, dimensions * Float.BYTES).asFloatBuffer().get(vector);
+            return vector;
+        }
+
+        long bytes() {
+            return recordBytes(dimensions);
+        }
+    }
+
+    /**
+     * One file of the store, mapped whole. The mapping stays valid after the channel is closed.
+     */
+    private static final class Segment {
+        private final long id;
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private final AtomicLong liveBytes = new AtomicLong();
+        private int writePosition = SEGMENT_HEADER_BYTES;
+
+        private Segment(long id, Path file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path file, long id, int segmentBytes) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+                buffer.putInt(0, SEGMENT_MAGIC);
+                return new Segment(id, file, buffer);
+            }
+        }
+
+        static Segment open(Path file) throws IOException {
+            String name = file.getFileName().toString();
+            long id;
+            try {
+                id = Long.parseLong(StringUtils.substringBetween(name, "segment-", SEGMENT_SUFFIX));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (channel.size() < SEGMENT_HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                    return null;
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                return buffer.getInt(0) == SEGMENT_MAGIC ? new Segment(id, file, buffer) : null;
+            }
+        }
+
+        long usedBytes() {
+            return writePosition - SEGMENT_HEADER_BYTES;
+        }
+    }
+}
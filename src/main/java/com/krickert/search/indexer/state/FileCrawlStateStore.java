@@ -0,0 +1,78 @@
+package com.krickert.search.indexer.state;
+
+import com.krickert.search.indexer.config.IndexerConfigurationProperties;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+
+/**
+ * Stores each key as a file in the configured state directory. A value is written to a temporary file first and then
+ * moved over the old one, so a crash part way through a write leaves the previous value in place.
+ */
+@Singleton
+public class FileCrawlStateStore implements CrawlStateStore {
+    private static final Logger log = LoggerFactory.getLogger(FileCrawlStateStore.class);
+    private static final String DEFAULT_STATE_DIRECTORY = "indexer-state";
+
+    private final Path stateDirectory;
+
+    @Inject
+    public FileCrawlStateStore(IndexerConfigurationProperties indexerConfigurationProperties) {
+        this(Paths.get(StringUtils.defaultIfBlank(indexerConfigurationProperties.getStateDirectory(), DEFAULT_STATE_DIRECTORY)));
+    }
+
+    public FileCrawlStateStore(Path stateDirectory) {
+        this.stateDirectory = stateDirectory;
+        log.info("Crawl state is kept in {}", stateDirectory.toAbsolutePath());
+    }
+
+    @Override
+    public Optional<String> get(String key) {
+        Path file = fileFor(key);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Files.readString(file, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read crawl state " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void put(String key, String value) {
+        Path file = fileFor(key);
+        try {
+            Files.createDirectories(stateDirectory);
+            Path tempFile = Files.createTempFile(stateDirectory, file.getFileName().toString(), ".tmp");
+            Files.writeString(tempFile, value, StandardCharsets.UTF_8);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write crawl state " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        try {
+            Files.deleteIfExists(fileFor(key));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not remove crawl state " + key, e);
+        }
+    }
+
+    private Path fileFor(String key) {
+        return stateDirectory.resolve(key.replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+}
@@ -0,0 +1,97 @@
+package com.krickert.search.indexer.state;
+
+import com.krickert.search.indexer.IndexingFailedExecption;
+import com.krickert.search.indexer.config.SolrConfiguration;
+import com.krickert.search.indexer.solr.httpclient.select.HttpSolrSelectClient;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps the high-water mark of each source collection for incremental crawls.
+ * <br>
+ * The high-water mark is read from the source before the crawl starts and saved only once the crawl completes, so a
+ * failed crawl is simply read again from the old mark. Documents updated while a crawl runs may be read by that crawl
+ * and again by the next one, which is harmless because indexing is idempotent.
+ * <br>
+ * The mark is the highest watermark field value among the documents the configured source filters select. Solr
+ * assigns {@code _version_} per shard, so it only grows across the whole collection on a single shard source. A
+ * SolrCloud source with more than one shard has to configure a watermark field of its own, such as a last modified
+ * date. An incremental crawl only sees documents that were added or updated, so documents deleted from the source
+ * are not deleted from the destination.
+ */
+@Singleton
+public class SourceWatermarkService {
+    private static final Logger log = LoggerFactory.getLogger(SourceWatermarkService.class);
+    static final String VERSION_FIELD = "_version_";
+
+    private final CrawlStateStore crawlStateStore;
+    private final HttpSolrSelectClient httpSolrSelectClient;
+
+    @Inject
+    public SourceWatermarkService(CrawlStateStore crawlStateStore, HttpSolrSelectClient httpSolrSelectClient) {
+        this.crawlStateStore = checkNotNull(crawlStateStore);
+        this.httpSolrSelectClient = checkNotNull(httpSolrSelectClient);
+    }
+
+    public static boolean isIncremental(SolrConfiguration sourceSolrConfiguration) {
+        return sourceSolrConfiguration.getIncremental() != null && sourceSolrConfiguration.getIncremental().isEnabled();
+    }
+
+    /**
+     * @return the fq that selects documents changed since the last completed crawl, or empty when there is no saved
+     * watermark and the whole collection has to be read
+     */
+    public Optional<String> createWatermarkFilter(SolrConfiguration sourceSolrConfiguration) {
+        Optional<String> watermark = crawlStateStore.get(watermarkKey(sourceSolrConfiguration));
+        if (watermark.isEmpty()) {
+            log.info("No watermark saved for source collection {}. Reading the whole collection.", sourceSolrConfiguration.getCollection());
+            return Optional.empty();
+        }
+        String filter = createRangeFilter(sourceSolrConfiguration.getIncremental().getWatermarkField(), watermark.get());
+        log.info("Reading source collection {} from watermark filter {}", sourceSolrConfiguration.getCollection(), filter);
+        return Optional.of(filter);
+    }
+
+    /**
+     * @return the current highest watermark field value in the source, or null if no document has the field
+     * @throws IndexingFailedExecption if the watermark field does not grow across every shard of the source
+     */
+    public String readHighWaterMark(SolrConfiguration sourceSolrConfiguration) throws IndexingFailedExecption {
+        String solrHost = sourceSolrConfiguration.getConnection().getUrl();
+        String watermarkField = sourceSolrConfiguration.getIncremental().getWatermarkField();
+        if (VERSION_FIELD.equals(watermarkField)) {
+            int shardCount = httpSolrSelectClient.getShardCount(solrHost, sourceSolrConfiguration.getCollection());
+            if (shardCount > 1) {
+                throw new IndexingFailedExecption("Source collection " + sourceSolrConfiguration.getCollection() + " has " + shardCount
+                        + " shards, each with its own _version_ order. Configure an incremental watermark-field that grows on update across the collection.");
+            }
+        }
+        return httpSolrSelectClient.getMaxFieldValue(solrHost, sourceSolrConfiguration.getCollection(), watermarkField);
+    }
+
+    public void saveWatermark(SolrConfiguration sourceSolrConfiguration, String highWaterMark) {
+        if (highWaterMark == null) {
+            log.warn("No {} values found in source collection {}. The watermark is not saved.",
+                    sourceSolrConfiguration.getIncremental().getWatermarkField(), sourceSolrConfiguration.getCollection());
+            return;
+        }
+        crawlStateStore.put(watermarkKey(sourceSolrConfiguration), highWaterMark);
+        log.info("Saved watermark {} for source collection {}", highWaterMark, sourceSolrConfiguration.getCollection());
+    }
+
+    static String createRangeFilter(String watermarkField, String watermark) {
+        return watermarkField + ":{" + ClientUtils.escapeQueryChars(watermark) + " TO *]";
+    }
+
+    static String watermarkKey(SolrConfiguration sourceSolrConfiguration) {
+        return "watermark-" + sourceSolrConfiguration.getConnection().getUrl() + "-" + sourceSolrConfiguration.getCollection()
+                + "-" + sourceSolrConfiguration.getIncremental().getWatermarkField();
+    }
+}
@@ -13,6 +13,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Singleton
@@ -31,6 +32,8 @@ public class IndexingTracker {
     private final Integer maxHistorySize;
 
     private LocalDateTime timeStarted;
+    private volatile Consumer<String> documentAcknowledgementListener = documentId -> {
+    };
 
     @Inject
     public IndexingTracker(@Value("${indexer-manager.max-history-size}") Integer maxHistorySize) {
@@ -70,6 +73,12 @@ public class IndexingTracker {
         status.setEndTime(null);
         status.setCurrentStatusMessage(null);
         status.setAverageDocsPerSecond(0);
+        status.setCurrentSourcePageSize(0);
+        status.setSmallestSourcePageSize(0);
+        status.setLargestSourcePageSize(0);
+        status.setPublisherQueueDepth(0);
+        status.setLargestPublisherQueueDepth(0);
+        status.setPublisherQueueCapacity(0);
     }
 
     public synchronized void startTracking(Long totalDocumentsFound, String crawlId) {
@@ -173,10 +182,65 @@ public class IndexingTracker {
         return indexingHistory.stream().limit(limit).collect(Collectors.toList());
     }
 
+    /**
+     * Records the rows a source page was requested with, so the crawl status shows the page sizes in use.
+     */
+    public synchronized void sourcePageRead(int pageSize) {
+        mainTaskStatus.setCurrentSourcePageSize(pageSize);
+        if (mainTaskStatus.getSmallestSourcePageSize() == 0 || pageSize < mainTaskStatus.getSmallestSourcePageSize()) {
+            mainTaskStatus.setSmallestSourcePageSize(pageSize);
+        }
+        if (pageSize > mainTaskStatus.getLargestSourcePageSize()) {
+            mainTaskStatus.setLargestSourcePageSize(pageSize);
+        }
+    }
+
+    /**
+     * Records how many documents are waiting for or inside the listener of a task, so the crawl status shows how
+     * close publishing is to blocking.
+     */
+    public synchronized void publisherQueueDepth(TaskType taskType, int queueDepth, int queueCapacity) {
+        IndexingStatus status = taskType == TaskType.MAIN ? mainTaskStatus : vectorTaskStatus;
+        status.setPublisherQueueDepth(queueDepth);
+        status.setPublisherQueueCapacity(queueCapacity);
+        if (queueDepth > status.getLargestPublisherQueueDepth()) {
+            status.setLargestPublisherQueueDepth(queueDepth);
+        }
+    }
+
+    /**
+     * Registers a callback that is told the id of every document a listener has finished with, whether it was
+     * processed or failed. A document is reported once by the main listener and once per chunk vector config.
+     */
+    public void setDocumentAcknowledgementListener(Consumer<String> documentAcknowledgementListener) {
+        this.documentAcknowledgementListener = documentAcknowledgementListener == null ? documentId -> {
+        } : documentAcknowledgementListener;
+    }
+
     public void documentProcessed() {
         documentProcessed(TaskType.MAIN);
     }
 
+    public void documentProcessed(String documentId) {
+        documentProcessed(TaskType.MAIN);
+        documentAcknowledgementListener.accept(documentId);
+    }
+
+    public void vectorDocumentProcessed(String documentId) {
+        documentProcessed(TaskType.VECTOR);
+        documentAcknowledgementListener.accept(documentId);
+    }
+
+    public void documentFailed(String documentId) {
+        documentFailed();
+        documentAcknowledgementListener.accept(documentId);
+    }
+
+    public void vectorDocumentFailed(String documentId) {
+        vectorDocumentFailed();
+        documentAcknowledgementListener.accept(documentId);
+    }
+
     public void vectorDocumentProcessed() {
         documentProcessed(TaskType.VECTOR);
     }
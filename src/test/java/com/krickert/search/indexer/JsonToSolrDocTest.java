@@ -5,7 +5,11 @@ import com.krickert.search.indexer.solr.httpclient.select.HttpSolrSelectResponse
 import org.apache.solr.common.SolrInputDocument;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -75,6 +79,76 @@ public class JsonToSolrDocTest {
         });
     }
 
+    /**
+     * Test checks that the nextCursorMark of a cursorMark response is carried on the parsed response.
+     */
+    @Test
+    public void testParseSolrDocumentsWithCursorMark() {
+        JsonToSolrDocParser jsonToSolrDoc = new JsonToSolrDocParser();
+        String jsonString = "{" +
+                "\"responseHeader\":{\"status\":0,\"QTime\":3}," +
+                "\"response\":{\"numFound\":1,\"start\":0,\"docs\":[{\"id\":\"doc1\",\"_version_\":\"1\"}]}," +
+                "\"nextCursorMark\":\"AoEkZG9jMQ==\"" +
+                "}";
+
+        HttpSolrSelectResponse response = jsonToSolrDoc.parseSolrDocuments(jsonString);
+
+        assertEquals(1, response.getDocs().size());
+        assertEquals("AoEkZG9jMQ==", response.getNextCursorMark());
+        assertNull(jsonToSolrDoc.parseSolrDocuments(jsonString.replace(",\"nextCursorMark\":\"AoEkZG9jMQ==\"", ""))
+                .getNextCursorMark());
+    }
+
+    /**
+     * Test checks that the streaming parser reads the response header, paging values and documents from an InputStream.
+     */
+    @Test
+    public void testParseSolrDocumentsFromInputStream() {
+        JsonToSolrDocParser jsonToSolrDoc = new JsonToSolrDocParser();
+        String jsonString = "{" +
+                "\"responseHeader\":{\"status\":0,\"QTime\":7,\"params\":{\"q\":\"*:*\",\"fq\":[\"a:b\",\"c:d\"]}}," +
+                "\"response\":{\"numFound\":42,\"start\":10,\"numFoundExact\":true,\"docs\":[" +
+                "{\"id\":\"doc1\",\"big\":9876543210,\"tags\":[\"a\",\"b\"],\"empty\":null,\"_version_\":1}," +
+                "{\"id\":\"doc2\",\"score\":1.5,\"_version_\":2}" +
+                "]}," +
+                "\"nextCursorMark\":\"AoEkZG9jMg==\"" +
+                "}";
+
+        HttpSolrSelectResponse response = jsonToSolrDoc.parseSolrDocuments(
+                new ByteArrayInputStream(jsonString.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(42L, response.getNumFound());
+        assertEquals(10L, response.getStart());
+        assertEquals(7L, response.getQtime());
+        assertEquals("AoEkZG9jMg==", response.getNextCursorMark());
+        assertEquals(2, response.getDocs().size());
+        SolrInputDocument first = response.getDocs().iterator().next();
+        assertEquals("doc1", first.getFieldValue("id"));
+        assertEquals(9876543210L, first.getFieldValue("big"));
+        assertEquals(2, first.getFieldValues("tags").size());
+        assertFalse(first.containsKey("empty"));
+        assertFalse(first.containsKey("_version_"));
+    }
+
+    /**
+     * Test checks that an export handler response is handed over one document at a time.
+     */
+    @Test
+    public void testStreamSolrDocumentsFromExportResponse() {
+        JsonToSolrDocParser jsonToSolrDoc = new JsonToSolrDocParser();
+        String jsonString = "{\"responseHeader\":{\"status\":0},\"response\":{\"numFound\":3,\"docs\":[" +
+                "{\"id\":\"doc1\"},{\"id\":\"doc2\"},{\"id\":\"doc3\"}]}}";
+        List<String> ids = new ArrayList<>();
+
+        HttpSolrSelectResponse response = jsonToSolrDoc.streamSolrDocuments(
+                new ByteArrayInputStream(jsonString.getBytes(StandardCharsets.UTF_8)),
+                doc -> ids.add(doc.getFieldValue("id").toString()));
+
+        assertEquals(3L, response.getNumFound());
+        assertTrue(response.getDocs().isEmpty());
+        assertEquals(List.of("doc1", "doc2", "doc3"), ids);
+    }
+
     /**
      * Test checks if the parseSolrDocuments method throws an exception when it tries to parse an invalid JSON string.
      */
@@ -0,0 +1,42 @@
+package com.krickert.search.indexer.chunker;
+
+import com.krickert.search.indexer.config.VectorConfig;
+import com.krickert.search.indexer.grpc.ChunkerClient;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkersTest {
+
+    private static VectorConfig vectorConfig(String chunker) {
+        VectorConfig vectorConfig = new VectorConfig();
+        vectorConfig.setFieldName("body");
+        vectorConfig.setChunker(chunker);
+        return vectorConfig;
+    }
+
+    @Test
+    public void testFixedLengthWindowsOverlap() {
+        assertEquals(List.of("abcd", "cdef", "efgh", "ghij"), FixedLengthChunker.chunk("abcdefghij", 4, 2));
+        assertEquals(List.of("abcd", "efgh", "ij"), FixedLengthChunker.chunk("abcdefghij", 4, 0));
+        // the last window is not repeated when the one before it reaches the end
+        assertEquals(List.of("abcdef", "defghi", "ghij"), FixedLengthChunker.chunk("abcdefghij", 6, 3));
+        assertEquals(List.of("short"), FixedLengthChunker.chunk("short", 300, 30));
+        assertEquals(List.of(), FixedLengthChunker.chunk("", 300, 30));
+        assertThrows(IllegalArgumentException.class, () -> FixedLengthChunker.chunk("abcdefghij", 4, 4));
+    }
+
+    @Test
+    public void testTheVectorConfigPicksTheChunker() {
+        ChunkerClient remoteChunker = request -> null;
+        assertSame(remoteChunker, Chunkers.chunker(vectorConfig(null), remoteChunker));
+        assertSame(remoteChunker, Chunkers.chunker(vectorConfig("remote"), remoteChunker));
+        assertInstanceOf(FixedLengthChunker.class, Chunkers.chunker(vectorConfig("local"), remoteChunker));
+        assertInstanceOf(ContentDefinedChunker.class, Chunkers.chunker(vectorConfig("Content-Defined"), remoteChunker));
+        assertTrue(Chunkers.isContentDefined(vectorConfig("content-defined")));
+        assertFalse(Chunkers.isContentDefined(vectorConfig("local")));
+        assertThrows(IllegalArgumentException.class, () -> Chunkers.chunkerName(vectorConfig("sentences")));
+    }
+}
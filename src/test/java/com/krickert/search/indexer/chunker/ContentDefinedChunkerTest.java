@@ -0,0 +1,79 @@
+package com.krickert.search.indexer.chunker;
+
+import com.google.common.io.Resources;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentDefinedChunkerTest {
+
+    private static String stateOfTheUnion() {
+        try {
+            return Resources.toString(Resources.getResource("state-of-the-union.txt"), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    public void testChunksCoverTheTextWithinTheLengthBounds() {
+        String text = stateOfTheUnion();
+        List<String> chunks = ContentDefinedChunker.chunk(text, 300, 0);
+
+        assertEquals(text, String.join("", chunks));
+        for (String chunk : chunks.subList(0, chunks.size() - 1)) {
+            assertTrue(chunk.length() >= 150, () -> "chunk is too short: " + chunk.length());
+            assertTrue(chunk.length() <= 600, () -> "chunk is too long: " + chunk.length());
+        }
+        double average = text.length() / (double) chunks.size();
+        assertTrue(average > 200 && average < 450, () -> "average chunk length is " + average);
+    }
+
+    @Test
+    public void testAnEditOnlyChangesTheChunksNearIt() {
+        String text = stateOfTheUnion();
+        int middle = text.indexOf(' ', text.length() / 2);
+        String edited = text.substring(0, middle) + " A sentence added by an edit." + text.substring(middle);
+
+        List<String> before = ContentDefinedChunker.chunk(text, 300, 30);
+        List<String> after = ContentDefinedChunker.chunk(edited, 300, 30);
+        Set<String> unchanged = new HashSet<>(before);
+        unchanged.retainAll(after);
+
+        // the edited chunk and the one that overlaps it may change, every other chunk is the same
+        assertTrue(unchanged.size() >= before.size() - 2, () -> unchanged.size() + " of " + before.size() + " chunks unchanged");
+    }
+
+    @Test
+    public void testOverlapStartsAtAWholeWord() {
+        String text = stateOfTheUnion();
+        List<String> withoutOverlap = ContentDefinedChunker.chunk(text, 300, 0);
+        List<String> withOverlap = ContentDefinedChunker.chunk(text, 300, 30);
+
+        assertEquals(withoutOverlap.size(), withOverlap.size());
+        assertEquals(withoutOverlap.get(0), withOverlap.get(0));
+        for (int i = 1; i < withOverlap.size(); i++) {
+            String chunk = withOverlap.get(i);
+            assertTrue(chunk.endsWith(withoutOverlap.get(i)));
+            assertTrue(chunk.length() - withoutOverlap.get(i).length() <= 30);
+            int overlap = chunk.length() - withoutOverlap.get(i).length();
+            if (overlap > 0) {
+                assertTrue(Character.isWhitespace(text.charAt(text.indexOf(chunk) - 1)));
+            }
+        }
+    }
+
+    @Test
+    public void testShortAndEmptyText() {
+        assertEquals(List.of(), ContentDefinedChunker.chunk("", 300, 30));
+        assertEquals(List.of("a short text"), ContentDefinedChunker.chunk("a short text", 300, 30));
+        assertThrows(IllegalArgumentException.class, () -> ContentDefinedChunker.chunk("a short text", 1, 0));
+    }
+}
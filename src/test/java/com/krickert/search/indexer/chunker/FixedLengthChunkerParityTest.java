@@ -0,0 +1,56 @@
+package com.krickert.search.indexer.chunker;
+
+import com.krickert.search.indexer.test.TestContainersManager;
+import com.krickert.search.service.ChunkOptions;
+import com.krickert.search.service.ChunkReply;
+import com.krickert.search.service.ChunkRequest;
+import com.krickert.search.service.ChunkServiceGrpc;
+import io.micronaut.context.env.Environment;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the local chunker cuts the same windows as the chunker service, so switching a field between local and
+ * remote keeps its chunk ids and vectors.
+ */
+@MicronautTest(environments = Environment.TEST)
+public class FixedLengthChunkerParityTest {
+
+    private static final List<String> TEXTS = List.of(
+            "The quick brown fox jumps over the lazy dog while the indexer writes every chunk to the vector collection.",
+            "Crème brûlée, smørrebrød und Größenverhältnisse: ça coûte très cher à Zürich.",
+            "日本語のテキストも同じ位置で分割されるはずです。検索エンジンはベクトルを使います。",
+            "Mixed 混合 text with emoji 🙂🚀 and more words after them 🎉 to push past a window.",
+            "short",
+            "");
+
+    // chunk length and overlap pairs, from no overlap up to an overlap one short of the length
+    private static final int[][] OPTIONS = {{10, 0}, {10, 3}, {7, 6}, {25, 5}, {300, 30}};
+
+    @Inject
+    TestContainersManager testContainersManager;
+
+    @Inject
+    @Named("vectorChunkerService")
+    ChunkServiceGrpc.ChunkServiceBlockingStub chunkerService;
+
+    @Test
+    void testLocalChunksMatchTheChunkerService() {
+        for (int[] options : OPTIONS) {
+            for (String text : TEXTS) {
+                ChunkReply reply = chunkerService.chunk(ChunkRequest.newBuilder()
+                        .setText(text)
+                        .setOptions(ChunkOptions.newBuilder().setLength(options[0]).setOverlap(options[1]).build())
+                        .build());
+                assertEquals(reply.getChunksList(), FixedLengthChunker.chunk(text, options[0], options[1]),
+                        () -> "length " + options[0] + " and overlap " + options[1] + " of: " + text);
+            }
+        }
+    }
+}
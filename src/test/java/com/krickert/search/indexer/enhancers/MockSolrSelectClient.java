@@ -1,10 +1,19 @@
 package com.krickert.search.indexer.enhancers;
 
 import com.krickert.search.indexer.solr.httpclient.select.HttpSolrSelectClient;
+import com.krickert.search.indexer.solr.httpclient.select.HttpSolrSelectRequest;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
 
 public class MockSolrSelectClient implements HttpSolrSelectClient {
+    private static final String EMPTY_RESPONSE =
+            "{\"responseHeader\":{\"status\":0,\"QTime\":0},\"response\":{\"numFound\":0,\"start\":0,\"docs\":[]}}";
+
     @Override
     public String getSolrDocs(String solrHost, String solrCollection, Integer paginationSize, Integer pageNumber) {
         return "";
@@ -15,6 +24,16 @@ public class MockSolrSelectClient implements HttpSolrSelectClient {
         return "";
     }
 
+    @Override
+    public String getSolrDocs(HttpSolrSelectRequest selectRequest) {
+        return "";
+    }
+
+    @Override
+    public InputStream getSolrDocsAsStream(HttpSolrSelectRequest selectRequest) {
+        return new ByteArrayInputStream(EMPTY_RESPONSE.getBytes(StandardCharsets.UTF_8));
+    }
+
     @Override
     public Long getTotalNumberOfDocumentsForCollection() {
         return 0L;
@@ -24,4 +43,29 @@ public class MockSolrSelectClient implements HttpSolrSelectClient {
     public Long getTotalNumberOfDocumentsForCollection(String solr7Host, String solr7Collection) {
         return 0L;
     }
+
+    @Override
+    public Long getTotalNumberOfDocumentsForCollection(String solr7Host, String solr7Collection, Collection<String> filters) {
+        return 0L;
+    }
+
+    @Override
+    public String getMaxFieldValue(String solr7Host, String solr7Collection, String fieldName) {
+        return null;
+    }
+
+    @Override
+    public int getShardCount(String solrHost, String solrCollection) {
+        return 1;
+    }
+
+    @Override
+    public Map<String, Boolean> getFieldDocValues(String solrHost, String solrCollection) {
+        return Map.of();
+    }
+
+    @Override
+    public Map<String, Boolean> getDynamicFieldDocValues(String solrHost, String solrCollection) {
+        return Map.of();
+    }
 }
@@ -0,0 +1,94 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.indexer.dto.EmbeddingBatchSizeStatus;
+import io.grpc.Status;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveBatchSizerTest {
+    private static final long MILLIS = 1_000_000L;
+
+    @Test
+    public void testFixedSizeWhenNotAdaptive() {
+        AdaptiveBatchSizer batchSizer = new AdaptiveBatchSizer("vector-embedding", 3, 64, false);
+        batchSizer.recordBatch(3, 30 * MILLIS);
+        batchSizer.recordBatch(3, 3 * MILLIS);
+        batchSizer.recordFailure(3, Status.RESOURCE_EXHAUSTED.asRuntimeException());
+        assertEquals(3, batchSizer.nextBatchSize());
+        assertEquals(3, batchSizer.getStatus().getMaxBatchSize());
+    }
+
+    @Test
+    public void testGrowsByOneWhileTextsGetFasterUpToTheMax() {
+        AdaptiveBatchSizer batchSizer = new AdaptiveBatchSizer("vector-embedding", 3, 8, true);
+        for (int i = 0; i < 20; i++) {
+            int size = batchSizer.nextBatchSize();
+            batchSizer.recordBatch(size, size * (10 * MILLIS - i * 100_000L));
+            if (i > 0 && i < 6) {
+                assertEquals(size + 1, batchSizer.nextBatchSize());
+            }
+        }
+        EmbeddingBatchSizeStatus status = batchSizer.getStatus();
+        assertEquals(8, status.getBatchSize());
+        assertEquals(3, status.getSmallestBatchSize());
+        assertEquals(8, status.getLargestBatchSize());
+        assertEquals(5L, status.getChangesByReason().get("FASTER_PER_TEXT"));
+        assertEquals("FASTER_PER_TEXT", status.getLastChangeReason());
+    }
+
+    @Test
+    public void testHalvesOnOverloadErrors() {
+        AdaptiveBatchSizer batchSizer = new AdaptiveBatchSizer("vector-embedding", 8, 16, true);
+        batchSizer.recordFailure(8, new CompletionException(Status.RESOURCE_EXHAUSTED.asRuntimeException()));
+        assertEquals(4, batchSizer.nextBatchSize());
+        // sent before the decrease, so it says nothing about the new size
+        batchSizer.recordFailure(8, Status.DEADLINE_EXCEEDED.asRuntimeException());
+        assertEquals(4, batchSizer.nextBatchSize());
+        batchSizer.recordFailure(4, Status.DEADLINE_EXCEEDED.asRuntimeException());
+        assertEquals(2, batchSizer.nextBatchSize());
+        // other errors do not shrink the batch
+        batchSizer.recordFailure(2, Status.UNAVAILABLE.asRuntimeException());
+        batchSizer.recordFailure(2, new IllegalStateException("wrong number of vectors"));
+        assertEquals(2, batchSizer.nextBatchSize());
+
+        EmbeddingBatchSizeStatus status = batchSizer.getStatus();
+        assertEquals(1L, status.getChangesByReason().get("RESOURCE_EXHAUSTED"));
+        assertEquals(1L, status.getChangesByReason().get("DEADLINE_EXCEEDED"));
+        assertEquals("DEADLINE_EXCEEDED", status.getLastChangeReason());
+    }
+
+    @Test
+    public void testHalvesWhenTextsGetSlowerAndWaitsOutFailuresBeforeGrowing() {
+        AdaptiveBatchSizer batchSizer = new AdaptiveBatchSizer("vector-embedding", 4, 16, true);
+        batchSizer.recordBatch(4, 40 * MILLIS);
+        batchSizer.recordBatch(4, 80 * MILLIS);
+        assertEquals(2, batchSizer.nextBatchSize());
+        assertEquals("SLOWER_PER_TEXT", batchSizer.getStatus().getLastChangeReason());
+
+        batchSizer.recordFailure(2, Status.UNAVAILABLE.asRuntimeException());
+        batchSizer.recordBatch(2, 10 * MILLIS);
+        batchSizer.recordBatch(2, 10 * MILLIS);
+        assertEquals(2, batchSizer.nextBatchSize());
+        batchSizer.recordBatch(2, 10 * MILLIS);
+        assertEquals(3, batchSizer.nextBatchSize());
+    }
+
+    @Test
+    public void testOnlyBatchesOfTheCurrentSizeAreMeasured() {
+        AdaptiveBatchSizer batchSizer = new AdaptiveBatchSizer("vector-embedding", 8, 16, true);
+        batchSizer.recordBatch(8, 80 * MILLIS);
+        // the tail of a field and a batch shrunk by cached vectors pay the cost of a call for fewer texts
+        batchSizer.recordBatch(1, 40 * MILLIS);
+        batchSizer.recordBatch(3, 60 * MILLIS);
+        batchSizer.recordFailure(2, Status.RESOURCE_EXHAUSTED.asRuntimeException());
+        assertEquals(8, batchSizer.nextBatchSize());
+        assertEquals(10f, batchSizer.getStatus().getMillisPerText(), 0.01f);
+
+        batchSizer.recordBatch(8, 160 * MILLIS);
+        assertEquals(4, batchSizer.nextBatchSize());
+        assertEquals("SLOWER_PER_TEXT", batchSizer.getStatus().getLastChangeReason());
+    }
+}
@@ -0,0 +1,81 @@
+package com.krickert.search.indexer.grpc;
+
+import io.grpc.Status;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveConcurrencyLimitTest {
+    private static final long MILLIS = 1_000_000L;
+
+    @Test
+    public void testLimitGrowsWhileLatencyHoldsAndShrinksAsItRises() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 4, 64, true);
+        for (int i = 0; i < 100 && limit.getLimit() < 64; i++) {
+            limit.recordSample(10 * MILLIS, limit.getLimit());
+        }
+        assertEquals(64, limit.getLimit());
+
+        // the service queues the extra requests, so each one takes several times as long
+        for (int i = 0; i < 20; i++) {
+            limit.recordSample(60 * MILLIS, limit.getLimit());
+        }
+        assertTrue(limit.getLimit() < 32, () -> "limit is " + limit.getLimit());
+        assertEquals(64, limit.getLargestLimit());
+        assertTrue(limit.getRttMillis() > limit.getNoLoadRttMillis());
+    }
+
+    @Test
+    public void testLimitOnlyGrowsWhenItIsUsed() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 8, 64, true);
+        for (int i = 0; i < 100; i++) {
+            limit.recordSample(10 * MILLIS, 2);
+        }
+        assertEquals(8, limit.getLimit());
+    }
+
+    @Test
+    public void testOverloadErrorsLowerTheLimit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 20, 64, true);
+        limit.recordFailure(Status.INVALID_ARGUMENT.asRuntimeException());
+        assertEquals(20, limit.getLimit());
+        limit.recordFailure(Status.RESOURCE_EXHAUSTED.asRuntimeException());
+        assertEquals(18, limit.getLimit());
+        limit.recordFailure(Status.DEADLINE_EXCEEDED.asRuntimeException());
+        assertEquals(16, limit.getLimit());
+        assertEquals(2L, limit.getOverloads());
+
+        AdaptiveConcurrencyLimit fixed = new AdaptiveConcurrencyLimit("test", 4, 20, false);
+        assertEquals(20, fixed.getLimit());
+        fixed.recordFailure(Status.RESOURCE_EXHAUSTED.asRuntimeException());
+        fixed.recordSample(500 * MILLIS, 20);
+        assertEquals(20, fixed.getLimit());
+    }
+
+    @Test
+    public void testLimiterStartsWaitingCallsAsTheLimitGrows() {
+        InFlightLimiter limiter = new InFlightLimiter("test", new AdaptiveConcurrencyLimit("test", 1, 8, true), Runnable::run);
+        List<CompletableFuture<String>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            limiter.submit(() -> {
+                CompletableFuture<String> response = new CompletableFuture<>();
+                responses.add(response);
+                return response;
+            });
+        }
+        assertEquals(1, responses.size());
+        assertEquals(19, limiter.getWaiting());
+
+        // quick replies raise the limit until a reply starts more than one waiting call
+        for (int i = 0; i < responses.size() && limiter.getInFlight() < 2; i++) {
+            responses.get(i).complete("reply");
+        }
+        assertTrue(limiter.getInFlight() > 1, () -> "in flight: " + limiter.getInFlight());
+        assertTrue(limiter.getWaiting() > 0);
+        assertEquals(limiter.getLimit().getLimit(), limiter.getStatus().getLimit());
+    }
+}
@@ -0,0 +1,99 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.indexer.dto.EmbeddingCacheStatus;
+import com.krickert.search.indexer.state.EmbeddingStore;
+import com.krickert.search.service.EmbeddingsVectorReply;
+import com.krickert.search.service.EmbeddingsVectorsReply;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingEmbeddingClientTest {
+
+    /**
+     * Embeds a text as a one-float vector holding its length and remembers every text it was asked for.
+     */
+    private static class RecordingEmbeddingClient implements EmbeddingClient {
+        private final List<String> embedded = new ArrayList<>();
+
+        @Override
+        public CompletableFuture<EmbeddingsVectorReply> createEmbeddingsVector(String text) {
+            embedded.add(text);
+            return CompletableFuture.completedFuture(vector(text));
+        }
+
+        @Override
+        public CompletableFuture<EmbeddingsVectorsReply> createEmbeddingsVectors(List<String> texts) {
+            embedded.addAll(texts);
+            EmbeddingsVectorsReply.Builder reply = EmbeddingsVectorsReply.newBuilder();
+            texts.forEach(text -> reply.addEmbeddings(vector(text)));
+            return CompletableFuture.completedFuture(reply.build());
+        }
+
+        private static EmbeddingsVectorReply vector(String text) {
+            return EmbeddingsVectorReply.newBuilder().addEmbeddings(text.length()).build();
+        }
+    }
+
+    @Test
+    public void testCachedTextsSkipTheEmbeddingService() {
+        RecordingEmbeddingClient service = new RecordingEmbeddingClient();
+        EmbeddingCache embeddingCache = new EmbeddingCache(1024 * 1024);
+        CachingEmbeddingClient client = new CachingEmbeddingClient(service, embeddingCache, EmbeddingStore.disabled(), "localhost:50401");
+
+        assertEquals(List.of(6f), client.createEmbeddingsVector("footer").join().getEmbeddingsList());
+        assertEquals(List.of(6f), client.createEmbeddingsVector("footer").join().getEmbeddingsList());
+        assertEquals(List.of("footer"), service.embedded);
+
+        // only texts the cache has not seen are sent, each once, and the reply keeps the order of the request
+        EmbeddingsVectorsReply reply = client.createEmbeddingsVectors(List.of("title", "footer", "body text", "title")).join();
+        assertEquals(List.of("footer", "title", "body text"), service.embedded);
+        assertEquals(4, reply.getEmbeddingsCount());
+        assertEquals(List.of(5f), reply.getEmbeddings(0).getEmbeddingsList());
+        assertEquals(List.of(6f), reply.getEmbeddings(1).getEmbeddingsList());
+        assertEquals(List.of(9f), reply.getEmbeddings(2).getEmbeddingsList());
+        assertEquals(List.of(5f), reply.getEmbeddings(3).getEmbeddingsList());
+
+        client.createEmbeddingsVectors(List.of("title", "body text")).join();
+        assertEquals(3, service.embedded.size());
+
+        EmbeddingCacheStatus status = embeddingCache.getStatus();
+        assertEquals(3, status.getSize());
+        assertEquals(4, status.getHits());
+        assertEquals(4, status.getMisses());
+    }
+
+    @Test
+    public void testModelsDoNotShareVectors() {
+        RecordingEmbeddingClient service = new RecordingEmbeddingClient();
+        EmbeddingCache embeddingCache = new EmbeddingCache(1024 * 1024);
+        new CachingEmbeddingClient(service, embeddingCache, EmbeddingStore.disabled(), "mini-lm:50401").createEmbeddingsVector("footer").join();
+        new CachingEmbeddingClient(service, embeddingCache, EmbeddingStore.disabled(), "mpnet:50401").createEmbeddingsVector("footer").join();
+        assertEquals(2, service.embedded.size());
+    }
+
+    @Test
+    public void testCacheStaysUnderItsSize() {
+        EmbeddingCache embeddingCache = new EmbeddingCache(4096);
+        for (int i = 0; i < 100; i++) {
+            embeddingCache.put("model", "text " + i, new float[64]);
+        }
+        EmbeddingCacheStatus status = embeddingCache.getStatus();
+        assertTrue(status.getWeightBytes() <= 4096, "cache holds " + status.getWeightBytes() + " bytes");
+        assertTrue(status.getEvictions() > 0);
+        assertEquals(100, status.getEvictions() + status.getSize());
+        assertNotNull(embeddingCache.get("model", "text 99"));
+    }
+
+    @Test
+    public void testCacheCanBeTurnedOff() {
+        EmbeddingCache embeddingCache = new EmbeddingCache(0);
+        embeddingCache.put("model", "footer", new float[]{1f});
+        assertFalse(embeddingCache.isEnabled());
+        assertNull(embeddingCache.get("model", "footer"));
+    }
+}
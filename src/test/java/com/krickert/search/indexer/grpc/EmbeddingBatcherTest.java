@@ -0,0 +1,132 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.service.EmbeddingServiceGrpc;
+import com.krickert.search.service.EmbeddingsVectorReply;
+import com.krickert.search.service.EmbeddingsVectorRequest;
+import com.krickert.search.service.EmbeddingsVectorsReply;
+import com.krickert.search.service.EmbeddingsVectorsRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class EmbeddingBatcherTest {
+
+    @Test
+    public void testTextsFromManyCallersShareBatches() throws Exception {
+        EmbeddingServiceGrpc.EmbeddingServiceBlockingStub mockStub = EmbeddingServiceMock.createMock();
+        EmbeddingBatcher embeddingBatcher = new EmbeddingBatcher(new BlockingEmbeddingClient(mockStub), 4, 200, 1);
+        try {
+            List<CompletableFuture<List<Float>>> vectors = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                vectors.add(embeddingBatcher.embed("text " + i));
+            }
+            for (CompletableFuture<List<Float>> vector : vectors) {
+                assertEquals(300, vector.get(5, TimeUnit.SECONDS).size());
+            }
+            verify(mockStub, times(2)).createEmbeddingsVectors(any(EmbeddingsVectorsRequest.class));
+            verify(mockStub, never()).createEmbeddingsVector(any(EmbeddingsVectorRequest.class));
+        } finally {
+            embeddingBatcher.close();
+        }
+    }
+
+    @Test
+    public void testBatchSizeOfOneSendsEachTextOnItsOwn() throws Exception {
+        EmbeddingServiceGrpc.EmbeddingServiceBlockingStub mockStub = EmbeddingServiceMock.createMock();
+        EmbeddingBatcher embeddingBatcher = new EmbeddingBatcher(new BlockingEmbeddingClient(mockStub), 1, 200, 1);
+        assertFalse(embeddingBatcher.isBatching());
+        assertEquals(300, embeddingBatcher.embed("text").get(5, TimeUnit.SECONDS).size());
+        verify(mockStub, times(1)).createEmbeddingsVector(any(EmbeddingsVectorRequest.class));
+        verify(mockStub, never()).createEmbeddingsVectors(any(EmbeddingsVectorsRequest.class));
+    }
+
+    /**
+     * Answers every batch with the future the test hands it.
+     */
+    private static class ScriptedEmbeddingClient implements EmbeddingClient {
+        private final CompletableFuture<EmbeddingsVectorsReply> reply;
+
+        private ScriptedEmbeddingClient(CompletableFuture<EmbeddingsVectorsReply> reply) {
+            this.reply = reply;
+        }
+
+        @Override
+        public CompletableFuture<EmbeddingsVectorReply> createEmbeddingsVector(String text) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<EmbeddingsVectorsReply> createEmbeddingsVectors(List<String> texts) {
+            return reply;
+        }
+    }
+
+    @Test
+    public void testCloseFailsTextsWithoutAVector() {
+        // the service never answers
+        EmbeddingBatcher embeddingBatcher = new EmbeddingBatcher(new ScriptedEmbeddingClient(new CompletableFuture<>()), 4, 10, 1);
+        List<CompletableFuture<List<Float>>> vectors = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            vectors.add(embeddingBatcher.embed("text " + i));
+        }
+        embeddingBatcher.close();
+        vectors.add(embeddingBatcher.embed("text after close"));
+
+        for (CompletableFuture<List<Float>> vector : vectors) {
+            ExecutionException error = assertThrows(ExecutionException.class, () -> vector.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, error.getCause());
+        }
+    }
+
+    @Test
+    public void testCallerWaitsWhileTheQueueIsFull() throws Exception {
+        CountDownLatch serviceAnswers = new CountDownLatch(1);
+        // a blocking client that holds its thread until the test lets the service answer
+        EmbeddingClient blockedClient = new EmbeddingClient() {
+            @Override
+            public CompletableFuture<EmbeddingsVectorReply> createEmbeddingsVector(String text) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public CompletableFuture<EmbeddingsVectorsReply> createEmbeddingsVectors(List<String> texts) {
+                try {
+                    serviceAnswers.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return CompletableFuture.failedFuture(e);
+                }
+                EmbeddingsVectorsReply.Builder reply = EmbeddingsVectorsReply.newBuilder();
+                texts.forEach(text -> reply.addEmbeddings(EmbeddingsVectorReply.newBuilder().addEmbeddings(1f)));
+                return CompletableFuture.completedFuture(reply.build());
+            }
+        };
+        EmbeddingBatcher embeddingBatcher = new EmbeddingBatcher(blockedClient, 2, 0, 1);
+        try {
+            List<CompletableFuture<List<Float>>> vectors = new ArrayList<>();
+            CompletableFuture<Void> caller = CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 40; i++) {
+                    vectors.add(embeddingBatcher.embed("text " + i));
+                }
+            });
+            assertThrows(TimeoutException.class, () -> caller.get(300, TimeUnit.MILLISECONDS));
+
+            serviceAnswers.countDown();
+            caller.get(5, TimeUnit.SECONDS);
+            for (CompletableFuture<List<Float>> vector : vectors) {
+                assertEquals(List.of(1f), vector.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            embeddingBatcher.close();
+        }
+    }
+}
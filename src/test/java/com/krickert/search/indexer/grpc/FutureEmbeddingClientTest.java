@@ -0,0 +1,130 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.service.EmbeddingServiceGrpc;
+import com.krickert.search.service.EmbeddingsVectorReply;
+import com.krickert.search.service.EmbeddingsVectorRequest;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FutureEmbeddingClientTest {
+
+    private Server server;
+    private ManagedChannel channel;
+
+    @AfterEach
+    public void shutdown() {
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    private static EmbeddingsVectorReply reply(String text) {
+        return EmbeddingsVectorReply.newBuilder().addEmbeddings(text.length()).build();
+    }
+
+    private FutureEmbeddingClient startClient(EmbeddingServiceGrpc.EmbeddingServiceImplBase service, int maxInFlight) throws Exception {
+        String serverName = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(serverName).directExecutor().addService(service).build().start();
+        channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+        return new FutureEmbeddingClient("test-embedding", EmbeddingServiceGrpc.newFutureStub(channel), maxInFlight);
+    }
+
+    /**
+     * A request the service has not answered yet.
+     */
+    private record HeldCall(String text, StreamObserver<EmbeddingsVectorReply> responseObserver) {
+        void answer() {
+            responseObserver.onNext(reply(text));
+            responseObserver.onCompleted();
+        }
+    }
+
+    @Test
+    public void testRequestsOverTheLimitWaitForAReply() throws Exception {
+        BlockingQueue<HeldCall> heldCalls = new LinkedBlockingQueue<>();
+        FutureEmbeddingClient client = startClient(new EmbeddingServiceGrpc.EmbeddingServiceImplBase() {
+            @Override
+            public void createEmbeddingsVector(EmbeddingsVectorRequest request, StreamObserver<EmbeddingsVectorReply> responseObserver) {
+                heldCalls.add(new HeldCall(request.getText(), responseObserver));
+            }
+        }, 2);
+
+        List<CompletableFuture<EmbeddingsVectorReply>> replies = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            replies.add(client.createEmbeddingsVector("a".repeat(i + 1)));
+        }
+        // the calls went out without a thread waiting on them
+        replies.forEach(reply -> assertFalse(reply.isDone()));
+        List<HeldCall> received = new ArrayList<>();
+        received.add(heldCalls.poll(5, TimeUnit.SECONDS));
+        received.add(heldCalls.poll(5, TimeUnit.SECONDS));
+        assertNull(heldCalls.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(2, client.getInFlightLimiter().getInFlight());
+        assertEquals(3, client.getInFlightLimiter().getWaiting());
+
+        // each reply lets one waiting call go out
+        for (int i = 0; i < 5; i++) {
+            HeldCall call = received.get(i);
+            call.answer();
+            if (i < 3) {
+                received.add(heldCalls.poll(5, TimeUnit.SECONDS));
+            }
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, replies.get(i).get(5, TimeUnit.SECONDS).getEmbeddings(0));
+        }
+        assertEquals(0, client.getInFlightLimiter().getInFlight());
+    }
+
+    @Test
+    public void testUnavailableServiceIsRetried() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        FutureEmbeddingClient client = startClient(new EmbeddingServiceGrpc.EmbeddingServiceImplBase() {
+            @Override
+            public void createEmbeddingsVector(EmbeddingsVectorRequest request, StreamObserver<EmbeddingsVectorReply> responseObserver) {
+                if (calls.incrementAndGet() == 1) {
+                    responseObserver.onError(Status.UNAVAILABLE.asRuntimeException());
+                    return;
+                }
+                responseObserver.onNext(reply(request.getText()));
+                responseObserver.onCompleted();
+            }
+        }, 2);
+
+        assertEquals(3, client.createEmbeddingsVector("abc").get(10, TimeUnit.SECONDS).getEmbeddings(0));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testInvalidArgumentFailsAfterTheLastAttempt() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        FutureEmbeddingClient client = startClient(new EmbeddingServiceGrpc.EmbeddingServiceImplBase() {
+            @Override
+            public void createEmbeddingsVector(EmbeddingsVectorRequest request, StreamObserver<EmbeddingsVectorReply> responseObserver) {
+                calls.incrementAndGet();
+                responseObserver.onError(Status.INVALID_ARGUMENT.asRuntimeException());
+            }
+        }, 2);
+
+        CompletableFuture<EmbeddingsVectorReply> reply = client.createEmbeddingsVector("abc");
+        Exception error = assertThrows(Exception.class, () -> reply.get(10, TimeUnit.SECONDS));
+        assertEquals(Status.Code.INVALID_ARGUMENT, Status.fromThrowable(error).getCode());
+        assertEquals(GrpcRetries.MAX_ATTEMPTS, calls.get());
+        assertEquals(0, client.getInFlightLimiter().getInFlight());
+    }
+}
@@ -0,0 +1,111 @@
+package com.krickert.search.indexer.grpc;
+
+import io.grpc.Status;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GrpcRetriesTest {
+
+    /**
+     * Runs retries at once and keeps the delays they asked for.
+     */
+    private static class ImmediateScheduler extends ScheduledThreadPoolExecutor {
+        private final List<Long> delays = Collections.synchronizedList(new ArrayList<>());
+
+        private ImmediateScheduler() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            delays.add(unit.toMillis(delay));
+            return super.schedule(command, 0, unit);
+        }
+    }
+
+    @Test
+    public void testStatusErrorsAreRetriedWithBackoff() throws Exception {
+        ImmediateScheduler scheduler = new ImmediateScheduler();
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            CompletableFuture<String> result = GrpcRetries.withRetriesAsync("call", () -> attempts.incrementAndGet() < 3 ?
+                    CompletableFuture.failedFuture(Status.UNAVAILABLE.asRuntimeException()) :
+                    CompletableFuture.completedFuture("reply"), scheduler);
+
+            assertEquals("reply", result.get(5, TimeUnit.SECONDS));
+            assertEquals(3, attempts.get());
+            assertEquals(List.of(GrpcRetries.FIRST_RETRY_DELAY_MILLIS, GrpcRetries.FIRST_RETRY_DELAY_MILLIS * 2), scheduler.delays);
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLastStatusErrorFailsTheCall() {
+        ImmediateScheduler scheduler = new ImmediateScheduler();
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            CompletableFuture<String> result = GrpcRetries.withRetriesAsync("call", () -> {
+                attempts.incrementAndGet();
+                return CompletableFuture.failedFuture(Status.RESOURCE_EXHAUSTED.asRuntimeException());
+            }, scheduler);
+
+            ExecutionException error = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertEquals(Status.Code.RESOURCE_EXHAUSTED, Status.fromThrowable(error.getCause()).getCode());
+            assertEquals(GrpcRetries.MAX_ATTEMPTS, attempts.get());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOtherErrorsAreNotRetried() {
+        ImmediateScheduler scheduler = new ImmediateScheduler();
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            CompletableFuture<String> result = GrpcRetries.withRetriesAsync("call", () -> {
+                attempts.incrementAndGet();
+                return CompletableFuture.failedFuture(new IllegalStateException("not a status error"));
+            }, scheduler);
+
+            ExecutionException error = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, error.getCause());
+            assertEquals(1, attempts.get());
+            assertTrue(scheduler.delays.isEmpty());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBlockingRetriesTakeASlotPerAttemptAndNoneWhileWaiting() {
+        InFlightLimiter limiter = new InFlightLimiter("test", new AdaptiveConcurrencyLimit("test", 4, 8, true), Runnable::run);
+        List<Integer> inFlightPerAttempt = new ArrayList<>();
+        AtomicInteger attempts = new AtomicInteger();
+
+        String reply = GrpcRetries.withRetries("call", 4, limiter, () -> {
+            inFlightPerAttempt.add(limiter.getInFlight());
+            if (attempts.incrementAndGet() == 1) {
+                throw Status.UNAVAILABLE.asRuntimeException();
+            }
+            return "reply";
+        });
+
+        assertEquals("reply", reply);
+        // the first attempt gave its slot back before the backoff and the retry took a new one
+        assertEquals(List.of(1, 1), inFlightPerAttempt);
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(1L, limiter.getLimit().getOverloads());
+    }
+}
@@ -0,0 +1,63 @@
+package com.krickert.search.indexer.grpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InFlightLimiterTest {
+
+    @Test
+    public void testCallsOverTheLimitWaitForAFreeSlot() {
+        InFlightLimiter limiter = new InFlightLimiter("test", 2);
+        List<CompletableFuture<String>> responses = new ArrayList<>();
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(limiter.submit(() -> {
+                CompletableFuture<String> response = new CompletableFuture<>();
+                responses.add(response);
+                return response;
+            }));
+        }
+        assertEquals(2, responses.size());
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1, limiter.getWaiting());
+
+        responses.get(0).complete("first");
+        assertEquals("first", results.get(0).join());
+        // the freed slot went straight to the waiting call
+        assertEquals(3, responses.size());
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(0, limiter.getWaiting());
+
+        responses.get(1).completeExceptionally(new IllegalStateException("unavailable"));
+        responses.get(2).complete("third");
+        assertTrue(results.get(1).isCompletedExceptionally());
+        assertEquals("third", results.get(2).join());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testCallsThatFinishAtOnceDoNotNest() {
+        InFlightLimiter limiter = new InFlightLimiter("test", 1);
+        CompletableFuture<String> firstResponse = new CompletableFuture<>();
+        limiter.submit(() -> firstResponse);
+        // enough waiting calls to overflow the stack if each one started the next from inside itself
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            int call = i;
+            results.add(limiter.submit(() -> CompletableFuture.completedFuture(call)));
+        }
+        assertEquals(100_000, limiter.getWaiting());
+
+        firstResponse.complete("first");
+        assertEquals(0, limiter.getWaiting());
+        assertEquals(0, limiter.getInFlight());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).join().intValue());
+        }
+    }
+}
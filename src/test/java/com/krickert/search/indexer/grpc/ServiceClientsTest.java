@@ -0,0 +1,108 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.indexer.config.IndexerConfigurationProperties;
+import com.krickert.search.indexer.pipeline.IndexingPipeline;
+import com.krickert.search.indexer.state.EmbeddingStore;
+import com.krickert.search.service.EmbeddingServiceGrpc;
+import com.krickert.search.service.EmbeddingsVectorReply;
+import com.krickert.search.service.EmbeddingsVectorsReply;
+import com.krickert.search.service.EmbeddingsVectorsRequest;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Wires an embedding client the way the application does, with adaptive concurrency on, against a service that
+ * fails the first attempt of a batch with UNAVAILABLE and takes 40ms to answer the retry.
+ */
+public class ServiceClientsTest {
+    private static final long ANSWER_MILLIS = 40;
+    private static final List<String> TEXTS = List.of("one", "two", "three", "four");
+
+    private Server server;
+    private ManagedChannel channel;
+    private IndexingPipeline indexingPipeline;
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @AfterEach
+    public void shutdown() {
+        channel.shutdownNow();
+        server.shutdownNow();
+        indexingPipeline.close();
+    }
+
+    private EmbeddingClient startClient(String grpcClientMode, ConcurrencyLimiters concurrencyLimiters) throws Exception {
+        String serverName = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(serverName).addService(new EmbeddingServiceGrpc.EmbeddingServiceImplBase() {
+            @Override
+            public void createEmbeddingsVectors(EmbeddingsVectorsRequest request, StreamObserver<EmbeddingsVectorsReply> responseObserver) {
+                if (attempts.incrementAndGet() == 1) {
+                    responseObserver.onError(Status.UNAVAILABLE.asRuntimeException());
+                    return;
+                }
+                try {
+                    Thread.sleep(ANSWER_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                EmbeddingsVectorsReply.Builder reply = EmbeddingsVectorsReply.newBuilder();
+                request.getTextList().forEach(text -> reply.addEmbeddings(EmbeddingsVectorReply.newBuilder().addEmbeddings(text.length())));
+                responseObserver.onNext(reply.build());
+                responseObserver.onCompleted();
+            }
+        }).build().start();
+        channel = InProcessChannelBuilder.forName(serverName).build();
+
+        IndexerConfigurationProperties properties = new IndexerConfigurationProperties();
+        properties.setGrpcClientMode(grpcClientMode);
+        properties.setGrpcMaxInFlight(8);
+        properties.setGrpcAdaptiveConcurrency(true);
+        indexingPipeline = new IndexingPipeline(new IndexerConfigurationProperties.Pipeline());
+        return new ServiceClients().vectorEmbeddingClient(EmbeddingServiceGrpc.newBlockingStub(channel), properties, indexingPipeline,
+                new EmbeddingCache(0), EmbeddingStore.disabled(), new EmbeddingBatchSizers(properties), concurrencyLimiters);
+    }
+
+    private void assertEachAttemptWasSampledPerText(EmbeddingClient client, InFlightLimiter limiter) throws Exception {
+        EmbeddingsVectorsReply reply = client.createEmbeddingsVectors(TEXTS).get(10, TimeUnit.SECONDS);
+
+        assertEquals(TEXTS.size(), reply.getEmbeddingsCount());
+        assertEquals(2, attempts.get());
+        // the failed attempt lowered the limit and the retry was timed on its own
+        assertEquals(1L, limiter.getLimit().getOverloads());
+        float rttMillis = limiter.getLimit().getRttMillis();
+        // the retry took 40ms for four texts. The backoff of a second before it is not counted
+        assertTrue(rttMillis >= (float) ANSWER_MILLIS / TEXTS.size() && rttMillis < ANSWER_MILLIS, () -> "rtt per text: " + rttMillis);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testBlockingClientSamplesEveryAttemptUnderTheLimiter() throws Exception {
+        IndexerConfigurationProperties properties = new IndexerConfigurationProperties();
+        properties.setGrpcAdaptiveConcurrency(true);
+        ConcurrencyLimiters concurrencyLimiters = new ConcurrencyLimiters(properties);
+        EmbeddingClient client = startClient("blocking", concurrencyLimiters);
+
+        assertEachAttemptWasSampledPerText(client, concurrencyLimiters.vectorEmbedding());
+    }
+
+    @Test
+    public void testAsyncClientSamplesEveryAttemptUnderTheSharedLimiter() throws Exception {
+        IndexerConfigurationProperties properties = new IndexerConfigurationProperties();
+        properties.setGrpcAdaptiveConcurrency(true);
+        ConcurrencyLimiters concurrencyLimiters = new ConcurrencyLimiters(properties);
+        EmbeddingClient client = startClient("async", concurrencyLimiters);
+
+        assertEachAttemptWasSampledPerText(client, concurrencyLimiters.vectorEmbedding());
+    }
+}
@@ -0,0 +1,117 @@
+package com.krickert.search.indexer.grpc;
+
+import com.krickert.search.service.EmbeddingServiceGrpc;
+import com.krickert.search.service.EmbeddingsVectorReply;
+import com.krickert.search.service.EmbeddingsVectorsReply;
+import com.krickert.search.service.EmbeddingsVectorsRequest;
+import io.grpc.BindableService;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingEmbeddingClientTest {
+
+    private Server server;
+    private ManagedChannel channel;
+
+    @AfterEach
+    public void shutdown() {
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    private static EmbeddingsVectorsReply reply(EmbeddingsVectorsRequest request) {
+        EmbeddingsVectorsReply.Builder reply = EmbeddingsVectorsReply.newBuilder();
+        for (String text : request.getTextList()) {
+            reply.addEmbeddings(EmbeddingsVectorReply.newBuilder().addEmbeddings(text.length()).build());
+        }
+        return reply.build();
+    }
+
+    private StreamingEmbeddingClient startClient(Object service) throws Exception {
+        String serverName = InProcessServerBuilder.generateName();
+        InProcessServerBuilder serverBuilder = InProcessServerBuilder.forName(serverName).directExecutor();
+        if (service instanceof BindableService bindableService) {
+            serverBuilder.addService(bindableService);
+        } else {
+            serverBuilder.addService((ServerServiceDefinition) service);
+        }
+        server = serverBuilder.build().start();
+        channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+        FutureEmbeddingClient unaryClient = new FutureEmbeddingClient("test-embedding", EmbeddingServiceGrpc.newFutureStub(channel), 4);
+        return new StreamingEmbeddingClient("test-embedding", channel, unaryClient, 2);
+    }
+
+    @Test
+    public void testBatchesAreAnsweredInOrderOverOneStream() throws Exception {
+        AtomicInteger streamsOpened = new AtomicInteger();
+        ServerServiceDefinition streamOnly = ServerServiceDefinition.builder(EmbeddingServiceGrpc.SERVICE_NAME)
+                .addMethod(StreamingEmbeddingClient.CREATE_EMBEDDINGS_VECTORS_STREAM,
+                        ServerCalls.asyncBidiStreamingCall(responseObserver -> {
+                            streamsOpened.incrementAndGet();
+                            return new StreamObserver<>() {
+                                @Override
+                                public void onNext(EmbeddingsVectorsRequest request) {
+                                    responseObserver.onNext(reply(request));
+                                }
+
+                                @Override
+                                public void onError(Throwable t) {
+                                }
+
+                                @Override
+                                public void onCompleted() {
+                                    responseObserver.onCompleted();
+                                }
+                            };
+                        }))
+                .build();
+        StreamingEmbeddingClient client = startClient(streamOnly);
+
+        List<CompletableFuture<EmbeddingsVectorsReply>> replies = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            replies.add(client.createEmbeddingsVectors(List.of("a".repeat(i + 1), "b")));
+        }
+        for (int i = 0; i < 5; i++) {
+            EmbeddingsVectorsReply reply = replies.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals(i + 1, reply.getEmbeddings(0).getEmbeddings(0));
+            assertEquals(1, reply.getEmbeddings(1).getEmbeddings(0));
+        }
+        assertEquals(3, client.createEmbeddingsVector("abc").get(5, TimeUnit.SECONDS).getEmbeddings(0));
+        assertEquals(1, streamsOpened.get());
+        assertTrue(client.isStreaming());
+        client.close();
+    }
+
+    @Test
+    public void testFallsBackToUnaryCallsWhenTheServerHasNoStream() throws Exception {
+        AtomicInteger unaryCalls = new AtomicInteger();
+        StreamingEmbeddingClient client = startClient(new EmbeddingServiceGrpc.EmbeddingServiceImplBase() {
+            @Override
+            public void createEmbeddingsVectors(EmbeddingsVectorsRequest request, StreamObserver<EmbeddingsVectorsReply> responseObserver) {
+                unaryCalls.incrementAndGet();
+                responseObserver.onNext(reply(request));
+                responseObserver.onCompleted();
+            }
+        });
+
+        assertEquals(4, client.createEmbeddingsVectors(List.of("abcd")).get(5, TimeUnit.SECONDS).getEmbeddings(0).getEmbeddings(0));
+        assertFalse(client.isStreaming());
+        assertEquals(2, client.createEmbeddingsVectors(List.of("ab")).get(5, TimeUnit.SECONDS).getEmbeddings(0).getEmbeddings(0));
+        assertEquals(2, unaryCalls.get());
+    }
+}
@@ -0,0 +1,104 @@
+package com.krickert.search.indexer.pipeline;
+
+import com.krickert.search.indexer.dto.PipelineStageStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PipelineStageTest {
+
+    @Test
+    public void testTasksHoldTheirSlotUntilTheirFutureCompletes() throws Exception {
+        PipelineStage stage = new PipelineStage("test", 1, 5);
+        try {
+            CompletableFuture<String> firstReply = new CompletableFuture<>();
+            CompletableFuture<String> first = stage.submit(() -> firstReply);
+            CompletableFuture<String> second = stage.submit(() -> CompletableFuture.completedFuture("second"));
+
+            waitFor(() -> stage.getRunning() == 1 && stage.getQueueDepth() == 1);
+            assertFalse(second.isDone());
+
+            firstReply.complete("first");
+            assertEquals("first", first.get(5, TimeUnit.SECONDS));
+            assertEquals("second", second.get(5, TimeUnit.SECONDS));
+
+            PipelineStageStatus status = stage.getStatus();
+            assertEquals(2, status.getCompleted());
+            assertEquals(0, status.getQueueDepth());
+            assertEquals(0, status.getRunning());
+            assertTrue(status.getThroughputPerSecond() > 0);
+        } finally {
+            stage.shutdown();
+        }
+    }
+
+    @Test
+    public void testSubmitBlocksWhileTheQueueIsFull() throws Exception {
+        PipelineStage stage = new PipelineStage("test", 1, 1);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            List<CompletableFuture<Void>> tasks = new ArrayList<>();
+            tasks.add(stage.submit(() -> CompletableFuture.runAsync(() -> awaitQuietly(release))));
+            tasks.add(stage.submit(() -> CompletableFuture.completedFuture(null)));
+
+            AtomicBoolean thirdQueued = new AtomicBoolean();
+            Thread producer = new Thread(() -> {
+                tasks.add(stage.submit(() -> CompletableFuture.completedFuture(null)));
+                thirdQueued.set(true);
+            });
+            producer.start();
+            producer.join(200);
+            assertFalse(thirdQueued.get());
+
+            release.countDown();
+            producer.join(5000);
+            assertTrue(thirdQueued.get());
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+            assertEquals(3, stage.getStatus().getCompleted());
+        } finally {
+            stage.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedTasksAreCountedAndReported() {
+        PipelineStage stage = new PipelineStage("test", 2, 2);
+        try {
+            CompletableFuture<Object> failed = stage.submit(() -> {
+                throw new IllegalStateException("solr is down");
+            });
+            Exception e = assertThrows(Exception.class, () -> failed.get(5, TimeUnit.SECONDS));
+            StageFailedException stageFailure = assertInstanceOf(StageFailedException.class, e.getCause());
+            assertEquals("test", stageFailure.getStage());
+            assertInstanceOf(IllegalStateException.class, stageFailure.getCause());
+            assertEquals(1, stage.getStatus().getFailed());
+        } finally {
+            stage.shutdown();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            //noinspection BusyWait
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,65 @@
+package com.krickert.search.indexer.solr;
+
+import com.krickert.search.indexer.solr.httpclient.select.HttpSolrSelectResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JavabinToSolrDocParserTest {
+
+    @Test
+    public void testParseSolrDocuments() throws IOException {
+        SolrDocument doc = new SolrDocument();
+        doc.setField("id", "doc1");
+        doc.setField("price", 12.5f);
+        doc.setField("tags", List.of("a", "b", "c"));
+        doc.setField("_version_", 1234L);
+        SolrDocumentList docs = new SolrDocumentList();
+        docs.setNumFound(99);
+        docs.setStart(0);
+        docs.add(doc);
+
+        NamedList<Object> responseHeader = new SimpleOrderedMap<>();
+        responseHeader.add("status", 0);
+        responseHeader.add("QTime", 4);
+        NamedList<Object> response = new NamedList<>();
+        response.add("responseHeader", responseHeader);
+        response.add("response", docs);
+        response.add("nextCursorMark", "AoEkZG9jMQ==");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JavaBinCodec().marshal(response, out);
+
+        HttpSolrSelectResponse parsed = new JavabinToSolrDocParser().parseSolrDocuments(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(99L, parsed.getNumFound());
+        assertEquals(0L, parsed.getStart());
+        assertEquals(4L, parsed.getQtime());
+        assertEquals("AoEkZG9jMQ==", parsed.getNextCursorMark());
+        assertEquals(1, parsed.getDocs().size());
+        SolrInputDocument inputDocument = parsed.getDocs().iterator().next();
+        assertEquals("doc1", inputDocument.getFieldValue("id"));
+        assertEquals(12.5f, inputDocument.getFieldValue("price"));
+        assertEquals(3, inputDocument.getFieldValues("tags").size());
+        assertFalse(inputDocument.containsKey("_version_"));
+    }
+
+    @Test
+    public void testSupportsJavabin() {
+        assertTrue(JavabinToSolrDocParser.supportsJavabin("7.7.3"));
+        assertTrue(JavabinToSolrDocParser.supportsJavabin("9.6.1"));
+        assertTrue(JavabinToSolrDocParser.supportsJavabin(null));
+        assertFalse(JavabinToSolrDocParser.supportsJavabin("3.6.2"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.krickert.search.indexer.solr.client;
+
+import com.krickert.search.indexer.solr.SchemaConstants;
+import com.krickert.search.indexer.test.TestContainersManager;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import jakarta.inject.Inject;
+import org.apache.solr.client.solrj.impl.Http2SolrClient;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.client.solrj.request.schema.SchemaRequest;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@MicronautTest
+public class VectorFieldValidatorTest {
+
+    @Inject
+    TestContainersManager testContainersManager;
+
+    private static Optional<Map<String, Object>> field(Http2SolrClient solrClient, String collection, String fieldName) throws Exception {
+        List<Map<String, Object>> fields = new SchemaRequest.Fields().process(solrClient, collection).getFields();
+        return fields.stream().filter(fieldInfo -> fieldName.equals(fieldInfo.get("name"))).findFirst();
+    }
+
+    @Test
+    void testFingerprintFieldIsAddedToAnExistingCollection() throws Exception {
+        String collection = "existing-chunks";
+        try (Http2SolrClient solrClient = TestContainersManager.createSolrClient()) {
+            // a collection created before the indexer wrote fingerprints
+            CollectionAdminRequest.createCollection(collection, "_default", 1, 1).process(solrClient);
+            assertTrue(field(solrClient, collection, SchemaConstants.VECTOR_FINGERPRINT).isEmpty());
+            SolrClientService solrClientService = mock(SolrClientService.class);
+            when(solrClientService.inlineSolrClient()).thenReturn(solrClient);
+            VectorFieldValidator vectorFieldValidator = new VectorFieldValidator(solrClientService);
+
+            vectorFieldValidator.validateStringField(SchemaConstants.VECTOR_FINGERPRINT, collection);
+            // a second validation finds the field and leaves it alone
+            vectorFieldValidator.validateStringField(SchemaConstants.VECTOR_FINGERPRINT, collection);
+
+            Map<String, Object> field = field(solrClient, collection, SchemaConstants.VECTOR_FINGERPRINT).orElseThrow();
+            assertEquals("string", field.get("type"));
+            assertEquals(Boolean.TRUE, field.get("stored"));
+            assertEquals(Boolean.TRUE, field.get("docValues"));
+
+            SolrInputDocument document = new SolrInputDocument();
+            document.addField(SchemaConstants.ID, "1");
+            document.addField(SchemaConstants.VECTOR_FINGERPRINT, "3f8a9c");
+            solrClient.add(collection, document);
+            solrClient.commit(collection);
+            SolrDocument stored = solrClient.getById(collection, "1");
+            assertEquals("3f8a9c", stored.getFirstValue(SchemaConstants.VECTOR_FINGERPRINT));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.krickert.search.indexer.solr.httpclient.select;
+
+import com.krickert.search.indexer.config.SolrConfiguration;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptivePageSizerTest {
+
+    private static SolrConfiguration.AdaptivePaging adaptivePaging() {
+        SolrConfiguration.AdaptivePaging adaptivePaging = new SolrConfiguration.AdaptivePaging();
+        adaptivePaging.setEnabled(true);
+        adaptivePaging.setMinRows(10);
+        adaptivePaging.setMaxRows(1000);
+        adaptivePaging.setTargetLatencyMillis(1000L);
+        adaptivePaging.setTargetResponseBytes(1_000_000L);
+        return adaptivePaging;
+    }
+
+    @Test
+    public void testFixedSizeWhenDisabled() {
+        AdaptivePageSizer pageSizer = new AdaptivePageSizer(100, null);
+        pageSizer.recordPage(100, 10_000_000_000L, 50_000_000L);
+        assertEquals(100, pageSizer.nextPageSize());
+        assertFalse(pageSizer.isAdaptive());
+    }
+
+    @Test
+    public void testGrowsAtMostDoubleWhenPagesAreCheap() {
+        AdaptivePageSizer pageSizer = new AdaptivePageSizer(100, adaptivePaging());
+        // 100 rows in 10ms and 10KB. The targets would allow far more rows
+        pageSizer.recordPage(100, 10_000_000L, 10_000L);
+        assertEquals(200, pageSizer.nextPageSize());
+        pageSizer.recordPage(200, 20_000_000L, 20_000L);
+        assertEquals(400, pageSizer.nextPageSize());
+        assertEquals(100, pageSizer.getSmallestPageSize());
+        assertEquals(400, pageSizer.getLargestPageSize());
+    }
+
+    @Test
+    public void testShrinksTowardByteBudget() {
+        AdaptivePageSizer pageSizer = new AdaptivePageSizer(100, adaptivePaging());
+        // 100 rows of 40KB each is 4MB, four times the budget. Fast enough on latency
+        pageSizer.recordPage(100, 10_000_000L, 4_000_000L);
+        assertEquals(50, pageSizer.nextPageSize());
+        pageSizer.recordPage(50, 5_000_000L, 2_000_000L);
+        assertEquals(25, pageSizer.nextPageSize());
+        pageSizer.recordPage(25, 2_500_000L, 1_000_000L);
+        assertEquals(25, pageSizer.nextPageSize());
+    }
+
+    @Test
+    public void testStaysWithinBounds() {
+        AdaptivePageSizer pageSizer = new AdaptivePageSizer(20, adaptivePaging());
+        for (int i = 0; i < 5; i++) {
+            pageSizer.recordPage(pageSizer.nextPageSize(), 5_000_000_000L, null);
+        }
+        assertEquals(10, pageSizer.nextPageSize());
+    }
+}
@@ -0,0 +1,72 @@
+package com.krickert.search.indexer.solr.httpclient.select;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedPageBufferTest {
+
+    private static HttpSolrSelectResponse page(long bytes) {
+        return new HttpSolrSelectResponse.Builder()
+                .numFound(1L)
+                .start(0L)
+                .docs(Collections.emptyList())
+                .responseBytes(bytes)
+                .build();
+    }
+
+    @Test
+    public void testPagesComeOutInOrderUntilFinished() throws InterruptedException {
+        BoundedPageBuffer buffer = new BoundedPageBuffer(3, 0);
+        HttpSolrSelectResponse first = page(10);
+        HttpSolrSelectResponse second = page(20);
+        buffer.put(first);
+        buffer.put(second);
+        buffer.finish();
+        assertEquals(2, buffer.getBufferedPages());
+        assertEquals(30L, buffer.getBufferedBytes());
+        assertSame(first, buffer.take());
+        assertSame(second, buffer.take());
+        assertNull(buffer.take());
+        assertEquals(0L, buffer.getBufferedBytes());
+    }
+
+    @Test
+    public void testPutBlocksWhenByteBudgetIsUsed() throws Exception {
+        BoundedPageBuffer buffer = new BoundedPageBuffer(10, 100);
+        buffer.put(page(80));
+        CompletableFuture<Void> blockedPut = CompletableFuture.runAsync(() -> {
+            try {
+                buffer.put(page(80));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertThrows(TimeoutException.class, () -> blockedPut.get(200, TimeUnit.MILLISECONDS));
+        buffer.take();
+        blockedPut.get(5, TimeUnit.SECONDS);
+        assertEquals(1, buffer.getBufferedPages());
+    }
+
+    @Test
+    public void testOversizePageIsAdmittedWhenEmpty() throws InterruptedException {
+        BoundedPageBuffer buffer = new BoundedPageBuffer(2, 100);
+        buffer.put(page(500));
+        assertEquals(500L, buffer.getBufferedBytes());
+    }
+
+    @Test
+    public void testFailureReachesConsumer() throws InterruptedException {
+        BoundedPageBuffer buffer = new BoundedPageBuffer(2, 0);
+        buffer.put(page(1));
+        buffer.fail(new IllegalStateException("source went away"));
+        assertNotNull(buffer.take());
+        BoundedPageBuffer.PageBufferException e = assertThrows(BoundedPageBuffer.PageBufferException.class, buffer::take);
+        assertEquals("source went away", e.getCause().getMessage());
+    }
+}
@@ -0,0 +1,253 @@
+package com.krickert.search.indexer.solr.httpclient.select;
+
+import com.krickert.search.indexer.IndexingFailedExecption;
+import com.krickert.search.indexer.config.SolrConfiguration;
+import com.krickert.search.indexer.enhancers.MockSolrSelectClient;
+import com.krickert.search.indexer.solr.JavabinToSolrDocParser;
+import com.krickert.search.indexer.solr.JsonToSolrDocParser;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class SolrSourceExtractorTest {
+    private static final String CURSOR_MARK_END = "AoE/end";
+
+    /**
+     * Answers every request with the body the function picks for it and keeps the requests it was sent.
+     */
+    private static class RecordingSelectClient extends MockSolrSelectClient {
+        private final Function<HttpSolrSelectRequest, String> responses;
+        private final Queue<HttpSolrSelectRequest> requests = new ConcurrentLinkedQueue<>();
+
+        private RecordingSelectClient(Function<HttpSolrSelectRequest, String> responses) {
+            this.responses = responses;
+        }
+
+        @Override
+        public InputStream getSolrDocsAsStream(HttpSolrSelectRequest selectRequest) {
+            requests.add(selectRequest);
+            return new ByteArrayInputStream(responses.apply(selectRequest).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static SolrSourceExtractor extractor(HttpSolrSelectClient selectClient) {
+        return new SolrSourceExtractor(selectClient, new JsonToSolrDocParser(), new JavabinToSolrDocParser(),
+                mock(SourceFieldListResolver.class));
+    }
+
+    private static String selectResponse(List<String> ids, String nextCursorMark) {
+        String docs = ids.stream().map(id -> "{\"id\":\"" + id + "\",\"title\":\"Title of " + id + "\"}")
+                .collect(Collectors.joining(","));
+        return "{\"responseHeader\":{\"status\":0,\"QTime\":1},"
+                + "\"response\":{\"numFound\":" + ids.size() + ",\"start\":0,\"docs\":[" + docs + "]},"
+                + "\"nextCursorMark\":\"" + nextCursorMark + "\"}";
+    }
+
+    private static Set<Object> ids(Queue<HttpSolrSelectResponse> pages) {
+        return pages.stream()
+                .flatMap(page -> page.getDocs().stream())
+                .map(document -> document.getFieldValue("id"))
+                .collect(Collectors.toSet());
+    }
+
+    private static String hashFilter(HttpSolrSelectRequest request) {
+        List<String> hashFilters = request.getFilters().stream().filter(filter -> filter.startsWith("{!hash")).toList();
+        assertEquals(1, hashFilters.size(), () -> "hash filters of " + request);
+        return hashFilters.get(0);
+    }
+
+    @Test
+    public void testCreatePartitionFilter() {
+        assertEquals("{!hash workers=4 worker=0 partitionKeys=id}", SolrSourceExtractor.createPartitionFilter("id", 4, 0));
+        assertEquals("{!hash workers=4 worker=3 partitionKeys=doc_key}", SolrSourceExtractor.createPartitionFilter("doc_key", 4, 3));
+    }
+
+    @Test
+    public void testPartitionedExtractionReadsEverySliceWithCursorMark() throws Exception {
+        int partitionCount = 3;
+        RecordingSelectClient selectClient = new RecordingSelectClient(request -> {
+            if (CURSOR_MARK_END.equals(request.getCursorMark())) {
+                return selectResponse(List.of(), CURSOR_MARK_END);
+            }
+            String slice = hashFilter(request).replaceAll(".*worker=(\\d+).*", "$1");
+            return selectResponse(List.of(slice + "-a", slice + "-b"), CURSOR_MARK_END);
+        });
+        HttpSolrSelectRequest baseRequest = new HttpSolrSelectRequest.Builder()
+                .solrHost("http://localhost:8983/solr")
+                .solrCollection("source")
+                .rows(10)
+                .filters(List.of("type:doc"))
+                .build();
+        Queue<HttpSolrSelectResponse> pages = new ConcurrentLinkedQueue<>();
+
+        extractor(selectClient).readPartitionedPages(baseRequest, "id", partitionCount, 2,
+                new AdaptivePageSizer(10, null), new SourceReadThrottle(null), pages::add);
+
+        assertEquals(Set.of("0-a", "0-b", "1-a", "1-b", "2-a", "2-b"), ids(pages));
+        // each slice is read with a first page and a last, empty one
+        assertEquals(partitionCount * 2, selectClient.requests.size());
+        Set<String> slices = selectClient.requests.stream().map(SolrSourceExtractorTest::hashFilter).collect(Collectors.toSet());
+        assertEquals(Set.of(SolrSourceExtractor.createPartitionFilter("id", 3, 0), SolrSourceExtractor.createPartitionFilter("id", 3, 1),
+                SolrSourceExtractor.createPartitionFilter("id", 3, 2)), slices);
+        for (HttpSolrSelectRequest request : selectClient.requests) {
+            assertTrue(request.getFilters().contains("type:doc"));
+            assertTrue(request.isCursorMarkRequest());
+            assertEquals("id asc", request.getSort());
+        }
+    }
+
+    @Test
+    public void testFailedPartitionFailsTheExtraction() {
+        RecordingSelectClient selectClient = new RecordingSelectClient(request -> {
+            if (hashFilter(request).contains("worker=1 ")) {
+                throw new IllegalStateException("source shard is down");
+            }
+            return selectResponse(List.of(), CURSOR_MARK_END);
+        });
+        HttpSolrSelectRequest baseRequest = new HttpSolrSelectRequest.Builder()
+                .solrCollection("source")
+                .rows(10)
+                .build();
+        List<SolrInputDocument> documents = new ArrayList<>();
+
+        assertThrows(IndexingFailedExecption.class, () -> extractor(selectClient).readPartitionedPages(baseRequest, "id", 2, 2,
+                new AdaptivePageSizer(10, null), new SourceReadThrottle(null), page -> documents.addAll(page.getDocs())));
+        assertTrue(documents.isEmpty());
+    }
+
+    @Test
+    public void testAnEmptySourceEndsAnOffsetCrawl() {
+        HttpSolrSelectRequest baseRequest = new HttpSolrSelectRequest.Builder()
+                .solrCollection("source")
+                .rows(10)
+                .build();
+        List<HttpSolrSelectResponse> pages = new ArrayList<>();
+
+        extractor(new MockSolrSelectClient()).readOffsetPages(baseRequest, 100, new AdaptivePageSizer(10, null),
+                new SourceReadThrottle(null), pages::add);
+        assertTrue(pages.isEmpty());
+    }
+
+    private static String exportResponse(List<String> ids, String exception) {
+        List<String> docs = new ArrayList<>(ids.stream().map(id -> "{\"id\":\"" + id + "\",\"title_s\":\"Title of " + id + "\"}").toList());
+        if (exception != null) {
+            docs.add("{\"EXCEPTION\":\"" + exception + "\"}");
+        }
+        return "{\"responseHeader\":{\"status\":0},"
+                + "\"response\":{\"numFound\":" + ids.size() + ",\"docs\":[" + String.join(",", docs) + "]}}";
+    }
+
+    private static HttpSolrSelectRequest exportRequest() {
+        return new HttpSolrSelectRequest.Builder()
+                .solrHost("http://localhost:8983/solr")
+                .solrCollection("source")
+                .rows(2)
+                .fieldList("id,title_s")
+                .requestHandler(HttpSolrSelectRequest.EXPORT_HANDLER)
+                .build();
+    }
+
+    @Test
+    public void testExportStreamIsHandedOverInPagesOfTheRows() {
+        String response = exportResponse(List.of("a", "b", "c", "d", "e"), null);
+        RecordingSelectClient selectClient = new RecordingSelectClient(request -> response);
+        List<HttpSolrSelectResponse> pages = new ArrayList<>();
+
+        extractor(selectClient).readExportStream(exportRequest(), "id", new SourceReadThrottle(null), pages::add);
+
+        assertEquals(List.of(2, 2, 1), pages.stream().map(page -> page.getDocs().size()).toList());
+        assertEquals(List.of("a", "b", "c", "d", "e"), pages.stream()
+                .flatMap(page -> page.getDocs().stream())
+                .map(document -> document.getFieldValue("id"))
+                .toList());
+        assertEquals(List.of(0L, 2L, 4L), pages.stream().map(HttpSolrSelectResponse::getStart).toList());
+        long streamedBytes = pages.stream().mapToLong(HttpSolrSelectResponse::getResponseBytes).sum();
+        assertTrue(streamedBytes > 0 && streamedBytes <= response.getBytes(StandardCharsets.UTF_8).length,
+                () -> "streamed bytes: " + streamedBytes);
+
+        assertEquals(1, selectClient.requests.size());
+        HttpSolrSelectRequest sent = selectClient.requests.peek();
+        assertTrue(sent.isExportRequest());
+        assertEquals("id asc", sent.getSort());
+        assertEquals("id,title_s", sent.getFieldList());
+    }
+
+    @Test
+    public void testExportStreamOfAnEmptySourceHandsOverNothing() {
+        List<HttpSolrSelectResponse> pages = new ArrayList<>();
+        extractor(new RecordingSelectClient(request -> exportResponse(List.of(), null)))
+                .readExportStream(exportRequest(), "id", new SourceReadThrottle(null), pages::add);
+        assertTrue(pages.isEmpty());
+    }
+
+    @Test
+    public void testExportStreamFailsOnAnExceptionDocument() {
+        List<HttpSolrSelectResponse> pages = new ArrayList<>();
+        RecordingSelectClient selectClient = new RecordingSelectClient(request ->
+                exportResponse(List.of("a", "b", "c"), "java.io.IOException: body must have docValues"));
+
+        RuntimeException error = assertThrows(RuntimeException.class, () ->
+                extractor(selectClient).readExportStream(exportRequest(), "id", new SourceReadThrottle(null), pages::add));
+        assertTrue(String.valueOf(error.getMessage()).contains("docValues")
+                || String.valueOf(error.getCause()).contains("docValues"), error::toString);
+        // the full page went out before the error, the partial one did not
+        assertEquals(1, pages.size());
+    }
+
+    @Test
+    public void testPausingWindowStopsTheExportStreamBetweenPages() {
+        SolrConfiguration.Throttle throttleConfiguration = new SolrConfiguration.Throttle();
+        throttleConfiguration.setEnabled(true);
+        throttleConfiguration.setWindows(List.of("09:00-18:00=0"));
+        Instant[] now = {LocalDateTime.of(2024, 5, 1, 8, 59).toInstant(ZoneOffset.UTC)};
+        Clock clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now[0];
+            }
+        };
+        SourceReadThrottle throttle = new SourceReadThrottle(throttleConfiguration, clock);
+        RecordingSelectClient selectClient = new RecordingSelectClient(request -> exportResponse(List.of("a", "b", "c", "d", "e"), null));
+        List<HttpSolrSelectResponse> pages = new ArrayList<>();
+
+        try {
+            // the window opens while the first page is handled, and the interrupt ends the pause instead of a sleep
+            assertThrows(RuntimeException.class, () -> extractor(selectClient).readExportStream(exportRequest(), "id", throttle, page -> {
+                pages.add(page);
+                now[0] = now[0].plusSeconds(120);
+                Thread.currentThread().interrupt();
+            }));
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(1, pages.size());
+    }
+}
@@ -0,0 +1,64 @@
+package com.krickert.search.indexer.solr.httpclient.select;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SourceFieldListResolverTest {
+
+    @Test
+    public void testCreateFieldList() {
+        String fieldList = SourceFieldListResolver.createFieldList(
+                List.of("id", "title", "body", "_version_", "_root_", "category_s"),
+                List.of("*_s", "attr_*"),
+                List.of("body", "summary"),
+                "id");
+        assertEquals("id,body,summary,title,*_s,attr_*", fieldList);
+    }
+
+    @Test
+    public void testCatchAllDynamicFieldRequestsEverything() {
+        assertNull(SourceFieldListResolver.createFieldList(List.of("id", "title"), List.of("*_s", "*"), List.of(), "id"));
+    }
+
+    @Test
+    public void testAutoExportFieldListKeepsOnlySourceDocValuesFields() {
+        String fieldList = SourceFieldListResolver.createExportFieldList(
+                List.of("id", "body", "summary", "title", "category_s", "*_s", "attr_*"),
+                true,
+                Map.of("id", true, "body", false, "title", true),
+                Map.of("*_s", true, "*", false),
+                List.of("id", "title"));
+        // body has no docValues, summary is only in the destination, and patterns can not be exported
+        assertEquals("id,title,category_s", fieldList);
+    }
+
+    @Test
+    public void testExportFieldListUsesTheLongestMatchingDynamicField() {
+        Map<String, Boolean> dynamicFields = Map.of("*_s", false, "*_sort_s", true);
+        assertEquals("title_sort_s", SourceFieldListResolver.createExportFieldList(List.of("title_sort_s", "title_s"), true,
+                Map.of(), dynamicFields, List.of()));
+    }
+
+    @Test
+    public void testExportFailsOnARequiredFieldWithoutDocValues() {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> SourceFieldListResolver.createExportFieldList(
+                List.of("id", "body", "title"), true, Map.of("id", true, "body", false, "title", true), Map.of(), List.of("id", "body")));
+        assertTrue(error.getMessage().contains("body has no docValues"), error::getMessage);
+    }
+
+    @Test
+    public void testConfiguredExportFieldListMustBeExportable() {
+        Map<String, Boolean> fields = Map.of("id", true, "body", false);
+        assertEquals("id", SourceFieldListResolver.createExportFieldList(List.of("id"), false, fields, Map.of(), List.of("id")));
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> SourceFieldListResolver.createExportFieldList(
+                List.of("id", "*_s", "missing"), false, fields, Map.of(), List.of("id")));
+        assertTrue(error.getMessage().contains("*_s is a pattern"), error::getMessage);
+        assertTrue(error.getMessage().contains("missing is not in the source schema"), error::getMessage);
+        assertThrows(IllegalArgumentException.class, () -> SourceFieldListResolver.createExportFieldList(
+                List.of("id", "body"), false, fields, Map.of(), List.of("id")));
+    }
+}
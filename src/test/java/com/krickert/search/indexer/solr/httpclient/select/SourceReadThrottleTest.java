@@ -0,0 +1,70 @@
+package com.krickert.search.indexer.solr.httpclient.select;
+
+import com.krickert.search.indexer.config.SolrConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SourceReadThrottleTest {
+
+    private static SolrConfiguration.Throttle throttle() {
+        SolrConfiguration.Throttle throttle = new SolrConfiguration.Throttle();
+        throttle.setEnabled(true);
+        throttle.setRequestsPerSecond(100.0);
+        throttle.setWindows(List.of("09:00-18:00=20", "22:00-02:00=50"));
+        throttle.setQtimeThresholdMillis(500L);
+        return throttle;
+    }
+
+    private static Clock clockAt(int hour, int minute) {
+        return Clock.fixed(LocalDateTime.of(2024, 5, 1, hour, minute).toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+    }
+
+    @Test
+    public void testWindowsScaleTheRate() {
+        assertEquals(1.0, new SourceReadThrottle(throttle(), clockAt(3, 0)).currentRateFactor(), 0.0001);
+        assertEquals(0.2, new SourceReadThrottle(throttle(), clockAt(9, 0)).currentRateFactor(), 0.0001);
+        assertEquals(1.0, new SourceReadThrottle(throttle(), clockAt(18, 0)).currentRateFactor(), 0.0001);
+        assertEquals(0.5, new SourceReadThrottle(throttle(), clockAt(23, 30)).currentRateFactor(), 0.0001);
+        assertEquals(0.5, new SourceReadThrottle(throttle(), clockAt(1, 59)).currentRateFactor(), 0.0001);
+    }
+
+    @Test
+    public void testQtimeBacksOffAndRecovers() {
+        SourceReadThrottle sourceReadThrottle = new SourceReadThrottle(throttle(), clockAt(3, 0));
+        sourceReadThrottle.recordQtime(900L);
+        sourceReadThrottle.recordQtime(800L);
+        assertEquals(0.25, sourceReadThrottle.currentRateFactor(), 0.0001);
+        sourceReadThrottle.recordQtime(100L);
+        assertEquals(0.35, sourceReadThrottle.currentRateFactor(), 0.0001);
+        for (int i = 0; i < 10; i++) {
+            sourceReadThrottle.recordQtime(null);
+            sourceReadThrottle.recordQtime(100L);
+        }
+        assertEquals(1.0, sourceReadThrottle.currentRateFactor(), 0.0001);
+    }
+
+    @Test
+    public void testDisabledThrottleDoesNothing() {
+        SourceReadThrottle sourceReadThrottle = new SourceReadThrottle(null);
+        assertFalse(sourceReadThrottle.isEnabled());
+        sourceReadThrottle.acquireRequest();
+        sourceReadThrottle.recordResponse(Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testWindowParsing() {
+        SourceReadThrottle.ThrottleWindow window = SourceReadThrottle.ThrottleWindow.parse(" 08:30-17:15 = 0% ");
+        assertEquals("08:30-17:15=0%", window.toString());
+        assertTrue(window.contains(LocalTime.of(8, 30)));
+        assertFalse(window.contains(LocalTime.of(17, 15)));
+        assertThrows(IllegalArgumentException.class, () -> SourceReadThrottle.ThrottleWindow.parse("08:30=20"));
+        assertThrows(IllegalArgumentException.class, () -> SourceReadThrottle.ThrottleWindow.parse("08:30-09:00=120"));
+    }
+}
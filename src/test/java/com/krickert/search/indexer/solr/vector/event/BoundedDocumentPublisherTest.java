@@ -0,0 +1,53 @@
+package com.krickert.search.indexer.solr.vector.event;
+
+import com.krickert.search.indexer.tracker.IndexingTracker;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedDocumentPublisherTest {
+
+    private static SolrInputDocument document(String id) {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField("id", id);
+        return document;
+    }
+
+    @Test
+    public void testPublishingBlocksAtCapacityUntilADocumentCompletes() throws Exception {
+        SolrChunkDocumentPublisher publisher = new SolrChunkDocumentPublisher(2, new IndexingTracker(100));
+        publisher.publishDocument(document("1"));
+        publisher.publishDocument(document("2"));
+        assertEquals(2, publisher.getQueueDepth());
+        assertEquals(2, publisher.getQueueCapacity());
+
+        CompletableFuture<Void> blockedPublish = CompletableFuture.runAsync(() -> publisher.publishDocument(document("3")));
+        assertThrows(TimeoutException.class, () -> blockedPublish.get(200, TimeUnit.MILLISECONDS));
+
+        publisher.documentCompleted();
+        blockedPublish.get(5, TimeUnit.SECONDS);
+        assertEquals(2, publisher.getQueueDepth());
+
+        publisher.documentCompleted();
+        publisher.documentCompleted();
+        assertEquals(0, publisher.getQueueDepth());
+    }
+
+    @Test
+    public void testDocumentTheSinkRejectsIsReportedAsFailed() {
+        IndexingTracker indexingTracker = new IndexingTracker(100);
+        indexingTracker.startTracking(2L, "crawl");
+        SolrChunkDocumentPublisher publisher = new SolrChunkDocumentPublisher(2, indexingTracker);
+        // a cancelled subscriber leaves the unicast sink unable to take documents
+        publisher.getDocumentFlux().subscribe().dispose();
+
+        publisher.publishDocument(document("1"));
+        assertEquals(0, publisher.getQueueDepth());
+        assertEquals(1, indexingTracker.getVectorTaskStatus().getTotalDocumentsFailed());
+    }
+}
@@ -0,0 +1,155 @@
+package com.krickert.search.indexer.solr.vector.event;
+
+import com.krickert.search.indexer.chunker.Chunkers;
+import com.krickert.search.indexer.config.IndexerConfiguration;
+import com.krickert.search.indexer.config.IndexerConfigurationProperties;
+import com.krickert.search.indexer.config.SolrConfiguration;
+import com.krickert.search.indexer.config.VectorConfig;
+import com.krickert.search.indexer.grpc.ChunkerClient;
+import com.krickert.search.indexer.grpc.EmbeddingBatchSizers;
+import com.krickert.search.indexer.grpc.EmbeddingClient;
+import com.krickert.search.indexer.pipeline.IndexingPipeline;
+import com.krickert.search.indexer.solr.SchemaConstants;
+import com.krickert.search.indexer.solr.client.SolrClientService;
+import com.krickert.search.indexer.state.DeadLetterLog;
+import com.krickert.search.indexer.tracker.IndexingTracker;
+import com.krickert.search.service.EmbeddingsVectorReply;
+import com.krickert.search.service.EmbeddingsVectorsReply;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.Http2SolrClient;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.SolrParams;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Writes the chunks of a field that shrank, with fingerprints off, so the stored chunks only come from the lookup of
+ * the page.
+ */
+public class ChunkDocumentListenerTest {
+
+    @TempDir
+    Path stateDirectory;
+
+    private final Http2SolrClient vectorClient = mock(Http2SolrClient.class);
+    private final IndexingTracker indexingTracker = new IndexingTracker(100);
+    private IndexingPipeline indexingPipeline;
+    private DocumentFingerprints documentFingerprints;
+    private ChunkDocumentListener listener;
+
+    @BeforeEach
+    public void createListener() throws Exception {
+        VectorConfig vectorConfig = new VectorConfig();
+        vectorConfig.setFieldName("body");
+        vectorConfig.setFieldVectorName("body-vector");
+        vectorConfig.setModel("mini-lm");
+        vectorConfig.setChunkField(true);
+        vectorConfig.setChunker(Chunkers.LOCAL);
+        vectorConfig.setChunkSize(5);
+        vectorConfig.setChunkOverlap(0);
+        vectorConfig.setDestinationCollection("body-chunks");
+        SolrConfiguration destination = new SolrConfiguration("destination");
+        destination.setCollection("destination");
+        IndexerConfiguration indexerConfiguration = mock(IndexerConfiguration.class);
+        when(indexerConfiguration.getChunkVectorConfig()).thenReturn(Map.of("body", vectorConfig));
+        when(indexerConfiguration.getInlineVectorConfig()).thenReturn(Map.of());
+        when(indexerConfiguration.getDestinationSolrConfiguration()).thenReturn(destination);
+        when(indexerConfiguration.getIndexerConfigurationProperties()).thenReturn(new IndexerConfigurationProperties());
+        SolrClientService solrClientService = mock(SolrClientService.class);
+        when(solrClientService.vectorSolrClient()).thenReturn(vectorClient);
+        EmbeddingClient embeddingClient = mock(EmbeddingClient.class);
+        when(embeddingClient.createEmbeddingsVectors(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            EmbeddingsVectorsReply.Builder reply = EmbeddingsVectorsReply.newBuilder();
+            texts.forEach(text -> reply.addEmbeddings(EmbeddingsVectorReply.newBuilder().addEmbeddings(0.5f)));
+            return CompletableFuture.completedFuture(reply.build());
+        });
+
+        // an earlier crawl stored five chunks of body, and one of another field in the same collection
+        SolrDocumentList stored = new SolrDocumentList();
+        for (String id : List.of("1-body#0000000", "1-body#0000001", "1-body#0000002", "1-body#0000003", "1-body#0000004", "1-title#0000000")) {
+            SolrDocument document = new SolrDocument();
+            document.setField(SchemaConstants.ID, id);
+            stored.add(document);
+        }
+        stored.setNumFound(stored.size());
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(stored);
+        when(vectorClient.query(eq("body-chunks"), any(SolrParams.class))).thenReturn(response);
+
+        indexingPipeline = new IndexingPipeline(new IndexerConfigurationProperties.Pipeline());
+        documentFingerprints = new DocumentFingerprints(false, Map.of(), Map.of("body", vectorConfig), "destination", null, vectorClient);
+        listener = new ChunkDocumentListener(indexerConfiguration, solrClientService, indexingTracker, embeddingClient,
+                mock(ChunkerClient.class), indexingPipeline, new DeadLetterLog(stateDirectory.resolve("dead-letters.jsonl")),
+                new DocumentWorkMemo(), documentFingerprints,
+                new EmbeddingBatchSizers(new IndexerConfigurationProperties()));
+        indexingTracker.startTracking(1L, "crawl");
+    }
+
+    @AfterEach
+    public void close() {
+        indexingPipeline.close();
+    }
+
+    private static SolrInputDocument document() {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField(SchemaConstants.ID, "1");
+        // two chunks of five characters
+        document.addField("body", "abcdefghij");
+        document.addField(SchemaConstants.CRAWL_ID, "crawl");
+        document.addField(SchemaConstants.CRAWL_DATE, new Date());
+        return document;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testChunksTheFieldNoLongerHasAreDeleted() throws Exception {
+        SolrInputDocument document = document();
+        documentFingerprints.lookup(List.of(document));
+        listener.processDocumentAsync(document).get(5, TimeUnit.SECONDS);
+
+        verify(vectorClient).add(eq("body-chunks"), anyCollection());
+        ArgumentCaptor<List<String>> deleted = ArgumentCaptor.forClass(List.class);
+        verify(vectorClient).deleteById(eq("body-chunks"), deleted.capture());
+        assertEquals(Set.of("1-body#0000002", "1-body#0000003", "1-body#0000004"), Set.copyOf(deleted.getValue()));
+        assertEquals(1, indexingTracker.getVectorTaskStatus().getTotalDocumentsProcessed());
+    }
+
+    @Test
+    public void testNothingIsDeletedWhenTheChunksWereNotWritten() throws Exception {
+        when(vectorClient.add(eq("body-chunks"), anyCollection())).thenThrow(new SolrServerException("vector collection is down"));
+        SolrInputDocument document = document();
+        documentFingerprints.lookup(List.of(document));
+
+        listener.processDocumentAsync(document).get(5, TimeUnit.SECONDS);
+
+        verify(vectorClient, never()).deleteById(anyString(), anyList());
+        assertEquals(1, indexingTracker.getVectorTaskStatus().getTotalDocumentsFailed());
+    }
+
+    @Test
+    public void testDocumentsWithoutALookupAreNotQueriedOneByOne() throws Exception {
+        listener.processDocumentAsync(document()).get(5, TimeUnit.SECONDS);
+
+        verify(vectorClient).add(eq("body-chunks"), anyCollection());
+        verify(vectorClient, never()).query(anyString(), any(SolrParams.class));
+        verify(vectorClient, never()).deleteById(anyString(), anyList());
+    }
+}
@@ -0,0 +1,133 @@
+package com.krickert.search.indexer.solr.vector.event;
+
+import com.krickert.search.indexer.config.IndexerConfiguration;
+import com.krickert.search.indexer.config.IndexerConfigurationProperties;
+import com.krickert.search.indexer.config.SolrConfiguration;
+import com.krickert.search.indexer.config.VectorConfig;
+import com.krickert.search.indexer.dto.DeadLetterReplayStatus;
+import com.krickert.search.indexer.grpc.ChunkerClient;
+import com.krickert.search.indexer.grpc.EmbeddingBatchSizers;
+import com.krickert.search.indexer.grpc.EmbeddingBatcher;
+import com.krickert.search.indexer.grpc.EmbeddingClient;
+import com.krickert.search.indexer.pipeline.IndexingPipeline;
+import com.krickert.search.indexer.solr.SchemaConstants;
+import com.krickert.search.indexer.solr.client.SolrClientService;
+import com.krickert.search.indexer.state.DeadLetter;
+import com.krickert.search.indexer.state.DeadLetterLog;
+import com.krickert.search.indexer.tracker.IndexingTracker;
+import com.krickert.search.service.EmbeddingsVectorReply;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.Http2SolrClient;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class DeadLetterReplayerTest {
+    private static final Date CRAWL_DATE = new Date(1714557600123L);
+
+    @TempDir
+    Path stateDirectory;
+
+    private final Http2SolrClient destinationClient = mock(Http2SolrClient.class);
+    private final IndexingTracker indexingTracker = new IndexingTracker(100);
+    private final List<SolrInputDocument> written = new CopyOnWriteArrayList<>();
+    private IndexingPipeline indexingPipeline;
+    private EmbeddingBatcher embeddingBatcher;
+    private DeadLetterLog deadLetterLog;
+    private DeadLetterReplayer replayer;
+
+    @BeforeEach
+    public void createReplayer() {
+        VectorConfig vectorConfig = new VectorConfig();
+        vectorConfig.setFieldName("body");
+        vectorConfig.setFieldVectorName("body-vector");
+        vectorConfig.setModel("mini-lm");
+        vectorConfig.setChunkField(false);
+        SolrConfiguration destination = new SolrConfiguration("destination");
+        destination.setCollection("destination");
+        IndexerConfiguration indexerConfiguration = mock(IndexerConfiguration.class);
+        when(indexerConfiguration.getInlineVectorConfig()).thenReturn(Map.of("body", vectorConfig));
+        when(indexerConfiguration.getDestinationSolrConfiguration()).thenReturn(destination);
+        SolrClientService solrClientService = mock(SolrClientService.class);
+        when(solrClientService.inlineSolrClient()).thenReturn(destinationClient);
+        EmbeddingClient embeddingClient = mock(EmbeddingClient.class);
+        when(embeddingClient.createEmbeddingsVector(anyString())).thenReturn(CompletableFuture.completedFuture(
+                EmbeddingsVectorReply.newBuilder().addEmbeddings(0.5f).build()));
+
+        indexingPipeline = new IndexingPipeline(new IndexerConfigurationProperties.Pipeline());
+        embeddingBatcher = new EmbeddingBatcher(embeddingClient, 1, 0, 1);
+        deadLetterLog = new DeadLetterLog(stateDirectory.resolve("dead-letters.jsonl"));
+        InlineDocumentListener inlineDocumentListener = new InlineDocumentListener(solrClientService, embeddingClient,
+                mock(ChunkerClient.class), indexingTracker, indexerConfiguration, embeddingBatcher, indexingPipeline,
+                deadLetterLog, new DocumentWorkMemo(), new DocumentFingerprints(false, Map.of(), Map.of(), "destination", null, null),
+                new EmbeddingBatchSizers(new IndexerConfigurationProperties()));
+        replayer = new DeadLetterReplayer(deadLetterLog, inlineDocumentListener, mock(ChunkDocumentListener.class), indexingPipeline);
+    }
+
+    @AfterEach
+    public void close() {
+        embeddingBatcher.close();
+        indexingPipeline.close();
+    }
+
+    private static DeadLetter deadLetter(String id) {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField(SchemaConstants.ID, id);
+        document.addField("body", "some text");
+        document.addField(SchemaConstants.CRAWL_ID, "earlier-crawl");
+        document.addField(SchemaConstants.CRAWL_DATE, CRAWL_DATE);
+        return DeadLetter.of(DeadLetter.INLINE_LISTENER, null, id, document, Set.of("body-vector"), "embed",
+                new IllegalStateException("embedding service is down"));
+    }
+
+    @Test
+    public void testReplayCountsOnlyItsOwnFailuresAndLeavesTheCrawlAlone() throws Exception {
+        deadLetterLog.record(deadLetter("1"));
+        deadLetterLog.record(deadLetter("2"));
+        indexingTracker.startTracking(1L, "running-crawl");
+        doAnswer(invocation -> {
+            SolrInputDocument document = invocation.getArgument(1);
+            if ("2".equals(document.getFieldValue(SchemaConstants.ID))) {
+                throw new SolrServerException("destination is down");
+            }
+            // the running crawl fails a document of its own while the replay is going on
+            deadLetterLog.record(deadLetter("3"));
+            written.add(document);
+            return null;
+        }).when(destinationClient).add(eq("destination"), any(SolrInputDocument.class));
+
+        DeadLetterReplayStatus status = replayer.replay();
+
+        assertEquals(2, status.getReplayed());
+        assertEquals(1, status.getFailedAgain());
+        // the replayed document that failed again and the crawl's own failure
+        assertEquals(2, deadLetterLog.size());
+        assertEquals(Set.of("2", "3"), Set.copyOf(deadLetterLog.getAll().stream().map(DeadLetter::getDocumentId).toList()));
+        assertEquals(0, indexingTracker.getMainTaskStatus().getTotalDocumentsProcessed());
+        assertEquals(0, indexingTracker.getMainTaskStatus().getTotalDocumentsFailed());
+
+        assertEquals(1, written.size());
+        assertEquals(CRAWL_DATE, written.get(0).getFieldValue(SchemaConstants.CRAWL_DATE));
+        assertEquals(List.of(0.5f), List.copyOf(written.get(0).getFieldValues("body-vector")));
+    }
+
+    @Test
+    public void testEmptyLogReplaysNothing() {
+        DeadLetterReplayStatus status = replayer.replay();
+        assertEquals(0, status.getReplayed());
+        assertEquals(0, status.getFailedAgain());
+    }
+}
@@ -0,0 +1,155 @@
+package com.krickert.search.indexer.solr.vector.event;
+
+import com.krickert.search.indexer.config.VectorConfig;
+import com.krickert.search.indexer.solr.SchemaConstants;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.SolrParams;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class DocumentFingerprintsTest {
+
+    private static VectorConfig vectorConfig(String fieldVectorName, String destinationCollection, int chunkSize) {
+        VectorConfig vectorConfig = new VectorConfig();
+        vectorConfig.setFieldName("body");
+        vectorConfig.setFieldVectorName(fieldVectorName);
+        vectorConfig.setModel("mini-lm");
+        vectorConfig.setChunkField(false);
+        vectorConfig.setChunkSize(chunkSize);
+        vectorConfig.setChunkOverlap(30);
+        vectorConfig.setDestinationCollection(destinationCollection);
+        return vectorConfig;
+    }
+
+    private static SolrInputDocument document(String id, String body, String crawlId) {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField(SchemaConstants.ID, id);
+        document.addField("title", "Title of " + id);
+        document.addField("body", body);
+        document.addField(SchemaConstants.CRAWL_ID, crawlId);
+        return document;
+    }
+
+    private static QueryResponse stored(String... idsAndFingerprints) {
+        SolrDocumentList results = new SolrDocumentList();
+        for (int i = 0; i < idsAndFingerprints.length; i += 2) {
+            SolrDocument document = new SolrDocument();
+            document.setField(SchemaConstants.ID, idsAndFingerprints[i]);
+            document.setField(SchemaConstants.VECTOR_FINGERPRINT, idsAndFingerprints[i + 1]);
+            results.add(document);
+        }
+        results.setNumFound(results.size());
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(results);
+        return response;
+    }
+
+    @Test
+    public void testUnchangedDocumentsAndFieldsAreFoundInTheDestination() throws Exception {
+        VectorConfig inlineConfig = vectorConfig("body-vector", null, 300);
+        VectorConfig chunkConfig = vectorConfig("chunk-vector", "body-chunks", 300);
+        SolrClient inlineSolrClient = mock(SolrClient.class);
+        SolrClient vectorSolrClient = mock(SolrClient.class);
+        DocumentFingerprints documentFingerprints = new DocumentFingerprints(true, Map.of("body", inlineConfig),
+                Map.of("body", chunkConfig), "destination", inlineSolrClient, vectorSolrClient);
+
+        // what an earlier crawl stored for document 1
+        String storedDocument = documentFingerprints.documentFingerprint(document("1", "some text", "earlier crawl"));
+        String storedField = DocumentFingerprints.fieldFingerprint("some text", chunkConfig);
+        QueryResponse destination = stored("1", storedDocument, "2", "stale");
+        QueryResponse chunks = stored("1-body#0000000", storedField, "1-body#0000001", storedField, "2-body#0000000", "stale");
+        when(inlineSolrClient.query(eq("destination"), any(SolrParams.class))).thenReturn(destination);
+        when(vectorSolrClient.query(eq("body-chunks"), any(SolrParams.class))).thenReturn(chunks);
+
+        SolrInputDocument unchanged = document("1", "some text", "this crawl");
+        SolrInputDocument changed = document("2", "new text", "this crawl");
+        documentFingerprints.lookup(List.of(unchanged, changed));
+
+        assertTrue(documentFingerprints.isDocumentUnchanged(unchanged));
+        assertFalse(documentFingerprints.isDocumentUnchanged(changed));
+        assertEquals(List.of("1-body#0000000", "1-body#0000001"), documentFingerprints.unchangedChunkIds(unchanged, "body"));
+        assertNull(documentFingerprints.unchangedChunkIds(changed, "body"));
+        assertEquals(1, documentFingerprints.getUnchangedDocuments());
+        assertEquals(1, documentFingerprints.getUnchangedChunkFields());
+    }
+
+    @Test
+    public void testStoredChunksAreReadOncePerPageWithFingerprintsOff() throws Exception {
+        VectorConfig chunkConfig = vectorConfig("chunk-vector", "body-chunks", 300);
+        SolrClient inlineSolrClient = mock(SolrClient.class);
+        SolrClient vectorSolrClient = mock(SolrClient.class);
+        DocumentFingerprints documentFingerprints = new DocumentFingerprints(false, Map.of(), Map.of("body", chunkConfig),
+                "destination", inlineSolrClient, vectorSolrClient);
+        QueryResponse chunks = stored("1-body#0000000", null, "1-body#0000001", null, "2-body#0000000", null);
+        when(vectorSolrClient.query(eq("body-chunks"), any(SolrParams.class))).thenReturn(chunks);
+
+        SolrInputDocument first = document("1", "some text", "this crawl");
+        SolrInputDocument second = document("2", "other text", "this crawl");
+        documentFingerprints.lookup(List.of(first, second));
+
+        verify(vectorSolrClient, times(1)).query(eq("body-chunks"), any(SolrParams.class));
+        verify(inlineSolrClient, never()).query(any(String.class), any(SolrParams.class));
+        assertEquals(Set.of("1-body#0000000", "1-body#0000001"), documentFingerprints.storedChunks(first, "body").keySet());
+        assertEquals(Set.of("2-body#0000000"), documentFingerprints.storedChunks(second, "body").keySet());
+        // nothing is skipped and no fingerprint is written
+        assertFalse(documentFingerprints.isDocumentUnchanged(first));
+        assertNull(documentFingerprints.unchangedChunkIds(first, "body"));
+        assertNull(documentFingerprints.fieldFingerprint(first, "body", "some text"));
+    }
+
+    @Test
+    public void testFailedLookupsTakeTheFullPath() throws Exception {
+        SolrClient solrClient = mock(SolrClient.class);
+        when(solrClient.query(any(String.class), any(SolrParams.class))).thenThrow(new IllegalStateException("solr is down"));
+        DocumentFingerprints documentFingerprints = new DocumentFingerprints(true, Map.of(),
+                Map.of("body", vectorConfig("chunk-vector", "body-chunks", 300)), "destination", solrClient, solrClient);
+
+        SolrInputDocument document = document("1", "some text", "this crawl");
+        documentFingerprints.lookup(List.of(document));
+        assertFalse(documentFingerprints.isDocumentUnchanged(document));
+        assertNull(documentFingerprints.unchangedChunkIds(document, "body"));
+        // the fingerprints are still written with the document
+        assertNotNull(documentFingerprints.documentFingerprint(document));
+    }
+
+    @Test
+    public void testFingerprintsFollowContentAndConfigOnly() {
+        Map<String, VectorConfig> inlineConfig = Map.of("body", vectorConfig("body-vector", null, 300));
+        Set<String> excluded = Set.of(SchemaConstants.CRAWL_ID, SchemaConstants.CRAWL_DATE, SchemaConstants.VECTOR_FINGERPRINT, "body-vector");
+        String fingerprint = DocumentFingerprints.documentFingerprint(document("1", "some text", "first crawl"), excluded, inlineConfig);
+
+        SolrInputDocument recrawled = document("1", "some text", "second crawl");
+        recrawled.addField("body-vector", List.of(0.1f, 0.2f));
+        assertEquals(fingerprint, DocumentFingerprints.documentFingerprint(recrawled, excluded, inlineConfig));
+        assertNotEquals(fingerprint, DocumentFingerprints.documentFingerprint(document("1", "other text", "first crawl"), excluded, inlineConfig));
+        assertNotEquals(fingerprint, DocumentFingerprints.documentFingerprint(document("1", "some text", "first crawl"), excluded,
+                Map.of("body", vectorConfig("body-vector", null, 500))));
+
+        assertEquals(DocumentFingerprints.fieldFingerprint("some text", vectorConfig("chunk-vector", "body-chunks", 300)),
+                DocumentFingerprints.fieldFingerprint("some text", vectorConfig("chunk-vector", "body-chunks", 300)));
+        assertNotEquals(DocumentFingerprints.fieldFingerprint("some text", vectorConfig("chunk-vector", "body-chunks", 300)),
+                DocumentFingerprints.fieldFingerprint("some text", vectorConfig("chunk-vector", "body-chunks", 500)));
+    }
+
+    @Test
+    public void testCrawlRefreshOnlySetsTheCrawlFields() {
+        SolrInputDocument source = document("1", "some text", "this crawl");
+        source.addField(SchemaConstants.CRAWL_DATE, "2024-11-18T02:03:00.000Z");
+        SolrInputDocument refresh = DocumentFingerprints.crawlRefresh("1-body#0000000", source);
+
+        assertEquals(Set.of(SchemaConstants.ID, SchemaConstants.CRAWL_ID, SchemaConstants.CRAWL_DATE), Set.copyOf(refresh.getFieldNames()));
+        assertEquals("1-body#0000000", refresh.getFieldValue(SchemaConstants.ID));
+        assertEquals(Map.of("set", "this crawl"), refresh.getFieldValue(SchemaConstants.CRAWL_ID));
+        assertEquals(Map.of("set", "2024-11-18T02:03:00.000Z"), refresh.getFieldValue(SchemaConstants.CRAWL_DATE));
+    }
+}
@@ -0,0 +1,146 @@
+package com.krickert.search.indexer.solr.vector.event;
+
+import com.krickert.search.service.ChunkOptions;
+import com.krickert.search.service.ChunkReply;
+import com.krickert.search.service.ChunkRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DocumentWorkMemoTest {
+
+    private static ChunkRequest chunkRequest(String text, int length) {
+        return ChunkRequest.newBuilder()
+                .setText(text)
+                .setOptions(ChunkOptions.newBuilder().setLength(length).setOverlap(10).build())
+                .build();
+    }
+
+    @Test
+    public void testSameWorkOnTheSameDocumentIsShared() {
+        DocumentWorkMemo memo = new DocumentWorkMemo();
+        SolrInputDocument document = new SolrInputDocument();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<ChunkReply> pending = new CompletableFuture<>();
+
+        CompletableFuture<ChunkReply> first = memo.chunk(document, "remote", chunkRequest("some text", 100), () -> {
+            calls.incrementAndGet();
+            return pending;
+        });
+        // the second consumer shares the call while it is still running
+        CompletableFuture<ChunkReply> second = memo.chunk(document, "remote", chunkRequest("some text", 100), () -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        pending.complete(ChunkReply.newBuilder().addChunks("some text").build());
+
+        assertEquals(1, calls.get());
+        assertEquals(first.join(), second.join());
+        assertEquals(1, memo.getHits());
+        assertEquals(1, memo.getMisses());
+    }
+
+    @Test
+    public void testDifferentOptionsModelsAndDocumentsAreNotShared() {
+        DocumentWorkMemo memo = new DocumentWorkMemo();
+        SolrInputDocument document = new SolrInputDocument();
+        AtomicInteger calls = new AtomicInteger();
+
+        memo.chunk(document, "remote", chunkRequest("some text", 100), () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(ChunkReply.getDefaultInstance());
+        });
+        memo.chunk(document, "remote", chunkRequest("some text", 300), () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(ChunkReply.getDefaultInstance());
+        });
+        memo.embedText(document, "mini-lm", "some text", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(List.of(0.1f));
+        });
+        memo.embedText(document, "mpnet", "some text", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(List.of(0.2f));
+        });
+        // an equal but separate document has its own memo
+        memo.embedText(new SolrInputDocument(), "mini-lm", "some text", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(List.of(0.1f));
+        });
+
+        assertEquals(5, calls.get());
+        assertEquals(0, memo.getHits());
+    }
+
+    @Test
+    public void testFailedWorkIsTriedAgain() {
+        DocumentWorkMemo memo = new DocumentWorkMemo();
+        SolrInputDocument document = new SolrInputDocument();
+
+        CompletableFuture<List<Float>> failed = memo.embedText(document, "mini-lm", "some text",
+                () -> CompletableFuture.failedFuture(new IllegalStateException("embedding service is down")));
+        CompletionException error = assertThrows(CompletionException.class, failed::join);
+        assertInstanceOf(IllegalStateException.class, error.getCause());
+
+        CompletableFuture<List<Float>> retried = memo.embedText(document, "mini-lm", "some text",
+                () -> CompletableFuture.completedFuture(List.of(0.1f, 0.2f)));
+        assertEquals(List.of(0.1f, 0.2f), retried.join());
+        assertEquals(0, memo.getHits());
+        assertEquals(2, memo.getMisses());
+    }
+
+    @Test
+    public void testTextsAreSharedAcrossDifferentBatches() {
+        DocumentWorkMemo memo = new DocumentWorkMemo();
+        SolrInputDocument document = new SolrInputDocument();
+        List<List<String>> embedded = new ArrayList<>();
+        Function<List<String>, CompletableFuture<List<List<Float>>>> embedder = texts -> {
+            embedded.add(texts);
+            return CompletableFuture.completedFuture(texts.stream().map(text -> List.of((float) text.length())).toList());
+        };
+
+        // one consumer cut its chunks into two batches, the other asks for all of them with a new one at once
+        memo.embedTexts(document, "mini-lm", List.of("a", "bb"), embedder);
+        memo.embedTexts(document, "mini-lm", List.of("ccc"), embedder);
+        List<List<Float>> vectors = memo.embedTexts(document, "mini-lm", List.of("a", "bb", "ccc", "dddd", "a"), embedder).join();
+
+        assertEquals(List.of(List.of(1f), List.of(2f), List.of(3f), List.of(4f), List.of(1f)), vectors);
+        // only the new text was sent, once
+        assertEquals(List.of(List.of("a", "bb"), List.of("ccc"), List.of("dddd")), embedded);
+        assertEquals(4, memo.getHits());
+        assertEquals(4, memo.getMisses());
+    }
+
+    @Test
+    public void testFailedTextsAreTriedAgain() {
+        DocumentWorkMemo memo = new DocumentWorkMemo();
+        SolrInputDocument document = new SolrInputDocument();
+
+        CompletableFuture<List<List<Float>>> failed = memo.embedTexts(document, "mini-lm", List.of("a", "bb"),
+                texts -> CompletableFuture.failedFuture(new IllegalStateException("embedding service is down")));
+        CompletionException error = assertThrows(CompletionException.class, failed::join);
+        assertInstanceOf(IllegalStateException.class, error.getCause());
+
+        // a reply one vector short fails every text it was asked for
+        CompletableFuture<List<List<Float>>> shortReply = memo.embedTexts(document, "mini-lm", List.of("a", "bb"),
+                texts -> CompletableFuture.completedFuture(List.of(List.of(1f))));
+        assertThrows(CompletionException.class, shortReply::join);
+
+        List<String> retriedTexts = new ArrayList<>();
+        List<List<Float>> retried = memo.embedTexts(document, "mini-lm", List.of("a", "bb"), texts -> {
+            retriedTexts.addAll(texts);
+            return CompletableFuture.completedFuture(List.of(List.of(1f), List.of(2f)));
+        }).join();
+        assertEquals(List.of("a", "bb"), retriedTexts);
+        assertEquals(List.of(List.of(1f), List.of(2f)), retried);
+        assertEquals(0, memo.getHits());
+    }
+}
@@ -0,0 +1,121 @@
+package com.krickert.search.indexer.solr.vector.event;
+
+import com.krickert.search.indexer.config.IndexerConfiguration;
+import com.krickert.search.indexer.config.IndexerConfigurationProperties;
+import com.krickert.search.indexer.config.SolrConfiguration;
+import com.krickert.search.indexer.config.VectorConfig;
+import com.krickert.search.indexer.grpc.ChunkerClient;
+import com.krickert.search.indexer.grpc.EmbeddingBatchSizers;
+import com.krickert.search.indexer.grpc.EmbeddingBatcher;
+import com.krickert.search.indexer.grpc.EmbeddingClient;
+import com.krickert.search.indexer.pipeline.IndexingPipeline;
+import com.krickert.search.indexer.solr.SchemaConstants;
+import com.krickert.search.indexer.solr.client.SolrClientService;
+import com.krickert.search.indexer.state.DeadLetterLog;
+import com.krickert.search.indexer.tracker.IndexingTracker;
+import com.krickert.search.service.EmbeddingsVectorReply;
+import io.grpc.Status;
+import org.apache.solr.client.solrj.impl.Http2SolrClient;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Follows a document through the non-blocking path of the inline listener, with an embedding service that answers
+ * when the test says so.
+ */
+public class InlineDocumentListenerTest {
+
+    @TempDir
+    Path stateDirectory;
+
+    private final CompletableFuture<EmbeddingsVectorReply> embedding = new CompletableFuture<>();
+    private final Http2SolrClient destinationClient = mock(Http2SolrClient.class);
+    private final IndexingTracker indexingTracker = new IndexingTracker(100);
+    private IndexingPipeline indexingPipeline;
+    private EmbeddingBatcher embeddingBatcher;
+    private DeadLetterLog deadLetterLog;
+    private InlineDocumentListener listener;
+
+    @BeforeEach
+    public void createListener() {
+        VectorConfig vectorConfig = new VectorConfig();
+        vectorConfig.setFieldName("body");
+        vectorConfig.setFieldVectorName("body-vector");
+        vectorConfig.setModel("mini-lm");
+        vectorConfig.setChunkField(false);
+        SolrConfiguration destination = new SolrConfiguration("destination");
+        destination.setCollection("destination");
+        IndexerConfiguration indexerConfiguration = mock(IndexerConfiguration.class);
+        when(indexerConfiguration.getInlineVectorConfig()).thenReturn(Map.of("body", vectorConfig));
+        when(indexerConfiguration.getDestinationSolrConfiguration()).thenReturn(destination);
+        SolrClientService solrClientService = mock(SolrClientService.class);
+        when(solrClientService.inlineSolrClient()).thenReturn(destinationClient);
+        EmbeddingClient embeddingClient = mock(EmbeddingClient.class);
+        when(embeddingClient.createEmbeddingsVector("some text")).thenReturn(embedding);
+
+        indexingPipeline = new IndexingPipeline(new IndexerConfigurationProperties.Pipeline());
+        // a batch size of one sends the text as soon as it is asked for
+        embeddingBatcher = new EmbeddingBatcher(embeddingClient, 1, 0, 1);
+        deadLetterLog = new DeadLetterLog(stateDirectory.resolve("dead-letters.jsonl"));
+        listener = new InlineDocumentListener(solrClientService, embeddingClient, mock(ChunkerClient.class), indexingTracker,
+                indexerConfiguration, embeddingBatcher, indexingPipeline, deadLetterLog, new DocumentWorkMemo(),
+                new DocumentFingerprints(false, Map.of(), Map.of(), "destination", null, null),
+                new EmbeddingBatchSizers(new IndexerConfigurationProperties()));
+        indexingTracker.startTracking(1L, "crawl");
+    }
+
+    @AfterEach
+    public void close() {
+        embeddingBatcher.close();
+        indexingPipeline.close();
+    }
+
+    private static SolrInputDocument document() {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField(SchemaConstants.ID, "1");
+        document.addField("body", "some text");
+        document.addField(SchemaConstants.CRAWL_ID, "crawl");
+        return document;
+    }
+
+    @Test
+    public void testDocumentIsWrittenOnceItsVectorArrives() throws Exception {
+        SolrInputDocument document = document();
+        CompletableFuture<Void> processed = listener.processDocumentAsync(document);
+        assertFalse(processed.isDone());
+        verify(destinationClient, never()).add(anyString(), any(SolrInputDocument.class));
+
+        embedding.complete(EmbeddingsVectorReply.newBuilder().addEmbeddings(0.5f).addEmbeddings(0.25f).build());
+        processed.get(5, TimeUnit.SECONDS);
+
+        verify(destinationClient).add(eq("destination"), same(document));
+        assertEquals(List.of(0.5f, 0.25f), new ArrayList<>(document.getFieldValues("body-vector")));
+        assertEquals(1, indexingTracker.getMainTaskStatus().getTotalDocumentsProcessed());
+        assertEquals(0, deadLetterLog.size());
+    }
+
+    @Test
+    public void testFailedEmbeddingSendsTheDocumentToTheDeadLetterLog() throws Exception {
+        CompletableFuture<Void> processed = listener.processDocumentAsync(document());
+        embedding.completeExceptionally(Status.UNAVAILABLE.asRuntimeException());
+        // the failure is handled by the listener, so the document's work still completes
+        processed.get(5, TimeUnit.SECONDS);
+
+        verify(destinationClient, never()).add(anyString(), any(SolrInputDocument.class));
+        assertEquals(1, indexingTracker.getMainTaskStatus().getTotalDocumentsFailed());
+        assertEquals(1, deadLetterLog.size());
+    }
+}
@@ -0,0 +1,100 @@
+package com.krickert.search.indexer.state;
+
+import com.krickert.search.indexer.config.SolrConfiguration;
+import com.krickert.search.indexer.solr.httpclient.select.HttpSolrSelectResponse;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CrawlCheckpointerTest {
+
+    @TempDir
+    Path stateDirectory;
+
+    private static SolrConfiguration sourceConfiguration() {
+        SolrConfiguration.Connection connection = new SolrConfiguration.Connection();
+        connection.setUrl("http://localhost:8983/solr");
+        SolrConfiguration sourceConfiguration = new SolrConfiguration("source");
+        sourceConfiguration.setCollection("source-collection");
+        sourceConfiguration.setConnection(connection);
+        return sourceConfiguration;
+    }
+
+    private static HttpSolrSelectResponse cursorPage(String nextCursorMark, String... ids) {
+        List<SolrInputDocument> docs = new ArrayList<>();
+        for (String id : ids) {
+            SolrInputDocument doc = new SolrInputDocument();
+            doc.addField("id", id);
+            docs.add(doc);
+        }
+        return new HttpSolrSelectResponse.Builder()
+                .docs(docs)
+                .start(0L)
+                .pageSize((long) ids.length)
+                .nextCursorMark(nextCursorMark)
+                .build();
+    }
+
+    private static CrawlCheckpoint firstCheckpoint() {
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint();
+        checkpoint.setCrawlId("5b0e4f36-6a8c-4b44-9d46-1d6a4bde3f51");
+        checkpoint.setCrawlFilters(List.of("_version_:{100 TO *]"));
+        checkpoint.setHighWaterMark("200");
+        return checkpoint;
+    }
+
+    @Test
+    public void testCheckpointOnlyMovesPastFullyAcknowledgedPages() {
+        SolrConfiguration sourceConfiguration = sourceConfiguration();
+        CrawlCheckpointer checkpointer = new CrawlCheckpointer(new FileCrawlStateStore(stateDirectory), 2, true);
+        checkpointer.begin(sourceConfiguration, firstCheckpoint());
+        assertEquals(0L, checkpointer.load(sourceConfiguration).orElseThrow().getDocumentsAcknowledged());
+
+        checkpointer.pagePublished(cursorPage("AoE1", "1", "2"));
+        checkpointer.pagePublished(cursorPage("AoE2", "3", "4"));
+
+        // the second page is done first, but the first page still holds the checkpoint back
+        List.of("3", "3", "4", "4", "1", "1", "2").forEach(checkpointer::documentAcknowledged);
+        assertNull(checkpointer.load(sourceConfiguration).orElseThrow().getCursorMark());
+
+        checkpointer.documentAcknowledged("2");
+        CrawlCheckpoint saved = checkpointer.load(sourceConfiguration).orElseThrow();
+        assertEquals("AoE2", saved.getCursorMark());
+        assertEquals(4L, saved.getDocumentsAcknowledged());
+        assertEquals("5b0e4f36-6a8c-4b44-9d46-1d6a4bde3f51", saved.getCrawlId());
+        assertEquals(List.of("_version_:{100 TO *]"), saved.getCrawlFilters());
+        assertEquals("200", saved.getHighWaterMark());
+
+        checkpointer.complete();
+        assertEquals(Optional.empty(), checkpointer.load(sourceConfiguration));
+    }
+
+    @Test
+    public void testOffsetPagesContinueAfterTheRowsAskedFor() {
+        SolrConfiguration sourceConfiguration = sourceConfiguration();
+        CrawlCheckpointer checkpointer = new CrawlCheckpointer(new FileCrawlStateStore(stateDirectory), 1, true);
+        checkpointer.begin(sourceConfiguration, firstCheckpoint());
+
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("id", "1");
+        checkpointer.pagePublished(new HttpSolrSelectResponse.Builder()
+                .docs(List.of(doc))
+                .start(300L)
+                .pageSize(100L)
+                .build());
+        checkpointer.documentAcknowledged("1");
+        checkpointer.stop();
+
+        CrawlCheckpoint saved = checkpointer.load(sourceConfiguration).orElseThrow();
+        assertNull(saved.getCursorMark());
+        assertEquals(400L, saved.getStart());
+        assertEquals(1L, saved.getDocumentsAcknowledged());
+    }
+}
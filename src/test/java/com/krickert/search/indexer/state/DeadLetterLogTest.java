@@ -0,0 +1,101 @@
+package com.krickert.search.indexer.state;
+
+import com.krickert.search.indexer.solr.SchemaConstants;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeadLetterLogTest {
+
+    @TempDir
+    Path stateDirectory;
+
+    private static DeadLetter deadLetter(String id, String listener, String fieldName) {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField("id", id);
+        document.addField(SchemaConstants.CRAWL_ID, "5b0e4f36-6a8c-4b44-9d46-1d6a4bde3f51");
+        document.addField("body", "some text");
+        document.addField("tags", List.of("a", "b"));
+        document.addField("body_vector", List.of(0.1f, 0.2f));
+        return DeadLetter.of(listener, fieldName, id, document, Set.of("body_vector"), "embed",
+                new IllegalStateException("embedding service is down"));
+    }
+
+    @Test
+    public void testDeadLettersKeepTheDocumentWithoutListenerFields() {
+        DeadLetterLog deadLetterLog = new DeadLetterLog(stateDirectory.resolve(DeadLetterLog.DEAD_LETTER_FILE));
+        deadLetterLog.record(deadLetter("1", DeadLetter.INLINE_LISTENER, null));
+        deadLetterLog.record(deadLetter("2", DeadLetter.CHUNK_LISTENER, "body"));
+        assertEquals(2, deadLetterLog.size());
+
+        // a restart reads the log back
+        DeadLetterLog reopened = new DeadLetterLog(stateDirectory.resolve(DeadLetterLog.DEAD_LETTER_FILE));
+        assertEquals(2, reopened.size());
+        DeadLetter saved = reopened.getAll().get(1);
+        assertEquals("2", saved.getDocumentId());
+        assertEquals("5b0e4f36-6a8c-4b44-9d46-1d6a4bde3f51", saved.getCrawlId());
+        assertEquals("body", saved.getFieldName());
+        assertEquals("embed", saved.getStage());
+        assertEquals("java.lang.IllegalStateException: embedding service is down", saved.getError());
+        assertNotNull(saved.getFailedAt());
+
+        SolrInputDocument document = saved.toSolrInputDocument();
+        assertEquals("some text", document.getFieldValue("body"));
+        assertEquals(List.of("a", "b"), document.getFieldValues("tags"));
+        assertNull(document.getField("body_vector"));
+    }
+
+    @Test
+    public void testFieldTypesSurviveTheLog() {
+        Date published = new Date(1714557600123L);
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField("id", "1");
+        document.addField("published_dt", published);
+        document.addField("rating_f", 4.5f);
+        document.addField("views_l", 12L);
+        document.addField("sizes_fs", List.of(1.25f, 2.5f));
+        document.addField("count_i", 3);
+        document.addField("thumbnail_bin", new byte[]{1, 2, 3});
+        DeadLetterLog deadLetterLog = new DeadLetterLog(stateDirectory.resolve(DeadLetterLog.DEAD_LETTER_FILE));
+        deadLetterLog.record(DeadLetter.of(DeadLetter.INLINE_LISTENER, null, "1", document, Set.of(), "index",
+                new IllegalStateException("destination is down")));
+
+        SolrInputDocument replayed = deadLetterLog.getAll().get(0).toSolrInputDocument();
+        assertEquals(published, replayed.getFieldValue("published_dt"));
+        assertEquals(4.5f, replayed.getFieldValue("rating_f"));
+        assertEquals(12L, replayed.getFieldValue("views_l"));
+        assertEquals(List.of(1.25f, 2.5f), replayed.getFieldValues("sizes_fs"));
+        assertEquals(3, replayed.getFieldValue("count_i"));
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) replayed.getFieldValue("thumbnail_bin"));
+    }
+
+    @Test
+    public void testAReplayThatBreaksOffIsPutBack() {
+        Path deadLetterFile = stateDirectory.resolve(DeadLetterLog.DEAD_LETTER_FILE);
+        DeadLetterLog deadLetterLog = new DeadLetterLog(deadLetterFile);
+        deadLetterLog.record(deadLetter("1", DeadLetter.INLINE_LISTENER, null));
+        deadLetterLog.record(deadLetter("2", DeadLetter.INLINE_LISTENER, null));
+
+        List<DeadLetter> taken = deadLetterLog.takeAll();
+        assertEquals(2, taken.size());
+        assertEquals(0, deadLetterLog.size());
+        assertThrows(IllegalStateException.class, deadLetterLog::takeAll);
+
+        // one fails again during the replay, then the indexer stops before the replay finishes
+        deadLetterLog.record(deadLetter("2", DeadLetter.INLINE_LISTENER, null));
+        DeadLetterLog restarted = new DeadLetterLog(deadLetterFile);
+        assertEquals(3, restarted.size());
+
+        assertEquals(3, restarted.takeAll().size());
+        restarted.replayFinished();
+        assertEquals(0, restarted.size());
+        assertTrue(restarted.takeAll().isEmpty());
+    }
+}
@@ -0,0 +1,172 @@
+package com.krickert.search.indexer.state;
+
+import com.krickert.search.indexer.dto.EmbeddingStoreStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmbeddingStoreTest {
+    // a segment header and four vectors of eight floats
+    private static final int SEGMENT_BYTES = 8 + 4 * (28 + 8 * Float.BYTES);
+    private static final long UNCAPPED = Long.MAX_VALUE;
+
+    @TempDir
+    Path stateDirectory;
+
+    private EmbeddingStore open(int maxAgeCrawls) {
+        return open(maxAgeCrawls, UNCAPPED);
+    }
+
+    private EmbeddingStore open(int maxAgeCrawls, long maxBytes) {
+        return new EmbeddingStore(stateDirectory.resolve(EmbeddingStore.STORE_DIRECTORY), SEGMENT_BYTES, maxAgeCrawls,
+                maxBytes, new FileCrawlStateStore(stateDirectory));
+    }
+
+    private Path segmentFile(int id) {
+        return stateDirectory.resolve(EmbeddingStore.STORE_DIRECTORY).resolve(String.format("segment-%010d.seg", id));
+    }
+
+    private static float[] vector(int value) {
+        float[] vector = new float[8];
+        Arrays.fill(vector, value);
+        return vector;
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(stateDirectory.resolve(EmbeddingStore.STORE_DIRECTORY))) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void testVectorsSurviveARestart() {
+        EmbeddingStore embeddingStore = open(3);
+        embeddingStore.put("localhost:50401", "footer", vector(1));
+        embeddingStore.put("localhost:50401", "title", vector(2));
+        embeddingStore.close();
+
+        EmbeddingStore reopened = open(3);
+        assertArrayEquals(vector(1), reopened.get("localhost:50401", "footer"));
+        assertArrayEquals(vector(2), reopened.get("localhost:50401", "title"));
+        assertNull(reopened.get("localhost:50402", "footer"));
+        assertNull(reopened.get("localhost:50401", "body"));
+
+        EmbeddingStoreStatus status = reopened.getStatus();
+        assertEquals(2, status.getVectors());
+        assertEquals(2, status.getHits());
+        assertEquals(2, status.getMisses());
+    }
+
+    @Test
+    public void testUnusedVectorsAgeOutAndTheirSegmentsAreCompacted() throws IOException {
+        EmbeddingStore embeddingStore = open(1);
+        for (int i = 0; i < 12; i++) {
+            embeddingStore.put("model", "text " + i, vector(i));
+        }
+        assertEquals(3, embeddingStore.getStatus().getSegments());
+        embeddingStore.crawlFinished();
+        assertEquals(12, embeddingStore.getStatus().getVectors());
+
+        // the next crawl only uses the vector at the start of the first segment and those in the last one
+        assertNotNull(embeddingStore.get("model", "text 0"));
+        for (int i = 8; i < 12; i++) {
+            assertNotNull(embeddingStore.get("model", "text " + i));
+        }
+        embeddingStore.crawlFinished();
+
+        EmbeddingStoreStatus status = embeddingStore.getStatus();
+        assertEquals(5, status.getVectors());
+        // the first segment was mostly dead and the second all dead, so both are gone and text 0 was moved
+        assertEquals(2, status.getSegments());
+        assertEquals(2, segmentFiles());
+        assertEquals(status.getUsedBytes(), status.getLiveBytes());
+        embeddingStore.close();
+
+        EmbeddingStore reopened = open(1);
+        assertEquals(5, reopened.getStatus().getVectors());
+        assertEquals(2, reopened.getStatus().getGeneration());
+        assertArrayEquals(vector(0), reopened.get("model", "text 0"));
+        assertArrayEquals(vector(11), reopened.get("model", "text 11"));
+        assertNull(reopened.get("model", "text 1"));
+    }
+
+    @Test
+    public void testOldestSegmentIsDroppedAtTheCap() throws IOException {
+        EmbeddingStore embeddingStore = open(3, 2L * SEGMENT_BYTES);
+        for (int i = 0; i < 12; i++) {
+            embeddingStore.put("model", "text " + i, vector(i));
+        }
+        EmbeddingStoreStatus status = embeddingStore.getStatus();
+        assertEquals(2, status.getSegments());
+        assertEquals(2, segmentFiles());
+        assertEquals(8, status.getVectors());
+        assertEquals(4, status.getEvictedVectors());
+        assertNull(embeddingStore.get("model", "text 3"));
+        assertArrayEquals(vector(4), embeddingStore.get("model", "text 4"));
+        embeddingStore.close();
+
+        // a lower cap on the next start drops the oldest segments straight away
+        EmbeddingStore reopened = open(3, SEGMENT_BYTES);
+        assertEquals(1, reopened.getStatus().getSegments());
+        assertArrayEquals(vector(11), reopened.get("model", "text 11"));
+        assertNull(reopened.get("model", "text 4"));
+    }
+
+    @Test
+    public void testDamagedVectorIsSkipped() throws IOException {
+        EmbeddingStore embeddingStore = open(3);
+        embeddingStore.put("model", "text 0", vector(0));
+        embeddingStore.put("model", "text 1", vector(1));
+        embeddingStore.put("model", "text 2", vector(2));
+        embeddingStore.close();
+
+        // the page holding part of the second vector never reached the disk
+        try (FileChannel channel = FileChannel.open(segmentFile(1), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Float.BYTES), 8 + (28 + 8 * Float.BYTES) + 28 + 2 * Float.BYTES);
+        }
+
+        EmbeddingStore reopened = open(3);
+        assertEquals(2, reopened.getStatus().getVectors());
+        assertArrayEquals(vector(0), reopened.get("model", "text 0"));
+        assertNull(reopened.get("model", "text 1"));
+        assertArrayEquals(vector(2), reopened.get("model", "text 2"));
+    }
+
+    @Test
+    public void testTextStoredOnceWhenPutConcurrently() throws InterruptedException {
+        EmbeddingStore embeddingStore = open(3);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < 8; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                embeddingStore.put("model", "footer", vector(1));
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        EmbeddingStoreStatus status = embeddingStore.getStatus();
+        assertEquals(1, status.getVectors());
+        assertEquals(status.getUsedBytes(), status.getLiveBytes());
+    }
+}
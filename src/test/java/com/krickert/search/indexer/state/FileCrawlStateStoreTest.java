@@ -0,0 +1,30 @@
+package com.krickert.search.indexer.state;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileCrawlStateStoreTest {
+
+    @TempDir
+    Path stateDirectory;
+
+    @Test
+    public void testPutGetAndRemove() {
+        FileCrawlStateStore store = new FileCrawlStateStore(stateDirectory.resolve("state"));
+        String key = "watermark-http://localhost:8983/solr-source-collection-_version_";
+        assertEquals(Optional.empty(), store.get(key));
+
+        store.put(key, "1700000000000000000");
+        store.put(key, "1800000000000000000");
+        assertEquals(Optional.of("1800000000000000000"), store.get(key));
+        assertEquals(Optional.of("1800000000000000000"), new FileCrawlStateStore(stateDirectory.resolve("state")).get(key));
+
+        store.remove(key);
+        assertEquals(Optional.empty(), store.get(key));
+    }
+}
@@ -0,0 +1,77 @@
+package com.krickert.search.indexer.state;
+
+import com.krickert.search.indexer.IndexingFailedExecption;
+import com.krickert.search.indexer.config.SolrConfiguration;
+import com.krickert.search.indexer.enhancers.MockSolrSelectClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SourceWatermarkServiceTest {
+
+    @TempDir
+    Path stateDirectory;
+
+    /**
+     * A source with the given number of shards whose highest watermark field value is 42.
+     */
+    private static class ShardedSelectClient extends MockSolrSelectClient {
+        private final int shardCount;
+
+        private ShardedSelectClient(int shardCount) {
+            this.shardCount = shardCount;
+        }
+
+        @Override
+        public int getShardCount(String solrHost, String solrCollection) {
+            return shardCount;
+        }
+
+        @Override
+        public String getMaxFieldValue(String solr7Host, String solr7Collection, String fieldName) {
+            return "42";
+        }
+    }
+
+    private static SolrConfiguration incrementalSource(String watermarkField) {
+        SolrConfiguration.Incremental incremental = new SolrConfiguration.Incremental();
+        incremental.setEnabled(true);
+        incremental.setWatermarkField(watermarkField);
+        SolrConfiguration.Connection connection = new SolrConfiguration.Connection();
+        connection.setUrl("http://localhost:8983/solr");
+        SolrConfiguration sourceSolrConfiguration = new SolrConfiguration("source");
+        sourceSolrConfiguration.setCollection("source");
+        sourceSolrConfiguration.setConnection(connection);
+        sourceSolrConfiguration.setIncremental(incremental);
+        return sourceSolrConfiguration;
+    }
+
+    @Test
+    public void testWatermarkRangeFilter() {
+        assertEquals("_version_:{1800000000000000000 TO *]",
+                SourceWatermarkService.createRangeFilter("_version_", "1800000000000000000"));
+        assertEquals("last_modified:{2024\\-05\\-01T10\\:00\\:00Z TO *]",
+                SourceWatermarkService.createRangeFilter("last_modified", "2024-05-01T10:00:00Z"));
+    }
+
+    @Test
+    public void testSavedWatermarkBecomesTheNextCrawlFilter() throws IndexingFailedExecption {
+        SourceWatermarkService service = new SourceWatermarkService(new FileCrawlStateStore(stateDirectory), new ShardedSelectClient(1));
+        SolrConfiguration source = incrementalSource("_version_");
+        assertEquals(Optional.empty(), service.createWatermarkFilter(source));
+
+        service.saveWatermark(source, service.readHighWaterMark(source));
+        assertEquals(Optional.of("_version_:{42 TO *]"), service.createWatermarkFilter(source));
+    }
+
+    @Test
+    public void testVersionWatermarkIsRejectedOnAShardedSource() throws IndexingFailedExecption {
+        SourceWatermarkService service = new SourceWatermarkService(new FileCrawlStateStore(stateDirectory), new ShardedSelectClient(3));
+        assertThrows(IndexingFailedExecption.class, () -> service.readHighWaterMark(incrementalSource("_version_")));
+        assertEquals("42", service.readHighWaterMark(incrementalSource("last_modified")));
+    }
+}